@@ -22,22 +22,45 @@
 
 package org.jboss.jsfunit.init;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.framework.WebClientSpec;
+import org.jboss.jsfunit.framework.WebConversationFactory;
 
 /**
  * This class is a test suite that contains all the JSFUnit tests found
  * in the WAR.  This is the test that is called from the JSFUnit console to
  * run all tests.
  * 
+ * To run the test classes in parallel, set the jsfunit.parallel request 
+ * parameter on the ServletTestRunner URL or the jsfunit.parallel system 
+ * property.  Its value is the number of threads.  If it has no value, one 
+ * thread per available processor is used.
+ * 
+ * To run only part of the tests on each of several nodes, set 
+ * jsfunit.shard.count and jsfunit.shard.index (zero-based) the same way.
+ * Set jsfunit.shard.durations to the path of a duration file to balance
+ * the shards by the time each class took in earlier runs.  Each shard saves
+ * its durations to a file of its own next to that file.  See TestShards.
+ * The reports of the shards can be merged with ShardReportMerger.
+ * 
  * @author Stan Silvert
  * @since 1.2
  */
 public class AllJSFUnitTests extends ServletTestCase
 {
 
+   public static final String PARALLEL_PROPERTY = "jsfunit.parallel";
+
    private static Set<Class<?>> allTests;
 
    /**
@@ -56,12 +79,122 @@ public class AllJSFUnitTests extends ServletTestCase
    public static Test suite()
    {
       TestSuite suite = new TestSuite();
-      for (Class test : allTests)
+      File durationFile = durationFile();
+      int threads = parallelThreads();
+      if (threads > 0) 
+      {
+         suite = new ParallelTestSuite(threads);
+      }
+      else if ((durationFile != null) || (getSetting(TestShards.SHARD_COUNT_PROPERTY) != null))
       {
-        suite.addTestSuite(test);
+         suite = new TimedTestSuite();
+      }
+      
+      if (durationFile != null) ((TimedTestSuite)suite).setDurationFile(ownDurationFile(durationFile));
+      
+      // sort by class name so the results come back in the same order every time
+      Map<String, Class<?>> sortedByClassname = new TreeMap<String, Class<?>>();
+      for (Class<?> test : allTests)
+      {
+        sortedByClassname.put(test.getName(), test);
+      }
+      
+      for (String className : shard(new ArrayList<String>(sortedByClassname.keySet()), durationFile, suite))
+      {
+        suite.addTestSuite(sortedByClassname.get(className));
       }
        
       return suite;
    }
    
+   // returns all class names if sharding is not enabled
+   private static List<String> shard(List<String> classNames, File durationFile, TestSuite suite)
+   {
+      String count = getSetting(TestShards.SHARD_COUNT_PROPERTY);
+      if (count == null) return classNames;
+      
+      String index = getSetting(TestShards.SHARD_INDEX_PROPERTY);
+      if (index == null)
+      {
+         throw new IllegalArgumentException(TestShards.SHARD_INDEX_PROPERTY + " must be set when " + 
+                                            TestShards.SHARD_COUNT_PROPERTY + " is set.");
+      }
+      
+      Map<String, Long> durations = new HashMap<String, Long>();
+      try
+      {
+         if (durationFile != null) durations = TestShards.loadDurations(durationFile);
+      }
+      catch (IOException e)
+      {
+         // the shards are still valid, just not balanced
+         suite.addTest(new TimedTestSuite.SuiteError("loadTestDurations", 
+                       new IOException("Unable to read test durations from " + durationFile + ": " + e)));
+      }
+      
+      return TestShards.select(classNames, 
+                               Integer.parseInt(index.trim()), 
+                               Integer.parseInt(count.trim()), 
+                               durations);
+   }
+   
+   // each shard writes a file of its own, so shards never overwrite each other's durations
+   private static File ownDurationFile(File durationFile)
+   {
+      String index = getSetting(TestShards.SHARD_INDEX_PROPERTY);
+      if ((getSetting(TestShards.SHARD_COUNT_PROPERTY) == null) || (index == null)) return durationFile;
+      return TestShards.shardDurationFile(durationFile, Integer.parseInt(index.trim()));
+   }
+   
+   private static File durationFile()
+   {
+      String path = getSetting(TestShards.DURATIONS_PROPERTY);
+      if ((path == null) || (path.trim().length() == 0)) return null;
+      return new File(path.trim());
+   }
+   
+   /**
+    * Get a setting from the request params sent to the ServletTestRunner,
+    * or else from the system properties.
+    *
+    * @param name The name of the request param and system property.
+    *
+    * @return The value, an empty String if the param has no value, or 
+    *         <code>null</code> if it is not set.
+    */
+   static String getSetting(String name)
+   {
+      if (WebConversationFactory.getSessionFromThreadLocal() != null)
+      {
+         Map params = WebClientSpec.getRedirectorRequestParams();
+         if ((params != null) && params.containsKey(name))
+         {
+            String[] values = (String[])params.get(name);
+            if ((values == null) || (values.length == 0)) return "";
+            return values[0];
+         }
+      }
+      
+      return System.getProperty(name);
+   }
+   
+   // returns 0 if the tests should run sequentially
+   private static int parallelThreads()
+   {
+      String setting = getSetting(PARALLEL_PROPERTY);
+      if (setting == null) return 0;
+      
+      int cores = Runtime.getRuntime().availableProcessors();
+      if (setting.trim().length() == 0) return cores;
+      
+      try
+      {
+         return Math.max(1, Integer.parseInt(setting.trim()));
+      }
+      catch (NumberFormatException e)
+      {
+         return cores;
+      }
+   }
+   
 }
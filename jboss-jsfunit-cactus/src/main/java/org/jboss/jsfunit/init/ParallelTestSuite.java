@@ -0,0 +1,231 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.init;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.AssertionFailedError;
+import junit.framework.Test;
+import junit.framework.TestListener;
+import junit.framework.TestResult;
+
+/**
+ * A TestSuite that runs its tests (normally one TestSuite per test class) on 
+ * a bounded pool of threads.
+ * 
+ * Every JSFUnit test method is run by the ServletRedirector in its own
+ * request, with its own HttpSession and WebClient, so test classes can run 
+ * at the same time.  The events of each test class are recorded and then 
+ * passed to the real TestResult in the order the tests were added, so the 
+ * report is the same from one run to the next.  Because the events are 
+ * replayed, times measured by the report itself are not meaningful.  Use the
+ * timings kept by TimedTestSuite instead.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ParallelTestSuite extends TimedTestSuite
+{
+   private int threads;
+   
+   /**
+    * Create a new ParallelTestSuite.
+    *
+    * @param threads The maximum number of tests run at the same time.
+    */
+   public ParallelTestSuite(int threads)
+   {
+      if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+      this.threads = threads;
+   }
+   
+   /**
+    * Get the number of threads used to run the tests.
+    *
+    * @return The number of threads.
+    */
+   public int getThreads()
+   {
+      return this.threads;
+   }
+   
+   @Override
+   public void run(TestResult result)
+   {
+      clearTimings();
+      List<Test> tests = new ArrayList<Test>();
+      for (Enumeration e = tests(); e.hasMoreElements();)
+      {
+         tests.add((Test)e.nextElement());
+      }
+      
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(tests.size(), 1)), 
+                                                              new WorkerThreadFactory());
+      try
+      {
+         List<Future<RecordingTestResult>> futures = new ArrayList<Future<RecordingTestResult>>();
+         for (Test test : tests)
+         {
+            futures.add(executor.submit(new TestRun(test, result)));
+         }
+         
+         for (int i=0; i < futures.size(); i++)
+         {
+            RecordingTestResult recorded = waitFor(futures.get(i), tests.get(i));
+            recordTiming(tests.get(i), recorded.elapsedMillis);
+            if (result.shouldStop()) continue;
+            recorded.replay(result);
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+      
+      runFinished(result);
+   }
+   
+   private RecordingTestResult waitFor(Future<RecordingTestResult> future, Test test)
+   {
+      try
+      {
+         return future.get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         return RecordingTestResult.failed(test, e);
+      }
+      catch (ExecutionException e)
+      {
+         return RecordingTestResult.failed(test, e.getCause());
+      }
+   }
+   
+   @Override
+   protected String reportTitle()
+   {
+      return "Test timings (" + threads + " threads)";
+   }
+   
+   private static class TestRun implements Callable<RecordingTestResult>
+   {
+      private Test test;
+      private TestResult parent;
+      
+      TestRun(Test test, TestResult parent)
+      {
+         this.test = test;
+         this.parent = parent;
+      }
+      
+      public RecordingTestResult call()
+      {
+         RecordingTestResult recording = new RecordingTestResult();
+         if (parent.shouldStop()) return recording;
+         
+         long start = System.nanoTime();
+         test.run(recording);
+         recording.elapsedMillis = (System.nanoTime() - start) / 1000000L;
+         return recording;
+      }
+   }
+   
+   /**
+    * Records the events of one test so they can be replayed on another TestResult.
+    */
+   static class RecordingTestResult extends TestResult
+   {
+      private List<Object[]> events = new ArrayList<Object[]>();
+      private long elapsedMillis;
+      
+      RecordingTestResult()
+      {
+         addListener(new TestListener()
+         {
+            public void startTest(Test test)
+            {
+               events.add(new Object[] {"start", test});
+            }
+            
+            public void endTest(Test test)
+            {
+               events.add(new Object[] {"end", test});
+            }
+            
+            public void addError(Test test, Throwable t)
+            {
+               events.add(new Object[] {"error", test, t});
+            }
+            
+            public void addFailure(Test test, AssertionFailedError t)
+            {
+               events.add(new Object[] {"failure", test, t});
+            }
+         });
+      }
+      
+      static RecordingTestResult failed(Test test, Throwable t)
+      {
+         RecordingTestResult recording = new RecordingTestResult();
+         recording.startTest(test);
+         recording.addError(test, t);
+         recording.endTest(test);
+         return recording;
+      }
+      
+      void replay(TestResult result)
+      {
+         for (Object[] event : events)
+         {
+            String type = (String)event[0];
+            Test test = (Test)event[1];
+            if (type.equals("start")) result.startTest(test);
+            if (type.equals("end")) result.endTest(test);
+            if (type.equals("error")) result.addError(test, (Throwable)event[2]);
+            if (type.equals("failure")) result.addFailure(test, (AssertionFailedError)event[2]);
+         }
+      }
+   }
+   
+   private static class WorkerThreadFactory implements ThreadFactory
+   {
+      private AtomicInteger count = new AtomicInteger();
+      
+      public Thread newThread(Runnable runnable)
+      {
+         Thread thread = new Thread(runnable, "JSFUnit-test-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      }
+   }
+}
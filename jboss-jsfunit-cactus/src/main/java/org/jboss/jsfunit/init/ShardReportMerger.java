@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.init;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Merges the XML reports of several test shards into one report.  The
+ * reports are the ones returned by the Cactus ServletTestRunner when it is
+ * called without the xsl parameter.  Every testsuite element of every 
+ * report is copied into one testsuites element, so the JSFUnit report 
+ * stylesheet shows the totals of all shards.
+ * 
+ * Usage:<br/>
+ * <code>java org.jboss.jsfunit.init.ShardReportMerger merged.xml shard0.xml shard1.xml ...</code>
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ShardReportMerger
+{
+   // Don't allow a new instance of ShardReportMerger
+   private ShardReportMerger()
+   {
+   }
+   
+   public static void main(String[] args) throws Exception
+   {
+      if (args.length < 2)
+      {
+         System.out.println("Usage: ShardReportMerger <merged report> <shard report> [<shard report>...]");
+         System.exit(1);
+      }
+      
+      File[] reports = new File[args.length - 1];
+      for (int i=1; i < args.length; i++) reports[i - 1] = new File(args[i]);
+      
+      write(merge(reports), new File(args[0]));
+   }
+   
+   /**
+    * Merge shard reports.
+    *
+    * @param reports The XML reports of each shard.
+    *
+    * @return The merged report.  If two shards have a testsuite with the 
+    *         same name, the later one gets the shard number added to its name.
+    *
+    * @throws Exception If a report can not be read.
+    */
+   public static Document merge(File[] reports) throws Exception
+   {
+      DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      Document merged = builder.newDocument();
+      Element root = merged.createElement("testsuites");
+      
+      Set<String> names = new HashSet<String>();
+      for (int i=0; i < reports.length; i++)
+      {
+         Document report = builder.parse(reports[i]);
+         if (i == 0) copyProcessingInstructions(report, merged);
+         
+         NodeList suites = report.getElementsByTagName("testsuite");
+         for (int j=0; j < suites.getLength(); j++)
+         {
+            Element suite = (Element)merged.importNode(suites.item(j), true);
+            String name = suite.getAttribute("name");
+            if (!names.add(name))
+            {
+               name = name + " [shard " + i + "]";
+               suite.setAttribute("name", name);
+               names.add(name);
+            }
+            
+            root.appendChild(suite);
+         }
+      }
+      
+      merged.appendChild(root);
+      return merged;
+   }
+   
+   // keeps the xml-stylesheet instruction of the reports
+   private static void copyProcessingInstructions(Document report, Document merged)
+   {
+      for (Node node = report.getFirstChild(); node != null; node = node.getNextSibling())
+      {
+         if (node.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE)
+         {
+            merged.appendChild(merged.importNode(node, true));
+         }
+      }
+   }
+   
+   /**
+    * Write a report to a file.
+    *
+    * @param report The report.
+    * @param file The file.
+    *
+    * @throws Exception If the file can not be written.
+    */
+   public static void write(Document report, File file) throws Exception
+   {
+      Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+      transformer.transform(new DOMSource(report), new StreamResult(file));
+   }
+}
@@ -0,0 +1,302 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.init;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * TestShards splits the JSFUnit test classes of a WAR between several 
+ * nodes that each run a part of the suite.
+ * 
+ * Classes are assigned with a greedy bin-packing: the slowest class goes
+ * first, each one to the shard with the least total time so far.  Durations
+ * come from a file written by TimedTestSuite at the end of earlier runs.  A 
+ * class with no recorded duration is assumed to take the average time.  
+ * Every node computes the same plan from the same class list and duration
+ * file, so each class runs on exactly one shard.
+ * 
+ * The duration file is a properties file of class name to milliseconds.
+ * Shards on different nodes may share the file system, so a shard never
+ * writes the duration file itself.  It writes a file of its own (see 
+ * shardDurationFile()), and loadDurations() merges the duration file with 
+ * every shard file next to it, newest file last.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class TestShards
+{
+   /** Zero-based index of the shard to run. */
+   public static final String SHARD_INDEX_PROPERTY = "jsfunit.shard.index";
+   
+   /** Total number of shards. */
+   public static final String SHARD_COUNT_PROPERTY = "jsfunit.shard.count";
+   
+   /** Path of the duration file. */
+   public static final String DURATIONS_PROPERTY = "jsfunit.shard.durations";
+   
+   private static final String SHARD_SUFFIX = ".shard";
+   
+   private static final String TMP_SUFFIX = ".tmp";
+   
+   // Don't allow a new instance of TestShards
+   private TestShards()
+   {
+   }
+   
+   /**
+    * Split the test classes into shards.
+    *
+    * @param classNames The names of all test classes.
+    * @param count The number of shards.
+    * @param durations Known durations in milliseconds by class name.
+    *
+    * @return One List of class names per shard.  Each List is sorted by name.
+    */
+   public static List<List<String>> plan(List<String> classNames, int count, Map<String, Long> durations)
+   {
+      if (count < 1) throw new IllegalArgumentException("Shard count must be at least 1");
+      
+      final Map<String, Long> estimates = estimate(classNames, durations);
+      
+      // slowest first; ties by name so every node builds the same plan
+      List<String> byDuration = new ArrayList<String>(classNames);
+      Collections.sort(byDuration, new Comparator<String>()
+      {
+         public int compare(String s1, String s2)
+         {
+            int compare = estimates.get(s2).compareTo(estimates.get(s1));
+            if (compare != 0) return compare;
+            return s1.compareTo(s2);
+         }
+      });
+      
+      List<List<String>> shards = new ArrayList<List<String>>(count);
+      long[] totals = new long[count];
+      for (int i=0; i < count; i++) shards.add(new ArrayList<String>());
+      
+      for (String className : byDuration)
+      {
+         int lightest = 0;
+         for (int i=1; i < count; i++)
+         {
+            if (totals[i] < totals[lightest]) lightest = i;
+         }
+         
+         shards.get(lightest).add(className);
+         totals[lightest] += estimates.get(className);
+      }
+      
+      for (List<String> shard : shards) Collections.sort(shard);
+      return shards;
+   }
+   
+   /**
+    * Get the test classes of one shard.
+    *
+    * @param classNames The names of all test classes.
+    * @param index The zero-based index of the shard.
+    * @param count The number of shards.
+    * @param durations Known durations in milliseconds by class name.
+    *
+    * @return The class names of the shard, sorted by name.
+    */
+   public static List<String> select(List<String> classNames, int index, int count, Map<String, Long> durations)
+   {
+      if ((index < 0) || (index >= count))
+      {
+         throw new IllegalArgumentException("Shard index " + index + " must be between 0 and " + (count - 1));
+      }
+      
+      return plan(classNames, count, durations).get(index);
+   }
+   
+   private static Map<String, Long> estimate(List<String> classNames, Map<String, Long> durations)
+   {
+      long known = 0;
+      long total = 0;
+      for (String className : classNames)
+      {
+         Long duration = durations.get(className);
+         if (duration == null) continue;
+         known++;
+         total += duration.longValue();
+      }
+      
+      // with no history, every class counts the same
+      long average = (known == 0) ? 1 : Math.max(1, total / known);
+      
+      Map<String, Long> estimates = new HashMap<String, Long>();
+      for (String className : classNames)
+      {
+         Long duration = durations.get(className);
+         if (duration == null) duration = Long.valueOf(average);
+         estimates.put(className, duration);
+      }
+      
+      return estimates;
+   }
+   
+   /**
+    * Get the file where one shard saves its durations.
+    *
+    * @param file The duration file.
+    * @param index The zero-based index of the shard.
+    *
+    * @return The duration file of the shard, in the same directory.
+    */
+   public static File shardDurationFile(File file, int index)
+   {
+      return new File(file.getAbsoluteFile().getParentFile(), file.getName() + SHARD_SUFFIX + index);
+   }
+   
+   /**
+    * Read a duration file, merged with the duration files of all shards.
+    *
+    * @param file The duration file.
+    *
+    * @return Map of class name to milliseconds.  Empty if no file exists.
+    *
+    * @throws IOException If a file can not be read.
+    */
+   public static Map<String, Long> loadDurations(File file) throws IOException
+   {
+      Map<String, Long> durations = readDurations(file);
+      
+      final String prefix = file.getName() + SHARD_SUFFIX;
+      File[] shardFiles = file.getAbsoluteFile().getParentFile().listFiles(new FileFilter()
+      {
+         public boolean accept(File shardFile)
+         {
+            String name = shardFile.getName();
+            return shardFile.isFile() && name.startsWith(prefix) && !name.endsWith(TMP_SUFFIX);
+         }
+      });
+      if (shardFiles == null) return durations;
+      
+      // the latest run of a class wins
+      List<File> byAge = new ArrayList<File>();
+      Collections.addAll(byAge, shardFiles);
+      Collections.sort(byAge, new Comparator<File>()
+      {
+         public int compare(File f1, File f2)
+         {
+            if (f1.lastModified() == f2.lastModified()) return f1.getName().compareTo(f2.getName());
+            return (f1.lastModified() < f2.lastModified()) ? -1 : 1;
+         }
+      });
+      
+      for (File shardFile : byAge) durations.putAll(readDurations(shardFile));
+      return durations;
+   }
+   
+   private static Map<String, Long> readDurations(File file) throws IOException
+   {
+      Map<String, Long> durations = new HashMap<String, Long>();
+      if (!file.exists()) return durations;
+      
+      Properties properties = new Properties();
+      InputStream in = new FileInputStream(file);
+      try
+      {
+         properties.load(in);
+      }
+      finally
+      {
+         in.close();
+      }
+      
+      for (Iterator i = properties.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry entry = (Map.Entry)i.next();
+         try
+         {
+            durations.put((String)entry.getKey(), Long.valueOf(((String)entry.getValue()).trim()));
+         }
+         catch (NumberFormatException e)
+         {
+            // ignore - the class will get an estimated duration
+         }
+      }
+      
+      return durations;
+   }
+   
+   /**
+    * Add new durations to a duration file.  Durations of classes that did not
+    * run are kept.  Only one run at a time may write a given file, so a shard 
+    * must write the file returned by shardDurationFile().
+    *
+    * @param file The duration file.
+    * @param timings Map of class name to milliseconds.
+    *
+    * @throws IOException If the file can not be written.
+    */
+   public static synchronized void updateDurations(File file, Map<String, Long> timings) throws IOException
+   {
+      Map<String, Long> durations = readDurations(file);
+      durations.putAll(timings);
+      
+      Properties properties = new Properties();
+      for (Map.Entry<String, Long> entry : durations.entrySet())
+      {
+         properties.setProperty(entry.getKey(), entry.getValue().toString());
+      }
+      
+      File dir = file.getAbsoluteFile().getParentFile();
+      if (dir != null) dir.mkdirs();
+      
+      // write a new file and move it over the old one so readers never see half a file
+      File tmpFile = new File(dir, file.getName() + TMP_SUFFIX);
+      OutputStream out = new FileOutputStream(tmpFile);
+      try
+      {
+         properties.store(out, "JSFUnit test durations in milliseconds");
+      }
+      finally
+      {
+         out.close();
+      }
+      
+      if (!tmpFile.renameTo(file))
+      {
+         file.delete();
+         if (!tmpFile.renameTo(file)) throw new IOException("Unable to write " + file);
+      }
+   }
+}
@@ -0,0 +1,190 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2010, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.init;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+/**
+ * A TestSuite that measures the wall time of each of its tests (normally one 
+ * TestSuite per test class).  The timings are available from getTimings()
+ * and getTimingReport() after the run.  Set system property 
+ * jsfunit.timingreport to also print the report to standard out.  If a 
+ * duration file is set, the timings are saved to it so that TestShards can
+ * balance the next run.  A duration file that can not be saved is reported
+ * as an error in the TestResult.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class TimedTestSuite extends TestSuite
+{
+   public static final String TIMING_REPORT_PROPERTY = "jsfunit.timingreport";
+   
+   // key = test name; value = wall time in milliseconds
+   private Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+   
+   private File durationFile;
+   
+   /**
+    * Set the file where test durations are saved at the end of the run.
+    *
+    * @param durationFile The file, or <code>null</code> to not save durations.
+    */
+   public void setDurationFile(File durationFile)
+   {
+      this.durationFile = durationFile;
+   }
+   
+   /**
+    * Get the wall time of each test of the last run, in the order the tests
+    * were added.
+    *
+    * @return Map of test name to milliseconds.
+    */
+   public Map<String, Long> getTimings()
+   {
+      synchronized (timings)
+      {
+         return new LinkedHashMap<String, Long>(timings);
+      }
+   }
+   
+   @Override
+   public void run(TestResult result)
+   {
+      timings.clear();
+      super.run(result);
+      runFinished(result);
+   }
+   
+   @Override
+   public void runTest(Test test, TestResult result)
+   {
+      long start = System.nanoTime();
+      super.runTest(test, result);
+      recordTiming(test, (System.nanoTime() - start) / 1000000L);
+   }
+   
+   protected void clearTimings()
+   {
+      timings.clear();
+   }
+   
+   protected void recordTiming(Test test, long millis)
+   {
+      if (test instanceof SuiteError) return;
+      timings.put(testName(test), millis);
+   }
+   
+   /**
+    * Called at the end of the run to report and save the timings.
+    *
+    * @param result The TestResult of the run.
+    */
+   protected void runFinished(TestResult result)
+   {
+      if (System.getProperty(TIMING_REPORT_PROPERTY) != null) System.out.print(getTimingReport());
+      
+      if (durationFile == null) return;
+      
+      try
+      {
+         TestShards.updateDurations(durationFile, getTimings());
+      }
+      catch (IOException e)
+      {
+         new SuiteError("saveTestDurations", 
+                        new IOException("Unable to save test durations to " + durationFile + ": " + e)).run(result);
+      }
+   }
+   
+   /**
+    * Get a report of the timings of the last run, slowest test first.
+    *
+    * @return The report.
+    */
+   public String getTimingReport()
+   {
+      List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(getTimings().entrySet());
+      Collections.sort(entries, new Comparator<Map.Entry<String, Long>>()
+      {
+         public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2)
+         {
+            return e2.getValue().compareTo(e1.getValue());
+         }
+      });
+      
+      StringBuilder report = new StringBuilder(reportTitle()).append(":\n");
+      for (Map.Entry<String, Long> entry : entries)
+      {
+         report.append("   ").append(entry.getValue()).append("ms ").append(entry.getKey()).append("\n");
+      }
+      
+      return report.toString();
+   }
+   
+   protected String reportTitle()
+   {
+      return "Test timings";
+   }
+   
+   static String testName(Test test)
+   {
+      if (test instanceof TestSuite) return ((TestSuite)test).getName();
+      return test.toString();
+   }
+   
+   /**
+    * A problem of the suite itself, such as a duration file that can not be 
+    * read or written.  It is run like a test so that it shows up in the 
+    * TestResult along with the real tests.
+    */
+   static class SuiteError extends TestCase
+   {
+      private Throwable error;
+      
+      SuiteError(String name, Throwable error)
+      {
+         super(name);
+         this.error = error;
+      }
+      
+      @Override
+      protected void runTest() throws Throwable
+      {
+         throw this.error;
+      }
+   }
+}
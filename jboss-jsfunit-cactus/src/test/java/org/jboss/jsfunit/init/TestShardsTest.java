@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.init;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Tests the TestShards class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class TestShardsTest extends TestCase
+{
+   private static final List<String> CLASS_NAMES = Arrays.asList(new String[] {"A", "B", "C", "D", "E"});
+   
+   private File dir;
+   private File durationFile;
+   
+   @Override
+   public void setUp() throws IOException
+   {
+      dir = File.createTempFile("jsfunit-shards", "");
+      dir.delete();
+      dir.mkdirs();
+      durationFile = new File(dir, "durations.properties");
+   }
+   
+   @Override
+   public void tearDown()
+   {
+      File[] files = dir.listFiles();
+      for (int i=0; i < files.length; i++) files[i].delete();
+      dir.delete();
+   }
+   
+   public void testPlanWithoutHistoryIsEven()
+   {
+      List<List<String>> plan = TestShards.plan(CLASS_NAMES, 2, new HashMap<String, Long>());
+      assertEquals(2, plan.size());
+      assertEquals(Arrays.asList(new String[] {"A", "C", "E"}), plan.get(0));
+      assertEquals(Arrays.asList(new String[] {"B", "D"}), plan.get(1));
+   }
+   
+   public void testPlanBalancesDurations()
+   {
+      Map<String, Long> durations = new HashMap<String, Long>();
+      durations.put("A", Long.valueOf(100));
+      durations.put("B", Long.valueOf(60));
+      durations.put("C", Long.valueOf(50));
+      durations.put("D", Long.valueOf(10));
+      
+      // E has no history, so it is estimated at the average of 55
+      List<List<String>> plan = TestShards.plan(CLASS_NAMES, 2, durations);
+      assertEquals(Arrays.asList(new String[] {"A", "C"}), plan.get(0));
+      assertEquals(Arrays.asList(new String[] {"B", "D", "E"}), plan.get(1));
+   }
+   
+   public void testEveryClassRunsOnce()
+   {
+      for (int count=1; count <= 7; count++)
+      {
+         Set<String> seen = new HashSet<String>();
+         for (int index=0; index < count; index++)
+         {
+            List<String> shard = TestShards.select(CLASS_NAMES, index, count, new HashMap<String, Long>());
+            for (String className : shard) assertTrue(className, seen.add(className));
+         }
+         assertEquals(new HashSet<String>(CLASS_NAMES), seen);
+      }
+   }
+   
+   public void testBadShards()
+   {
+      try
+      {
+         TestShards.plan(CLASS_NAMES, 0, new HashMap<String, Long>());
+         fail("Expected IllegalArgumentException");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // OK
+      }
+      
+      try
+      {
+         TestShards.select(CLASS_NAMES, 2, 2, new HashMap<String, Long>());
+         fail("Expected IllegalArgumentException");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // OK
+      }
+   }
+   
+   public void testShardDurationFile()
+   {
+      File shardFile = TestShards.shardDurationFile(durationFile, 3);
+      assertEquals(dir.getAbsoluteFile(), shardFile.getParentFile());
+      assertEquals("durations.properties.shard3", shardFile.getName());
+   }
+   
+   public void testLoadDurationsWithNoFile() throws IOException
+   {
+      assertTrue(TestShards.loadDurations(durationFile).isEmpty());
+   }
+   
+   public void testUpdateDurationsKeepsOldClasses() throws IOException
+   {
+      TestShards.updateDurations(durationFile, durations("A", 100, "B", 200));
+      TestShards.updateDurations(durationFile, durations("B", 250, "C", 300));
+      
+      Map<String, Long> loaded = TestShards.loadDurations(durationFile);
+      assertEquals(durations("A", 100, "B", 250, "C", 300), loaded);
+      assertFalse(new File(dir, "durations.properties.tmp").exists());
+   }
+   
+   public void testLoadDurationsMergesShardFiles() throws IOException
+   {
+      TestShards.updateDurations(durationFile, durations("A", 100, "B", 200));
+      
+      File shard0 = TestShards.shardDurationFile(durationFile, 0);
+      File shard1 = TestShards.shardDurationFile(durationFile, 1);
+      TestShards.updateDurations(shard0, durations("B", 10, "C", 20));
+      TestShards.updateDurations(shard1, durations("C", 30, "D", 40));
+      
+      // the newest shard file wins
+      shard0.setLastModified(2000000000000L);
+      shard1.setLastModified(1000000000000L);
+      assertEquals(durations("A", 100, "B", 10, "C", 20, "D", 40), TestShards.loadDurations(durationFile));
+      
+      shard0.setLastModified(1000000000000L);
+      shard1.setLastModified(2000000000000L);
+      assertEquals(durations("A", 100, "B", 10, "C", 30, "D", 40), TestShards.loadDurations(durationFile));
+   }
+   
+   public void testLoadDurationsSkipsBadValuesAndTmpFiles() throws IOException
+   {
+      write(durationFile, "A=100\nB=slow\nC= 300 \n");
+      write(new File(dir, "durations.properties.shard0.tmp"), "A=1\n");
+      
+      assertEquals(durations("A", 100, "C", 300), TestShards.loadDurations(durationFile));
+   }
+   
+   private static Map<String, Long> durations(Object... namesAndMillis)
+   {
+      Map<String, Long> durations = new HashMap<String, Long>();
+      for (int i=0; i < namesAndMillis.length; i += 2)
+      {
+         durations.put((String)namesAndMillis[i], Long.valueOf(((Integer)namesAndMillis[i + 1]).longValue()));
+      }
+      return durations;
+   }
+   
+   private static void write(File file, String text) throws IOException
+   {
+      OutputStream out = new FileOutputStream(file);
+      try
+      {
+         out.write(text.getBytes("ISO-8859-1"));
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+}
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.context;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+
+/**
+ * A read-only snapshot of the attributes of a ServletContext or HttpSession.
+ * It is used as the base of a NoNewEntryMap.
+ *
+ * The attributes are copied the first time the Map is read, not when it is
+ * created.  JSFUnitExternalContext creates one at the end of every request,
+ * but most tests never look at the application or session scope, so most
+ * of them are never copied at all.  Once copied, later changes to the 
+ * ServletContext or HttpSession do not show up in the Map.
+ *
+ * @author agent
+ * @since 2.0
+ */
+abstract class AttributeMap extends AbstractMap
+{
+   private Map snapshot;
+   
+   static Map forServletContext(final ServletContext context)
+   {
+      return new AttributeMap()
+      {
+         protected Enumeration names()
+         {
+            return context.getAttributeNames();
+         }
+         
+         protected Object attribute(String name)
+         {
+            return context.getAttribute(name);
+         }
+      };
+   }
+   
+   /**
+    * If the session is invalidated before the Map is read, the Map will be empty.
+    */
+   static Map forSession(final HttpSession session)
+   {
+      return new AttributeMap()
+      {
+         protected Enumeration names()
+         {
+            return session.getAttributeNames();
+         }
+         
+         protected Object attribute(String name)
+         {
+            return session.getAttribute(name);
+         }
+      };
+   }
+   
+   protected abstract Enumeration names();
+   
+   protected abstract Object attribute(String name);
+   
+   private synchronized Map snapshot()
+   {
+      if (this.snapshot == null)
+      {
+         Map attributes = new HashMap();
+         try
+         {
+            for (Enumeration names = names(); names.hasMoreElements();)
+            {
+               String name = (String)names.nextElement();
+               attributes.put(name, attribute(name));
+            }
+         }
+         catch (IllegalStateException e)
+         {
+            attributes.clear(); // invalidated session
+         }
+         
+         this.snapshot = Collections.unmodifiableMap(attributes);
+      }
+      
+      return this.snapshot;
+   }
+   
+   @Override
+   public boolean containsKey(Object key)
+   {
+      return snapshot().containsKey(key);
+   }
+
+   @Override
+   public Object get(Object key)
+   {
+      return snapshot().get(key);
+   }
+
+   @Override
+   public int size()
+   {
+      return snapshot().size();
+   }
+
+   @Override
+   public Set entrySet()
+   {
+      return snapshot().entrySet();
+   }
+}
@@ -31,6 +31,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -53,6 +54,13 @@ import org.jboss.jsfunit.framework.Environment;
  * objects that the ExternalContext relies upon, a few methods could yield 
  * unexpected results.  These methods are noted in the javadoc.
  *
+ * Request data must be copied before the container recycles the request, so
+ * the request Maps are copied when this object is created.  The application,
+ * session, and init parameter Maps do not depend on the request.  The init
+ * parameters are copied the first time a test asks for them.  The application
+ * and session Maps are snapshots taken the first time a test reads them, 
+ * and changes made by a test are kept in the Map only.
+ *
  * @author Stan Silvert
  * @since 1.0
  */
@@ -78,6 +86,7 @@ public class JSFUnitExternalContext extends ExternalContext
    private String requestPathInfo;
    private String requestServletPath;
    private Object session;
+   private HttpSession httpSession;
    private Map sessionMap;
    private Principal userPrincipal;
    private int requestContentLength;
@@ -90,10 +99,8 @@ public class JSFUnitExternalContext extends ExternalContext
       this.cookieMap = new HashMap(delegate.getRequestCookieMap());
       this.requestContextPath = delegate.getRequestContextPath();
       this.remoteUser = delegate.getRemoteUser();
-      this.initParameterMap = new HashMap(delegate.getInitParameterMap());
       this.context = (ServletContext)delegate.getContext();
       this.authType = delegate.getAuthType();
-      this.applicationMap = new NoNewEntryMap(delegate.getApplicationMap());
       this.requestHeaderMap = new HashMap(delegate.getRequestHeaderMap());
       this.requestHeaderValuesMap = new HashMap(delegate.getRequestHeaderValuesMap());
       this.locale = delegate.getRequestLocale();
@@ -104,13 +111,13 @@ public class JSFUnitExternalContext extends ExternalContext
          this.locales.add(i.next());
       }
       
-      this.requestMap = new NoNewEntryMap(delegate.getRequestMap());
+      this.requestMap = new NoNewEntryMap(new HashMap(delegate.getRequestMap()));
       this.requestParameterMap = new HashMap(delegate.getRequestParameterMap());
       this.requestParameterValuesMap = new HashMap(delegate.getRequestParameterValuesMap());
       this.requestPathInfo = delegate.getRequestPathInfo();
       this.requestServletPath = delegate.getRequestServletPath();
-      this.session = new JSFUnitHttpSession((HttpSession)delegate.getSession(true));
-      this.sessionMap = new NoNewEntryMap(delegate.getSessionMap());
+      this.httpSession = (HttpSession)delegate.getSession(true);
+      this.session = new JSFUnitHttpSession(this.httpSession);
       this.userPrincipal = delegate.getUserPrincipal();
       
       if (Environment.is20Compatible())
@@ -143,12 +150,23 @@ public class JSFUnitExternalContext extends ExternalContext
    @Override
    public String getInitParameter(String string)
    {
-      return (String)this.initParameterMap.get(string);
+      return (String)getInitParameterMap().get(string);
    }
    
    @Override
-   public Map getInitParameterMap()
+   public synchronized Map getInitParameterMap()
    {
+      if (this.initParameterMap == null)
+      {
+         Map initParams = new HashMap();
+         for (Enumeration names = this.context.getInitParameterNames(); names.hasMoreElements();)
+         {
+            String name = (String)names.nextElement();
+            initParams.put(name, this.context.getInitParameter(name));
+         }
+         this.initParameterMap = initParams;
+      }
+      
       return this.initParameterMap;
    }
 
@@ -176,10 +194,18 @@ public class JSFUnitExternalContext extends ExternalContext
     * ServletContext appContext = session.getServletContext();<br/>
     * appContext.setAttribute("documentsByPath", "bar");
     * </code>
+    * <br/>
+    * The Map is a snapshot of the ServletContext attributes, taken the first
+    * time the Map is read.
     */
    @Override
-   public Map getApplicationMap()
+   public synchronized Map getApplicationMap()
    {
+      if (this.applicationMap == null)
+      {
+         this.applicationMap = new NoNewEntryMap(AttributeMap.forServletContext(this.context));
+      }
+      
       return this.applicationMap;
    }
 
@@ -261,10 +287,19 @@ public class JSFUnitExternalContext extends ExternalContext
     * HttpSession session = (HttpSession)externalContext.getSession();<br/>
     * session.setAttribute("documentsByPath", "bar");
     * </code>
+    * <br/>
+    * The Map is a snapshot of the HttpSession attributes, taken the first
+    * time the Map is read.  If the session has been invalidated by then, 
+    * the Map will be empty.
     */
    @Override
-   public Map getSessionMap()
+   public synchronized Map getSessionMap()
    {
+      if (this.sessionMap == null)
+      {
+         this.sessionMap = new NoNewEntryMap(AttributeMap.forSession(this.httpSession));
+      }
+      
       return this.sessionMap;
    }
    
@@ -42,8 +42,12 @@ import javax.faces.context.ResponseStream;
 import javax.faces.context.ResponseWriter;
 import javax.faces.event.PhaseId;
 import javax.faces.render.RenderKit;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpSession;
 import javax.servlet.http.HttpSessionBindingEvent;
 import javax.servlet.http.HttpSessionBindingListener;
+import org.jboss.jsfunit.framework.JSFUnitSessionContext;
+import org.jboss.jsfunit.profile.ELProfile;
 
 /**
  * This class is a wrapper for the "real" FacesContext.
@@ -65,6 +69,10 @@ public class JSFUnitFacesContext extends FacesContext implements HttpSessionBind
    private List<FacesMessage> allMessages = new ArrayList<FacesMessage>();
    private Map<String, List<FacesMessage>> messagesByClientId = new HashMap<String, List<FacesMessage>>();
    
+   // profiles the EL evaluated during the JSF lifecycle
+   private transient ELContext profilingELContext;
+   private transient ELContext profiledELContext;
+   
    public JSFUnitFacesContext(FacesContext delegate)
    {
       if (delegate == null) throw new NullPointerException("delegate can not be null.");
@@ -227,12 +235,37 @@ public class JSFUnitFacesContext extends FacesContext implements HttpSessionBind
       
       ExternalContext extCtx = delegate.getExternalContext();
       this.extContext = new JSFUnitExternalContext(extCtx);
-      extCtx.getSessionMap().put(SESSION_KEY, this);
+      String token = findToken(extCtx);
+      extCtx.getSessionMap().put(sessionKey(token), this);
+      if (token != null) JSFUnitSessionContext.registerSession(token, (HttpSession)extCtx.getSession(true));
 
       // Clean local Thread variable to prevent leak on the HTTP Threads.
       setCurrentInstance(null);
    }
    
+   // the token of the JSFUnitSessionContext that made the request, if any
+   private static String findToken(ExternalContext extCtx)
+   {
+      Object tokenCookie = extCtx.getRequestCookieMap().get(JSFUnitSessionContext.TOKEN_COOKIE);
+      if (!(tokenCookie instanceof Cookie)) return null;
+      return ((Cookie)tokenCookie).getValue();
+   }
+   
+   /**
+    * Get the HttpSession attribute that holds the JSFUnitFacesContext of 
+    * the last JSF request made with a JSFUnitSessionContext.
+    *
+    * @param token The token of the JSFUnitSessionContext, or <code>null</code>
+    *              for requests that did not send a token.
+    *
+    * @return The attribute name.
+    */
+   public static String sessionKey(String token)
+   {
+      if (token == null) return SESSION_KEY;
+      return SESSION_KEY + "." + token;
+   }
+   
    //-------- JSF 2.0 -----------------------------------------
    @Override
    public Map<Object, Object> getAttributes() 
@@ -344,9 +377,18 @@ public class JSFUnitFacesContext extends FacesContext implements HttpSessionBind
       if (isJSFRequestDone())
       {
          elContext.putContext(FacesContext.class, this);
+         return elContext;
+      }
+      
+      if (!ELProfile.enabled()) return elContext;
+      
+      if (elContext != this.profiledELContext)
+      {
+         this.profilingELContext = ELProfile.profile(this, elContext);
+         this.profiledELContext = elContext;
       }
       
-      return elContext;
+      return this.profilingELContext;
    }
    
    /**
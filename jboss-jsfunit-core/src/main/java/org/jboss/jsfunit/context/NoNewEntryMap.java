@@ -22,31 +22,55 @@
 
 package org.jboss.jsfunit.context;
 
-import java.util.Collection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
- * This Map copies all the entries of the wrapped Map into a new Map
- * and disallows new entries while JSFServerSession.getManagedBeanValue() is 
+ * This Map sits on top of a read-only base Map and
+ * disallows new entries while JSFServerSession.getManagedBeanValue() is 
  * running.  The net effect is that any write-through capabilities 
  * (or other special features) of the wrapped Map are disabled.  Also,
  * put() will not create a new entry and will return null if the key does not exist.  
  * 
+ * The base Map is never copied or modified.  Only the keys that are put or
+ * removed through this Map are recorded, in a small overlay that is checked
+ * before the base.  size() and iteration work from the overlay and walk
+ * the base in place, so the cost of a NoNewEntryMap is proportional to 
+ * what a test changes instead of the size of the scope it wraps.
+ * 
  * See http://jira.jboss.org/jira/browse/JSFUNIT-164
  *
  * @author Stan Silvert
  * @since 1.1
  */
-public class NoNewEntryMap implements Map
+public class NoNewEntryMap extends AbstractMap implements Map
 {
-   private Map wrapped;
+   private Map base;
+   
+   // written and removed never hold the same key
+   private Map written = new HashMap(4);
+   private Set removed = new HashSet(4);
+   private boolean cleared = false;
    private boolean isELRunning;
    
-   NoNewEntryMap(Map wrapped)
+   /**
+    * Create a NoNewEntryMap.
+    * 
+    * @param base The base Map.  It is only read, never modified.  The caller
+    *             must hand over a snapshot, not a Map that is recycled with
+    *             the request or that changes along with a live scope.
+    */
+   NoNewEntryMap(Map base)
    {
-      this.wrapped = new HashMap(wrapped);
+      this.base = base;
    }        
 
    /**
@@ -61,45 +85,32 @@ public class NoNewEntryMap implements Map
    }
 
    @Override
-   public void clear()
+   public synchronized void clear()
    {
-      wrapped.clear();
+      written.clear();
+      removed.clear();
+      cleared = true;
    }
 
    @Override
-   public boolean containsKey(Object key)
+   public synchronized boolean containsKey(Object key)
    {
-      return wrapped.containsKey(key);
-   }
-
-   @Override
-   public boolean containsValue(Object value)
-   {
-      return wrapped.containsValue(value);
+      if (written.containsKey(key)) return true;
+      return inBase(key) && base.containsKey(key);
    }
 
    @Override
    public Set entrySet()
    {
-      return wrapped.entrySet();
+      return new EntrySet();
    }
 
    @Override
-   public Object get(Object key)
+   public synchronized Object get(Object key)
    {
-      return wrapped.get(key);
-   }
-
-   @Override
-   public boolean isEmpty()
-   {
-      return wrapped.isEmpty();
-   }
-
-   @Override
-   public Set keySet()
-   {
-      return wrapped.keySet();
+      if (written.containsKey(key)) return written.get(key);
+      if (!inBase(key)) return null;
+      return base.get(key);
    }
 
    /**
@@ -114,38 +125,188 @@ public class NoNewEntryMap implements Map
     *         return the value already held in the Map.
     */
    @Override
-   public Object put(Object key, Object value)
+   public synchronized Object put(Object key, Object value)
    {
-      if (this.isELRunning && (wrapped.get(key) == null))
+      Object oldValue = get(key);
+      if (this.isELRunning && (oldValue == null))
       {
          throw new NewEntryNotAllowedException();
       }
       
-      return wrapped.put(key, value);
+      written.put(key, value);
+      removed.remove(key);
+      return oldValue;
    }
 
    @Override
-   public void putAll(Map m)
+   public synchronized void putAll(Map m)
    {
-      wrapped.putAll(m);
+      for (Iterator i = m.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry entry = (Map.Entry)i.next();
+         put(entry.getKey(), entry.getValue());
+      }
    }
 
    @Override
-   public Object remove(Object key)
+   public synchronized Object remove(Object key)
    {
-      return wrapped.remove(key);
+      Object oldValue = get(key);
+      written.remove(key);
+      if (!cleared) removed.add(key);
+      return oldValue;
    }
 
    @Override
-   public int size()
+   public synchronized int size()
    {
-      return wrapped.size();
+      if (cleared) return written.size();
+      
+      int size = base.size() + written.size();
+      for (Iterator i = removed.iterator(); i.hasNext();)
+      {
+         if (base.containsKey(i.next())) size--;
+      }
+      for (Iterator i = written.keySet().iterator(); i.hasNext();)
+      {
+         if (base.containsKey(i.next())) size--;
+      }
+      
+      return size;
    }
+   
+   private boolean inBase(Object key)
+   {
+      return !cleared && !removed.contains(key);
+   }
+   
+   private class EntrySet extends AbstractSet
+   {
+      @Override
+      public Iterator iterator()
+      {
+         return new EntryIterator();
+      }
 
-   @Override
-   public Collection values()
+      @Override
+      public int size()
+      {
+         return NoNewEntryMap.this.size();
+      }
+   }
+   
+   // overlay entries first, then the base entries that the overlay does not hide
+   private class EntryIterator implements Iterator
+   {
+      private Iterator overlay;
+      private Iterator baseEntries;
+      private Map.Entry next;
+      private Map.Entry current;
+      
+      EntryIterator()
+      {
+         synchronized (NoNewEntryMap.this)
+         {
+            // the overlay is small, and setValue() writes to it
+            List overlayEntries = new ArrayList(written.size());
+            for (Iterator i = written.entrySet().iterator(); i.hasNext();)
+            {
+               overlayEntries.add(new OverlayEntry((Map.Entry)i.next()));
+            }
+            this.overlay = overlayEntries.iterator();
+            if (!cleared) this.baseEntries = base.entrySet().iterator();
+         }
+      }
+      
+      public boolean hasNext()
+      {
+         if (next == null) next = findNext();
+         return next != null;
+      }
+      
+      public Object next()
+      {
+         if (!hasNext()) throw new NoSuchElementException();
+         current = next;
+         next = null;
+         return current;
+      }
+      
+      public void remove()
+      {
+         if (current == null) throw new IllegalStateException();
+         NoNewEntryMap.this.remove(current.getKey());
+         current = null;
+      }
+      
+      private Map.Entry findNext()
+      {
+         if (overlay.hasNext()) return (Map.Entry)overlay.next();
+         if (baseEntries == null) return null;
+         
+         synchronized (NoNewEntryMap.this)
+         {
+            while (baseEntries.hasNext())
+            {
+               Map.Entry entry = (Map.Entry)baseEntries.next();
+               Object key = entry.getKey();
+               if (!cleared && !removed.contains(key) && !written.containsKey(key))
+               {
+                  return new OverlayEntry(entry);
+               }
+            }
+         }
+         
+         return null;
+      }
+   }
+   
+   private class OverlayEntry implements Map.Entry
    {
-      return wrapped.values();
+      private Object key;
+      private Object value;
+      
+      OverlayEntry(Map.Entry entry)
+      {
+         this.key = entry.getKey();
+         this.value = entry.getValue();
+      }
+      
+      public Object getKey()
+      {
+         return this.key;
+      }
+      
+      public Object getValue()
+      {
+         return this.value;
+      }
+      
+      public Object setValue(Object value)
+      {
+         Object oldValue = NoNewEntryMap.this.put(this.key, value);
+         this.value = value;
+         return oldValue;
+      }
+      
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof Map.Entry)) return false;
+         Map.Entry entry = (Map.Entry)obj;
+         return eq(key, entry.getKey()) && eq(value, entry.getValue());
+      }
+      
+      @Override
+      public int hashCode()
+      {
+         return ((key == null) ? 0 : key.hashCode()) ^ ((value == null) ? 0 : value.hashCode());
+      }
+      
+      private boolean eq(Object o1, Object o2)
+      {
+         return (o1 == null) ? (o2 == null) : o1.equals(o2);
+      }
    }
    
    public static class NewEntryNotAllowedException extends RuntimeException
@@ -156,4 +317,4 @@ public class NoNewEntryMap implements Map
         }
    }
 
-}
\ No newline at end of file
+}
@@ -23,8 +23,6 @@
 package org.jboss.jsfunit.framework;
 
 import javax.faces.context.FacesContext;
-import javax.servlet.http.HttpSession;
-import org.jboss.jsfunit.context.JSFUnitFacesContext;
 
 /**
  * This class pulls the FacesContext from the previous request and associates it
@@ -51,12 +49,22 @@ public class FacesContextBridge
     */
    public static FacesContext getCurrentInstance()
    {
-      HttpSession session = WebConversationFactory.getSessionFromThreadLocal();
-      if (session == null) return null;
-      JSFUnitFacesContext facesContext = (JSFUnitFacesContext)session.getAttribute(JSFUnitFacesContext.SESSION_KEY);
-      if (facesContext == null) return null;
-      facesContext.setInstanceToJSFUnitThread();
-      return facesContext;
+      return getCurrentInstance(WebConversationFactory.getContext());
+   }
+   
+   /**
+    * Get the FacesContext from the previous request made with a given
+    * JSFUnitSessionContext.
+    * 
+    * @param context The JSFUnitSessionContext.
+    * 
+    * @return The FacesContext from the previous request, or <code>null</code> if
+    *         no FacesContext has been created.
+    */
+   public static FacesContext getCurrentInstance(JSFUnitSessionContext context)
+   {
+      if (context == null) return null;
+      return context.getFacesContext();
    }
    
 }
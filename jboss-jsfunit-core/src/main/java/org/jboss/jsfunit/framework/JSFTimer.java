@@ -22,8 +22,6 @@
 
 package org.jboss.jsfunit.framework;
 
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import javax.faces.context.FacesContext;
 import javax.faces.event.PhaseId;
@@ -38,6 +36,14 @@ import javax.faces.event.PhaseId;
  *
  * Statistics are reset at the beginning of each JSF request.  So you can use
  * this class during the JSF lifecycle or afterwards in a JSFUnit test.
+ * To look at phase times across many requests, use JSFTimerStatistics.
+ * 
+ * Besides wall-clock time, the JSFTimer records the CPU time and the bytes
+ * allocated by the request thread during each phase.  This tells a phase
+ * that was slow because of real work from one that was waiting on GC or
+ * locks, and allows allocation budgets in tests.  Thread CPU time is only
+ * measured when it is already enabled in the JVM or when the system 
+ * property <code>jsfunit.cputime=true</code> lets JSFUnit enable it.
  * 
  * To use this class, you must enable the JSFTimerPhaseListener in faces-config.xml.
  * 
@@ -50,8 +56,19 @@ public class JSFTimer
    
    public static final String REQUEST_KEY = JSFTimer.class.getName() + ".REQUEST_KEY";
    
-   private Map<PhaseId, Long> beforeMap = new HashMap<PhaseId, Long>(5);
-   private Map<PhaseId, Long> afterMap = new HashMap<PhaseId, Long>(5);
+   private static final int PHASE_COUNT = PhaseId.VALUES.size();
+   
+   // System.nanoTime() stamps indexed by PhaseId ordinal
+   private long[] beforeTimes = new long[PHASE_COUNT];
+   private long[] afterTimes = new long[PHASE_COUNT];
+   private boolean[] beforeRecorded = new boolean[PHASE_COUNT];
+   private boolean[] afterRecorded = new boolean[PHASE_COUNT];
+   
+   // thread CPU time and allocated bytes indexed by PhaseId ordinal
+   private long[] beforeCpuTimes = new long[PHASE_COUNT];
+   private long[] afterCpuTimes = new long[PHASE_COUNT];
+   private long[] beforeAllocatedBytes = new long[PHASE_COUNT];
+   private long[] afterAllocatedBytes = new long[PHASE_COUNT];
    
    // only allow this class to create an instance
    private JSFTimer()
@@ -61,12 +78,20 @@ public class JSFTimer
    // ---------------- package private methods --------------------
    void beforePhase(PhaseId phaseId)
    {
-      beforeMap.put(phaseId, new Long(System.currentTimeMillis()));
+      int ordinal = phaseId.getOrdinal();
+      beforeAllocatedBytes[ordinal] = ThreadMeter.currentThreadAllocatedBytes();
+      beforeCpuTimes[ordinal] = ThreadMeter.currentThreadCpuTime();
+      beforeTimes[ordinal] = System.nanoTime();
+      beforeRecorded[ordinal] = true;
    }
    
    void afterPhase(PhaseId phaseId)
    {
-      afterMap.put(phaseId, new Long(System.currentTimeMillis()));
+      int ordinal = phaseId.getOrdinal();
+      afterTimes[ordinal] = System.nanoTime();
+      afterCpuTimes[ordinal] = ThreadMeter.currentThreadCpuTime();
+      afterAllocatedBytes[ordinal] = ThreadMeter.currentThreadAllocatedBytes();
+      afterRecorded[ordinal] = true;
    }
    // -------------------------------------------------------------
    
@@ -112,24 +137,40 @@ public class JSFTimer
     */
    public long getTotalTime()
    {
-      long firstTimeStamp = Long.MAX_VALUE;
-      for (Iterator<Long> i = beforeMap.values().iterator(); i.hasNext();)
-      {
-         long time = i.next().longValue();
-         if (time < firstTimeStamp) firstTimeStamp = time;
-      }
+      long nanos = getTotalTimeNanos();
+      if (nanos == -1L) return -1L;
+      return nanos / 1000000L;
+   }
+   
+   /**
+    * Returns the total time spent in the JSF lifecycle.
+    *
+    * @return The total time in nanoseconds.  Returns -1 if no phase has been completed.
+    */
+   public long getTotalTimeNanos()
+   {
+      boolean foundBefore = false;
+      boolean foundAfter = false;
+      long firstTimeStamp = 0L;
+      long lastTimeStamp = 0L;
       
-      long lastTimeStamp = Long.MIN_VALUE;
-      for (Iterator<Long> i = afterMap.values().iterator(); i.hasNext();)
+      // nanoTime() values can only be compared by subtraction
+      for (int i=0; i < PHASE_COUNT; i++)
       {
-         long time = i.next().longValue();
-         if (time > lastTimeStamp) lastTimeStamp = time;
+         if (beforeRecorded[i] && (!foundBefore || (beforeTimes[i] - firstTimeStamp < 0)))
+         {
+            firstTimeStamp = beforeTimes[i];
+            foundBefore = true;
+         }
+         
+         if (afterRecorded[i] && (!foundAfter || (afterTimes[i] - lastTimeStamp > 0)))
+         {
+            lastTimeStamp = afterTimes[i];
+            foundAfter = true;
+         }
       }
       
-      if ((firstTimeStamp == Long.MAX_VALUE) || (lastTimeStamp == Long.MIN_VALUE))
-      {
-         return -1L;
-      }
+      if (!foundBefore || !foundAfter) return -1L;
       
       return lastTimeStamp - firstTimeStamp;
    }
@@ -144,18 +185,81 @@ public class JSFTimer
     * @throws IllegalArgumentException if the phaseId is ANY_PHASE.
     */
    public long getPhaseTime(PhaseId phaseId)
+   {
+      return getPhaseTimeNanos(phaseId) / 1000000L;
+   }
+   
+   /**
+    * Returns the amount of time spent during a JSF phase.
+    *
+    * @param phaseId The PhaseId.
+    *
+    * @return The time in nanoseconds, or zero if the phase has not run.
+    *
+    * @throws IllegalArgumentException if the phaseId is ANY_PHASE.
+    */
+   public long getPhaseTimeNanos(PhaseId phaseId)
    {
       if (phaseId == PhaseId.ANY_PHASE) 
       {
          throw new IllegalArgumentException("PhaseId.ANY_PHASE is not valid.");
       }
       
-      Long beforeTime = beforeMap.get(phaseId);
-      Long afterTime = afterMap.get(phaseId);
+      int ordinal = phaseId.getOrdinal();
+      if (!beforeRecorded[ordinal] || !afterRecorded[ordinal]) return 0L;
+      
+      return afterTimes[ordinal] - beforeTimes[ordinal];
+   }
+   
+   /**
+    * Returns the CPU time used by the request thread during a JSF phase.
+    *
+    * @param phaseId The PhaseId.
+    *
+    * @return The CPU time in nanoseconds, zero if the phase has not run, or 
+    *         -1 if thread CPU time is not supported or not enabled.
+    *
+    * @throws IllegalArgumentException if the phaseId is ANY_PHASE.
+    */
+   public long getPhaseCpuTime(PhaseId phaseId)
+   {
+      if (!ThreadMeter.isCpuTimeSupported()) return -1L;
+      
+      // measurement may have been switched off during the phase
+      int ordinal = phaseId.getOrdinal();
+      if ((beforeCpuTimes[ordinal] < 0) || (afterCpuTimes[ordinal] < 0)) return -1L;
+      
+      return phaseDelta(phaseId, beforeCpuTimes, afterCpuTimes);
+   }
+   
+   /**
+    * Returns the number of bytes allocated by the request thread during a 
+    * JSF phase.
+    *
+    * @param phaseId The PhaseId.
+    *
+    * @return The number of bytes, zero if the phase has not run, or 
+    *         -1 if the JVM can not measure thread allocation.
+    *
+    * @throws IllegalArgumentException if the phaseId is ANY_PHASE.
+    */
+   public long getPhaseAllocatedBytes(PhaseId phaseId)
+   {
+      if (!ThreadMeter.isAllocatedBytesSupported()) return -1L;
+      return phaseDelta(phaseId, beforeAllocatedBytes, afterAllocatedBytes);
+   }
+   
+   private long phaseDelta(PhaseId phaseId, long[] before, long[] after)
+   {
+      if (phaseId == PhaseId.ANY_PHASE) 
+      {
+         throw new IllegalArgumentException("PhaseId.ANY_PHASE is not valid.");
+      }
       
-      if ((beforeTime == null) || (afterTime == null)) return 0L;
+      int ordinal = phaseId.getOrdinal();
+      if (!beforeRecorded[ordinal] || !afterRecorded[ordinal]) return 0L;
       
-      return afterTime.longValue() - beforeTime.longValue();
+      return after[ordinal] - before[ordinal];
    }
    
 }
@@ -22,12 +22,15 @@
 
 package org.jboss.jsfunit.framework;
 
+import javax.faces.component.UIViewRoot;
 import javax.faces.event.PhaseEvent;
 import javax.faces.event.PhaseId;
 import javax.faces.event.PhaseListener;
 
 /**
  * This PhaseListener provides time stamps for each phase of the JSF lifecycle.
+ * It also adds each phase time to the JSFTimerStatistics, and makes the
+ * JSFTimer available to the LatencyReport of the client.
  * To use this class, you must enable it in faces-config.xml.
  *
  * @author Stan Silvert
@@ -46,11 +49,35 @@ public class JSFTimerPhaseListener implements PhaseListener
       PhaseId phaseId = phaseEvent.getPhaseId();
       JSFTimer timer = JSFTimer.getTimer();
       timer.beforePhase(phaseId);
+      
+      if (phaseId == PhaseId.RESTORE_VIEW) ServerTiming.lifecycleStarted(phaseEvent.getFacesContext(), timer);
    }
 
    public void afterPhase(PhaseEvent phaseEvent)
    {
-      JSFTimer.getTimer().afterPhase(phaseEvent.getPhaseId());
+      PhaseId phaseId = phaseEvent.getPhaseId();
+      JSFTimer timer = JSFTimer.getTimer();
+      timer.afterPhase(phaseId);
+      
+      UIViewRoot viewRoot = phaseEvent.getFacesContext().getViewRoot();
+      if ((viewRoot == null) || (viewRoot.getViewId() == null)) return;
+      
+      JSFTimerStatistics statistics = JSFTimerStatistics.getStatistics();
+      String viewID = viewRoot.getViewId();
+      statistics.record(viewID, phaseId, timer.getPhaseTimeNanos(phaseId));
+      
+      if (isLastPhase(phaseEvent))
+      {
+         statistics.record(viewID, PhaseId.ANY_PHASE, timer.getTotalTimeNanos());
+      }
+   }
+   
+   // Redirects, downloads and other responses completed early end the 
+   // lifecycle before RENDER_RESPONSE.  They still count as a request.
+   private static boolean isLastPhase(PhaseEvent phaseEvent)
+   {
+      if (phaseEvent.getPhaseId() == PhaseId.RENDER_RESPONSE) return true;
+      return phaseEvent.getFacesContext().getResponseComplete();
    }
    
 }
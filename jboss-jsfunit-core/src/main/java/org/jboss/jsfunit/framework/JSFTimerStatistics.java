@@ -0,0 +1,170 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.framework;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.faces.event.PhaseId;
+
+/**
+ * The JSFTimerStatistics collects phase times from every JSF request
+ * handled by the JSFTimerPhaseListener.  Unlike the JSFTimer, which only 
+ * holds the last request, this keeps a LatencyHistogram for each view and 
+ * phase for as long as the application is running.
+ *
+ * A JSFUnit test runs in the same JVM as the application, so the test 
+ * thread can read the statistics directly:
+ * <code><pre>
+ * LatencyHistogram render = JSFTimerStatistics.getStatistics()
+ *                                             .getHistogram("/index.xhtml", PhaseId.RENDER_RESPONSE);
+ * assertTrue(render.getP99() &lt; 50000000L);
+ * </pre></code>
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.framework.JSFTimerPhaseListener
+ */
+public class JSFTimerStatistics
+{
+   private static final int PHASE_COUNT = PhaseId.VALUES.size();
+   
+   private static final JSFTimerStatistics instance = new JSFTimerStatistics();
+   
+   // key = view ID; value = one histogram per PhaseId ordinal
+   private Map<String, LatencyHistogram[]> histogramsByView = new HashMap<String, LatencyHistogram[]>();
+   
+   // only allow this class to create an instance
+   private JSFTimerStatistics()
+   {
+   }
+   
+   /**
+    * Get a reference to the JSFTimerStatistics.
+    *
+    * @return The JSFTimerStatistics.
+    */
+   public static JSFTimerStatistics getStatistics()
+   {
+      return instance;
+   }
+   
+   // ---------------- package private methods --------------------
+   void record(String viewID, PhaseId phaseId, long nanos)
+   {
+      histograms(viewID)[phaseId.getOrdinal()].record(nanos);
+   }
+   
+   private synchronized LatencyHistogram[] histograms(String viewID)
+   {
+      LatencyHistogram[] histograms = histogramsByView.get(viewID);
+      if (histograms == null)
+      {
+         histograms = new LatencyHistogram[PHASE_COUNT];
+         for (int i=0; i < PHASE_COUNT; i++) histograms[i] = new LatencyHistogram();
+         histogramsByView.put(viewID, histograms);
+      }
+      
+      return histograms;
+   }
+   // -------------------------------------------------------------
+   
+   /**
+    * Get the IDs of all views that have statistics.
+    *
+    * @return The view IDs in sorted order.
+    */
+   public synchronized Set<String> getViewIDs()
+   {
+      return new TreeSet<String>(histogramsByView.keySet());
+   }
+   
+   /**
+    * Get the phase times of one view.
+    *
+    * @param viewID The view ID, such as "/index.xhtml".
+    * @param phaseId The PhaseId, or ANY_PHASE for the whole JSF lifecycle.
+    *
+    * @return A copy of the histogram.  It is empty if the view has not
+    *         been requested.
+    */
+   public synchronized LatencyHistogram getHistogram(String viewID, PhaseId phaseId)
+   {
+      LatencyHistogram[] histograms = histogramsByView.get(viewID);
+      if (histograms == null) return new LatencyHistogram();
+      return histograms[phaseId.getOrdinal()].copy();
+   }
+   
+   /**
+    * Get the phase times of all views combined.
+    *
+    * @param phaseId The PhaseId, or ANY_PHASE for the whole JSF lifecycle.
+    *
+    * @return The merged histogram.
+    */
+   public synchronized LatencyHistogram getHistogram(PhaseId phaseId)
+   {
+      LatencyHistogram merged = new LatencyHistogram();
+      for (Iterator<LatencyHistogram[]> i = histogramsByView.values().iterator(); i.hasNext();)
+      {
+         merged.add(i.next()[phaseId.getOrdinal()]);
+      }
+      
+      return merged;
+   }
+   
+   /**
+    * Throw away all statistics.  For example, call this in setUp() to only
+    * look at the requests made by one test.
+    */
+   public synchronized void reset()
+   {
+      histogramsByView.clear();
+   }
+   
+   /**
+    * Report of every view and phase, one line each.
+    */
+   @Override
+   public synchronized String toString()
+   {
+      StringBuilder report = new StringBuilder();
+      for (Iterator<String> views = getViewIDs().iterator(); views.hasNext();)
+      {
+         String viewID = views.next();
+         LatencyHistogram[] histograms = histogramsByView.get(viewID);
+         for (Iterator phases = PhaseId.VALUES.iterator(); phases.hasNext();)
+         {
+            PhaseId phaseId = (PhaseId)phases.next();
+            LatencyHistogram histogram = histograms[phaseId.getOrdinal()];
+            if (histogram.getCount() == 0) continue;
+            report.append(viewID).append(" ").append(phaseId).append(" ")
+                  .append(histogram).append("\n");
+         }
+      }
+      
+      return report.toString();
+   }
+}
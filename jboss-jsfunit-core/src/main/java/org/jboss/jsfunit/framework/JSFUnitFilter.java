@@ -36,6 +36,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import org.jboss.jsfunit.context.JSFUnitFacesContext;
+import org.jboss.jsfunit.jsfsession.HarRecorder;
 
 /**
  * <p>
@@ -76,6 +77,41 @@ import org.jboss.jsfunit.context.JSFUnitFacesContext;
  * &lt;/filter-mapping&gt;	
  * </pre></code>
  * </p> 
+ * <p>
+ * To include the filter chain in the LatencyReport, also map the filter
+ * first for the FacesServlet, declared as shown below.  Requests from a JSFUnitWebConnection carry
+ * an X-JSFUnit-Request-ID header.  For those, the filter only records the
+ * time spent in the filter chain.
+ * </p> 
+ * <p>
+ * If system property jsfunit.servertiming is set, the filter also adds a 
+ * W3C Server-Timing header with the JSF phase times, the state saving time 
+ * and the filter chain time, so they can be seen from any HTTP client.
+ * Phase times need the JSFTimerPhaseListener.  The response body is 
+ * buffered so that the header can still be added.  The value of the 
+ * property can be the buffer limit in bytes.  The default limit is 1MB.  
+ * Larger responses are sent without the header.
+ * </p> 
+ * <p>
+ * A filter that is mapped to the FacesServlet for requests that do not 
+ * come from JSFUnit, such as a browser, must be declared under its own 
+ * name with the init-param timingOnly set to true:
+ * <code><pre>
+ *  &lt;filter&gt;
+ *    &lt;filter-name&gt;JSFUnitTimingFilter&lt;/filter-name&gt;
+ *    &lt;filter-class&gt;org.jboss.jsfunit.framework.JSFUnitFilter&lt;/filter-class&gt;
+ *    &lt;init-param&gt;
+ *      &lt;param-name&gt;timingOnly&lt;/param-name&gt;
+ *      &lt;param-value&gt;true&lt;/param-value&gt;
+ *    &lt;/init-param&gt;
+ *  &lt;/filter&gt;
+ *
+ * &lt;filter-mapping&gt;
+ *   &lt;filter-name&gt;JSFUnitTimingFilter&lt;/filter-name&gt;
+ *   &lt;servlet-name&gt;Faces Servlet&lt;/servlet-name&gt;
+ * &lt;/filter-mapping&gt;
+ * </pre></code>
+ * </p> 
  *
  * @author Stan Silvert
  * @since 1.0
@@ -84,7 +120,19 @@ public class JSFUnitFilter implements Filter
 {
    public static final String REDIRECTOR_REQUEST_PARAMS_KEY = JSFUnitFilter.class.getName() + ".sessionkey";
    
+   public static final String SERVER_TIMING_PROPERTY = "jsfunit.servertiming";
+   
+   public static final String SERVER_TIMING_KEY = JSFUnitFilter.class.getName() + ".servertiming";
+   
+   public static final String TIMING_ONLY_PARAM = "timingOnly";
+   
+   public static final int DEFAULT_SERVER_TIMING_BUFFER = 1024 * 1024;
+   
+   private static final String CACTUS_CONTEXT_URL = "cactus.contextURL";
+   
    private ServletContext servletContext;
+   
+   private boolean timingOnly = false;
 
    private void putWarURLinApplication(HttpServletRequest request)
    {
@@ -98,9 +146,16 @@ public class JSFUnitFilter implements Filter
                         ServletResponse res, 
                         FilterChain filterChain) throws IOException, ServletException
    {
+      HttpServletRequest request = (HttpServletRequest)req;
+      String requestID = request.getHeader(JSFUnitWebConnection.REQUEST_ID_HEADER);
+      if (this.timingOnly || (requestID != null))
+      {
+         timeFilterChain(requestID, request, (HttpServletResponse)res, filterChain);
+         return;
+      }
+      
       JSFUnitFacesContext.cleanUpOldFacesContext();
       
-      HttpServletRequest request = (HttpServletRequest)req;
       HttpServletResponse response = (HttpServletResponse)res;
       putWarURLinApplication(request);
       storeRequestParamsInSession(request);
@@ -108,7 +163,7 @@ public class JSFUnitFilter implements Filter
       try 
       {
         WebConversationFactory.setThreadLocals(request);
-        System.setProperty("cactus.contextURL", WebConversationFactory.getWARURL());
+        setCactusContextURL(WebConversationFactory.getWARURL());
         
         if (isSnoopRequest(request)) 
         {
@@ -121,16 +176,96 @@ public class JSFUnitFilter implements Filter
       finally 
       {
          HttpSession session = ((HttpServletRequest)req).getSession(false);
-         if (session != null)
+         if (session != null) WebConversationFactory.removeSessionContexts(session);
+         
+         try
          {
-            session.removeAttribute(JSFUnitFacesContext.SESSION_KEY);
-            session.removeAttribute(WebClientSpec.SESSION_KEY);
+            WebConversationFactory.releaseWebClients();
+         }
+         finally
+         {
+            WebConversationFactory.removeThreadLocals();
          }
-         
-         WebConversationFactory.removeThreadLocals();
       }
    }
    
+   /**
+    * Check to see if the Server-Timing header is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   public static boolean serverTimingEnabled()
+   {
+      return System.getProperty(SERVER_TIMING_PROPERTY) != null;
+   }
+   
+   private static int serverTimingBufferLimit()
+   {
+      String property = System.getProperty(SERVER_TIMING_PROPERTY);
+      if ((property != null) && (property.trim().length() > 0))
+      {
+         try
+         {
+            return Integer.parseInt(property.trim());
+         }
+         catch (NumberFormatException e)
+         {
+            // ignore - use the default
+         }
+      }
+      
+      return DEFAULT_SERVER_TIMING_BUFFER;
+   }
+   
+   // a request to the application, made by the WebClient of a test if it has a requestID
+   private void timeFilterChain(String requestID, 
+                                HttpServletRequest request, 
+                                HttpServletResponse response, 
+                                FilterChain filterChain) throws IOException, ServletException
+   {
+      ServerTimingResponse timingResponse = null;
+      if (serverTimingEnabled())
+      {
+         timingResponse = new ServerTimingResponse(response, serverTimingBufferLimit());
+         request.setAttribute(SERVER_TIMING_KEY, Boolean.TRUE);
+      }
+      
+      long start = System.nanoTime();
+      ServerTiming serverTiming = null;
+      if (requestID != null)
+      {
+         serverTiming = ServerTiming.filterStarted(requestID, start);
+         request.setAttribute(ServerTiming.REQUEST_KEY, serverTiming);
+      }
+      
+      long end;
+      try
+      {
+         filterChain.doFilter(request, (timingResponse == null) ? response : timingResponse);
+      }
+      finally
+      {
+         end = System.nanoTime();
+         if (serverTiming != null)
+         {
+            serverTiming.filtered(end, (JSFTimer)request.getAttribute(JSFTimer.REQUEST_KEY));
+         }
+      }
+      
+      if (timingResponse != null)
+      {
+         timingResponse.finish(ServerTimingResponse.headerValue(request, end - start));
+      }
+   }
+   
+   // Cactus reads its context URL from a system property.  The value is the
+   // same for every request to this web app, so only write it when it changes.
+   private void setCactusContextURL(String warURL)
+   {
+      if (warURL.equals(System.getProperty(CACTUS_CONTEXT_URL))) return;
+      System.setProperty(CACTUS_CONTEXT_URL, warURL);
+   }
+   
    private void storeRequestParamsInSession(HttpServletRequest request)
    {
       HttpSession session = request.getSession();
@@ -160,11 +295,14 @@ public class JSFUnitFilter implements Filter
    public void init(FilterConfig filterConfig) throws ServletException
    {
       this.servletContext = filterConfig.getServletContext();
+      this.timingOnly = Boolean.valueOf(filterConfig.getInitParameter(TIMING_ONLY_PARAM)).booleanValue();
+      HarRecorder.startWriter();
    }
    
    public void destroy()
    {
       this.servletContext = null;
+      HarRecorder.stopWriter();
    }
    
 }
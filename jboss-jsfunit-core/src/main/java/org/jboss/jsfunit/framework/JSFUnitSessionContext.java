@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.faces.context.FacesContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+
+/**
+ * The JSFUnitSessionContext holds what a JSFUnit session needs to know about 
+ * the request that started the test: the HttpSession shared with the 
+ * WebClient and the URL of the web app.
+ *
+ * JSFUnitFilter creates one for each test request.  WebClientSpec takes it
+ * when it is created, and JSFSession, JSFServerSession, ClientIDs and 
+ * FacesContextBridge use the one they were given.  After a JSFSession is 
+ * created it can be driven from any thread, and several JSFSessions can be 
+ * used from one thread.
+ *
+ * Every context has a token that its WebClient sends in a cookie.  The
+ * FacesContext of each JSF request is kept in the HttpSession under a key
+ * made from that token.  So when several WebClientSpecs are created from 
+ * the context of one test, each gets a context of its own, and they share 
+ * the HttpSession without replacing each other's FacesContext.  The 
+ * HttpSession is only cleared for the first of them.
+ *
+ * A detached JSFUnitSessionContext has no HttpSession of its own.  Its 
+ * WebClient gets a new HttpSession from the container and sends a token 
+ * cookie so that JSFUnit can find that HttpSession after each JSF request.
+ * Detached contexts are used for virtual users that must not share an 
+ * HttpSession.  Call close() when a detached context is no longer needed.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class JSFUnitSessionContext
+{
+   public static final String TOKEN_COOKIE = JSFUnitSessionContext.class.getName() + ".token";
+   
+   // key = token of a detached context; value = the HttpSession the container created for it
+   private static Map<String, WeakReference<HttpSession>> detachedSessions = 
+      new ConcurrentHashMap<String, WeakReference<HttpSession>>();
+   
+   private HttpSession session;
+   private String warURL;
+   private String token;
+   private boolean sessionCleared = false;
+   
+   /**
+    * Create a new JSFUnitSessionContext.
+    *
+    * @param session The HttpSession shared by the test and the WebClient.
+    * @param warURL The base URL of the web app in the form 
+    *               scheme://servername:port/contextpath
+    */
+   public JSFUnitSessionContext(HttpSession session, String warURL)
+   {
+      if (session == null) throw new NullPointerException("HttpSession can not be null");
+      
+      this.session = session;
+      this.warURL = warURL;
+      this.token = UUID.randomUUID().toString();
+   }
+   
+   /**
+    * Create a new JSFUnitSessionContext from the request that kicks off the tests.
+    *
+    * @param req The request that kicks off the tests.
+    */
+   public JSFUnitSessionContext(HttpServletRequest req)
+   {
+      this(req.getSession(), WebConversationFactory.makeWARURL(req));
+   }
+   
+   /**
+    * Create a new detached JSFUnitSessionContext.
+    *
+    * @param warURL The base URL of the web app in the form 
+    *               scheme://servername:port/contextpath
+    */
+   public JSFUnitSessionContext(String warURL)
+   {
+      this.warURL = warURL;
+      this.token = UUID.randomUUID().toString();
+      detachedSessions.put(this.token, new WeakReference<HttpSession>(null));
+   }
+   
+   /**
+    * Called at the end of a JSF request that sent a token cookie.
+    *
+    * @param token The value of the token cookie.
+    * @param session The HttpSession of the request.
+    */
+   public static void registerSession(String token, HttpSession session)
+   {
+      // only tokens of open detached contexts are kept
+      if (detachedSessions.containsKey(token))
+      {
+         detachedSessions.put(token, new WeakReference<HttpSession>(session));
+      }
+   }
+   
+   /**
+    * Get the HttpSession shared by the test and the WebClient.
+    *
+    * @return The HttpSession, or <code>null</code> if this context is 
+    *         detached and no JSF request has been made yet.
+    */
+   public HttpSession getHttpSession()
+   {
+      if (!isDetached()) return this.session;
+      
+      WeakReference<HttpSession> ref = detachedSessions.get(this.token);
+      if (ref == null) return null;
+      return ref.get();
+   }
+   
+   /**
+    * Is this a detached context?
+    *
+    * @return <code>true</code> if the context has no HttpSession of its own.
+    */
+   public boolean isDetached()
+   {
+      return this.session == null;
+   }
+   
+   /**
+    * Get the token sent by the WebClient of this context.
+    *
+    * @return The token.
+    */
+   public String getToken()
+   {
+      return this.token;
+   }
+   
+   /**
+    * Forget the HttpSession of a detached context.  Does nothing for other
+    * contexts.
+    */
+   public void close()
+   {
+      if (isDetached()) detachedSessions.remove(this.token);
+   }
+   
+   /**
+    * Record that the HttpSession of this context has been cleared for a test.
+    *
+    * @return <code>true</code> if it had not been cleared before.
+    */
+   synchronized boolean markSessionCleared()
+   {
+      if (this.sessionCleared) return false;
+      this.sessionCleared = true;
+      return true;
+   }
+   
+   /**
+    * Get the base URL for this web app.  This will return a String in
+    * the form scheme://servername:port/contextpath.
+    *
+    * @return The base URL for this web app.
+    */
+   public String getWARURL()
+   {
+      return this.warURL;
+   }
+   
+   /**
+    * Get an immutable Map of all request params sent to the ServletRedirector 
+    * or ServletTestRunner.
+    * 
+    * @return The Map of params.
+    */
+   public Map getRedirectorRequestParams()
+   {
+      HttpSession session = getHttpSession();
+      if (session == null) return null;
+      return (Map)session.getAttribute(JSFUnitFilter.REDIRECTOR_REQUEST_PARAMS_KEY);
+   }
+   
+   /**
+    * Get the FacesContext from the previous request made with this context.
+    * 
+    * @return The FacesContext from the previous request, or <code>null</code> if
+    *         no FacesContext has been created.
+    */
+   public FacesContext getFacesContext()
+   {
+      HttpSession session = getHttpSession();
+      if (session == null) return null;
+      JSFUnitFacesContext facesContext = (JSFUnitFacesContext)session.getAttribute(JSFUnitFacesContext.sessionKey(this.token));
+      if (facesContext == null) return null;
+      facesContext.setInstanceToJSFUnitThread();
+      return facesContext;
+   }
+}
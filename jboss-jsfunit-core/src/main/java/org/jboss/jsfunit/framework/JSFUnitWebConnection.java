@@ -22,28 +22,55 @@
 
 package org.jboss.jsfunit.framework;
 
+import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.WebConnection;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The JSFUnitWebConnection wraps the HtmlUnit WebConnection.  It allows
  * listeners to register for events before and after any HTTP request on 
  * the client side.
  *
+ * If the StaticResourceCache is enabled, requests for static resources are
+ * answered from the cache when possible.  Listeners are still notified.
+ *
+ * Each request to the web app under test is tagged with an 
+ * X-JSFUnit-Request-ID header.  The server records its timings under that 
+ * ID, and they are combined with the client timings in the LatencyReport.
+ * Requests to other hosts or web apps are not tagged.
+ *
  * @author Stan Silvert
  * @since 1.0
  */
 public class JSFUnitWebConnection implements WebConnection
 {
+   public static final String REQUEST_ID_HEADER = "X-JSFUnit-Request-ID";
+   
+   private static final AtomicLong requestCount = new AtomicLong();
+   
    private WebConnection wrappedConnection;
    
+   private boolean useResourceCache;
+   
+   // selects the representation of a cached resource
+   private String cacheVariant;
+   
    private List<RequestListener> listeners = new ArrayList<RequestListener>();
    
+   private LatencyReport latencyReport = new LatencyReport();
+   
+   // only requests under this URL get a request ID
+   private URL warURL;
+   
    /**
     * Create a new JSFUnitWebConnection
     *
@@ -51,8 +78,24 @@ public class JSFUnitWebConnection implements WebConnection
     *                          the HtmlUnit WebClient
     */
    public JSFUnitWebConnection(WebConnection wrappedConnection)
+   {
+      this(wrappedConnection, null);
+   }
+   
+   /**
+    * Create a new JSFUnitWebConnection
+    *
+    * @param wrappedConnection The wrappedConnection (normally obtained from 
+    *                          the HtmlUnit WebClient
+    * @param browserVersion The BrowserVersion of the WebClient.  Cached 
+    *                       resources are only shared between WebClients
+    *                       with the same User-Agent.  Can be <code>null</code>.
+    */
+   public JSFUnitWebConnection(WebConnection wrappedConnection, BrowserVersion browserVersion)
    {
       this.wrappedConnection = wrappedConnection;
+      this.useResourceCache = StaticResourceCache.enabled();
+      if (browserVersion != null) this.cacheVariant = browserVersion.getUserAgent();
    }
 
    /**
@@ -67,12 +110,29 @@ public class JSFUnitWebConnection implements WebConnection
    @Override
    public WebResponse getResponse(WebRequest webRequest) throws IOException
    {
+      String requestID = null;
+      if (isForWebApp(webRequest.getUrl()))
+      {
+         requestID = Long.toString(requestCount.incrementAndGet());
+         webRequest.setAdditionalHeader(REQUEST_ID_HEADER, requestID);
+      }
+      
       notifyListenersBefore(webRequest);
+      LatencyBreakdown breakdown = new LatencyBreakdown(requestID, webRequest);
       WebResponse response = null;
 
       try
       {
-         response = this.wrappedConnection.getResponse(webRequest);
+         if (this.useResourceCache)
+         {
+            response = StaticResourceCache.getCache().getResponse(webRequest, 
+                                                                  this.wrappedConnection, 
+                                                                  this.cacheVariant);
+         }
+         else
+         {
+            response = this.wrappedConnection.getResponse(webRequest);
+         }
       }
       catch (IOException ioe)
       {
@@ -80,12 +140,83 @@ public class JSFUnitWebConnection implements WebConnection
       }
       finally
       {
+         breakdown.responseReceived(response);
+         this.latencyReport.add(breakdown);
          notifyListenersAfter(response);
       }
 
       return response;
    }
    
+   // ---------------- package private methods --------------------
+   /**
+    * Set the base URL of the web app under test.  Only requests under it are
+    * tagged with a request ID.
+    *
+    * @param warURL The URL in the form scheme://servername:port/contextpath,
+    *               or <code>null</code> to tag no request.
+    */
+   void setWarURL(String warURL)
+   {
+      this.warURL = null;
+      if (warURL == null) return;
+      
+      try
+      {
+         this.warURL = new URL(warURL);
+      }
+      catch (MalformedURLException e)
+      {
+         // ignore - no request is tagged
+      }
+   }
+   
+   WebConnection getWrappedConnection()
+   {
+      return this.wrappedConnection;
+   }
+   
+   /**
+    * Close the RequestListeners that are Closeable, such as a HarRecorder.
+    * This is called when the test is done with the WebClient.
+    */
+   void closeListeners()
+   {
+      for (Iterator<RequestListener> i = this.listeners.iterator(); i.hasNext();)
+      {
+         RequestListener listener = i.next();
+         if (!(listener instanceof Closeable)) continue;
+         
+         try
+         {
+            ((Closeable)listener).close();
+         }
+         catch (IOException e)
+         {
+            // ignore - the other listeners must still be closed
+         }
+      }
+   }
+   // -------------------------------------------------------------
+   
+   private boolean isForWebApp(URL url)
+   {
+      if (this.warURL == null) return false;
+      if (!url.getProtocol().equalsIgnoreCase(this.warURL.getProtocol())) return false;
+      if (!url.getHost().equalsIgnoreCase(this.warURL.getHost())) return false;
+      if (port(url) != port(this.warURL)) return false;
+      
+      String contextPath = this.warURL.getPath();
+      String path = url.getPath();
+      return contextPath.equals("") || path.equals(contextPath) || path.startsWith(contextPath + "/");
+   }
+   
+   private static int port(URL url)
+   {
+      if (url.getPort() == -1) return url.getDefaultPort();
+      return url.getPort();
+   }
+   
    private void notifyListenersBefore(WebRequest webRequest)
    {
       for (Iterator<RequestListener> i = this.listeners.iterator(); i.hasNext();)
@@ -102,6 +233,29 @@ public class JSFUnitWebConnection implements WebConnection
       }
    }
    
+   /**
+    * Get the client and server timings of the latest requests.
+    *
+    * @return The LatencyReport.
+    */
+   public LatencyReport getLatencyReport()
+   {
+      return this.latencyReport;
+   }
+   
+   /**
+    * Tell the LatencyReport that the client is done with a page.  The time 
+    * from the response to now is given to the last page or partial response
+    * requested since the operation started.
+    *
+    * @param operationStartNanos The System.nanoTime() when the client 
+    *                            operation, such as a click, started.
+    */
+   public void clientDone(long operationStartNanos)
+   {
+      this.latencyReport.clientDone(operationStartNanos, System.nanoTime());
+   }
+   
    /**
     * Add a RequestListener to be notified whenever an HTTP request is made
     * to the server.
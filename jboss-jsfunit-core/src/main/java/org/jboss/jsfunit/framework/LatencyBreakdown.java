@@ -0,0 +1,288 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import java.util.Iterator;
+import javax.faces.event.PhaseId;
+
+/**
+ * The end-to-end latency of one request made by a JSFUnitWebConnection,
+ * broken down into:
+ * <ul>
+ * <li>queue - from the client sending the request to the JSFUnitFilter starting the filter chain</li>
+ * <li>filters - the filter chain and servlet, minus the JSF lifecycle</li>
+ * <li>each JSF phase</li>
+ * <li>transfer - from the filter chain returning to the client having the whole response</li>
+ * <li>client - from the response to the end of the JSFClientSession call 
+ *     that made the request, which covers parsing, JavaScript and resources</li>
+ * </ul>
+ *
+ * JSFUnit runs HtmlUnit in the same JVM as the server, so client and server
+ * System.nanoTime() stamps can be compared.  Filter times are only known if
+ * the JSFUnitFilter is also mapped to the FacesServlet.  Phase times are only
+ * known if the JSFTimerPhaseListener is enabled.  Client time is only known 
+ * for the page or partial response requested by a JSFClientSession call.
+ * Times that are not known are -1.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.framework.LatencyReport
+ */
+public class LatencyBreakdown
+{
+   private String requestID;
+   private String method;
+   private String url;
+   
+   private long clientStartNanos;
+   private volatile long responseNanos;
+   private volatile boolean responseReceived = false;
+   private volatile long clientDoneNanos = -1L;
+   private int status;
+   private String contentType;
+   
+   private volatile ServerTiming serverTiming;
+   
+   LatencyBreakdown(String requestID, WebRequest webRequest)
+   {
+      this.requestID = requestID;
+      this.method = webRequest.getHttpMethod().name();
+      this.url = webRequest.getUrl().toExternalForm();
+      this.clientStartNanos = System.nanoTime();
+   }
+   
+   // ---------------- package private methods --------------------
+   void responseReceived(WebResponse webResponse)
+   {
+      if (webResponse != null)
+      {
+         this.status = webResponse.getStatusCode();
+         this.contentType = webResponse.getContentType();
+      }
+      this.responseNanos = System.nanoTime();
+      this.responseReceived = true;
+      
+      // the server is done, so its timings are not kept any longer
+      if (this.requestID != null) this.serverTiming = ServerTiming.take(this.requestID);
+   }
+   
+   void clientDone(long nanos)
+   {
+      this.clientDoneNanos = nanos;
+   }
+   
+   long getClientStartNanos()
+   {
+      return this.clientStartNanos;
+   }
+   
+   boolean isResponseReceived()
+   {
+      return this.responseReceived;
+   }
+   
+   // true if this is a page or partial response, not a resource
+   boolean isDocument()
+   {
+      if (this.contentType == null) return false;
+      return this.contentType.indexOf("html") != -1 || this.contentType.indexOf("xml") != -1;
+   }
+   // -------------------------------------------------------------
+   
+   private ServerTiming getServerTiming()
+   {
+      return this.serverTiming;
+   }
+   
+   private boolean isFiltered()
+   {
+      ServerTiming timing = getServerTiming();
+      return (timing != null) && timing.isFiltered();
+   }
+   
+   /**
+    * Get the ID that was sent with the request in the X-JSFUnit-Request-ID
+    * header.
+    *
+    * @return The request ID, or <code>null</code> if the request was not 
+    *         sent to the web app under test.
+    */
+   public String getRequestID()
+   {
+      return this.requestID;
+   }
+   
+   /**
+    * Get the HTTP method of the request.
+    *
+    * @return The method.
+    */
+   public String getMethod()
+   {
+      return this.method;
+   }
+   
+   /**
+    * Get the URL of the request.
+    *
+    * @return The URL.
+    */
+   public String getURL()
+   {
+      return this.url;
+   }
+   
+   /**
+    * Get the HTTP status of the response.
+    *
+    * @return The status, or zero if there was no response.
+    */
+   public int getStatus()
+   {
+      return this.status;
+   }
+   
+   /**
+    * Get the time from sending the request to the start of the filter chain.
+    *
+    * @return The time in nanoseconds, or -1 if it is not known.
+    */
+   public long getQueueTimeNanos()
+   {
+      if (!isFiltered()) return -1L;
+      return Math.max(0L, getServerTiming().getFilterStartNanos() - this.clientStartNanos);
+   }
+   
+   /**
+    * Get the time spent in the filter chain and the servlet, outside of the 
+    * JSF lifecycle.
+    *
+    * @return The time in nanoseconds, or -1 if it is not known.
+    */
+   public long getFilterTimeNanos()
+   {
+      if (!isFiltered()) return -1L;
+      ServerTiming timing = getServerTiming();
+      long filterTime = timing.getFilterEndNanos() - timing.getFilterStartNanos();
+      return Math.max(0L, filterTime - Math.max(0L, getLifecycleTimeNanos()));
+   }
+   
+   /**
+    * Get the time spent in the JSF lifecycle.
+    *
+    * @return The time in nanoseconds, or -1 if it is not known.
+    */
+   public long getLifecycleTimeNanos()
+   {
+      ServerTiming timing = getServerTiming();
+      if ((timing == null) || (timing.getTimer() == null)) return -1L;
+      return timing.getTimer().getTotalTimeNanos();
+   }
+   
+   /**
+    * Get the time spent in a JSF phase.
+    *
+    * @param phaseId The PhaseId.
+    *
+    * @return The time in nanoseconds, zero if the phase did not run, or 
+    *         -1 if it is not known.
+    *
+    * @throws IllegalArgumentException if the phaseId is ANY_PHASE.
+    */
+   public long getPhaseTimeNanos(PhaseId phaseId)
+   {
+      if (phaseId == PhaseId.ANY_PHASE) 
+      {
+         throw new IllegalArgumentException("PhaseId.ANY_PHASE is not valid.");
+      }
+      
+      ServerTiming timing = getServerTiming();
+      if ((timing == null) || (timing.getTimer() == null)) return -1L;
+      return timing.getTimer().getPhaseTimeNanos(phaseId);
+   }
+   
+   /**
+    * Get the time from the end of the filter chain to the client having the 
+    * whole response.
+    *
+    * @return The time in nanoseconds, or -1 if it is not known.
+    */
+   public long getTransferTimeNanos()
+   {
+      if (!this.responseReceived || !isFiltered()) return -1L;
+      return Math.max(0L, this.responseNanos - getServerTiming().getFilterEndNanos());
+   }
+   
+   /**
+    * Get the time the client spent on the response.
+    *
+    * @return The time in nanoseconds, or -1 if it is not known.
+    */
+   public long getClientTimeNanos()
+   {
+      if (!this.responseReceived || (this.clientDoneNanos == -1L)) return -1L;
+      return this.clientDoneNanos - this.responseNanos;
+   }
+   
+   /**
+    * Get the time from sending the request to the end of the client time,
+    * or to the response if the client time is not known.
+    *
+    * @return The time in nanoseconds, or -1 if the request is not over.
+    */
+   public long getTotalTimeNanos()
+   {
+      if (!this.responseReceived) return -1L;
+      if (this.clientDoneNanos != -1L) return this.clientDoneNanos - this.clientStartNanos;
+      return this.responseNanos - this.clientStartNanos;
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuilder breakdown = new StringBuilder();
+      breakdown.append(method).append(" ").append(url).append(" [").append(requestID).append("]")
+               .append(" status=").append(status)
+               .append(" total=").append(micros(getTotalTimeNanos()))
+               .append(" queue=").append(micros(getQueueTimeNanos()))
+               .append(" filters=").append(micros(getFilterTimeNanos()));
+      for (Iterator i = PhaseId.VALUES.iterator(); i.hasNext();)
+      {
+         PhaseId phaseId = (PhaseId)i.next();
+         if (phaseId == PhaseId.ANY_PHASE) continue;
+         breakdown.append(" ").append(phaseId).append("=").append(micros(getPhaseTimeNanos(phaseId)));
+      }
+      breakdown.append(" transfer=").append(micros(getTransferTimeNanos()))
+               .append(" client=").append(micros(getClientTimeNanos()));
+      return breakdown.toString();
+   }
+   
+   private static String micros(long nanos)
+   {
+      if (nanos == -1L) return "?";
+      return (nanos / 1000L) + "us";
+   }
+}
@@ -0,0 +1,255 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.framework;
+
+/**
+ * A fixed-size histogram of latencies in nanoseconds.  Recording a value 
+ * is a bucket increment with no allocation, so it is cheap enough to run 
+ * on every JSF phase of every request.
+ *
+ * Values are grouped into 16 linear buckets for each power of two, so any
+ * reported percentile is within about 6% of the true value.  The count,
+ * total and maximum are exact.
+ *
+ * Histograms can be merged with add(), so results collected by several 
+ * threads or several test runs can be combined.  All methods are 
+ * thread safe.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class LatencyHistogram
+{
+   private static final int SUB_BUCKET_BITS = 4;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int BUCKET_COUNT = SUB_BUCKETS + ((63 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+   
+   private long[] counts = new long[BUCKET_COUNT];
+   private long count;
+   private long total;
+   private long max;
+   
+   /**
+    * Create a new empty LatencyHistogram.
+    */
+   public LatencyHistogram()
+   {
+   }
+   
+   /**
+    * Record a latency.
+    *
+    * @param nanos The latency in nanoseconds.  Negative values are recorded as zero.
+    */
+   public synchronized void record(long nanos)
+   {
+      if (nanos < 0) nanos = 0;
+      counts[bucketIndex(nanos)]++;
+      count++;
+      total += nanos;
+      if (nanos > max) max = nanos;
+   }
+   
+   /**
+    * Add all the values recorded in another histogram to this one.
+    *
+    * @param other The other histogram.
+    */
+   public void add(LatencyHistogram other)
+   {
+      LatencyHistogram copy = other.copy();
+      synchronized (this)
+      {
+         for (int i=0; i < BUCKET_COUNT; i++) counts[i] += copy.counts[i];
+         count += copy.count;
+         total += copy.total;
+         if (copy.max > max) max = copy.max;
+      }
+   }
+   
+   /**
+    * Get a snapshot of this histogram.
+    *
+    * @return A new histogram with the same values.
+    */
+   public synchronized LatencyHistogram copy()
+   {
+      LatencyHistogram copy = new LatencyHistogram();
+      System.arraycopy(this.counts, 0, copy.counts, 0, BUCKET_COUNT);
+      copy.count = this.count;
+      copy.total = this.total;
+      copy.max = this.max;
+      return copy;
+   }
+   
+   /**
+    * Remove all recorded values.
+    */
+   public synchronized void reset()
+   {
+      for (int i=0; i < BUCKET_COUNT; i++) counts[i] = 0;
+      count = 0;
+      total = 0;
+      max = 0;
+   }
+   
+   /**
+    * Get the number of recorded values.
+    *
+    * @return The count.
+    */
+   public synchronized long getCount()
+   {
+      return this.count;
+   }
+   
+   /**
+    * Get the sum of all recorded values.
+    *
+    * @return The total in nanoseconds.
+    */
+   public synchronized long getTotal()
+   {
+      return this.total;
+   }
+   
+   /**
+    * Get the largest recorded value.
+    *
+    * @return The maximum in nanoseconds, or zero if nothing was recorded.
+    */
+   public synchronized long getMax()
+   {
+      return this.max;
+   }
+   
+   /**
+    * Get the mean of the recorded values.
+    *
+    * @return The mean in nanoseconds, or zero if nothing was recorded.
+    */
+   public synchronized long getMean()
+   {
+      if (count == 0) return 0L;
+      return total / count;
+   }
+   
+   /**
+    * Get the value below which the given percentage of recorded values fall.
+    *
+    * @param percentile The percentile, such as 50.0 or 99.9.
+    *
+    * @return The value in nanoseconds, or zero if nothing was recorded.
+    *
+    * @throws IllegalArgumentException if percentile is not between 0 and 100
+    */
+   public synchronized long getPercentile(double percentile)
+   {
+      if ((percentile < 0.0) || (percentile > 100.0))
+      {
+         throw new IllegalArgumentException("percentile must be between 0 and 100.");
+      }
+      
+      if (count == 0) return 0L;
+      
+      long rank = (long)Math.ceil((percentile / 100.0) * count);
+      if (rank < 1) rank = 1;
+      
+      long seen = 0;
+      for (int i=0; i < BUCKET_COUNT; i++)
+      {
+         seen += counts[i];
+         if (seen >= rank) return Math.min(bucketUpperBound(i), max);
+      }
+      
+      return max;
+   }
+   
+   /**
+    * Get the median.
+    *
+    * @return The 50th percentile in nanoseconds.
+    */
+   public long getP50()
+   {
+      return getPercentile(50.0);
+   }
+   
+   /**
+    * Get the 90th percentile.
+    *
+    * @return The 90th percentile in nanoseconds.
+    */
+   public long getP90()
+   {
+      return getPercentile(90.0);
+   }
+   
+   /**
+    * Get the 99th percentile.
+    *
+    * @return The 99th percentile in nanoseconds.
+    */
+   public long getP99()
+   {
+      return getPercentile(99.0);
+   }
+   
+   private static int bucketIndex(long nanos)
+   {
+      if (nanos < SUB_BUCKETS) return (int)nanos;
+      
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      int subBucket = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return SUB_BUCKETS + ((exponent - SUB_BUCKET_BITS) * SUB_BUCKETS) + subBucket;
+   }
+   
+   private static long bucketUpperBound(int index)
+   {
+      if (index < SUB_BUCKETS) return index;
+      
+      int exponent = ((index - SUB_BUCKETS) / SUB_BUCKETS) + SUB_BUCKET_BITS;
+      int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+      long width = 1L << (exponent - SUB_BUCKET_BITS);
+      long lowerBound = (1L << exponent) + (subBucket * width);
+      return lowerBound + width - 1;
+   }
+   
+   /**
+    * Summary of the histogram with values in milliseconds.
+    */
+   @Override
+   public synchronized String toString()
+   {
+      return "count=" + count + 
+             " p50=" + toMillis(getP50()) + 
+             "ms p90=" + toMillis(getP90()) + 
+             "ms p99=" + toMillis(getP99()) + 
+             "ms max=" + toMillis(max) + "ms";
+   }
+   
+   private static String toMillis(long nanos)
+   {
+      return String.valueOf(nanos / 1000000.0);
+   }
+}
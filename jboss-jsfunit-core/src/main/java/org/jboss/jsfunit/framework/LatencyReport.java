@@ -0,0 +1,181 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import javax.faces.event.PhaseId;
+
+/**
+ * The LatencyBreakdowns of the latest requests made by a 
+ * JSFUnitWebConnection.  Older breakdowns are dropped.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.framework.LatencyBreakdown
+ */
+public class LatencyReport
+{
+   public static final int MAX_BREAKDOWNS = 1000;
+   
+   private LinkedList<LatencyBreakdown> breakdowns = new LinkedList<LatencyBreakdown>();
+   
+   // ---------------- package private methods --------------------
+   synchronized void add(LatencyBreakdown breakdown)
+   {
+      if (breakdowns.size() == MAX_BREAKDOWNS) breakdowns.removeFirst();
+      breakdowns.add(breakdown);
+   }
+   
+   /**
+    * Give the client time to the last page or partial response requested 
+    * since an operation started.
+    *
+    * @param operationStartNanos The System.nanoTime() when the operation started.
+    * @param doneNanos The System.nanoTime() when the operation was over.
+    */
+   synchronized void clientDone(long operationStartNanos, long doneNanos)
+   {
+      for (ListIterator<LatencyBreakdown> i = breakdowns.listIterator(breakdowns.size()); i.hasPrevious();)
+      {
+         LatencyBreakdown breakdown = i.previous();
+         if (breakdown.getClientStartNanos() - operationStartNanos < 0) return;
+         if (breakdown.isResponseReceived() && breakdown.isDocument())
+         {
+            breakdown.clientDone(doneNanos);
+            return;
+         }
+      }
+   }
+   // -------------------------------------------------------------
+   
+   /**
+    * Get the breakdowns, oldest first.
+    *
+    * @return The breakdowns.
+    */
+   public synchronized List<LatencyBreakdown> getBreakdowns()
+   {
+      return new ArrayList<LatencyBreakdown>(breakdowns);
+   }
+   
+   /**
+    * Get the breakdown of the latest request.
+    *
+    * @return The breakdown, or <code>null</code> if no request was made.
+    */
+   public synchronized LatencyBreakdown getLastBreakdown()
+   {
+      if (breakdowns.isEmpty()) return null;
+      return breakdowns.getLast();
+   }
+   
+   /**
+    * Get the breakdown of the latest page or partial response, skipping 
+    * the resources it loaded.
+    *
+    * @return The breakdown, or <code>null</code> if no page was requested.
+    */
+   public synchronized LatencyBreakdown getLastPageBreakdown()
+   {
+      for (ListIterator<LatencyBreakdown> i = breakdowns.listIterator(breakdowns.size()); i.hasPrevious();)
+      {
+         LatencyBreakdown breakdown = i.previous();
+         if (breakdown.isDocument()) return breakdown;
+      }
+      return null;
+   }
+   
+   /**
+    * Write the breakdowns to a CSV file.  Times are in nanoseconds, and -1
+    * if not known.
+    *
+    * @param file The file.
+    *
+    * @throws IOException if the file can not be written.
+    */
+   public void export(File file) throws IOException
+   {
+      PrintWriter out = new PrintWriter(new FileWriter(file));
+      try
+      {
+         out.print("requestID,method,url,status,totalNanos,queueNanos,filterNanos");
+         for (Iterator i = PhaseId.VALUES.iterator(); i.hasNext();)
+         {
+            PhaseId phaseId = (PhaseId)i.next();
+            if (phaseId != PhaseId.ANY_PHASE) out.print("," + phaseId + "Nanos");
+         }
+         out.println(",transferNanos,clientNanos");
+         
+         for (Iterator<LatencyBreakdown> i = getBreakdowns().iterator(); i.hasNext();)
+         {
+            LatencyBreakdown breakdown = i.next();
+            out.print(csvField(breakdown.getRequestID()) + "," + 
+                      breakdown.getMethod() + "," +
+                      csvField(breakdown.getURL()) + "," +
+                      breakdown.getStatus() + "," +
+                      breakdown.getTotalTimeNanos() + "," +
+                      breakdown.getQueueTimeNanos() + "," +
+                      breakdown.getFilterTimeNanos());
+            for (Iterator phases = PhaseId.VALUES.iterator(); phases.hasNext();)
+            {
+               PhaseId phaseId = (PhaseId)phases.next();
+               if (phaseId != PhaseId.ANY_PHASE) out.print("," + breakdown.getPhaseTimeNanos(phaseId));
+            }
+            out.println("," + breakdown.getTransferTimeNanos() + "," + breakdown.getClientTimeNanos());
+         }
+      }
+      finally
+      {
+         out.close();
+      }
+      
+      if (out.checkError()) throw new IOException("Unable to write " + file);
+   }
+   
+   private static String csvField(String value)
+   {
+      if (value == null) return "";
+      if ((value.indexOf(',') == -1) && (value.indexOf('"') == -1)) return value;
+      return "\"" + value.replace("\"", "\"\"") + "\"";
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuilder report = new StringBuilder("LatencyReport:\n");
+      for (Iterator<LatencyBreakdown> i = getBreakdowns().iterator(); i.hasNext();)
+      {
+         report.append("   ").append(i.next()).append("\n");
+      }
+      return report.toString();
+   }
+}
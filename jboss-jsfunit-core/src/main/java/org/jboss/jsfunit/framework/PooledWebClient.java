@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindowListener;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A WebClient that remembers the request headers and WebWindowListeners
+ * added to it, so that the WebClientPool can remove them before the 
+ * WebClient is used by another test.  WebClient has no public way to list 
+ * them.  The WebWindowListener that WebClient adds for itself is not 
+ * remembered.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class PooledWebClient extends WebClient
+{
+   // WebClient adds a WebWindowListener of its own while it is constructed
+   private boolean constructed;
+   
+   private Set<String> requestHeaderNames;
+   private List<WebWindowListener> webWindowListeners;
+   
+   PooledWebClient(BrowserVersion browserVersion)
+   {
+      super(browserVersion);
+      constructed();
+   }
+   
+   PooledWebClient(BrowserVersion browserVersion, String proxyHost, int proxyPort)
+   {
+      super(browserVersion, proxyHost, proxyPort);
+      constructed();
+   }
+   
+   private void constructed()
+   {
+      this.requestHeaderNames = new HashSet<String>();
+      this.webWindowListeners = new ArrayList<WebWindowListener>();
+      this.constructed = true;
+   }
+   
+   @Override
+   public void addRequestHeader(String name, String value)
+   {
+      super.addRequestHeader(name, value);
+      if (constructed) requestHeaderNames.add(name);
+   }
+   
+   @Override
+   public void addWebWindowListener(WebWindowListener listener)
+   {
+      super.addWebWindowListener(listener);
+      if (constructed) webWindowListeners.add(listener);
+   }
+   
+   @Override
+   public void removeWebWindowListener(WebWindowListener listener)
+   {
+      super.removeWebWindowListener(listener);
+      if (constructed) webWindowListeners.remove(listener);
+   }
+   
+   /**
+    * Remove the request headers added since the WebClient was created.
+    */
+   void removeAddedRequestHeaders()
+   {
+      for (Iterator<String> i = requestHeaderNames.iterator(); i.hasNext();)
+      {
+         super.removeRequestHeader(i.next());
+      }
+      
+      requestHeaderNames.clear();
+   }
+   
+   /**
+    * Remove the WebWindowListeners added since the WebClient was created.
+    */
+   void removeAddedWebWindowListeners()
+   {
+      for (Iterator<WebWindowListener> i = webWindowListeners.iterator(); i.hasNext();)
+      {
+         super.removeWebWindowListener(i.next());
+      }
+      
+      webWindowListeners.clear();
+   }
+}
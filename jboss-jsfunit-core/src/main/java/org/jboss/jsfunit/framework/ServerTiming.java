@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+
+/**
+ * The server side timings of a request made by a JSFUnitWebConnection.  
+ * They are kept under the request ID sent by the JSFUnitWebConnection, so 
+ * that a LatencyBreakdown can find them.
+ *
+ * The JSFUnitFilter records the time spent in the filter chain if it is 
+ * mapped to the FacesServlet.  The JSFTimerPhaseListener records the 
+ * JSFTimer of the request if it is enabled.
+ *
+ * The LatencyBreakdown takes the timings out as soon as its response 
+ * arrives, so only requests in flight are kept here.  The server keeps 
+ * updating the ServerTiming it started through a request attribute.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.framework.LatencyBreakdown
+ */
+class ServerTiming
+{
+   static final String REQUEST_KEY = ServerTiming.class.getName() + ".REQUEST_KEY";
+   
+   // requests in flight, plus requests whose client never takes the timings
+   private static final int MAX_TIMINGS = 256;
+   
+   private static final Map<String, ServerTiming> timings = new LinkedHashMap<String, ServerTiming>()
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, ServerTiming> eldest)
+      {
+         return size() > MAX_TIMINGS;
+      }
+   };
+   
+   private volatile long filterStartNanos;
+   private volatile long filterEndNanos;
+   private volatile boolean filtered = false;
+   
+   private volatile JSFTimer timer;
+   
+   private ServerTiming()
+   {
+   }
+   
+   /**
+    * Start the timings of a request when it enters the filter chain.
+    *
+    * @param requestID The request ID sent by the JSFUnitWebConnection.
+    * @param startNanos The System.nanoTime() when the filter was entered.
+    *
+    * @return The ServerTiming of the request.
+    */
+   static ServerTiming filterStarted(String requestID, long startNanos)
+   {
+      ServerTiming timing = forRequest(requestID);
+      timing.filterStartNanos = startNanos;
+      return timing;
+   }
+   
+   /**
+    * Record the time spent in the filter chain.
+    *
+    * @param endNanos The System.nanoTime() when the filter chain returned.
+    * @param timer The JSFTimer of the request, or <code>null</code> if there
+    *              is none.
+    */
+   void filtered(long endNanos, JSFTimer timer)
+   {
+      if (timer != null) this.timer = timer;
+      this.filterEndNanos = endNanos;
+      this.filtered = true;
+   }
+   
+   /**
+    * Record the JSFTimer of a request, if it was made by a JSFUnitWebConnection.
+    *
+    * @param facesContext The FacesContext of the request.
+    * @param timer The JSFTimer of the request.
+    */
+   static void lifecycleStarted(FacesContext facesContext, JSFTimer timer)
+   {
+      ExternalContext extContext = facesContext.getExternalContext();
+      ServerTiming timing = (ServerTiming)extContext.getRequestMap().get(REQUEST_KEY);
+      if (timing == null)
+      {
+         Object requestID = extContext.getRequestHeaderMap().get(JSFUnitWebConnection.REQUEST_ID_HEADER);
+         if (requestID == null) return;
+         timing = forRequest(requestID.toString());
+      }
+      
+      timing.timer = timer;
+   }
+   
+   /**
+    * Take the timings of a request.  They are removed, so this can only be
+    * done once per request.
+    *
+    * @param requestID The request ID sent by the JSFUnitWebConnection.
+    *
+    * @return The ServerTiming, or <code>null</code> if nothing was recorded
+    *         on the server.
+    */
+   static ServerTiming take(String requestID)
+   {
+      synchronized (timings)
+      {
+         return timings.remove(requestID);
+      }
+   }
+   
+   private static ServerTiming forRequest(String requestID)
+   {
+      synchronized (timings)
+      {
+         ServerTiming timing = timings.get(requestID);
+         if (timing == null)
+         {
+            timing = new ServerTiming();
+            timings.put(requestID, timing);
+         }
+         return timing;
+      }
+   }
+   
+   boolean isFiltered()
+   {
+      return this.filtered;
+   }
+   
+   long getFilterStartNanos()
+   {
+      return this.filterStartNanos;
+   }
+   
+   long getFilterEndNanos()
+   {
+      return this.filterEndNanos;
+   }
+   
+   JSFTimer getTimer()
+   {
+      return this.timer;
+   }
+}
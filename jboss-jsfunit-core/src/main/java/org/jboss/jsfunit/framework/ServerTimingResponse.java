@@ -0,0 +1,261 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import javax.faces.event.PhaseId;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.jboss.jsfunit.profile.ViewStateProfile;
+
+/**
+ * Response that holds back the body until the filter chain is over, so 
+ * that the JSFUnitFilter can still add a Server-Timing header.  The Servlet 
+ * API has no trailers, so this is the only way to send timings that are 
+ * known after the response is written.
+ *
+ * If the body grows over the buffer limit, or the response is committed by
+ * sendError() or sendRedirect(), the body is passed through and the 
+ * response goes out without the header.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ServerTimingResponse extends HttpServletResponseWrapper
+{
+   static final String HEADER = "Server-Timing";
+   
+   // Server-Timing metric names indexed by PhaseId ordinal
+   private static final String[] PHASE_METRICS = {null, "restore-view", "apply-request-values", 
+                                                  "process-validations", "update-model-values",
+                                                  "invoke-application", "render-response"};
+   
+   private int bufferLimit;
+   private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+   private boolean passThrough = false;
+   
+   private ServletOutputStream outputStream;
+   private PrintWriter writer;
+   
+   ServerTimingResponse(HttpServletResponse response, int bufferLimit)
+   {
+      super(response);
+      this.bufferLimit = bufferLimit;
+   }
+   
+   /**
+    * Build the Server-Timing header for a request.
+    *
+    * @param request The request.
+    * @param filterChainNanos The time spent in the filter chain.
+    *
+    * @return The header value.
+    */
+   static String headerValue(HttpServletRequest request, long filterChainNanos)
+   {
+      StringBuilder value = new StringBuilder();
+      
+      JSFTimer timer = (JSFTimer)request.getAttribute(JSFTimer.REQUEST_KEY);
+      if (timer != null)
+      {
+         for (int i=1; i < PHASE_METRICS.length; i++)
+         {
+            long nanos = timer.getPhaseTimeNanos((PhaseId)PhaseId.VALUES.get(i));
+            if (nanos > 0) appendMetric(value, PHASE_METRICS[i], nanos);
+         }
+      }
+      
+      ViewStateProfile viewState = (ViewStateProfile)request.getAttribute(ViewStateProfile.REQUEST_KEY);
+      if (viewState != null)
+      {
+         if (viewState.getRestoreCount() > 0) appendMetric(value, "state-restoring", viewState.getRestoreTimeNanos());
+         if (viewState.getSaveCount() > 0) appendMetric(value, "state-saving", viewState.getSaveTimeNanos());
+      }
+      
+      appendMetric(value, "filter-chain", filterChainNanos);
+      return value.toString();
+   }
+   
+   private static void appendMetric(StringBuilder value, String name, long nanos)
+   {
+      if (value.length() > 0) value.append(", ");
+      
+      long micros = nanos / 1000L;
+      String fraction = Long.toString(1000L + (micros % 1000L)).substring(1);
+      value.append(name).append(";dur=").append(micros / 1000L).append(".").append(fraction);
+   }
+   
+   /**
+    * Add the Server-Timing header and send the body.
+    *
+    * @param serverTiming The header value.
+    *
+    * @throws IOException if the body can not be sent.
+    */
+   void finish(String serverTiming) throws IOException
+   {
+      if (this.writer != null) this.writer.flush();
+      if (this.passThrough) return;
+      
+      HttpServletResponse response = (HttpServletResponse)getResponse();
+      response.setHeader(HEADER, serverTiming);
+      response.setContentLength(this.buffer.size());
+      this.buffer.writeTo(response.getOutputStream());
+      this.passThrough = true;
+   }
+   
+   private void passThrough() throws IOException
+   {
+      if (this.passThrough) return;
+      this.passThrough = true;
+      this.buffer.writeTo(getResponse().getOutputStream());
+      this.buffer = new ByteArrayOutputStream();
+   }
+   
+   @Override
+   public ServletOutputStream getOutputStream() throws IOException
+   {
+      if (this.writer != null) throw new IllegalStateException("getWriter() has already been called.");
+      
+      if (this.outputStream == null)
+      {
+         this.outputStream = new ServletOutputStream()
+         {
+            @Override
+            public void write(int b) throws IOException
+            {
+               if (!passThrough && (buffer.size() + 1 > bufferLimit)) passThrough();
+               if (passThrough)
+               {
+                  getResponse().getOutputStream().write(b);
+               }
+               else
+               {
+                  buffer.write(b);
+               }
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+               if (!passThrough && (buffer.size() + len > bufferLimit)) passThrough();
+               if (passThrough)
+               {
+                  getResponse().getOutputStream().write(b, off, len);
+               }
+               else
+               {
+                  buffer.write(b, off, len);
+               }
+            }
+            
+            @Override
+            public void flush() throws IOException
+            {
+               if (passThrough) getResponse().getOutputStream().flush();
+            }
+         };
+      }
+      
+      return this.outputStream;
+   }
+   
+   @Override
+   public PrintWriter getWriter() throws IOException
+   {
+      if (this.writer == null)
+      {
+         if (this.outputStream != null) throw new IllegalStateException("getOutputStream() has already been called.");
+         
+         ServletOutputStream out = getOutputStream();
+         this.outputStream = null;
+         this.writer = new PrintWriter(new OutputStreamWriter(out, getCharacterEncoding()));
+      }
+      
+      return this.writer;
+   }
+   
+   @Override
+   public void setContentLength(int length)
+   {
+      // the length is set when the buffered body is sent
+      if (this.passThrough) super.setContentLength(length);
+   }
+   
+   @Override
+   public void flushBuffer() throws IOException
+   {
+      if (this.writer != null) this.writer.flush();
+      if (this.passThrough) super.flushBuffer();
+   }
+   
+   @Override
+   public boolean isCommitted()
+   {
+      return this.passThrough && super.isCommitted();
+   }
+   
+   @Override
+   public void reset()
+   {
+      super.reset();
+      this.buffer.reset();
+   }
+   
+   @Override
+   public void resetBuffer()
+   {
+      super.resetBuffer();
+      this.buffer.reset();
+   }
+   
+   @Override
+   public void sendError(int status) throws IOException
+   {
+      this.buffer.reset();
+      this.passThrough = true;
+      super.sendError(status);
+   }
+   
+   @Override
+   public void sendError(int status, String message) throws IOException
+   {
+      this.buffer.reset();
+      this.passThrough = true;
+      super.sendError(status, message);
+   }
+   
+   @Override
+   public void sendRedirect(String location) throws IOException
+   {
+      this.buffer.reset();
+      this.passThrough = true;
+      super.sendRedirect(location);
+   }
+}
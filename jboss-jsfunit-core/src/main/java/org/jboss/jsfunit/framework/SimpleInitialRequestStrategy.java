@@ -44,7 +44,7 @@ public class SimpleInitialRequestStrategy implements InitialRequestStrategy
     */
    public Page doInitialRequest(WebClientSpec wcSpec) throws IOException
    {
-      String url = WebConversationFactory.getWARURL() + wcSpec.getInitialPage();
+      String url = wcSpec.getSessionContext().getWARURL() + wcSpec.getInitialPage();
       return wcSpec.getWebClient().getPage(url);
    }
    
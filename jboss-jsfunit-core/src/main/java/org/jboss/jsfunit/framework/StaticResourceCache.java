@@ -0,0 +1,495 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * The StaticResourceCache keeps the responses for JavaScript, CSS, images and
+ * other static resources so that they are not downloaded again by every test.
+ * Each test gets a new WebClient, so without this cache the same
+ * RichFaces/Ajax4jsf scripts are fetched from the server for every test.
+ * 
+ * The cache is shared by every JSFUnitWebConnection in the JVM.  It only
+ * holds successful GET responses for JSF 2 resources (javax.faces.resource),
+ * Ajax4jsf/RichFaces resources, and files with a static extension.
+ * Cache-Control, Expires, ETag and Last-Modified are honoured: fresh
+ * entries are served without a request, and stale entries are revalidated
+ * with If-None-Match/If-Modified-Since.  Least recently used entries are
+ * evicted when the size of the cached bodies goes over the byte budget.
+ *
+ * To enable, set system property jsfunit.resourcecache.  Its value can be
+ * the byte budget.  The default budget is 32MB.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class StaticResourceCache
+{
+   public static final String CACHE_PROPERTY = "jsfunit.resourcecache";
+   
+   public static final long DEFAULT_BUDGET = 32L * 1024L * 1024L;
+   
+   private static final String[] RESOURCE_PATHS = {"/javax.faces.resource/", "/a4j/", "/rfRes/"};
+   
+   private static final String[] STATIC_EXTENSIONS = {".js", ".css", ".png", ".gif", ".jpg", ".jpeg",
+                                                      ".ico", ".svg", ".swf", ".woff", ".ttf", ".htc"};
+   
+   // request headers that select a different representation
+   private static final String[] KEY_HEADERS = {"Accept", "Accept-Language"};
+   
+   private static StaticResourceCache instance;
+   
+   private long budget;
+   private long size = 0;
+   private long hits = 0;
+   private long misses = 0;
+   private long revalidations = 0;
+   private long evictions = 0;
+   
+   // access ordered, so iteration starts with the least recently used entry
+   private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+   
+   // package private for unit tests
+   StaticResourceCache(long budget)
+   {
+      this.budget = budget;
+   }
+   
+   /**
+    * Check to see if the cache is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   public static boolean enabled()
+   {
+      return System.getProperty(CACHE_PROPERTY) != null;
+   }
+   
+   /**
+    * Get a reference to the StaticResourceCache.  The byte budget is read from
+    * the jsfunit.resourcecache system property the first time this is called.
+    *
+    * @return The StaticResourceCache.
+    */
+   public static synchronized StaticResourceCache getCache()
+   {
+      if (instance == null)
+      {
+         long budget = DEFAULT_BUDGET;
+         String property = System.getProperty(CACHE_PROPERTY);
+         if ((property != null) && (property.trim().length() > 0))
+         {
+            try
+            {
+               budget = Long.parseLong(property.trim());
+            }
+            catch (NumberFormatException e)
+            {
+               // ignore - use the default budget
+            }
+         }
+         
+         instance = new StaticResourceCache(budget);
+      }
+      
+      return instance;
+   }
+   
+   // ---------------- package private methods --------------------
+   
+   /**
+    * Get the response from the cache, or from the connection if it is not
+    * cached or has gone stale.
+    *
+    * @param webRequest The WebRequest.
+    * @param connection The connection used if the cache can not answer.
+    * @param variant Anything else that selects the representation, such as 
+    *                the User-Agent.  Can be <code>null</code>.
+    */
+   WebResponse getResponse(WebRequest webRequest, WebConnection connection, String variant) throws IOException
+   {
+      if (!isCacheable(webRequest)) return connection.getResponse(webRequest);
+      
+      String key = makeKey(webRequest, variant);
+      Entry entry = lookup(key);
+      
+      if ((entry != null) && entry.isFresh(System.currentTimeMillis()))
+      {
+         countHit(false);
+         return entry.toWebResponse(webRequest);
+      }
+      
+      if (entry != null)
+      {
+         if (entry.etag != null) webRequest.setAdditionalHeader("If-None-Match", entry.etag);
+         if (entry.lastModified != null) webRequest.setAdditionalHeader("If-Modified-Since", entry.lastModified);
+      }
+      
+      WebResponse response = connection.getResponse(webRequest);
+      long now = System.currentTimeMillis();
+      
+      if ((entry != null) && (response.getStatusCode() == 304))
+      {
+         entry.revalidated(response, now);
+         countHit(true);
+         return entry.toWebResponse(webRequest);
+      }
+      
+      countMiss();
+      store(key, response, now);
+      return response;
+   }
+   
+   static boolean isCacheable(WebRequest webRequest)
+   {
+      if (webRequest.getHttpMethod() != HttpMethod.GET) return false;
+      
+      String path = webRequest.getUrl().getPath();
+      if (path == null) return false;
+      
+      for (int i=0; i < RESOURCE_PATHS.length; i++)
+      {
+         if (path.indexOf(RESOURCE_PATHS[i]) != -1) return true;
+      }
+      
+      // URL rewriting puts ;jsessionid=... after the extension
+      int pathParams = path.indexOf(';');
+      if (pathParams != -1) path = path.substring(0, pathParams);
+      
+      String lowerPath = path.toLowerCase(Locale.ENGLISH);
+      for (int i=0; i < STATIC_EXTENSIONS.length; i++)
+      {
+         if (lowerPath.endsWith(STATIC_EXTENSIONS[i])) return true;
+      }
+      
+      return false;
+   }
+   
+   // -------------------------------------------------------------
+   
+   private static String makeKey(WebRequest webRequest, String variant)
+   {
+      // the session ID does not change the resource
+      String url = webRequest.getUrl().toExternalForm().replaceAll(";jsessionid=[^?#]*", "");
+      
+      StringBuilder key = new StringBuilder(url);
+      Map<String, String> headers = webRequest.getAdditionalHeaders();
+      for (int i=0; i < KEY_HEADERS.length; i++)
+      {
+         key.append('\n').append(requestHeaderValue(headers, KEY_HEADERS[i]));
+      }
+      
+      if (variant != null) key.append('\n').append(variant);
+      
+      return key.toString();
+   }
+   
+   private static String requestHeaderValue(Map<String, String> headers, String name)
+   {
+      for (Iterator<Map.Entry<String, String>> i = headers.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, String> header = i.next();
+         if (name.equalsIgnoreCase(header.getKey())) return header.getValue();
+      }
+      
+      return "";
+   }
+   
+   private synchronized Entry lookup(String key)
+   {
+      return entries.get(key);
+   }
+   
+   private synchronized void countHit(boolean revalidated)
+   {
+      hits++;
+      if (revalidated) revalidations++;
+   }
+   
+   private synchronized void countMiss()
+   {
+      misses++;
+   }
+   
+   private void store(String key, WebResponse response, long now)
+   {
+      if (response.getStatusCode() != 200) return;
+      
+      String cacheControl = responseHeaderValue(response, "Cache-Control");
+      if (hasDirective(cacheControl, "no-store") || hasDirective(cacheControl, "private")) return;
+      if ("*".equals(responseHeaderValue(response, "Vary"))) return;
+      
+      Entry entry = new Entry(response, now);
+      if ((entry.freshUntil <= now) && (entry.etag == null) && (entry.lastModified == null)) return;
+      if (entry.size > budget) return;
+      
+      synchronized (this)
+      {
+         Entry old = entries.put(key, entry);
+         if (old != null) size -= old.size;
+         size += entry.size;
+         
+         for (Iterator<Entry> i = entries.values().iterator(); (size > budget) && i.hasNext();)
+         {
+            Entry eldest = i.next();
+            i.remove();
+            size -= eldest.size;
+            evictions++;
+         }
+      }
+   }
+   
+   private static String responseHeaderValue(WebResponse response, String name)
+   {
+      String value = response.getResponseHeaderValue(name);
+      if (value == null) return "";
+      return value;
+   }
+   
+   private static boolean hasDirective(String cacheControl, String directive)
+   {
+      return cacheControl.toLowerCase(Locale.ENGLISH).indexOf(directive) != -1;
+   }
+   
+   // returns -1 if there is no max-age directive
+   private static long maxAgeSeconds(String cacheControl)
+   {
+      String lowerCacheControl = cacheControl.toLowerCase(Locale.ENGLISH);
+      int start = lowerCacheControl.indexOf("max-age=");
+      if (start == -1) return -1;
+      
+      start += "max-age=".length();
+      int end = start;
+      while ((end < lowerCacheControl.length()) && Character.isDigit(lowerCacheControl.charAt(end))) end++;
+      
+      try
+      {
+         return Long.parseLong(lowerCacheControl.substring(start, end));
+      }
+      catch (NumberFormatException e)
+      {
+         return -1;
+      }
+   }
+   
+   // returns -1 if the date is missing or can not be parsed
+   private static long parseDate(String date)
+   {
+      if (date.length() == 0) return -1;
+      
+      SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+      format.setTimeZone(TimeZone.getTimeZone("GMT"));
+      try
+      {
+         return format.parse(date).getTime();
+      }
+      catch (ParseException e)
+      {
+         return -1;
+      }
+   }
+   
+   /**
+    * Get the number of requests answered by the cache, including those that
+    * were revalidated with the server.
+    *
+    * @return The number of hits.
+    */
+   public synchronized long getHitCount()
+   {
+      return this.hits;
+   }
+   
+   /**
+    * Get the number of cacheable requests that went to the server and 
+    * returned a new response.
+    *
+    * @return The number of misses.
+    */
+   public synchronized long getMissCount()
+   {
+      return this.misses;
+   }
+   
+   /**
+    * Get the number of hits that needed a conditional request to the server.
+    *
+    * @return The number of hits answered with 304 Not Modified.
+    */
+   public synchronized long getRevalidationCount()
+   {
+      return this.revalidations;
+   }
+   
+   /**
+    * Get the number of entries evicted to stay under the byte budget.
+    *
+    * @return The number of evictions.
+    */
+   public synchronized long getEvictionCount()
+   {
+      return this.evictions;
+   }
+   
+   /**
+    * Get the number of cached responses.
+    *
+    * @return The number of entries.
+    */
+   public synchronized int getEntryCount()
+   {
+      return this.entries.size();
+   }
+   
+   /**
+    * Get the number of bytes held by the cache.
+    *
+    * @return The size of the cached bodies and headers.
+    */
+   public synchronized long getSize()
+   {
+      return this.size;
+   }
+   
+   /**
+    * Get the byte budget of the cache.
+    *
+    * @return The byte budget.
+    */
+   public long getBudget()
+   {
+      return this.budget;
+   }
+   
+   /**
+    * Remove all entries and reset the counters.
+    */
+   public synchronized void clear()
+   {
+      this.entries.clear();
+      this.size = 0;
+      this.hits = 0;
+      this.misses = 0;
+      this.revalidations = 0;
+      this.evictions = 0;
+   }
+   
+   @Override
+   public synchronized String toString()
+   {
+      return "StaticResourceCache: hits=" + hits + " (revalidated=" + revalidations + ")" +
+             " misses=" + misses + " entries=" + entries.size() + " size=" + size + 
+             "/" + budget + " evictions=" + evictions;
+   }
+   
+   private static class Entry
+   {
+      private byte[] body;
+      private int statusCode;
+      private String statusMessage;
+      private List<NameValuePair> headers;
+      private String etag;
+      private String lastModified;
+      private long freshUntil;
+      private long size;
+      
+      Entry(WebResponse response, long now)
+      {
+         this.body = response.getContentAsBytes();
+         this.statusCode = response.getStatusCode();
+         this.statusMessage = response.getStatusMessage();
+         this.headers = new ArrayList<NameValuePair>();
+         
+         this.size = this.body.length;
+         for (Iterator<NameValuePair> i = response.getResponseHeaders().iterator(); i.hasNext();)
+         {
+            NameValuePair header = i.next();
+            
+            // The body is already decoded, so these no longer apply.
+            if (header.getName().equalsIgnoreCase("Content-Encoding")) continue;
+            if (header.getName().equalsIgnoreCase("Content-Length")) continue;
+            
+            this.headers.add(header);
+            this.size += header.getName().length() + header.getValue().length();
+         }
+         
+         String etag = response.getResponseHeaderValue("ETag");
+         if ((etag != null) && (etag.length() > 0)) this.etag = etag;
+         String lastModified = response.getResponseHeaderValue("Last-Modified");
+         if ((lastModified != null) && (lastModified.length() > 0)) this.lastModified = lastModified;
+         
+         this.freshUntil = freshUntil(response, now);
+      }
+      
+      boolean isFresh(long now)
+      {
+         return now < this.freshUntil;
+      }
+      
+      void revalidated(WebResponse notModified, long now)
+      {
+         this.freshUntil = freshUntil(notModified, now);
+      }
+      
+      WebResponse toWebResponse(WebRequest webRequest) throws IOException
+      {
+         WebResponseData data = new WebResponseData(this.body, this.statusCode, this.statusMessage, this.headers);
+         return new WebResponse(data, webRequest, 0);
+      }
+      
+      private static long freshUntil(WebResponse response, long now)
+      {
+         String cacheControl = responseHeaderValue(response, "Cache-Control");
+         if (hasDirective(cacheControl, "no-cache")) return 0;
+         
+         long maxAge = maxAgeSeconds(cacheControl);
+         if (maxAge != -1) return now + (maxAge * 1000L);
+         
+         long expires = parseDate(responseHeaderValue(response, "Expires"));
+         if (expires == -1) return 0;
+         
+         long date = parseDate(responseHeaderValue(response, "Date"));
+         if (date == -1) return expires;
+         
+         // use the server clock for the lifetime
+         return now + (expires - date);
+      }
+   }
+}
@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.framework;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Reads the CPU time and the number of bytes allocated by the current 
+ * thread.  Used by the JSFTimer to account for each JSF phase.
+ *
+ * Allocated bytes come from com.sun.management.ThreadMXBean, which is
+ * only available on some JVMs.  It is called through reflection so that
+ * JSFUnit still runs everywhere else.
+ *
+ * Thread CPU time measurement is a JVM-wide setting, so ThreadMeter never
+ * turns it on by itself.  CPU time is only reported if it is already 
+ * enabled, or if the system property <code>jsfunit.cputime=true</code> 
+ * allows JSFUnit to enable it.  Otherwise it is reported as unavailable.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ThreadMeter
+{
+   static final String CPU_TIME_PROPERTY = "jsfunit.cputime";
+   
+   private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+   
+   private static final boolean cpuTimeSupported = initCpuTime();
+   
+   // com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long), or null
+   private static final Method allocatedBytesMethod = initAllocatedBytes();
+   
+   // don't allow an instance of this static utility class
+   private ThreadMeter()
+   {
+   }
+   
+   private static boolean initCpuTime()
+   {
+      try
+      {
+         if (!threadBean.isCurrentThreadCpuTimeSupported()) return false;
+         if (threadBean.isThreadCpuTimeEnabled()) return true;
+         if (!Boolean.getBoolean(CPU_TIME_PROPERTY)) return false;
+         
+         threadBean.setThreadCpuTimeEnabled(true);
+         return threadBean.isThreadCpuTimeEnabled();
+      }
+      catch (Exception e)
+      {
+         return false;
+      }
+   }
+   
+   private static Method initAllocatedBytes()
+   {
+      try
+      {
+         Class sunThreadBean = Class.forName("com.sun.management.ThreadMXBean");
+         if (!sunThreadBean.isInstance(threadBean)) return null;
+         
+         Method isSupported = sunThreadBean.getMethod("isThreadAllocatedMemorySupported");
+         if (!((Boolean)isSupported.invoke(threadBean)).booleanValue()) return null;
+         
+         Method isEnabled = sunThreadBean.getMethod("isThreadAllocatedMemoryEnabled");
+         if (!((Boolean)isEnabled.invoke(threadBean)).booleanValue()) return null;
+         
+         Method allocatedBytes = sunThreadBean.getMethod("getThreadAllocatedBytes", long.class);
+         allocatedBytes.invoke(threadBean, Long.valueOf(Thread.currentThread().getId()));
+         return allocatedBytes;
+      }
+      catch (Throwable e)
+      {
+         return null;
+      }
+   }
+   
+   /**
+    * Determine if CPU time can be measured on this JVM and measurement is 
+    * currently enabled.
+    */
+   static boolean isCpuTimeSupported()
+   {
+      return cpuTimeSupported && threadBean.isThreadCpuTimeEnabled();
+   }
+   
+   /**
+    * Determine if allocated bytes can be measured on this JVM.
+    */
+   static boolean isAllocatedBytesSupported()
+   {
+      return allocatedBytesMethod != null;
+   }
+   
+   /**
+    * Get the CPU time used by the current thread.
+    *
+    * @return The CPU time in nanoseconds, or -1 if not supported or not enabled.
+    */
+   static long currentThreadCpuTime()
+   {
+      if (!isCpuTimeSupported()) return -1L;
+      return threadBean.getCurrentThreadCpuTime();
+   }
+   
+   /**
+    * Get the total number of bytes allocated by the current thread.
+    *
+    * @return The number of bytes, or -1 if not supported.
+    */
+   static long currentThreadAllocatedBytes()
+   {
+      if (allocatedBytesMethod == null) return -1L;
+      
+      try
+      {
+         Long bytes = (Long)allocatedBytesMethod.invoke(threadBean, 
+                                                        Long.valueOf(Thread.currentThread().getId()));
+         return bytes.longValue();
+      }
+      catch (Exception e)
+      {
+         return -1L;
+      }
+   }
+}
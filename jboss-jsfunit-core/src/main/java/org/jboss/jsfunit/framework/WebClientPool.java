@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.framework;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.DefaultCredentialsProvider;
+import com.gargoylesoftware.htmlunit.DefaultCssErrorHandler;
+import com.gargoylesoftware.htmlunit.DefaultPageCreator;
+import com.gargoylesoftware.htmlunit.ImmediateRefreshHandler;
+import com.gargoylesoftware.htmlunit.IncorrectnessListenerImpl;
+import com.gargoylesoftware.htmlunit.NicelyResynchronizingAjaxController;
+import com.gargoylesoftware.htmlunit.WebClient;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * The WebClientPool keeps WebClients that are no longer used by a test so
+ * that the next WebClientSpec with the same BrowserVersion and proxy settings
+ * does not have to build a new JavaScript engine and HTTP connection manager.
+ *
+ * A WebClient is reset before it goes back into the pool: its windows are
+ * closed, its cookies, request headers and cache are cleared, its 
+ * JSFUnitWebConnection is replaced after its RequestListeners are closed, 
+ * and its options are set back to the WebClient defaults.  Handlers, 
+ * listeners and request headers that a test set directly on the WebClient 
+ * are also removed.  Pooled WebClients are PooledWebClients, which remember
+ * the request headers and WebWindowListeners added to them.  If a WebClient
+ * can not be reset, it is not reused and the exception is thrown.
+ *
+ * To enable, set system property jsfunit.webclientpool.  Its value can be
+ * the number of idle WebClients kept for each BrowserVersion and proxy.  The 
+ * default is 4.  Only WebClients created during a test request that went 
+ * through the JSFUnitFilter are pooled.  They go back to the pool when the
+ * JSFUnitFilter finishes the test request, never earlier, so a session that
+ * is invalidated during a test does not hand its WebClient to another test.
+ *
+ * Building a WebClient is cheap next to loading the first page of a test, so
+ * the pool saves little per test.  WebClientPoolTest prints the setup time
+ * with and without the pool.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class WebClientPool
+{
+   static final String POOL_PROPERTY = "jsfunit.webclientpool";
+   
+   static final int DEFAULT_MAX_IDLE = 4;
+   
+   private static WebClientPool instance;
+   
+   private int maxIdle;
+   
+   // key = BrowserVersion and proxy; value = idle WebClients
+   private Map<String, LinkedList<WebClient>> idleClients = new HashMap<String, LinkedList<WebClient>>();
+   
+   private WebClientPool(int maxIdle)
+   {
+      this.maxIdle = maxIdle;
+   }
+   
+   /**
+    * Check to see if WebClient pooling is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   static boolean enabled()
+   {
+      return System.getProperty(POOL_PROPERTY) != null;
+   }
+   
+   static synchronized WebClientPool getPool()
+   {
+      if (instance == null)
+      {
+         int maxIdle = DEFAULT_MAX_IDLE;
+         String property = System.getProperty(POOL_PROPERTY);
+         if ((property != null) && (property.trim().length() > 0))
+         {
+            try
+            {
+               maxIdle = Integer.parseInt(property.trim());
+            }
+            catch (NumberFormatException e)
+            {
+               // ignore - use the default
+            }
+         }
+         
+         instance = new WebClientPool(maxIdle);
+      }
+      
+      return instance;
+   }
+   
+   /**
+    * Get an idle WebClient for the WebClientSpec.
+    *
+    * @param wcSpec The WebClientSpec.
+    *
+    * @return A clean WebClient, or <code>null</code> if there is no idle 
+    *         WebClient for the BrowserVersion and proxy of the WebClientSpec.
+    */
+   synchronized WebClient acquire(WebClientSpec wcSpec)
+   {
+      LinkedList<WebClient> idle = idleClients.get(makeKey(wcSpec));
+      if ((idle == null) || idle.isEmpty()) return null;
+      return idle.removeFirst();
+   }
+   
+   /**
+    * Make a new WebClient that can be released to the pool.
+    *
+    * @param wcSpec The WebClientSpec.
+    *
+    * @return The WebClient.
+    */
+   static WebClient newWebClient(WebClientSpec wcSpec)
+   {
+      String proxyHost = wcSpec.getProxyHost();
+      if (proxyHost == null) return new PooledWebClient(wcSpec.getBrowserVersion());
+      return new PooledWebClient(wcSpec.getBrowserVersion(), proxyHost, wcSpec.getProxyPort());
+   }
+   
+   /**
+    * Reset the WebClient of a WebClientSpec and keep it for reuse.  If the
+    * pool is full, the WebClient is just closed.
+    *
+    * @param wcSpec The WebClientSpec that no longer needs its WebClient.
+    *
+    * @throws RuntimeException if the WebClient can not be reset.  It is not
+    *                          kept for reuse.
+    */
+   void release(WebClientSpec wcSpec)
+   {
+      WebClient wc = wcSpec.getWebClient();
+      if (wc == null) return;
+      
+      wc.closeAllWindows();
+      reset((PooledWebClient)wc, wcSpec.getBrowserVersion());
+      
+      synchronized (this)
+      {
+         String key = makeKey(wcSpec);
+         LinkedList<WebClient> idle = idleClients.get(key);
+         if (idle == null)
+         {
+            idle = new LinkedList<WebClient>();
+            idleClients.put(key, idle);
+         }
+         
+         if ((idle.size() < maxIdle) && !idle.contains(wc)) idle.addLast(wc);
+      }
+   }
+   
+   /**
+    * Drop all idle WebClients.
+    */
+   synchronized void clear()
+   {
+      idleClients.clear();
+   }
+   
+   private static void reset(PooledWebClient wc, BrowserVersion browserVersion)
+   {
+      wc.getCookieManager().clearCookies();
+      wc.removeAddedRequestHeaders();
+      wc.getCache().clear();
+      
+      // close and detach the listeners of the old JSFUnitWebConnection
+      JSFUnitWebConnection oldConnection = (JSFUnitWebConnection)wc.getWebConnection();
+      oldConnection.closeListeners();
+      wc.setWebConnection(new JSFUnitWebConnection(oldConnection.getWrappedConnection(), browserVersion));
+      
+      wc.removeAddedWebWindowListeners();
+      wc.setHTMLParserListener(null);
+      wc.setIncorrectnessListener(new IncorrectnessListenerImpl());
+      wc.setCssErrorHandler(new DefaultCssErrorHandler());
+      wc.setRefreshHandler(new ImmediateRefreshHandler());
+      wc.setPageCreator(new DefaultPageCreator());
+      wc.setAttachmentHandler(null);
+      wc.setOnbeforeunloadHandler(null);
+      wc.setAjaxController(new NicelyResynchronizingAjaxController());
+      wc.setCredentialsProvider(new DefaultCredentialsProvider());
+      wc.setAlertHandler(null);
+      wc.setConfirmHandler(null);
+      wc.setPromptHandler(null);
+      wc.setStatusHandler(null);
+      wc.setJavaScriptEnabled(true);
+      wc.setCssEnabled(true);
+      wc.setRedirectEnabled(true);
+      wc.setThrowExceptionOnScriptError(true);
+      wc.setThrowExceptionOnFailingStatusCode(true);
+      wc.setTimeout(0);
+   }
+   
+   private static String makeKey(WebClientSpec wcSpec)
+   {
+      BrowserVersion browserVersion = wcSpec.getBrowserVersion();
+      return browserVersion.getApplicationName() + "|" + browserVersion.getApplicationVersion() + "|" +
+             browserVersion.getUserAgent() + "|" + browserVersion.getBrowserVersionNumeric() + "|" +
+             wcSpec.getProxyHost() + ":" + wcSpec.getProxyPort();
+   }
+}
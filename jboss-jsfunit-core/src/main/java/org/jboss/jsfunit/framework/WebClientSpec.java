@@ -60,9 +60,13 @@ public class WebClientSpec implements HttpSessionBindingListener
    private int proxyPort;
    private Map<String, String> cookies = new HashMap<String, String>();
    private InitialRequestStrategy requestStrategy = new SimpleInitialRequestStrategy();
+   private JSFUnitSessionContext sessionContext;
    
    private boolean initialRequestDone = false;
    
+   // the WebClientPool gets the WebClient back when the test request ends
+   private boolean pooled = false;
+   
    /**
     * Create a new WebClientSpec.  
     *
@@ -109,6 +113,27 @@ public class WebClientSpec implements HttpSessionBindingListener
     */
    public WebClientSpec(String initialPage, BrowserVersion browserVersion, String proxyHost, int proxyPort)
    {
+      this(initialPage, browserVersion, proxyHost, proxyPort, WebConversationFactory.getContext());
+   }
+   
+   /**
+    * Create a new WebClientSpec for a given JSFUnitSessionContext.  The other
+    * constructors use the JSFUnitSessionContext of the current thread.
+    *
+    * @param initialPage The page used to start a client session with JSF.  Example: "/index.jsf"
+    * @param browserVersion The browser version to simulate.
+    * @param proxyHost The proxy server, or <code>null</code> if no proxy is used.
+    * @param proxyPort The proxy port.
+    * @param sessionContext The HttpSession and WAR URL to use.  Unless it is
+    *                       detached, the WebClientSpec gets a JSFUnitSessionContext
+    *                       of its own that shares this HttpSession.
+    * 
+    * @since 2.0
+    */
+   public WebClientSpec(String initialPage, BrowserVersion browserVersion, String proxyHost, int proxyPort,
+                        JSFUnitSessionContext sessionContext)
+   {
+      this.sessionContext = sessionContext;
       this.initialPage = initialPage;
       this.browserVersion = browserVersion;
       this.proxyHost = proxyHost;
@@ -138,6 +163,25 @@ public class WebClientSpec implements HttpSessionBindingListener
                                         .getAttribute(JSFUnitFilter.REDIRECTOR_REQUEST_PARAMS_KEY);
    }
    
+   /**
+    * Get the JSFUnitSessionContext used by this WebClientSpec.
+    *
+    * @return The JSFUnitSessionContext.
+    * @since 2.0
+    */
+   public JSFUnitSessionContext getSessionContext()
+   {
+      return this.sessionContext;
+   }
+   
+   /**
+    * Package-private method to set the JSFUnitSessionContext of this WebClientSpec.
+    */
+   void setSessionContext(JSFUnitSessionContext sessionContext)
+   {
+      this.sessionContext = sessionContext;
+   }
+   
    /**
     * Return the initialPage passed into the constructor.
     *
@@ -156,6 +200,14 @@ public class WebClientSpec implements HttpSessionBindingListener
       this.webClient = webClient;
    }
    
+   /**
+    * Package-private method to mark the WebClient as borrowed from the WebClientPool.
+    */
+   void setPooled(boolean pooled)
+   {
+      this.pooled = pooled;
+   }
+   
    /**
     * Get the WebClient instances used for the JSFSession.
     *
@@ -291,7 +343,16 @@ public class WebClientSpec implements HttpSessionBindingListener
 	   // as per HtmlUnit issue:
 	   // https://sourceforge.net/tracker/?func=detail&atid=448266&aid=2014629&group_id=47038
 	   // -----------------------------------------------------------------------------------
+      // A pooled WebClient is released, and its listeners closed, when the 
+      // test request ends.  The session may be invalidated in the middle of 
+      // a test, e.g. by a logout, or after the WebClient went to another test.
+      if (this.pooled) return;
+      
       webClient.closeAllWindows();
+      if (webClient.getWebConnection() instanceof JSFUnitWebConnection)
+      {
+         ((JSFUnitWebConnection)webClient.getWebConnection()).closeListeners();
+      }
    }
 
    public void valueBound(HttpSessionBindingEvent httpSessionBindingEvent)
@@ -24,7 +24,10 @@ package org.jboss.jsfunit.framework;
 
 import com.gargoylesoftware.htmlunit.NicelyResynchronizingAjaxController;
 import com.gargoylesoftware.htmlunit.WebClient;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import org.jboss.jsfunit.context.JSFUnitFacesContext;
@@ -43,23 +46,12 @@ public class WebConversationFactory
    public static String JSF_UNIT_CONVERSATION_FLAG = WebConversationFactory.class.getName() + ".testing_flag";
    public static String WAR_URL = WebConversationFactory.class.getName() + ".WARURL";
    
-   private static ThreadLocal tlsession = new ThreadLocal()
-   {
-      @Override
-      protected Object initialValue()
-      {
-         return null;
-      }
-   };
+   // The context of the test running on this thread.  It is only the default 
+   // for new WebClientSpecs.  Once created, JSFUnit objects use their own context.
+   private static ThreadLocal<JSFUnitSessionContext> threadContext = new ThreadLocal<JSFUnitSessionContext>();
    
-   private static ThreadLocal warURL = new ThreadLocal()
-   {
-      @Override
-      protected Object initialValue()
-      {
-         return null;
-      }
-   };
+   // WebClientSpecs with a pooled WebClient, created during the test request on this thread
+   private static ThreadLocal<List<WebClientSpec>> pooledSpecs = new ThreadLocal<List<WebClientSpec>>();
    
    /**
     * Associates the HttpSession and WAR URL with ThreadLocals.
@@ -68,9 +60,30 @@ public class WebConversationFactory
     */
    public static void setThreadLocals(HttpServletRequest req)
    {
-      tlsession.set(req.getSession());
-      String stringWARURL = makeWARURL(req);
-      warURL.set(stringWARURL);
+      setContext(new JSFUnitSessionContext(req));
+      if (WebClientPool.enabled()) pooledSpecs.set(new ArrayList<WebClientSpec>());
+   }
+   
+   /**
+    * Make a JSFUnitSessionContext the default for WebClientSpecs created on
+    * this thread.  Use this to create JSFSessions from a thread that did not
+    * go through the JSFUnitFilter.
+    * 
+    * @param context The JSFUnitSessionContext, or <code>null</code> to clear it.
+    */
+   public static void setContext(JSFUnitSessionContext context)
+   {
+      threadContext.set(context);
+   }
+   
+   /**
+    * Get the JSFUnitSessionContext associated with this thread.
+    * 
+    * @return The JSFUnitSessionContext, or <code>null</code> if there is none.
+    */
+   public static JSFUnitSessionContext getContext()
+   {
+      return threadContext.get();
    }
    
    /**
@@ -80,7 +93,9 @@ public class WebConversationFactory
     */
    public static HttpSession getSessionFromThreadLocal()
    {
-      return (HttpSession)tlsession.get();
+      JSFUnitSessionContext context = getContext();
+      if (context == null) return null;
+      return context.getHttpSession();
    }
    
    /**
@@ -100,8 +115,35 @@ public class WebConversationFactory
     */
    public static void removeThreadLocals()
    {
-      tlsession.remove();
-      warURL.remove();
+      threadContext.remove();
+      pooledSpecs.remove();
+   }
+   
+   /**
+    * Return the WebClients of the test request on this thread to the 
+    * WebClientPool.  JSFUnitFilter calls this when the test is over.
+    */
+   static void releaseWebClients()
+   {
+      List<WebClientSpec> specs = pooledSpecs.get();
+      if (specs == null) return;
+      
+      pooledSpecs.set(new ArrayList<WebClientSpec>());
+      RuntimeException failure = null;
+      for (Iterator<WebClientSpec> i = specs.iterator(); i.hasNext();)
+      {
+         try
+         {
+            WebClientPool.getPool().release(i.next());
+         }
+         catch (RuntimeException e)
+         {
+            // release the others, then report the first failure
+            if (failure == null) failure = e;
+         }
+      }
+      
+      if (failure != null) throw failure;
    }
    
    /**
@@ -119,30 +161,100 @@ public class WebConversationFactory
     */
    static void makeWebClient(WebClientSpec wcSpec)
    {
-      WebClient wc = null;
-      String proxyHost = wcSpec.getProxyHost();
-      if (proxyHost != null) wc = new WebClient(wcSpec.getBrowserVersion(), 
-                                                proxyHost, 
-                                                wcSpec.getProxyPort());
-      if (proxyHost == null) wc = new WebClient(wcSpec.getBrowserVersion());
-      wc.setAjaxController(new NicelyResynchronizingAjaxController());
-      wc.setWebConnection(new JSFUnitWebConnection(wc.getWebConnection()));
-      wcSpec.setWebClient(wc);
-
-      HttpSession session = getSessionFromThreadLocal();
+      JSFUnitSessionContext context = wcSpec.getSessionContext();
       
-      if (session == null)
+      if (context == null)
       {
          throw new IllegalStateException("Can not find HttpSession.  Make sure JSFUnitFilter has run and your test extends org.apache.cactus.ServletTestCase.");
       }
       
-      clearSession(session);
-      session.setAttribute(WebClientSpec.SESSION_KEY, wcSpec);
+      if (context.isDetached())
+      {
+         // the container creates the HttpSession on the first request
+         wcSpec.setWebClient(newWebClient(wcSpec, context.getWARURL(), false));
+         wcSpec.addCookie(JSFUnitSessionContext.TOKEN_COOKIE, context.getToken());
+         wcSpec.addCookie(JSF_UNIT_CONVERSATION_FLAG, JSF_UNIT_CONVERSATION_FLAG);
+         return;
+      }
+      
+      HttpSession session = context.getHttpSession();
+      
+      // The first WebClientSpec of a test starts with a clean HttpSession.  
+      // Later ones share it, so they must not unbind what the others keep there.
+      if (context.markSessionCleared()) clearSession(session);
+      
+      JSFUnitSessionContext clientContext = new JSFUnitSessionContext(session, context.getWARURL());
+      clientContext.markSessionCleared();
+      wcSpec.setSessionContext(clientContext);
+      
+      WebClient wc = null;
+      
+      // only pool WebClients that the end of the test request will release
+      List<WebClientSpec> specs = pooledSpecs.get();
+      if (specs != null)
+      {
+         wc = WebClientPool.getPool().acquire(wcSpec);
+         specs.add(wcSpec);
+         wcSpec.setPooled(true);
+      }
+      
+      if (wc == null) 
+      {
+         wc = newWebClient(wcSpec, context.getWARURL(), (specs != null));
+      }
+      else
+      {
+         ((JSFUnitWebConnection)wc.getWebConnection()).setWarURL(context.getWARURL());
+      }
+      wcSpec.setWebClient(wc);
+
+      session.setAttribute(WebClientSpec.SESSION_KEY + "." + clientContext.getToken(), wcSpec);
       
       wcSpec.addCookie("JSESSIONID", session.getId());
+      wcSpec.addCookie(JSFUnitSessionContext.TOKEN_COOKIE, clientContext.getToken());
       wcSpec.addCookie(JSF_UNIT_CONVERSATION_FLAG, JSF_UNIT_CONVERSATION_FLAG);
    }
    
+   /**
+    * Remove the FacesContexts and WebClientSpecs of every JSFUnitSessionContext
+    * from the HttpSession.
+    *
+    * @param session The shared HttpSession.
+    */
+   static void removeSessionContexts(HttpSession session)
+   {
+      List<String> names = new ArrayList<String>();
+      for (Enumeration e = session.getAttributeNames(); e.hasMoreElements();)
+      {
+         String name = (String)e.nextElement();
+         if (name.startsWith(JSFUnitFacesContext.SESSION_KEY) || name.startsWith(WebClientSpec.SESSION_KEY))
+         {
+            names.add(name);
+         }
+      }
+      
+      for (Iterator<String> i = names.iterator(); i.hasNext();)
+      {
+         session.removeAttribute(i.next());
+      }
+   }
+   
+   private static WebClient newWebClient(WebClientSpec wcSpec, String warURL, boolean pooled)
+   {
+      WebClient wc = null;
+      String proxyHost = wcSpec.getProxyHost();
+      if (pooled) wc = WebClientPool.newWebClient(wcSpec);
+      if (!pooled && (proxyHost != null)) wc = new WebClient(wcSpec.getBrowserVersion(), 
+                                                             proxyHost, 
+                                                             wcSpec.getProxyPort());
+      if (!pooled && (proxyHost == null)) wc = new WebClient(wcSpec.getBrowserVersion());
+      wc.setAjaxController(new NicelyResynchronizingAjaxController());
+      JSFUnitWebConnection webConnection = new JSFUnitWebConnection(wc.getWebConnection(), wcSpec.getBrowserVersion());
+      webConnection.setWarURL(warURL);
+      wc.setWebConnection(webConnection);
+      return wc;
+   }
+   
    /**
     * Clear the HttpSession for use by the WebClientSpec and JSFSession.  We 
     * need to start with a clean (but not new) HttpSession at the beginning of each
@@ -178,7 +290,9 @@ public class WebConversationFactory
     */
    public static String getWARURL()
    {
-      return (String)warURL.get();
+      JSFUnitSessionContext context = getContext();
+      if (context == null) return null;
+      return context.getWARURL();
    }
    
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index used by ClientIDs to find every client ID that ends with a given
+ * suffix without scanning the whole list.
+ *
+ * Each client ID is stored reversed and the reversed IDs are kept sorted.
+ * All IDs ending with a suffix then form one contiguous run starting at the
+ * binary search position of the reversed suffix.  This keeps the exact
+ * String.endsWith() semantics of the original linear scan, so a suffix
+ * like "name" still matches both "form:name" and "form:lastname".
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ClientIDSuffixIndex
+{
+   private String[] reversedIDs;
+   private String[] clientIDs;
+
+   /**
+    * Build the index.
+    *
+    * @param allClientIDs The client IDs to index.  There must be no duplicates.
+    */
+   ClientIDSuffixIndex(List<String> allClientIDs)
+   {
+      int size = allClientIDs.size();
+      Entry[] entries = new Entry[size];
+      for (int i=0; i < size; i++)
+      {
+         entries[i] = new Entry(allClientIDs.get(i));
+      }
+
+      Arrays.sort(entries);
+
+      this.reversedIDs = new String[size];
+      this.clientIDs = new String[size];
+      for (int i=0; i < size; i++)
+      {
+         this.reversedIDs[i] = entries[i].reversedID;
+         this.clientIDs[i] = entries[i].clientID;
+      }
+   }
+
+   /**
+    * Find all client IDs that end with the given suffix.
+    *
+    * @param suffix The client ID suffix.
+    *
+    * @return The matching client IDs.  The List is empty if nothing matches.
+    */
+   List<String> findMatches(String suffix)
+   {
+      String reversedSuffix = reverse(suffix);
+      int index = Arrays.binarySearch(this.reversedIDs, reversedSuffix);
+      if (index < 0) index = -(index + 1);
+
+      List<String> matches = new ArrayList<String>(1);
+      while ((index < this.reversedIDs.length) &&
+             this.reversedIDs[index].startsWith(reversedSuffix))
+      {
+         matches.add(this.clientIDs[index]);
+         index++;
+      }
+
+      return matches;
+   }
+
+   private static String reverse(String string)
+   {
+      return new StringBuilder(string).reverse().toString();
+   }
+
+   private static class Entry implements Comparable<Entry>
+   {
+      private String clientID;
+      private String reversedID;
+
+      Entry(String clientID)
+      {
+         this.clientID = clientID;
+         this.reversedID = reverse(clientID);
+      }
+
+      public int compareTo(Entry entry)
+      {
+         return this.reversedID.compareTo(entry.reversedID);
+      }
+   }
+}
@@ -24,17 +24,17 @@ package org.jboss.jsfunit.jsfsession;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import javax.faces.component.UIComponent;
 import javax.faces.component.UIData;
 import javax.faces.component.UIViewRoot;
 import javax.faces.component.ValueHolder;
 import javax.faces.context.FacesContext;
+import org.jboss.jsfunit.framework.Environment;
 import org.jboss.jsfunit.framework.FacesContextBridge;
+import org.jboss.jsfunit.framework.JSFUnitSessionContext;
 
 /**
  * This immutable helper class gathers all the client IDs from the current 
@@ -42,29 +42,92 @@ import org.jboss.jsfunit.framework.FacesContextBridge;
  * that ID.  This suffix is usually just the component ID, but for specificity 
  * it can also include one or more of a component's naming containers such as in 
  * "mysubview:myform:mycomponentID".
+ * 
+ * If the system property jsfunit.lazyuidata is set, the rows of a UIData are
+ * not walked up front.  Components inside a UIData are indexed once, and 
+ * a row is only positioned when a client ID such as "mytable:12:name" is 
+ * looked up.  Lookups that can't be resolved that way fall back to a full
+ * walk of every row.
  *
  * @author Stan Silvert
  * @since 1.0
  */
 public class ClientIDs
 {
+   public static final String LAZY_UIDATA_PROPERTY = "jsfunit.lazyuidata";
+   
+   private JSFUnitSessionContext sessionContext;
+   
    private List<String> allClientIDs = new ArrayList<String>();
    private Map<String, UIComponent> allComponents = new HashMap<String, UIComponent>();
+   private ClientIDSuffixIndex suffixIndex;
    
-   // key = clientID; value = set of ancestor clientID's including my own
-   private Map<String, Set> ancestors = new HashMap<String, Set>();
+   // key = clientID; value = the position of the clientID in a depth-first 
+   // walk of the tree.  A is an ancestor of B if B's interval is inside A's.
+   private Map<String, Interval> ancestors = new HashMap<String, Interval>();
+   private int dfsCounter = 0;
    
    // key = clientID; value = the value manager for a component in a UIData
    private Map<String, UIDataValueManager> uiDataMap = new HashMap<String, UIDataValueManager>();
    
+   private boolean lazyUIData;
+   
+   // Lazy mode only.  key = row-specific clientID that has been looked up;
+   // value = the clientID of the same component when no row is set
+   private Map<String, String> rowClientIDs = new HashMap<String, String>();
+   
+   // Lazy mode only.  Components (and their intervals) whose subtree is 
+   // still being visited by visitTree().
+   private List<UIComponent> openComponents = new ArrayList<UIComponent>();
+   private List<Interval> openIntervals = new ArrayList<Interval>();
+   
+   // Lazy mode only.  Built when a lookup can't be resolved lazily.
+   private ClientIDs eagerClientIDs;
+   
    /**
     * Create a new instance of ClientIDs.
+    *
+    * @param sessionContext The JSFUnitSessionContext of the JSFSession.
     */
-   ClientIDs()
+   ClientIDs(JSFUnitSessionContext sessionContext)
    {
-      FacesContext facesContext = FacesContextBridge.getCurrentInstance();
+      this(sessionContext, lazyUIDataEnabled());
+   }
+   
+   /**
+    * Create a new instance of ClientIDs.
+    *
+    * @param sessionContext The JSFUnitSessionContext of the JSFSession.
+    * @param lazyUIData If <code>true</code>, UIData rows are only positioned
+    *                   when a component in that row is looked up.
+    */
+   ClientIDs(JSFUnitSessionContext sessionContext, boolean lazyUIData)
+   {
+      this.sessionContext = sessionContext;
+      this.lazyUIData = lazyUIData;
+      FacesContext facesContext = FacesContextBridge.getCurrentInstance(sessionContext);
       UIComponent component = facesContext.getViewRoot();
-      addAllIDs(component, facesContext);
+      
+      if (lazyUIData && Environment.is20Compatible())
+      {
+         LazyUIDataVisitCallback.visitTree(component, facesContext, this);
+      }
+      else
+      {
+         addAllIDs(component, facesContext);
+      }
+      
+      this.suffixIndex = new ClientIDSuffixIndex(allClientIDs);
+   }
+   
+   /**
+    * Check to see if lazy UIData row indexing is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   public static boolean lazyUIDataEnabled()
+   {
+      return System.getProperty(LAZY_UIDATA_PROPERTY) != null;
    }
 
    // recursively walk the component tree and add all the client IDs to the list
@@ -73,72 +136,96 @@ public class ClientIDs
       if (component == null) return;
       
       addClientID(component, facesContext);
-      newAncestorEntry(component, facesContext);
+      Interval interval = enterAncestry(component.getClientId(facesContext));
       
-      if (component instanceof UIData)
+      if ((component instanceof UIData) && !lazyUIData)
       {
          addUIData((UIData)component, facesContext);
-         return;
       }
-      
-      for (Iterator facetsAndChildren = component.getFacetsAndChildren(); facetsAndChildren.hasNext();)
+      else
       {
-         UIComponent facetOrChild = (UIComponent)facetsAndChildren.next();
-         addAncestors(component, facetOrChild, facesContext);
-         addAllIDs(facetOrChild, facesContext);
+         for (Iterator facetsAndChildren = component.getFacetsAndChildren(); facetsAndChildren.hasNext();)
+         {
+            UIComponent facetOrChild = (UIComponent)facetsAndChildren.next();
+            addAllIDs(facetOrChild, facesContext);
+         }
       }
+      
+      exitAncestry(interval);
    }
    
-   private void newAncestorEntry(UIComponent component, FacesContext facesContext)
+   // called when the walk reaches a clientID, before any of its descendants
+   private Interval enterAncestry(String clientID)
    {
-      String clientID = component.getClientId(facesContext);
-      if (ancestors.get(clientID) == null)
+      Interval interval = new Interval(dfsCounter++);
+      ancestors.put(clientID, interval);
+      return interval;
+   }
+   
+   // called when the walk has visited all descendants of a clientID
+   private void exitAncestry(Interval interval)
+   {
+      interval.exit = dfsCounter++;
+   }
+   
+   /**
+    * Called by LazyUIDataVisitCallback for each component in the order 
+    * that visitTree() visits them.  visitTree() only tells us when a component
+    * is entered, so a component is known to be finished when the next 
+    * visited component is not one of its descendants.
+    */
+   void addVisitedComponent(UIComponent component, FacesContext facesContext)
+   {
+      UIComponent parent = component.getParent();
+      while (!openComponents.isEmpty() && 
+             (openComponents.get(openComponents.size() - 1) != parent))
       {
-         HashSet myAncestors = new HashSet();
-         myAncestors.add(clientID); // I am my own ancestor
-         ancestors.put(clientID, myAncestors);
+         closeLastVisitedComponent();
       }
+      
+      addClientID(component, facesContext);
+      openComponents.add(component);
+      openIntervals.add(enterAncestry(component.getClientId(facesContext)));
    }
    
-   private void addAncestors(UIComponent parent, UIComponent child, FacesContext facesContext)
+   /**
+    * Called by LazyUIDataVisitCallback when visitTree() is done.
+    */
+   void endVisit()
    {
-      if (child == null) return;
-      addAncestors(parent.getClientId(facesContext), child.getClientId(facesContext));
+      while (!openComponents.isEmpty()) closeLastVisitedComponent();
    }
-      
-   private void addAncestors(String parentClientID, String childClientID)
+   
+   private void closeLastVisitedComponent()
    {
-      Set myAncestors = new HashSet(ancestors.get(parentClientID));
-      myAncestors.add(childClientID); // I am my own ancestor
-      //System.out.println("ancestors: " + childClientID + " = " + myAncestors);
-      ancestors.put(childClientID, myAncestors);
+      openComponents.remove(openComponents.size() - 1);
+      exitAncestry(openIntervals.remove(openIntervals.size() - 1));
    }
    
    private void addUIData(UIData component, FacesContext facesContext)
    {
-      String parentClientID = component.getClientId(facesContext);
-      // TODO: find out if headers and footers are found
-      int rowsToDisplay = component.getRows();
-      try
+      // The header and footer facets are not part of any row, so they are
+      // visited once with no row set.
+      if (component.getFacetCount() > 0)
       {
-         if (rowsToDisplay == 0) rowsToDisplay = component.getRowCount();
-      } 
-      catch (Exception e)
-      {
-         // ignore see JSFUNIT-215
+         for (Iterator facets = component.getFacets().values().iterator(); facets.hasNext();)
+         {
+            addAllIDs((UIComponent)facets.next(), facesContext);
+         }
       }
-              
-      for (int i=0; i < rowsToDisplay; i++)
+      
+      int endRow = UIDataRowWindow.endRow(component);
+      for (int i=UIDataRowWindow.firstRow(component); i < endRow; i++)
       {
          component.setRowIndex(i);
-         addAncestors(parentClientID, component.getClientId(facesContext));
-         for (Iterator facetsAndChildren = component.getFacetsAndChildren(); facetsAndChildren.hasNext();)
+         Interval rowInterval = enterAncestry(component.getClientId(facesContext));
+         for (Iterator children = component.getChildren().iterator(); children.hasNext();)
          {
-            UIComponent facetOrChild = (UIComponent)facetsAndChildren.next();
-            fillUIDataMap(component, facetOrChild, facesContext);
-            addAncestors(component, facetOrChild, facesContext);
-            addAllIDs(facetOrChild, facesContext);
+            UIComponent child = (UIComponent)children.next();
+            fillUIDataMap(component, child, facesContext);
+            addAllIDs(child, facesContext);
          } 
+         exitAncestry(rowInterval);
       }
       
       try
@@ -184,7 +271,7 @@ public class ClientIDs
       if (clientId == null) return;
 
       // this can happen for facets
-      if (allClientIDs.contains(clientId)) return;
+      if (allComponents.containsKey(clientId)) return;
       
       //System.out.println("adding clientID=" + clientId + "/ className=" + component.getClass().getName() + " / identity=" + component.hashCode());
       
@@ -206,12 +293,9 @@ public class ClientIDs
    {
       if (suffix == null) throw new NullPointerException();
       
-      List<String> matches = new ArrayList<String>();
-      for (Iterator<String> ids = allClientIDs.iterator(); ids.hasNext();)
-      {
-         String id = ids.next();
-         if (id.endsWith(suffix)) matches.add(id);
-      }
+      if (lazyUIData) return findClientIDLazily(suffix);
+      
+      List<String> matches = suffixIndex.findMatches(suffix);
       
       if (matches.size() == 1) return matches.get(0);
       
@@ -232,7 +316,66 @@ public class ClientIDs
     */
    public UIComponent findComponent(String suffix)
    {
-      return allComponents.get(findClientID(suffix));
+      return componentFor(findClientID(suffix));
+   }
+   
+   private UIComponent componentFor(String clientID)
+   {
+      UIComponent component = allComponents.get(clientID);
+      if (component != null) return component;
+      
+      String templateClientID = rowClientIDs.get(clientID);
+      if (templateClientID != null) return allComponents.get(templateClientID);
+      
+      if (eagerClientIDs != null) return eagerClientIDs.componentFor(clientID);
+      
+      return null;
+   }
+   
+   // Lazy mode only.  Resolve the suffix by positioning just the rows named
+   // in it.  Anything that can't be resolved with certainty is handed to
+   // a fully walked ClientIDs so the result is the same as in eager mode.
+   private String findClientIDLazily(String suffix)
+   {
+      UIDataRowSuffix rowSuffix = new UIDataRowSuffix(suffix);
+      List<String> matches = suffixIndex.findMatches(rowSuffix.getSuffixWithoutRows());
+      
+      if (matches.isEmpty() && !rowSuffix.hasRowIndexes())
+      {
+         throw new ComponentIDNotFoundException(suffix);
+      }
+      
+      if (matches.size() == 1)
+      {
+         String templateClientID = matches.get(0);
+         UIComponent component = allComponents.get(templateClientID);
+         List<UIData> uiDataAncestors = UIDataRowSuffix.getUIDataAncestors(component);
+         
+         if (uiDataAncestors.isEmpty() && !rowSuffix.hasRowIndexes()) return templateClientID;
+         
+         FacesContext facesContext = FacesContextBridge.getCurrentInstance(this.sessionContext);
+         String rowClientID = rowSuffix.toRowClientID(templateClientID, 
+                                                      uiDataAncestors, 
+                                                      facesContext);
+         if (rowClientID != null)
+         {
+            if (rowClientIDs.containsKey(rowClientID)) return rowClientID;
+            
+            if (rowSuffix.rowsAvailable(uiDataAncestors))
+            {
+               rowClientIDs.put(rowClientID, templateClientID);
+               return rowClientID;
+            }
+         }
+      }
+      
+      return eagerClientIDs().findClientID(suffix);
+   }
+   
+   private ClientIDs eagerClientIDs()
+   {
+      if (eagerClientIDs == null) eagerClientIDs = new ClientIDs(this.sessionContext, false);
+      return eagerClientIDs;
    }
    
       /**
@@ -249,13 +392,23 @@ public class ClientIDs
     */
    public Object getComponentValue(String componentID)
    {
-      UIComponent component = findComponent(componentID);
+      String clientId = findClientID(componentID);
+      UIComponent component = componentFor(clientId);
       if (!(component instanceof ValueHolder))
       {
          throw new ClassCastException(componentID + " must be an instance of ValueHolder.");
       }
       
-      String clientId = findClientID(componentID);
+      if (rowClientIDs.containsKey(clientId))
+      {
+         return UIDataRowSuffix.getRowValue(clientId, FacesContextBridge.getCurrentInstance(this.sessionContext));
+      }
+      
+      if ((eagerClientIDs != null) && !allComponents.containsKey(clientId))
+      {
+         return eagerClientIDs.getComponentValue(clientId);
+      }
+      
       if (uiDataMap.containsKey(clientId))
       {
          return uiDataMap.get(clientId).getValue();
@@ -267,12 +420,88 @@ public class ClientIDs
    /**
     * Determines if a component with a given clientID has an ancestor with a
     * given ancestorClientID.
+    *
+    * In lazy UIData mode the rows of a row-specific clientID such as 
+    * "table:3:name", or of a row such as "table:3", are checked separately 
+    * from the components, so the answer is the same as in eager mode.
     */
    public boolean isAncestor(String clientID, String ancestorClientID)
    {
-      Set ancestorSet = ancestors.get(clientID);
-      if (ancestorSet == null) return false;
-      return ancestorSet.contains(ancestorClientID);
+      if (!lazyUIData) return isTreeAncestor(clientID, ancestorClientID);
+      
+      RowID row = resolveRowID(clientID);
+      RowID ancestorRow = resolveRowID(ancestorClientID);
+      if ((row == null) || (ancestorRow == null)) return false;
+      
+      if (!isTreeAncestor(row.templateClientID, ancestorRow.templateClientID)) return false;
+      
+      // the ancestor's rows must be the outermost rows of the clientID
+      List<Integer> rows = row.rowSuffix.getRowIndexes();
+      List<Integer> ancestorRows = ancestorRow.rowSuffix.getRowIndexes();
+      if (ancestorRows.size() > rows.size()) return false;
+      return rows.subList(0, ancestorRows.size()).equals(ancestorRows);
+   }
+   
+   private boolean isTreeAncestor(String clientID, String ancestorClientID)
+   {
+      Interval interval = ancestors.get(clientID);
+      if (interval == null) return false;
+      
+      Interval ancestorInterval = ancestors.get(ancestorClientID);
+      if (ancestorInterval == null) return false;
+      
+      // a component is its own ancestor
+      return (ancestorInterval.enter <= interval.enter) && 
+             (interval.exit <= ancestorInterval.exit);
+   }
+   
+   // Lazy mode only.  Split a full clientID into the clientID with no row
+   // set and its rows.  Returns null if the clientID is not in the tree or
+   // a row is not rendered.
+   private RowID resolveRowID(String clientID)
+   {
+      UIDataRowSuffix rowSuffix = new UIDataRowSuffix(clientID);
+      String templateClientID = rowSuffix.getSuffixWithoutRows();
+      UIComponent component = allComponents.get(templateClientID);
+      if (component == null) return null;
+      if (!rowSuffix.hasRowIndexes()) return new RowID(templateClientID, rowSuffix);
+      
+      List<UIData> uiDatas = UIDataRowSuffix.getUIDataAncestors(component);
+      if ((component instanceof UIData) && (rowSuffix.getRowIndexes().size() == uiDatas.size() + 1))
+      {
+         uiDatas.add((UIData)component);
+      }
+      
+      FacesContext facesContext = FacesContextBridge.getCurrentInstance(this.sessionContext);
+      if (!clientID.equals(rowSuffix.toRowClientID(templateClientID, uiDatas, facesContext))) return null;
+      if (!rowClientIDs.containsKey(clientID) && !rowSuffix.rowsAvailable(uiDatas)) return null;
+      
+      return new RowID(templateClientID, rowSuffix);
+   }
+   
+   // Lazy mode only.  A clientID split into its component and its rows.
+   private static class RowID
+   {
+      private String templateClientID;
+      private UIDataRowSuffix rowSuffix;
+      
+      RowID(String templateClientID, UIDataRowSuffix rowSuffix)
+      {
+         this.templateClientID = templateClientID;
+         this.rowSuffix = rowSuffix;
+      }
+   }
+   
+   // Pre-order and post-order numbers of a clientID in the component tree walk.
+   private static class Interval
+   {
+      private int enter;
+      private int exit = Integer.MAX_VALUE;
+      
+      Interval(int enter)
+      {
+         this.enter = enter;
+      }
    }
    
    /**
@@ -0,0 +1,285 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import com.gargoylesoftware.htmlunit.html.DomChangeEvent;
+import com.gargoylesoftware.htmlunit.html.DomChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeEvent;
+import com.gargoylesoftware.htmlunit.html.HtmlAttributeChangeListener;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Index of the elements on an HtmlPage by id suffix.  This lets 
+ * JSFClientSession find an element without evaluating an XPath query over 
+ * the whole page.
+ *
+ * The index is built once per page and then kept up to date by listening 
+ * for DOM changes and id attribute changes, so it stays correct after
+ * javascript or AJAX partial updates.
+ *
+ * Ids are stored reversed and sorted, so all elements whose id ends with 
+ * a suffix form one contiguous range of the map.  Matches are returned in
+ * document order, the same order an XPath query would return them.
+ *
+ * Call detach() when the index is no longer used so that the page does not
+ * keep notifying it.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ElementIDIndex implements DomChangeListener, HtmlAttributeChangeListener
+{
+   private HtmlPage page;
+   
+   // key = reversed element id; value = elements with that id
+   private TreeMap<String, List<Element>> elementsByReversedID = new TreeMap<String, List<Element>>();
+   
+   // key = element; value = the id it is indexed under
+   private Map<Element, String> indexedIDs = new IdentityHashMap<Element, String>();
+   
+   ElementIDIndex(HtmlPage page)
+   {
+      this.page = page;
+      addSubtree(page);
+      page.addDomChangeListener(this);
+      page.addHtmlAttributeChangeListener(this);
+   }
+   
+   /**
+    * Stop listening for changes to the page.  The index must not be used
+    * after it is detached.
+    */
+   synchronized void detach()
+   {
+      page.removeDomChangeListener(this);
+      page.removeHtmlAttributeChangeListener(this);
+      elementsByReversedID.clear();
+      indexedIDs.clear();
+   }
+   
+   /**
+    * Get the page this index was built for.
+    */
+   HtmlPage getPage()
+   {
+      return this.page;
+   }
+   
+   /**
+    * Find all elements whose id ends with the given suffix.
+    *
+    * @param suffix The id suffix.
+    *
+    * @return The matching elements in document order.  The List is empty 
+    *         if nothing matches.
+    */
+   synchronized List<Element> findElements(String suffix)
+   {
+      String reversedSuffix = reverse(suffix);
+      List<Element> matches = new ArrayList<Element>(1);
+      
+      SortedMap<String, List<Element>> tail = elementsByReversedID.tailMap(reversedSuffix);
+      for (Iterator<Map.Entry<String, List<Element>>> i = tail.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, List<Element>> entry = i.next();
+         if (!entry.getKey().startsWith(reversedSuffix)) break;
+         matches.addAll(entry.getValue());
+      }
+      
+      if (matches.size() > 1) sortInDocumentOrder(matches);
+      return matches;
+   }
+   
+   private static void sortInDocumentOrder(List<Element> elements)
+   {
+      // find each position once instead of once per comparison
+      final Map<Element, List<Integer>> positions = new IdentityHashMap<Element, List<Integer>>();
+      for (Iterator<Element> i = elements.iterator(); i.hasNext();)
+      {
+         Element element = i.next();
+         positions.put(element, documentPosition(element));
+      }
+      
+      Collections.sort(elements, new Comparator<Element>()
+      {
+         public int compare(Element element1, Element element2)
+         {
+            List<Integer> position1 = positions.get(element1);
+            List<Integer> position2 = positions.get(element2);
+            int length = Math.min(position1.size(), position2.size());
+            for (int i=0; i < length; i++)
+            {
+               int compare = position1.get(i).compareTo(position2.get(i));
+               if (compare != 0) return compare;
+            }
+            
+            // an ancestor comes before its descendants
+            return position1.size() - position2.size();
+         }
+      });
+   }
+   
+   // sibling index of the node and each of its ancestors, root first
+   private static List<Integer> documentPosition(Node node)
+   {
+      List<Integer> position = new ArrayList<Integer>();
+      for (; node.getParentNode() != null; node = node.getParentNode())
+      {
+         int index = 0;
+         for (Node sibling = node.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling())
+         {
+            index++;
+         }
+         position.add(0, Integer.valueOf(index));
+      }
+      
+      return position;
+   }
+   
+   private void addSubtree(Node node)
+   {
+      if (node instanceof Element) addElement((Element)node);
+      
+      for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+      {
+         addSubtree(child);
+      }
+   }
+   
+   private void removeSubtree(Node node)
+   {
+      if (node instanceof Element) removeElement((Element)node);
+      
+      for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+      {
+         removeSubtree(child);
+      }
+   }
+   
+   private void addElement(Element element)
+   {
+      // never index the same element twice
+      removeElement(element);
+      
+      String id = element.getAttribute("id");
+      if ((id == null) || (id.length() == 0)) return;
+      
+      String reversedID = reverse(id);
+      List<Element> elements = elementsByReversedID.get(reversedID);
+      if (elements == null)
+      {
+         elements = new ArrayList<Element>(1);
+         elementsByReversedID.put(reversedID, elements);
+      }
+      
+      elements.add(element);
+      indexedIDs.put(element, id);
+   }
+   
+   private void removeElement(Element element)
+   {
+      String id = indexedIDs.remove(element);
+      if (id == null) return;
+      
+      String reversedID = reverse(id);
+      List<Element> elements = elementsByReversedID.get(reversedID);
+      if (elements == null) return;
+      
+      for (Iterator<Element> i = elements.iterator(); i.hasNext();)
+      {
+         if (i.next() == element) i.remove();
+      }
+      
+      if (elements.isEmpty()) elementsByReversedID.remove(reversedID);
+   }
+   
+   private static String reverse(String string)
+   {
+      return new StringBuilder(string).reverse().toString();
+   }
+   
+   //----------- Implementation of DomChangeListener
+   public synchronized void nodeAdded(DomChangeEvent event)
+   {
+      addSubtree(event.getChangedNode());
+   }
+
+   public synchronized void nodeDeleted(DomChangeEvent event)
+   {
+      removeSubtree(event.getChangedNode());
+   }
+   
+   //----------- Implementation of HtmlAttributeChangeListener
+   public void attributeAdded(HtmlAttributeChangeEvent event)
+   {
+      idChanged(event);
+   }
+
+   public void attributeRemoved(HtmlAttributeChangeEvent event)
+   {
+      idChanged(event);
+   }
+
+   public void attributeReplaced(HtmlAttributeChangeEvent event)
+   {
+      idChanged(event);
+   }
+   
+   private synchronized void idChanged(HtmlAttributeChangeEvent event)
+   {
+      if (!"id".equalsIgnoreCase(event.getName())) return;
+      
+      // The page is told about id changes to elements that have been
+      // created or removed by javascript but are not in the document.
+      Element element = event.getHtmlElement();
+      if (isInDocument(element))
+      {
+         addElement(element);
+      }
+      else
+      {
+         removeElement(element);
+      }
+   }
+   
+   private boolean isInDocument(Node node)
+   {
+      for (; node != null; node = node.getParentNode())
+      {
+         if (node == page) return true;
+      }
+      
+      return false;
+   }
+}
@@ -0,0 +1,699 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.jsfsession;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import org.jboss.jsfunit.framework.RequestListener;
+
+/**
+ * RequestListener that records the requests made by HtmlUnit in the HTTP 
+ * Archive (HAR) 1.2 format, so they can be loaded into a HAR viewer.
+ *
+ * The newest entries are kept in a bounded ring buffer.  The HAR file is 
+ * written by a background thread when the recorder is flushed or closed, 
+ * so the test thread never waits for the disk.  The recorder is closed when
+ * the test is done with its WebClient, at the latest when its session ends.
+ *
+ * The background thread lives as long as the web app.  The JSFUnitFilter 
+ * starts it with startWriter() and stops it with stopWriter(), which also 
+ * writes the entries of recorders that were never closed.  Without a 
+ * running writer, HAR files are written on the calling thread.  Response 
+ * bodies are only captured for textual content types, and only if a body
+ * limit is set.
+ *
+ * HtmlUnit only reports the total load time of a response.  It is recorded
+ * as the wait time.  Time spent in the client before the request is sent 
+ * is recorded as blocked.
+ *
+ * To enable, set system property jsfunit.har to the directory for the HAR
+ * files.  Each JSFSession gets its own file, named after the Cactus test 
+ * method when it is known.  Other settings are:
+ * <ul>
+ * <li>jsfunit.har.entries - The size of the ring buffer.  The default is 1000.</li>
+ * <li>jsfunit.har.bodylimit - The number of characters of each response body to capture.  The default is 0.</li>
+ * <li>jsfunit.har.gzip - If set, the HAR files are compressed.</li>
+ * </ul>
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class HarRecorder implements RequestListener, Closeable
+{
+   public static final String HAR_PROPERTY = "jsfunit.har";
+   public static final String ENTRIES_PROPERTY = "jsfunit.har.entries";
+   public static final String BODY_LIMIT_PROPERTY = "jsfunit.har.bodylimit";
+   public static final String GZIP_PROPERTY = "jsfunit.har.gzip";
+   
+   public static final int DEFAULT_MAX_ENTRIES = 1000;
+   
+   // Cactus params that name the test being run by the ServletRedirector
+   private static final String TEST_CLASS_PARAM = "Cactus_TestClass";
+   private static final String TEST_METHOD_PARAM = "Cactus_TestMethod";
+   
+   private static final AtomicInteger fileCount = new AtomicInteger();
+   
+   // how long stopWriter() waits for the writes in progress
+   private static final long STOP_WAIT_SECONDS = 10L;
+   
+   // the number of web apps that started the writer
+   private static int writerStarts = 0;
+   
+   // created when the first HAR file is written
+   private static ExecutorService writer;
+   
+   // recorders with entries that are not written or being written yet
+   private static final Set<HarRecorder> unwritten = new LinkedHashSet<HarRecorder>();
+   
+   private File harFile;
+   private int bodyLimit;
+   private boolean gzip;
+   
+   private Entry[] entries;
+   private int nextEntry = 0;
+   private int entryCount = 0;
+   private long droppedCount = 0;
+   
+   private ThreadLocal<Entry> pending = new ThreadLocal<Entry>();
+   
+   /**
+    * Create a new HarRecorder.
+    *
+    * @param harFile The HAR file to write.
+    * @param maxEntries The number of entries to keep.  Older entries are dropped.
+    * @param bodyLimit The number of characters of each textual response body
+    *                  to capture.  Zero captures no bodies.
+    * @param gzip If <code>true</code>, the HAR file is compressed.
+    */
+   public HarRecorder(File harFile, int maxEntries, int bodyLimit, boolean gzip)
+   {
+      if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1");
+      
+      this.harFile = harFile;
+      this.entries = new Entry[maxEntries];
+      this.bodyLimit = bodyLimit;
+      this.gzip = gzip;
+   }
+   
+   /**
+    * Check to see if HAR recording is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   public static boolean enabled()
+   {
+      return System.getProperty(HAR_PROPERTY) != null;
+   }
+   
+   /**
+    * Create a HarRecorder from the system properties.
+    *
+    * @param redirectorParams The params sent to the ServletRedirector, used 
+    *                         to name the HAR file.  Can be <code>null</code>.
+    *
+    * @return The HarRecorder.
+    */
+   static HarRecorder fromSystemProperties(Map redirectorParams)
+   {
+      File directory = new File(System.getProperty(HAR_PROPERTY, ".").trim());
+      boolean gzip = System.getProperty(GZIP_PROPERTY) != null;
+      
+      String name = testName(redirectorParams);
+      if (name == null) name = "jsfunit-" + System.currentTimeMillis() + "-" + fileCount.incrementAndGet();
+      File harFile = new File(directory, name + (gzip ? ".har.gz" : ".har"));
+      
+      return new HarRecorder(harFile, 
+                             intProperty(ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES), 
+                             intProperty(BODY_LIMIT_PROPERTY, 0), 
+                             gzip);
+   }
+   
+   private static String testName(Map redirectorParams)
+   {
+      if (redirectorParams == null) return null;
+      
+      String[] testClass = (String[])redirectorParams.get(TEST_CLASS_PARAM);
+      String[] testMethod = (String[])redirectorParams.get(TEST_METHOD_PARAM);
+      if ((testClass == null) || (testClass.length == 0)) return null;
+      if ((testMethod == null) || (testMethod.length == 0)) return null;
+      
+      return testClass[0] + "." + testMethod[0];
+   }
+   
+   private static int intProperty(String name, int defaultValue)
+   {
+      String property = System.getProperty(name);
+      if ((property == null) || (property.trim().length() == 0)) return defaultValue;
+      
+      try
+      {
+         return Integer.parseInt(property.trim());
+      }
+      catch (NumberFormatException e)
+      {
+         return defaultValue; // ignore - use the default
+      }
+   }
+   
+   /**
+    * Get the HAR file this recorder writes.
+    *
+    * @return The HAR file.
+    */
+   public File getHarFile()
+   {
+      return this.harFile;
+   }
+   
+   /**
+    * Get the number of entries dropped because the ring buffer was full.
+    *
+    * @return The number of dropped entries.
+    */
+   public synchronized long getDroppedCount()
+   {
+      return this.droppedCount;
+   }
+   
+   public void beforeRequest(WebRequest webRequest)
+   {
+      Entry entry = new Entry();
+      entry.startedMillis = System.currentTimeMillis();
+      entry.startedNanos = System.nanoTime();
+      entry.method = webRequest.getHttpMethod().name();
+      entry.url = webRequest.getUrl().toExternalForm();
+      entry.requestHeaders = toPairs(webRequest.getAdditionalHeaders());
+      
+      if (!webRequest.getRequestParameters().isEmpty())
+      {
+         entry.postParams = new ArrayList<NameValuePair>(webRequest.getRequestParameters());
+         entry.postMimeType = webRequest.getEncodingType().getName();
+      }
+      else if (webRequest.getRequestBody() != null)
+      {
+         entry.postText = webRequest.getRequestBody();
+         entry.postMimeType = webRequest.getAdditionalHeaders().get("Content-Type");
+      }
+      
+      this.pending.set(entry);
+   }
+   
+   public void afterRequest(WebResponse webResponse)
+   {
+      Entry entry = this.pending.get();
+      this.pending.remove();
+      if (entry == null) return;
+      
+      long wallMillis = (System.nanoTime() - entry.startedNanos) / 1000000L;
+      if (webResponse != null)
+      {
+         entry.loadTime = webResponse.getLoadTime();
+         entry.status = webResponse.getStatusCode();
+         entry.statusText = webResponse.getStatusMessage();
+         entry.responseHeaders = webResponse.getResponseHeaders();
+         entry.mimeType = webResponse.getContentType();
+         entry.redirectURL = webResponse.getResponseHeaderValue("Location");
+         
+         byte[] content = webResponse.getContentAsBytes();
+         entry.contentSize = (content == null) ? 0 : content.length;
+         if ((this.bodyLimit > 0) && isText(entry.mimeType))
+         {
+            String text = webResponse.getContentAsString();
+            if ((text != null) && (text.length() > this.bodyLimit))
+            {
+               text = text.substring(0, this.bodyLimit);
+               entry.truncated = true;
+            }
+            entry.text = text;
+         }
+      }
+      else
+      {
+         // the request threw an IOException
+         entry.loadTime = wallMillis;
+         entry.statusText = "IOException";
+      }
+      entry.blocked = Math.max(0L, wallMillis - entry.loadTime);
+      
+      add(entry);
+      markUnwritten(this);
+   }
+   
+   /**
+    * Let HAR files be written by a background thread.  The JSFUnitFilter 
+    * calls this when the web app starts.
+    */
+   public static synchronized void startWriter()
+   {
+      writerStarts++;
+   }
+   
+   /**
+    * Stop the background thread once every web app that started it has 
+    * stopped it.  The JSFUnitFilter calls this when the web app stops.  
+    * Writes in progress are finished, and recorders that were never closed 
+    * are written on the calling thread.
+    */
+   public static void stopWriter()
+   {
+      ExecutorService pendingWrites;
+      synchronized (HarRecorder.class)
+      {
+         if (writerStarts > 0) writerStarts--;
+         if (writerStarts > 0) return;
+         
+         pendingWrites = writer;
+         writer = null;
+      }
+      
+      if (pendingWrites != null)
+      {
+         pendingWrites.shutdown();
+         try
+         {
+            pendingWrites.awaitTermination(STOP_WAIT_SECONDS, TimeUnit.SECONDS);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt(); // write what is left on this thread
+         }
+      }
+      
+      List<HarRecorder> recorders;
+      synchronized (unwritten)
+      {
+         recorders = new ArrayList<HarRecorder>(unwritten);
+         unwritten.clear();
+      }
+      
+      for (Iterator<HarRecorder> i = recorders.iterator(); i.hasNext();)
+      {
+         try
+         {
+            i.next().writeNow();
+         }
+         catch (IOException e)
+         {
+            // ignore - the web app is stopping, so write the other files
+         }
+      }
+   }
+   
+   /**
+    * Write the HAR file now, in the background if the writer is running.
+    *
+    * @return A Future that is done when the file has been written.  Its 
+    *         get() method throws an ExecutionException if the write failed.
+    */
+   public Future<File> flush()
+   {
+      markWritten(this);
+      
+      Callable<File> write = new Callable<File>()
+      {
+         public File call() throws IOException
+         {
+            writeNow();
+            return harFile;
+         }
+      };
+      
+      ExecutorService executor = getWriter();
+      if (executor != null)
+      {
+         try
+         {
+            return executor.submit(write);
+         }
+         catch (RejectedExecutionException e)
+         {
+            // the writer was stopped - write on this thread
+         }
+      }
+      
+      FutureTask<File> task = new FutureTask<File>(write);
+      task.run();
+      return task;
+   }
+   
+   /**
+    * Write the HAR file if entries were recorded since it was last written.
+    * Requests made after this are still recorded.
+    */
+   public void close()
+   {
+      if (isUnwritten(this)) flush();
+   }
+   
+   private void writeNow() throws IOException
+   {
+      write(snapshot());
+   }
+   
+   // package private for unit tests
+   static boolean isUnwritten(HarRecorder recorder)
+   {
+      synchronized (unwritten)
+      {
+         return unwritten.contains(recorder);
+      }
+   }
+   
+   private static void markUnwritten(HarRecorder recorder)
+   {
+      synchronized (unwritten)
+      {
+         unwritten.add(recorder);
+      }
+   }
+   
+   // entries recorded after this mark the recorder again
+   private static void markWritten(HarRecorder recorder)
+   {
+      synchronized (unwritten)
+      {
+         unwritten.remove(recorder);
+      }
+   }
+   
+   // null if no web app started the writer
+   private static synchronized ExecutorService getWriter()
+   {
+      if (writerStarts == 0) return null;
+      
+      if (writer == null)
+      {
+         writer = Executors.newSingleThreadExecutor(new ThreadFactory()
+         {
+            public Thread newThread(Runnable runnable)
+            {
+               Thread thread = new Thread(runnable, "JSFUnit-har-writer");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+      }
+      
+      return writer;
+   }
+   
+   private synchronized void add(Entry entry)
+   {
+      if (this.entryCount == this.entries.length)
+      {
+         this.droppedCount++;
+      }
+      else
+      {
+         this.entryCount++;
+      }
+      
+      this.entries[this.nextEntry] = entry;
+      this.nextEntry = (this.nextEntry + 1) % this.entries.length;
+   }
+   
+   // the entries in the order they were recorded
+   private synchronized List<Entry> snapshot()
+   {
+      List<Entry> snapshot = new ArrayList<Entry>(this.entryCount);
+      int first = (this.nextEntry - this.entryCount + this.entries.length) % this.entries.length;
+      for (int i=0; i < this.entryCount; i++)
+      {
+         snapshot.add(this.entries[(first + i) % this.entries.length]);
+      }
+      return snapshot;
+   }
+   
+   private void write(List<Entry> snapshot) throws IOException
+   {
+      File directory = this.harFile.getAbsoluteFile().getParentFile();
+      if (directory != null) directory.mkdirs();
+      
+      File tempFile = new File(this.harFile.getPath() + ".tmp");
+      OutputStream out = new FileOutputStream(tempFile);
+      try
+      {
+         if (this.gzip) out = new GZIPOutputStream(out);
+         Writer har = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+         writeLog(har, snapshot);
+         har.flush();
+      }
+      finally
+      {
+         out.close();
+      }
+      
+      this.harFile.delete();
+      if (!tempFile.renameTo(this.harFile)) throw new IOException("Unable to write " + this.harFile);
+   }
+   
+   private void writeLog(Writer har, List<Entry> snapshot) throws IOException
+   {
+      SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+      dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+      
+      har.write("{\"log\": {\"version\": \"1.2\", \"creator\": {\"name\": \"JSFUnit\", \"version\": \"2.0\"}");
+      long dropped = getDroppedCount();
+      if (dropped > 0) har.write(", \"comment\": \"" + dropped + " older entries were dropped\"");
+      har.write(", \"pages\": [], \"entries\": [");
+      
+      for (Iterator<Entry> i = snapshot.iterator(); i.hasNext();)
+      {
+         Entry entry = i.next();
+         har.write("\n{\"startedDateTime\": ");
+         writeString(har, dateFormat.format(new Date(entry.startedMillis)));
+         har.write(", \"time\": " + (entry.blocked + entry.loadTime));
+         
+         har.write(", \"request\": {\"method\": ");
+         writeString(har, entry.method);
+         har.write(", \"url\": ");
+         writeString(har, entry.url);
+         har.write(", \"httpVersion\": \"HTTP/1.1\", \"cookies\": [], \"headers\": ");
+         writePairs(har, entry.requestHeaders);
+         har.write(", \"queryString\": ");
+         writePairs(har, queryString(entry.url));
+         if ((entry.postParams != null) || (entry.postText != null))
+         {
+            har.write(", \"postData\": {\"mimeType\": ");
+            writeString(har, (entry.postMimeType == null) ? "" : entry.postMimeType);
+            if (entry.postParams != null)
+            {
+               har.write(", \"params\": ");
+               writePairs(har, entry.postParams);
+            }
+            else
+            {
+               har.write(", \"text\": ");
+               writeString(har, entry.postText);
+            }
+            har.write("}");
+         }
+         har.write(", \"headersSize\": -1, \"bodySize\": " + ((entry.postText == null) ? -1 : entry.postText.length()));
+         
+         har.write("}, \"response\": {\"status\": " + entry.status + ", \"statusText\": ");
+         writeString(har, entry.statusText);
+         har.write(", \"httpVersion\": \"HTTP/1.1\", \"cookies\": [], \"headers\": ");
+         writePairs(har, entry.responseHeaders);
+         har.write(", \"content\": {\"size\": " + entry.contentSize + ", \"mimeType\": ");
+         writeString(har, entry.mimeType);
+         if (entry.text != null)
+         {
+            har.write(", \"text\": ");
+            writeString(har, entry.text);
+            if (entry.truncated) har.write(", \"comment\": \"truncated\"");
+         }
+         har.write("}, \"redirectURL\": ");
+         writeString(har, entry.redirectURL);
+         har.write(", \"headersSize\": -1, \"bodySize\": -1}");
+         
+         har.write(", \"cache\": {}, \"timings\": {\"blocked\": " + entry.blocked + 
+                   ", \"dns\": -1, \"connect\": -1, \"send\": 0, \"wait\": " + entry.loadTime + 
+                   ", \"receive\": 0, \"ssl\": -1}}");
+         if (i.hasNext()) har.write(",");
+      }
+      
+      har.write("\n]}}\n");
+   }
+   
+   private static void writePairs(Writer har, List<NameValuePair> pairs) throws IOException
+   {
+      har.write("[");
+      if (pairs != null)
+      {
+         for (Iterator<NameValuePair> i = pairs.iterator(); i.hasNext();)
+         {
+            NameValuePair pair = i.next();
+            har.write("{\"name\": ");
+            writeString(har, pair.getName());
+            har.write(", \"value\": ");
+            writeString(har, pair.getValue());
+            har.write(i.hasNext() ? "}, " : "}");
+         }
+      }
+      har.write("]");
+   }
+   
+   private static void writeString(Writer har, String value) throws IOException
+   {
+      if (value == null) value = "";
+      
+      har.write('"');
+      for (int i=0; i < value.length(); i++)
+      {
+         char c = value.charAt(i);
+         switch (c)
+         {
+            case '"': har.write("\\\""); break;
+            case '\\': har.write("\\\\"); break;
+            case '\n': har.write("\\n"); break;
+            case '\r': har.write("\\r"); break;
+            case '\t': har.write("\\t"); break;
+            default:
+               if (c < 0x20)
+               {
+                  har.write(String.format("\\u%04x", Integer.valueOf(c)));
+               }
+               else
+               {
+                  har.write(c);
+               }
+         }
+      }
+      har.write('"');
+   }
+   
+   private static List<NameValuePair> toPairs(Map<String, String> headers)
+   {
+      List<NameValuePair> pairs = new ArrayList<NameValuePair>(headers.size());
+      for (Iterator<Map.Entry<String, String>> i = headers.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, String> header = i.next();
+         pairs.add(new NameValuePair(header.getKey(), header.getValue()));
+      }
+      return pairs;
+   }
+   
+   private static List<NameValuePair> queryString(String url)
+   {
+      List<NameValuePair> pairs = new ArrayList<NameValuePair>();
+      int start = url.indexOf('?');
+      if (start < 0) return pairs;
+      int end = url.indexOf('#', start);
+      if (end < 0) end = url.length();
+      
+      String[] params = url.substring(start + 1, end).split("&");
+      for (int i=0; i < params.length; i++)
+      {
+         if (params[i].length() == 0) continue;
+         int equals = params[i].indexOf('=');
+         if (equals < 0)
+         {
+            pairs.add(new NameValuePair(decode(params[i]), ""));
+         }
+         else
+         {
+            pairs.add(new NameValuePair(decode(params[i].substring(0, equals)), 
+                                        decode(params[i].substring(equals + 1))));
+         }
+      }
+      return pairs;
+   }
+   
+   private static String decode(String value)
+   {
+      try
+      {
+         return URLDecoder.decode(value, "UTF-8");
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         return value; // ignore - UTF-8 is always supported
+      }
+      catch (IllegalArgumentException e)
+      {
+         return value; // ignore - keep a malformed value as it is
+      }
+   }
+   
+   private static boolean isText(String mimeType)
+   {
+      if (mimeType == null) return false;
+      return mimeType.startsWith("text/") || (mimeType.indexOf("xml") != -1) || 
+             (mimeType.indexOf("javascript") != -1) || (mimeType.indexOf("json") != -1);
+   }
+   
+   private static class Entry
+   {
+      private long startedMillis;
+      private long startedNanos;
+      private long blocked;
+      private long loadTime;
+      
+      private String method;
+      private String url;
+      private List<NameValuePair> requestHeaders;
+      private String postMimeType;
+      private List<NameValuePair> postParams;
+      private String postText;
+      
+      private int status;
+      private String statusText;
+      private List<NameValuePair> responseHeaders;
+      private String mimeType;
+      private String redirectURL;
+      private int contentSize;
+      private String text;
+      private boolean truncated;
+   }
+}
@@ -37,7 +37,10 @@ import org.jboss.jsfunit.framework.RequestListener;
  *
  * @author Stan Silvert
  * @since 1.0
+ * @deprecated Printing every response slows down the tests.  Use the 
+ *             HarRecorder instead.
  */
+@Deprecated
 public class HtmlUnitSnooper implements RequestListener
 {
    public static final String SNOOP_PROPERTY = "jsfunit.htmlunitsnooper";
@@ -86,6 +89,7 @@ public class HtmlUnitSnooper implements RequestListener
       {
          System.out.println("REQUEST THREW IOException.  Response is null.");
          System.out.println("---------------------------------------------------------------");
+         return;
       }
       
       System.out.println("Response time=" + webResponse.getLoadTime() + "ms");
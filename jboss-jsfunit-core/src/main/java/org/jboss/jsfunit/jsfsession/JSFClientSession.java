@@ -43,6 +43,7 @@ import javax.faces.component.UIComponent;
 import javax.faces.component.UISelectItem;
 import javax.faces.component.html.HtmlSelectOneRadio;
 import javax.faces.context.FacesContext;
+import org.jboss.jsfunit.framework.JSFUnitWebConnection;
 import org.w3c.dom.Element;
 
 /**
@@ -57,6 +58,9 @@ public class JSFClientSession
    private JSFServerSession jsfServerSession;
    private WebClient webClient;
    
+   // id index of the current HtmlPage
+   private ElementIDIndex elementIDIndex;
+   
    JSFClientSession(WebClient webClient, JSFServerSession jsfServerSession)
    {
       this.webClient = webClient;
@@ -101,9 +105,7 @@ public class JSFClientSession
     */
    public Element getElement(String componentID)
    {
-      DomNode domPage = (DomNode)getContentPage();
-      String xpathQuery = buildXPathQuery(componentID);
-      List elements = domPage.getByXPath(xpathQuery);
+      List elements = findElements(componentID);
       if (elements.size() == 0) return null;
       if (elements.size() == 1) return (Element)elements.get(0);
       Element exactMatch = findExactMatch(elements, componentID);
@@ -111,6 +113,28 @@ public class JSFClientSession
       throw new DuplicateClientIDException(elements, componentID);
    }
    
+   private List findElements(String componentID)
+   {
+      Page page = getContentPage();
+      
+      // the old page must not keep notifying an index nobody uses
+      if ((elementIDIndex != null) && (elementIDIndex.getPage() != page))
+      {
+         elementIDIndex.detach();
+         elementIDIndex = null;
+      }
+      
+      if (page instanceof HtmlPage)
+      {
+         if (elementIDIndex == null) elementIDIndex = new ElementIDIndex((HtmlPage)page);
+         return elementIDIndex.findElements(componentID);
+      }
+      
+      DomNode domPage = (DomNode)page;
+      String xpathQuery = buildXPathQuery(componentID);
+      return domPage.getByXPath(xpathQuery);
+   }
+   
    // JSFUNIT-178
    private Element findExactMatch(List elements, String componentID)
    {
@@ -188,7 +212,16 @@ public class JSFClientSession
    {
       HtmlElement element = (HtmlElement)getElement(componentID);
       if (element == null) throw new ComponentIDNotFoundException(componentID);
-      element.type(c);
+      
+      long start = System.nanoTime();
+      try
+      {
+         element.type(c);
+      }
+      finally
+      {
+         clientDone(start);
+      }
    }
    
    /**
@@ -203,6 +236,25 @@ public class JSFClientSession
     * @throws IOException if clicking causes a failed request to the server.
     */
    public void click(String componentID) throws IOException
+   {
+      long start = System.nanoTime();
+      try
+      {
+         clickComponent(componentID);
+      }
+      finally
+      {
+         clientDone(start);
+      }
+   }
+   
+   // the client time of the request made by a click or a keystroke ends here
+   private void clientDone(long start)
+   {
+      ((JSFUnitWebConnection)webClient.getWebConnection()).clientDone(start);
+   }
+   
+   private void clickComponent(String componentID) throws IOException
    {
       Element element = getElement(componentID);
       
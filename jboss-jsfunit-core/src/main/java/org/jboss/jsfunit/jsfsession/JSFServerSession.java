@@ -26,14 +26,22 @@ import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebRequestSettings;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import java.util.Iterator;
+import java.util.List;
 import javax.faces.application.FacesMessage;
+import javax.faces.component.ContextCallback;
 import javax.faces.component.UIComponent;
+import javax.faces.component.UIData;
 import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
-import org.jboss.jsfunit.context.JSFUnitFacesContext;
 import org.jboss.jsfunit.context.NoNewEntryMap;
 import org.jboss.jsfunit.framework.FacesContextBridge;
+import org.jboss.jsfunit.framework.JSFUnitSessionContext;
 import org.jboss.jsfunit.framework.RequestListener;
+import org.jboss.jsfunit.profile.ActionProfile;
+import org.jboss.jsfunit.profile.ELProfile;
+import org.jboss.jsfunit.profile.RenderProfile;
+import org.jboss.jsfunit.profile.ValidationProfile;
+import org.jboss.jsfunit.profile.ViewStateProfile;
 
 /**
  * The JSFServerSession provides a simplified API that wraps parts of the JSF API 
@@ -44,16 +52,21 @@ import org.jboss.jsfunit.framework.RequestListener;
  */
 public class JSFServerSession implements RequestListener
 {
+   private JSFUnitSessionContext sessionContext;
+   
    private ClientIDs clientIDs;
+   
+   // the FacesContext that clientIDs was built from
    private FacesContext currentFacesContext;
    
    /**
     * Create a new JSFServerSession.
     * 
-    * @param client The JSFClientSession for the current web conversation.
+    * @param sessionContext The JSFUnitSessionContext for the current web conversation.
     */
-   JSFServerSession()
+   JSFServerSession(JSFUnitSessionContext sessionContext)
    {
+      this.sessionContext = sessionContext;
       pageCreated();
    }
    
@@ -61,11 +74,29 @@ public class JSFServerSession implements RequestListener
     * Get the immutable ClientIDs object.  This is typically used only by
     * JSFUnit.
     * 
-    * @return The ClientIDs object
+    * The ClientIDs object is built the first time it is needed after a
+    * request that created a new view.  Requests that never touch the 
+    * server-side component tree don't pay for walking it.
+    * 
+    * @return The ClientIDs object, or <code>null</code> if no FacesContext
+    *         exists yet.
     * @see org.jboss.jsfunit.jsfsession.ClientIDs
     */
    public ClientIDs getClientIDs()
    {
+      FacesContext facesContext = getFacesContext();
+      
+      // if no FacesContext exists, we can't get the Client IDs
+      if (facesContext == null) return this.clientIDs;
+      
+      // Peformance optimization.  If the FacesContext instance didn't change,
+      // there is no need to re-create the ClientIDs.
+      if (this.currentFacesContext != facesContext)
+      {
+         this.clientIDs = new ClientIDs(this.sessionContext);  
+         this.currentFacesContext = facesContext;
+      }
+      
       return this.clientIDs;
    }
    
@@ -86,7 +117,7 @@ public class JSFServerSession implements RequestListener
     */
    public FacesContext getFacesContext()
    {
-      return FacesContextBridge.getCurrentInstance();
+      return FacesContextBridge.getCurrentInstance(this.sessionContext);
    }
    
    /**
@@ -101,7 +132,7 @@ public class JSFServerSession implements RequestListener
     */
    public UIComponent findComponent(String componentID)
    {
-      return clientIDs.findComponent(componentID);
+      return getClientIDs().findComponent(componentID);
    }
    
    /**
@@ -118,7 +149,69 @@ public class JSFServerSession implements RequestListener
     */
    public Object getComponentValue(String componentID)
    {
-      return clientIDs.getComponentValue(componentID);
+      return getClientIDs().getComponentValue(componentID);
+   }
+   
+   /**
+    * Take a snapshot of every value in a UIData such as an h:dataTable.  
+    * Each row of the table is positioned exactly once.
+    *
+    * @param tableID The JSF component ID or client ID suffix of the UIData.
+    *
+    * @return The row-major snapshot.
+    *
+    * @throws ComponentIDNotFoundException if the component can not be found 
+    * @throws DuplicateClientIDException if more than one client ID matches the tableID suffix
+    * @throws ClassCastException if the found component is not a UIData
+    */
+   public UIDataValues getTableValues(String tableID)
+   {
+      return snapshotTable(tableID, null);
+   }
+   
+   /**
+    * Get the values of one column of a UIData such as an h:dataTable.  
+    * Each row of the table is positioned exactly once.
+    *
+    * @param tableID The JSF component ID or client ID suffix of the UIData.
+    * @param columnComponentID The JSF component ID of a ValueHolder inside the 
+    *                          table, or its client ID suffix relative to the table.
+    *
+    * @return The values, one per row.
+    *
+    * @throws ComponentIDNotFoundException if the table or column can not be found 
+    * @throws DuplicateClientIDException if more than one client ID matches the tableID or columnComponentID
+    * @throws ClassCastException if the found table component is not a UIData
+    */
+   public List<Object> getColumnValues(String tableID, String columnComponentID)
+   {
+      if (columnComponentID == null) throw new NullPointerException();
+      
+      UIDataValues values = snapshotTable(tableID, columnComponentID);
+      return values.getColumn(values.getColumnIDs().get(0));
+   }
+   
+   private UIDataValues snapshotTable(String tableID, final String columnComponentID)
+   {
+      String clientID = getClientIDs().findClientID(tableID);
+      if (!(getClientIDs().findComponent(tableID) instanceof UIData))
+      {
+         throw new ClassCastException(tableID + " must be an instance of UIData.");
+      }
+      
+      // invokeOnComponent() positions the rows of any outer UIData 
+      final UIDataValues[] values = new UIDataValues[1];
+      FacesContext facesContext = getFacesContext();
+      facesContext.getViewRoot().invokeOnComponent(facesContext, clientID, new ContextCallback()
+      {
+         public void invokeContextCallback(FacesContext facesContext, UIComponent target)
+         {
+            values[0] = UIDataValues.snapshot((UIData)target, columnComponentID, facesContext);
+         }
+      });
+      
+      if (values[0] == null) throw new ComponentIDNotFoundException(tableID);
+      return values[0];
    }
    
    /**
@@ -203,27 +296,148 @@ public class JSFServerSession implements RequestListener
     */
    public Iterator<FacesMessage> getFacesMessages(String componentID)
    {
-      String clientID = this.clientIDs.findClientID(componentID);
+      String clientID = getClientIDs().findClientID(componentID);
       return getFacesContext().getMessages(clientID);
    }
 
+   /**
+    * Get the cost of saving and restoring the view during the last JSF request.
+    *
+    * @return The ViewStateProfile.  It is empty if the last request did not
+    *         save or restore a view or if view state profiling is not enabled
+    *         with system property jsfunit.profile.viewstate.
+    */
+   public ViewStateProfile getViewStateProfile()
+   {
+      return ViewStateProfile.findProfile(getFacesContext());
+   }
+   
+   /**
+    * Assert that the view state saved during the last JSF request is smaller
+    * than a number of bytes.  The serialized size of the state is used, so 
+    * the assertion means the same thing for client and server state saving.
+    * View state profiling must be enabled with system property 
+    * jsfunit.profile.viewstate.
+    *
+    * @param bytes The maximum size, exclusive.
+    *
+    * @throws AssertionError if the state is as large as bytes or larger.
+    * @throws IllegalStateException if the last request did not save a 
+    *                               Serializable view state.
+    */
+   public void assertViewStateUnder(long bytes)
+   {
+      ViewStateProfile profile = getViewStateProfile();
+      long stateSize = profile.getSerializedSize();
+      if (stateSize < 0)
+      {
+         if (!ViewStateProfile.enabled())
+         {
+            throw new IllegalStateException("View state profiling is not enabled.  Set system property " +
+                                            ViewStateProfile.PROFILE_PROPERTY + ".");
+         }
+         
+         throw new IllegalStateException("The last request did not save a Serializable view state.");
+      }
+      
+      if (stateSize >= bytes)
+      {
+         throw new AssertionError("View state of " + getCurrentViewID() + " is " + stateSize + 
+                                  " bytes.  Expected under " + bytes + " bytes.");
+      }
+   }
+   
+   /**
+    * Get the render time and output of each component during the last JSF 
+    * request.
+    *
+    * @return The RenderProfile.  It is empty if the last request did not
+    *         render a view or if render profiling is not enabled with system
+    *         property jsfunit.profile.render.
+    */
+   public RenderProfile getRenderProfile()
+   {
+      return RenderProfile.findProfile(getFacesContext());
+   }
+   
+   /**
+    * Get the EL evaluations made during the last JSF request, with the 
+    * hottest and the duplicated ones.
+    *
+    * @return The ELProfile.  It is empty if the last request evaluated no EL
+    *         or if EL profiling is not enabled with system property 
+    *         jsfunit.profile.el.
+    */
+   public ELProfile getELProfile()
+   {
+      return ELProfile.findProfile(getFacesContext());
+   }
+   
+   /**
+    * Get the time spent converting and validating each component during the
+    * last JSF request.
+    *
+    * @return The ValidationProfile.  It is empty if no component was 
+    *         validated or if validation profiling is not enabled with system
+    *         property jsfunit.profile.validation.
+    */
+   public ValidationProfile getValidationProfile()
+   {
+      return ValidationProfile.findProfile(getFacesContext());
+   }
+   
+   /**
+    * Assert that converting and validating a component took less than a 
+    * number of milliseconds during the last JSF request.
+    *
+    * @param componentID The JSF component ID or client ID suffix.
+    * @param millis The budget, exclusive.
+    *
+    * @throws AssertionError if the budget was exceeded.
+    * @throws ComponentIDNotFoundException if the component can not be found 
+    * @throws DuplicateClientIDException if more than one client ID matches the componentID suffix
+    */
+   public void assertValidationUnder(String componentID, long millis)
+   {
+      String clientID = getClientIDs().findClientID(componentID);
+      getValidationProfile().assertComponentUnder(clientID, millis);
+   }
+   
+   /**
+    * Get the actions and navigations that ran during the last JSF request.
+    *
+    * @return The ActionProfile.  It is empty if no action ran or if action
+    *         profiling is not enabled with system property 
+    *         jsfunit.profile.action.
+    */
+   public ActionProfile getActionProfile()
+   {
+      return ActionProfile.findProfile(getFacesContext());
+   }
+   
+   /**
+    * Assert that an action method took less than a number of milliseconds
+    * during the last JSF request.
+    *
+    * @param expression The method expression, such as "#{hotelBooking.bookHotel}".
+    * @param millis The budget, exclusive.
+    *
+    * @throws AssertionError if the budget was exceeded.
+    */
+   public void assertActionUnder(String expression, long millis)
+   {
+      getActionProfile().assertActionUnder(expression, millis);
+   }
+   
    private void pageCreated()
    {
       // Note that the FacesContextBridge not only provides us with the FacesContext, 
       // it also associates the FacesContext with the JSFUnit thread so that 
       // FacesContext.getCurrentInstance() will work.
-      JSFUnitFacesContext facesContext = (JSFUnitFacesContext)FacesContextBridge.getCurrentInstance();
-      
-      // if no FacesContext exists, we can're get the Client IDs
-      if (facesContext == null) return;
-      
-      // Peformance optimization.  If the FacesContext instance didn're change,
-      // there is no need to re-create the ClientIDs.
-      if (this.currentFacesContext != facesContext)
-      {
-         this.clientIDs = new ClientIDs();  
-         this.currentFacesContext = facesContext;
-      }
+      //
+      // The ClientIDs are not built here.  That is deferred until a test
+      // actually asks for a component.  See getClientIDs().
+      FacesContextBridge.getCurrentInstance(this.sessionContext);
    }
 
    //----------- Implementation of RequestListener
@@ -25,7 +25,9 @@ package org.jboss.jsfunit.jsfsession;
 import com.gargoylesoftware.htmlunit.WebClient;
 import java.io.IOException;
 import java.util.Map;
+import org.jboss.jsfunit.framework.JSFUnitSessionContext;
 import org.jboss.jsfunit.framework.JSFUnitWebConnection;
+import org.jboss.jsfunit.framework.LatencyReport;
 import org.jboss.jsfunit.framework.WebClientSpec;
 
 /**
@@ -39,6 +41,8 @@ public class JSFSession
    private JSFServerSession jsfServerSession;
    private JSFClientSession jsfClientSession;
    private WebClient webClient;
+   private JSFUnitSessionContext sessionContext;
+   private HarRecorder harRecorder;
    
    /**
     * Creates a new session for testing the JSF application.   
@@ -77,13 +81,22 @@ public class JSFSession
    public JSFSession(WebClientSpec wcSpec) throws IOException
    {
       this.webClient = wcSpec.getWebClient();
+      this.sessionContext = wcSpec.getSessionContext();
       
+      JSFUnitWebConnection webConnection = (JSFUnitWebConnection)this.webClient.getWebConnection();
+      if (HarRecorder.enabled())
+      {
+         this.harRecorder = HarRecorder.fromSystemProperties(this.sessionContext.getRedirectorRequestParams());
+         webConnection.addListener(this.harRecorder);
+      }
+      
+      long start = System.nanoTime();
       wcSpec.doInitialRequest();
+      webConnection.clientDone(start);
   
-      this.jsfServerSession = new JSFServerSession();
+      this.jsfServerSession = new JSFServerSession(this.sessionContext);
       this.jsfClientSession = new JSFClientSession(webClient, jsfServerSession);
       
-      JSFUnitWebConnection webConnection = (JSFUnitWebConnection)this.webClient.getWebConnection();
       webConnection.addListener(this.jsfServerSession);
       
       if (HtmlUnitSnooper.enabled()) webConnection.addListener(new HtmlUnitSnooper());
@@ -100,7 +113,19 @@ public class JSFSession
     */
    public Map getRedirectorRequestParams()
    {
-      return WebClientSpec.getRedirectorRequestParams();
+      return this.sessionContext.getRedirectorRequestParams();
+   }
+   
+   /**
+    * Get the JSFUnitSessionContext that holds the HttpSession and WAR URL
+    * used by this JSFSession.
+    *
+    * @return The JSFUnitSessionContext.
+    * @since 2.0
+    */
+   public JSFUnitSessionContext getSessionContext()
+   {
+      return this.sessionContext;
    }
    
    /**
@@ -113,6 +138,30 @@ public class JSFSession
       return this.webClient;
    }
    
+   /**
+    * Get the HarRecorder that records the requests of this session.
+    *
+    * @return The HarRecorder, or <code>null</code> if system property 
+    *         jsfunit.har is not set.
+    * @since 2.0
+    */
+   public HarRecorder getHarRecorder()
+   {
+      return this.harRecorder;
+   }
+   
+   /**
+    * Get the client and server timings of the latest requests made by this 
+    * session.
+    *
+    * @return The LatencyReport.
+    * @since 2.0
+    */
+   public LatencyReport getLatencyReport()
+   {
+      return ((JSFUnitWebConnection)this.webClient.getWebConnection()).getLatencyReport();
+   }
+   
    /**
     * Get the JSFServerSession instance used to access server-side JSF artifacts.
     *
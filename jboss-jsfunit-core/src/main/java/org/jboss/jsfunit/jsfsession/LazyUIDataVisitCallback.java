@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIData;
+import javax.faces.component.visit.VisitCallback;
+import javax.faces.component.visit.VisitContext;
+import javax.faces.component.visit.VisitHint;
+import javax.faces.component.visit.VisitResult;
+import javax.faces.context.FacesContext;
+
+/**
+ * Walks the component tree for ClientIDs in lazy UIData mode using the
+ * JSF 2.0 visitTree() API.  A UIData would visit its children once per row,
+ * so the callback visits the facets and children of a UIData itself, with
+ * no row set, and rejects the UIData's own visit of them.  
+ * VisitHint.SKIP_ITERATION would do the same, but it is only in JSF 2.1.
+ *
+ * No other VisitHint is used.  Unrendered components are visited, as they
+ * are by the eager walk.
+ *
+ * This class must only be loaded if Environment.is20Compatible().
+ *
+ * @author agent
+ * @since 2.0
+ */
+class LazyUIDataVisitCallback implements VisitCallback
+{
+   private ClientIDs clientIDs;
+   
+   private LazyUIDataVisitCallback(ClientIDs clientIDs)
+   {
+      this.clientIDs = clientIDs;
+   }
+   
+   /**
+    * Visit every component in the tree without iterating UIData rows.
+    *
+    * @param root The root of the tree.
+    * @param facesContext The FacesContext.
+    * @param clientIDs The ClientIDs to add each component to.
+    */
+   static void visitTree(UIComponent root, FacesContext facesContext, ClientIDs clientIDs)
+   {
+      if (root == null) return;
+      
+      VisitContext visitContext = VisitContext.createVisitContext(facesContext, 
+                                                                  null, 
+                                                                  EnumSet.noneOf(VisitHint.class));
+      root.visitTree(visitContext, new LazyUIDataVisitCallback(clientIDs));
+      clientIDs.endVisit();
+   }
+
+   public VisitResult visit(VisitContext visitContext, UIComponent target)
+   {
+      clientIDs.addVisitedComponent(target, visitContext.getFacesContext());
+      if (!(target instanceof UIData)) return VisitResult.ACCEPT;
+      
+      for (Iterator<UIComponent> facetsAndChildren = target.getFacetsAndChildren(); facetsAndChildren.hasNext();)
+      {
+         facetsAndChildren.next().visitTree(visitContext, this);
+      }
+      return VisitResult.REJECT;
+   }
+}
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.faces.component.ContextCallback;
+import javax.faces.component.NamingContainer;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIData;
+import javax.faces.component.ValueHolder;
+import javax.faces.context.FacesContext;
+
+/**
+ * Used by ClientIDs in lazy UIData mode.  This class splits a client ID
+ * suffix such as "mytable:12:name" into its row indexes and the suffix 
+ * that the component has when no row is set ("mytable:name").  It also
+ * positions only the rows named in a row-specific client ID, and only 
+ * accepts rows that are rendered on the page.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class UIDataRowSuffix
+{
+   private static final String SEPARATOR = String.valueOf(NamingContainer.SEPARATOR_CHAR);
+   
+   // a longer row index could not be an int
+   private static final int MAX_ROW_INDEX_DIGITS = 9;
+   
+   private String suffix;
+   private String suffixWithoutRows;
+   private List<Integer> rowIndexes = new ArrayList<Integer>();
+   private boolean startsWithRowIndex = false;
+   
+   UIDataRowSuffix(String suffix)
+   {
+      this.suffix = suffix;
+      
+      String[] segments = suffix.split(SEPARATOR, -1);
+      StringBuilder withoutRows = new StringBuilder();
+      boolean firstKept = true;
+      for (int i=0; i < segments.length; i++)
+      {
+         String segment = segments[i];
+         if (isRowIndex(segment))
+         {
+            // JSF component IDs can't start with a digit, so this must be
+            // a row index.  But if it's the first segment it might only be 
+            // the end of one ("2" in "12").
+            if (i == 0) this.startsWithRowIndex = true;
+            this.rowIndexes.add(Integer.valueOf(segment));
+            continue;
+         }
+         
+         if (!firstKept) withoutRows.append(SEPARATOR);
+         withoutRows.append(segment);
+         firstKept = false;
+      }
+      
+      this.suffixWithoutRows = withoutRows.toString();
+   }
+   
+   private static boolean isRowIndex(String segment)
+   {
+      if ((segment.length() == 0) || (segment.length() > MAX_ROW_INDEX_DIGITS)) return false;
+      
+      for (int i=0; i < segment.length(); i++)
+      {
+         if (!Character.isDigit(segment.charAt(i))) return false;
+      }
+      
+      return true;
+   }
+   
+   /**
+    * Get the suffix with all row indexes removed.
+    */
+   String getSuffixWithoutRows()
+   {
+      return this.suffixWithoutRows;
+   }
+   
+   /**
+    * Does the suffix contain at least one row index?
+    */
+   boolean hasRowIndexes()
+   {
+      return !this.rowIndexes.isEmpty();
+   }
+   
+   /**
+    * Put the row indexes back into the full client ID of the component.
+    * 
+    * @param templateClientID The full client ID of the component when no 
+    *                         row is set.
+    * @param uiDataAncestors The UIData ancestors of the component, outermost 
+    *                        first.  The last one can be the component itself, 
+    *                        for the client ID of one of its rows.
+    * @param facesContext The FacesContext.
+    * 
+    * @return The row-specific client ID, or <code>null</code> if the row 
+    *         indexes in the suffix can't be matched up with the UIData ancestors.
+    */
+   String toRowClientID(String templateClientID, 
+                        List<UIData> uiDataAncestors, 
+                        FacesContext facesContext)
+   {
+      if (this.startsWithRowIndex) return null;
+      if (this.rowIndexes.size() != uiDataAncestors.size()) return null;
+      
+      // insert innermost first so that the offsets of the outer ones don't move
+      StringBuilder rowClientID = new StringBuilder(templateClientID);
+      for (int i = uiDataAncestors.size() - 1; i >= 0; i--)
+      {
+         String uiDataClientID = uiDataAncestors.get(i).getClientId(facesContext);
+         if (!templateClientID.equals(uiDataClientID) && 
+             !templateClientID.startsWith(uiDataClientID + SEPARATOR)) return null;
+         rowClientID.insert(uiDataClientID.length(), SEPARATOR + this.rowIndexes.get(i));
+      }
+      
+      // make sure each row index was next to the right UIData in the suffix
+      if (!rowClientID.toString().endsWith(this.suffix)) return null;
+      
+      return rowClientID.toString();
+   }
+   
+   /**
+    * Find the UIData ancestors of a component for which the component is 
+    * repeated once per row.  Facets of a UIData, such as headers and footers,
+    * are not repeated.
+    *
+    * @param component The component.
+    *
+    * @return The UIData ancestors, outermost first.
+    */
+   static List<UIData> getUIDataAncestors(UIComponent component)
+   {
+      List<UIData> uiDataAncestors = new ArrayList<UIData>();
+      
+      UIComponent child = component;
+      UIComponent parent = component.getParent();
+      while (parent != null)
+      {
+         if ((parent instanceof UIData) && !isFacet(parent, child))
+         {
+            uiDataAncestors.add(0, (UIData)parent);
+         }
+         
+         child = parent;
+         parent = parent.getParent();
+      }
+      
+      return uiDataAncestors;
+   }
+   
+   private static boolean isFacet(UIComponent parent, UIComponent child)
+   {
+      return (parent.getFacetCount() > 0) && parent.getFacets().containsValue(child);
+   }
+   
+   /**
+    * Determine if every row named in the suffix exists and is rendered.
+    * The rows are positioned one UIData at a time, outermost first, and 
+    * are reset afterwards.
+    *
+    * @param uiDatas The UIData for each row index, outermost first.
+    *
+    * @return <code>true</code> if the rows exist, <code>false</code> otherwise.
+    */
+   boolean rowsAvailable(List<UIData> uiDatas)
+   {
+      if (uiDatas.size() != this.rowIndexes.size()) return false;
+      
+      int positioned = 0;
+      try
+      {
+         for (int i=0; i < uiDatas.size(); i++)
+         {
+            UIData uiData = uiDatas.get(i);
+            int rowIndex = this.rowIndexes.get(i).intValue();
+            if (!UIDataRowWindow.contains(uiData, rowIndex)) return false;
+            
+            uiData.setRowIndex(rowIndex);
+            positioned++;
+            if (!uiData.isRowAvailable()) return false;
+         }
+         
+         return true;
+      }
+      catch (RuntimeException e)
+      {
+         // ignore see JSFUNIT-215
+         return false;
+      }
+      finally
+      {
+         for (int i = positioned - 1; i >= 0; i--)
+         {
+            try
+            {
+               uiDatas.get(i).setRowIndex(-1);
+            }
+            catch (RuntimeException e)
+            {
+               // ignore see JSFUNIT-215
+            }
+         }
+      }
+   }
+   
+   /**
+    * Get the rows named in the suffix.
+    *
+    * @return The row indexes, outermost first.
+    */
+   List<Integer> getRowIndexes()
+   {
+      return this.rowIndexes;
+   }
+   
+   /**
+    * Get the value of a component in a UIData.  Only the rows named in
+    * the client ID are positioned, and they are restored afterwards.
+    *
+    * @param rowClientID The row-specific client ID of a ValueHolder.
+    * @param facesContext The FacesContext.
+    *
+    * @return The value.
+    */
+   static Object getRowValue(String rowClientID, FacesContext facesContext)
+   {
+      final Object[] value = new Object[1];
+      facesContext.getViewRoot().invokeOnComponent(facesContext, rowClientID, new ContextCallback()
+      {
+         public void invokeContextCallback(FacesContext facesContext, UIComponent target)
+         {
+            value[0] = ((ValueHolder)target).getValue();
+         }
+      });
+      
+      return value[0];
+   }
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.jsfsession;
+
+import javax.faces.component.UIData;
+
+/**
+ * The rows of a UIData that are rendered on the current page: from 
+ * getFirst() for getRows() rows, or to the last row if getRows() is zero.
+ * ClientIDs and UIDataValues use the same window, so lazy lookups, eager
+ * lookups and value snapshots all see the same rows.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class UIDataRowWindow
+{
+   // only static methods
+   private UIDataRowWindow()
+   {
+   }
+   
+   /**
+    * Get the first rendered row.
+    *
+    * @param uiData The UIData.
+    *
+    * @return The row index.
+    */
+   static int firstRow(UIData uiData)
+   {
+      return Math.max(0, uiData.getFirst());
+   }
+   
+   /**
+    * Get the row after the last rendered row.
+    *
+    * @param uiData The UIData.
+    *
+    * @return The row index, exclusive.  If getRows() is zero and the row
+    *         count is not known, this is -1 and no row is rendered.
+    */
+   static int endRow(UIData uiData)
+   {
+      int rows = uiData.getRows();
+      int rowCount = -1;
+      try
+      {
+         rowCount = uiData.getRowCount();
+      } 
+      catch (Exception e)
+      {
+         // ignore see JSFUNIT-215
+      }
+      
+      if (rows <= 0) return rowCount;
+      
+      int end = firstRow(uiData) + rows;
+      if (rowCount < 0) return end;
+      return Math.min(end, rowCount);
+   }
+   
+   /**
+    * Determine if a row is rendered.
+    *
+    * @param uiData The UIData.
+    * @param rowIndex The row index.
+    *
+    * @return <code>true</code> if the row is in the window, <code>false</code> otherwise.
+    */
+   static boolean contains(UIData uiData, int rowIndex)
+   {
+      return (rowIndex >= firstRow(uiData)) && (rowIndex < endRow(uiData));
+   }
+}
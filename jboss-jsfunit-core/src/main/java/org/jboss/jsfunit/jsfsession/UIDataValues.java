@@ -0,0 +1,255 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import javax.faces.component.NamingContainer;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIData;
+import javax.faces.component.ValueHolder;
+import javax.faces.context.FacesContext;
+
+/**
+ * An immutable, row-major snapshot of the values held by the components
+ * in each row of a UIData.
+ * 
+ * The snapshot is taken by positioning each row of the UIData exactly once 
+ * and reading every ValueHolder in that row.  This is much cheaper than 
+ * calling JSFServerSession.getComponentValue() for each cell, which sets 
+ * and restores the row indexes of every UIData ancestor for each value.
+ *
+ * Columns are identified by the client ID of the component relative to 
+ * the UIData.  For a component "name" directly inside a column this is just
+ * "name".  Values held inside a nested UIData are not included, and neither
+ * are the header and footer facets of the columns.
+ *
+ * The rows in the snapshot are the rows that the UIData displays, so row 0
+ * of the snapshot is row <code>getFirst()</code> of the UIData.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.jsfsession.JSFServerSession#getTableValues(String)
+ */
+public class UIDataValues
+{
+   private static final String SEPARATOR = String.valueOf(NamingContainer.SEPARATOR_CHAR);
+   
+   private List<String> columnIDs;
+   private List<Object[]> rows;
+   
+   private UIDataValues(List<String> columnIDs, List<Object[]> rows)
+   {
+      this.columnIDs = Collections.unmodifiableList(columnIDs);
+      this.rows = rows;
+   }
+   
+   /**
+    * Take a snapshot of a UIData.  The row index of the UIData is restored
+    * when the snapshot is done.
+    *
+    * @param uiData The UIData.  If it is inside another UIData, the row of the 
+    *               outer UIData must already be positioned.
+    * @param columnID If not <code>null</code>, only take values for the 
+    *                 column with this ID or ID suffix.
+    * @param facesContext The FacesContext.
+    *
+    * @return The snapshot.
+    *
+    * @throws ComponentIDNotFoundException if columnID matches no column 
+    * @throws DuplicateClientIDException if columnID matches more than one column
+    */
+   static UIDataValues snapshot(UIData uiData, String columnID, FacesContext facesContext)
+   {
+      List<ValueHolder> components = new ArrayList<ValueHolder>();
+      List<String> columnIDs = new ArrayList<String>();
+      
+      int savedRowIndex = uiData.getRowIndex();
+      try
+      {
+         uiData.setRowIndex(-1);
+         String prefix = uiData.getClientId(facesContext) + SEPARATOR;
+         for (Iterator children = uiData.getChildren().iterator(); children.hasNext();)
+         {
+            findValueHolders((UIComponent)children.next(), prefix, components, columnIDs, facesContext);
+         }
+         
+         if (columnID != null) selectColumn(columnID, components, columnIDs);
+         
+         List<Object[]> rows = new ArrayList<Object[]>();
+         int endRow = UIDataRowWindow.endRow(uiData);
+         for (int i=UIDataRowWindow.firstRow(uiData); i < endRow; i++)
+         {
+            uiData.setRowIndex(i);
+            if (!uiData.isRowAvailable()) break;
+            
+            Object[] row = new Object[components.size()];
+            for (int j=0; j < row.length; j++)
+            {
+               row[j] = components.get(j).getValue();
+            }
+            rows.add(row);
+         }
+         
+         return new UIDataValues(columnIDs, rows);
+      }
+      finally
+      {
+         uiData.setRowIndex(savedRowIndex);
+      }
+   }
+   
+   private static void findValueHolders(UIComponent component, 
+                                        String prefix,
+                                        List<ValueHolder> components, 
+                                        List<String> columnIDs,
+                                        FacesContext facesContext)
+   {
+      if (component instanceof ValueHolder)
+      {
+         String clientID = component.getClientId(facesContext);
+         if (clientID.startsWith(prefix)) clientID = clientID.substring(prefix.length());
+         components.add((ValueHolder)component);
+         columnIDs.add(clientID);
+      }
+      
+      // a nested UIData has its own rows
+      if (component instanceof UIData) return;
+      
+      // facets such as column headers and footers are not repeated per row
+      for (Iterator children = component.getChildren().iterator(); children.hasNext();)
+      {
+         findValueHolders((UIComponent)children.next(), prefix, components, columnIDs, facesContext);
+      }
+   }
+   
+   private static void selectColumn(String columnID, 
+                                    List<ValueHolder> components, 
+                                    List<String> columnIDs)
+   {
+      List<String> matches = new ArrayList<String>();
+      int match = -1;
+      for (int i=0; i < columnIDs.size(); i++)
+      {
+         String id = columnIDs.get(i);
+         if (id.equals(columnID) || id.endsWith(SEPARATOR + columnID))
+         {
+            matches.add(id);
+            match = i;
+         }
+      }
+      
+      if (matches.isEmpty()) throw new ComponentIDNotFoundException(columnID);
+      if (matches.size() > 1) throw new DuplicateClientIDException(columnID, matches);
+      
+      ValueHolder component = components.get(match);
+      components.clear();
+      components.add(component);
+      columnIDs.clear();
+      columnIDs.addAll(matches);
+   }
+   
+   /**
+    * Get the IDs of the columns, relative to the UIData, in the order 
+    * that they appear in each row.
+    *
+    * @return The column IDs.
+    */
+   public List<String> getColumnIDs()
+   {
+      return this.columnIDs;
+   }
+   
+   /**
+    * Get the number of rows in the snapshot.
+    *
+    * @return The number of rows.
+    */
+   public int getRowCount()
+   {
+      return this.rows.size();
+   }
+   
+   /**
+    * Get all the values in a row, in the same order as getColumnIDs().
+    *
+    * @param rowIndex The row index.
+    *
+    * @return The values.
+    *
+    * @throws IndexOutOfBoundsException if the row does not exist
+    */
+   public List<Object> getRow(int rowIndex)
+   {
+      Object[] row = this.rows.get(rowIndex);
+      List<Object> values = new ArrayList<Object>(row.length);
+      for (int i=0; i < row.length; i++) values.add(row[i]);
+      return Collections.unmodifiableList(values);
+   }
+   
+   /**
+    * Get a single value.
+    *
+    * @param rowIndex The row index.
+    * @param columnID The column ID, exactly as returned by getColumnIDs().
+    *
+    * @return The value.
+    *
+    * @throws ComponentIDNotFoundException if the column does not exist
+    * @throws IndexOutOfBoundsException if the row does not exist
+    */
+   public Object getValue(int rowIndex, String columnID)
+   {
+      return this.rows.get(rowIndex)[columnIndex(columnID)];
+   }
+   
+   /**
+    * Get every value in a column, one per row.
+    *
+    * @param columnID The column ID, exactly as returned by getColumnIDs().
+    *
+    * @return The values.
+    *
+    * @throws ComponentIDNotFoundException if the column does not exist
+    */
+   public List<Object> getColumn(String columnID)
+   {
+      int columnIndex = columnIndex(columnID);
+      List<Object> values = new ArrayList<Object>(this.rows.size());
+      for (Iterator<Object[]> i = this.rows.iterator(); i.hasNext();)
+      {
+         values.add(i.next()[columnIndex]);
+      }
+      
+      return Collections.unmodifiableList(values);
+   }
+   
+   private int columnIndex(String columnID)
+   {
+      int columnIndex = this.columnIDs.indexOf(columnID);
+      if (columnIndex < 0) throw new ComponentIDNotFoundException(columnID);
+      return columnIndex;
+   }
+}
@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.load;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Base class of the load generators.  It runs a number of virtual users, 
+ * each on its own thread, for a number of iterations or for a duration.  
+ * The start of the virtual users is spread evenly over the ramp-up time.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public abstract class AbstractLoadRunner
+{
+   private int users = 1;
+   private int iterations = 1;
+   private long duration = 0;
+   private long rampUp = 0;
+   private long thinkTime = 0;
+   
+   /**
+    * Set the number of virtual users.  The default is 1.
+    *
+    * @param users The number of virtual users.
+    */
+   public void setUsers(int users)
+   {
+      if (users < 1) throw new IllegalArgumentException("users must be at least 1");
+      this.users = users;
+   }
+   
+   /**
+    * Set the number of iterations each virtual user runs.  The default is 1.
+    * This is ignored if a duration is set.
+    *
+    * @param iterations The iterations per virtual user.
+    */
+   public void setIterations(int iterations)
+   {
+      if (iterations < 1) throw new IllegalArgumentException("iterations must be at least 1");
+      this.iterations = iterations;
+   }
+   
+   /**
+    * Run iterations until the given time has passed instead of running a
+    * fixed number of iterations.  An iteration in progress is always finished.
+    *
+    * @param millis The duration of the run, or zero to use the iteration count.
+    */
+   public void setDuration(long millis)
+   {
+      this.duration = millis;
+   }
+   
+   /**
+    * Set the time over which the start of the virtual users is spread.  The
+    * default is zero, which starts all users at once.
+    *
+    * @param millis The ramp-up time.
+    */
+   public void setRampUp(long millis)
+   {
+      this.rampUp = millis;
+   }
+   
+   /**
+    * Set the time a virtual user waits after each step.  The default is zero.
+    *
+    * @param millis The think time.
+    */
+   public void setThinkTime(long millis)
+   {
+      this.thinkTime = millis;
+   }
+   
+   /**
+    * Run the virtual users and wait for all of them to finish.  An exception
+    * or error thrown by an iteration, such as a failed JUnit assertion, fails
+    * only that iteration.
+    *
+    * @return The LoadReport.
+    *
+    * @throws InterruptedException if the current thread is interrupted.  The
+    *                              virtual users are interrupted as well.
+    */
+   public LoadReport run() throws InterruptedException
+   {
+      LoadReport report = new LoadReport(this.users);
+      long start = System.nanoTime();
+      long deadline = (duration > 0) ? start + (duration * 1000000L) + (rampUp * 1000000L) : 0;
+      
+      List<Thread> threads = new ArrayList<Thread>(this.users);
+      for (int i=0; i < this.users; i++)
+      {
+         long startDelay = (this.users > 1) ? (i * rampUp) / this.users : 0;
+         Thread thread = new Thread(new UserRunner(new VirtualUser(i, thinkTime), report, startDelay, deadline), 
+                                    "JSFUnit-vu-" + i);
+         thread.setDaemon(true);
+         threads.add(thread);
+         thread.start();
+      }
+      
+      try
+      {
+         for (Iterator<Thread> i = threads.iterator(); i.hasNext();)
+         {
+            i.next().join();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         for (Iterator<Thread> i = threads.iterator(); i.hasNext();)
+         {
+            i.next().interrupt();
+         }
+         throw e;
+      }
+      
+      report.setElapsedNanos(System.nanoTime() - start);
+      return report;
+   }
+   
+   private boolean isDone(int iteration, long deadline)
+   {
+      if (Thread.currentThread().isInterrupted()) return true;
+      if (deadline > 0) return System.nanoTime() >= deadline;
+      return iteration >= this.iterations;
+   }
+   
+   /**
+    * Run one iteration for a virtual user.
+    *
+    * @param user The virtual user.
+    * @param iteration The iteration of this user, starting at zero.
+    *
+    * @throws Exception if the iteration failed.
+    */
+   protected abstract void runIteration(VirtualUser user, int iteration) throws Exception;
+   
+   private class UserRunner implements Runnable
+   {
+      private VirtualUser user;
+      private LoadReport report;
+      private long startDelay;
+      private long deadline;
+      
+      UserRunner(VirtualUser user, LoadReport report, long startDelay, long deadline)
+      {
+         this.user = user;
+         this.report = report;
+         this.startDelay = startDelay;
+         this.deadline = deadline;
+      }
+      
+      public void run()
+      {
+         try
+         {
+            if (startDelay > 0) Thread.sleep(startDelay);
+            
+            for (int iteration=0; !isDone(iteration, deadline); iteration++)
+            {
+               try
+               {
+                  runIteration(user, iteration);
+                  report.iterationDone();
+               }
+               catch (ThreadDeath e)
+               {
+                  throw e;
+               }
+               catch (Throwable e)
+               {
+                  // includes the AssertionFailedError of a failed JUnit assert
+                  report.iterationFailed(e);
+               }
+            }
+         }
+         catch (InterruptedException e)
+         {
+            // ignore - the run was cancelled
+         }
+         finally
+         {
+            report.userDone(user);
+         }
+      }
+   }
+}
@@ -0,0 +1,435 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the dynamic values in a response that a replayed request has to 
+ * send back to the server, such as the JSF view state.  
+ *
+ * The scanner reads the response one character at a time and never holds
+ * more than the value it is reading, so it can scan large pages without
+ * building a DOM.  Each rule looks for a fixed marker, then optionally for 
+ * a second marker before the end of the tag, and reads the value up to a 
+ * terminator.
+ *
+ * The values found for each name are kept in the order they appear.
+ * Duplicates are dropped.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class DynamicValueScanner
+{
+   /** The JSF view state, from a hidden field or a partial response. */
+   public static final String VIEW_STATE = "javax.faces.ViewState";
+   
+   /** The Seam conversation id, from a hidden field or a URL. */
+   public static final String CONVERSATION_ID = "cid";
+   
+   /** The RichFaces region that an a4j component submits as AJAXREQUEST. */
+   public static final String AJAX_REQUEST = "AJAXREQUEST";
+   
+   // large enough for client side state saving
+   private static final int MAX_VALUE_LENGTH = 4 * 1024 * 1024;
+   
+   private static final Rule[] DEFAULT_RULES = {
+      new Rule(VIEW_STATE, "name=\"javax.faces.ViewState\"", "value=\"", "\"", true),
+      new Rule(VIEW_STATE, "id=\"javax.faces.ViewState\"><![CDATA[", null, "]]>", false),
+      new Rule(CONVERSATION_ID, "name=\"cid\"", "value=\"", "\"", true),
+      new Rule(CONVERSATION_ID, "?cid=", null, null, false),
+      new Rule(CONVERSATION_ID, "&cid=", null, null, false),
+      new Rule(CONVERSATION_ID, "&amp;cid=", null, null, false),
+      new Rule(AJAX_REQUEST, "A4J.AJAX.Submit('", null, "'", false)
+   };
+   
+   // ends a value that has no terminator, as in a URL query param
+   private static final String URL_DELIMITERS = "&#\"'<> \t\r\n";
+   
+   private Rule[] rules;
+   private int[] markerMatched;
+   private int[] valueMarkerMatched;
+   
+   // the rule whose value is being read, or -1
+   private int capturing = -1;
+   private int terminatorMatched;
+   private StringBuilder value = new StringBuilder();
+   
+   private Map<String, List<String>> values = new HashMap<String, List<String>>();
+   
+   /**
+    * Create a scanner for the view state, the Seam conversation id, and the 
+    * RichFaces AJAXREQUEST.
+    */
+   public DynamicValueScanner()
+   {
+      this.rules = DEFAULT_RULES;
+      this.markerMatched = new int[rules.length];
+      this.valueMarkerMatched = new int[rules.length];
+      for (int i=0; i < rules.length; i++) valueMarkerMatched[i] = -1;
+   }
+   
+   /**
+    * Scan everything a Reader returns.  The Reader is not closed.
+    *
+    * @param reader The Reader.
+    *
+    * @throws IOException if the Reader throws it.
+    */
+   public void scan(Reader reader) throws IOException
+   {
+      char[] buffer = new char[8192];
+      int read;
+      while ((read = reader.read(buffer)) != -1)
+      {
+         scan(buffer, 0, read);
+      }
+      end();
+   }
+   
+   /**
+    * Scan a String, such as a URL or a response header.
+    *
+    * @param text The text.
+    */
+   public void scan(String text)
+   {
+      if (text == null) return;
+      
+      char[] chars = text.toCharArray();
+      scan(chars, 0, chars.length);
+      end();
+   }
+   
+   /**
+    * Scan the next part of a response.  Call end() after the last part.
+    *
+    * @param chars The characters.
+    * @param offset The first character to scan.
+    * @param length The number of characters to scan.
+    */
+   public void scan(char[] chars, int offset, int length)
+   {
+      for (int i=offset; i < offset + length; i++)
+      {
+         if (capturing >= 0)
+         {
+            capture(chars[i]);
+         }
+         else
+         {
+            match(chars[i]);
+         }
+      }
+   }
+   
+   /**
+    * Signal the end of a response.  A value that ends with the response, as 
+    * a URL param can, is kept.  The markers matched so far are forgotten.
+    */
+   public void end()
+   {
+      if ((capturing >= 0) && (rules[capturing].terminator == null)) addValue(rules[capturing]);
+      
+      capturing = -1;
+      value.setLength(0);
+      for (int i=0; i < rules.length; i++)
+      {
+         markerMatched[i] = 0;
+         valueMarkerMatched[i] = -1;
+      }
+   }
+   
+   /**
+    * Get the values found so far.
+    *
+    * @return A Map of the name of each value to the distinct values found, in
+    *         the order they were found.
+    */
+   public Map<String, List<String>> getValues()
+   {
+      return this.values;
+   }
+   
+   // ---------------- package private methods --------------------
+   /**
+    * Scan a response and replace the values it contains in a Map of values.  
+    * The body is only scanned if it is a page.  The InputStream is not closed.
+    *
+    * @param location The Location header, or <code>null</code>.
+    * @param contentType The content type, or <code>null</code>.
+    * @param content The body, or <code>null</code>.
+    * @param charset The charset of the body, or <code>null</code> for ISO-8859-1.
+    * @param values The values, by name.
+    */
+   static void scanResponse(String location, String contentType, InputStream content, String charset,
+                            Map<String, List<String>> values) throws IOException
+   {
+      DynamicValueScanner scanner = new DynamicValueScanner();
+      scanner.scan(location);
+      if ((content != null) && RecordedRequest.isPage(contentType))
+      {
+         scanner.scan(new InputStreamReader(content, (charset == null) ? "ISO-8859-1" : charset));
+      }
+      values.putAll(scanner.getValues());
+   }
+   // -------------------------------------------------------------
+   
+   private void match(char c)
+   {
+      for (int i=0; i < rules.length; i++)
+      {
+         Rule rule = rules[i];
+         
+         if (valueMarkerMatched[i] >= 0)
+         {
+            // the marker was found; look for the value marker before the tag ends
+            if (c == '>')
+            {
+               valueMarkerMatched[i] = -1;
+            }
+            else
+            {
+               valueMarkerMatched[i] = advance(rule.valueMarker, rule.valueMarkerFailure, valueMarkerMatched[i], c);
+               if (valueMarkerMatched[i] == rule.valueMarker.length())
+               {
+                  startCapture(i);
+                  return;
+               }
+            }
+         }
+         
+         markerMatched[i] = advance(rule.marker, rule.markerFailure, markerMatched[i], c);
+         if (markerMatched[i] == rule.marker.length())
+         {
+            markerMatched[i] = 0;
+            if (rule.valueMarker == null)
+            {
+               startCapture(i);
+               return;
+            }
+            valueMarkerMatched[i] = 0;
+         }
+      }
+   }
+   
+   private void startCapture(int ruleIndex)
+   {
+      for (int i=0; i < rules.length; i++)
+      {
+         markerMatched[i] = 0;
+         valueMarkerMatched[i] = -1;
+      }
+      capturing = ruleIndex;
+      terminatorMatched = 0;
+      value.setLength(0);
+   }
+   
+   private void capture(char c)
+   {
+      Rule rule = rules[capturing];
+      
+      if (rule.terminator == null)
+      {
+         if (URL_DELIMITERS.indexOf(c) >= 0)
+         {
+            addValue(rule);
+            capturing = -1;
+            match(c);
+            return;
+         }
+         value.append(c);
+      }
+      else
+      {
+         value.append(c);
+         terminatorMatched = advance(rule.terminator, rule.terminatorFailure, terminatorMatched, c);
+         if (terminatorMatched == rule.terminator.length())
+         {
+            value.setLength(value.length() - rule.terminator.length());
+            addValue(rule);
+            capturing = -1;
+            return;
+         }
+      }
+      
+      // not a value after all
+      if (value.length() > MAX_VALUE_LENGTH)
+      {
+         capturing = -1;
+         value.setLength(0);
+      }
+   }
+   
+   private void addValue(Rule rule)
+   {
+      String found = value.toString();
+      value.setLength(0);
+      if (rule.unescape) found = unescape(found);
+      if (found.length() == 0) return;
+      
+      List<String> list = values.get(rule.name);
+      if (list == null)
+      {
+         list = new ArrayList<String>(1);
+         values.put(rule.name, list);
+      }
+      if (!list.contains(found)) list.add(found);
+   }
+   
+   /**
+    * Advance a Knuth-Morris-Pratt match of a pattern by one character.
+    *
+    * @return The number of pattern characters matched after c.
+    */
+   private static int advance(String pattern, int[] failure, int matched, char c)
+   {
+      while ((matched > 0) && (pattern.charAt(matched) != c)) matched = failure[matched - 1];
+      if (pattern.charAt(matched) == c) matched++;
+      return matched;
+   }
+   
+   private static int[] failure(String pattern)
+   {
+      if (pattern == null) return null;
+      
+      int[] failure = new int[pattern.length()];
+      int matched = 0;
+      for (int i=1; i < pattern.length(); i++)
+      {
+         while ((matched > 0) && (pattern.charAt(i) != pattern.charAt(matched))) matched = failure[matched - 1];
+         if (pattern.charAt(i) == pattern.charAt(matched)) matched++;
+         failure[i] = matched;
+      }
+      return failure;
+   }
+   
+   private static String unescape(String attribute)
+   {
+      if (attribute.indexOf('&') < 0) return attribute;
+      
+      StringBuilder unescaped = new StringBuilder(attribute.length());
+      int i = 0;
+      while (i < attribute.length())
+      {
+         char c = attribute.charAt(i);
+         int end = (c == '&') ? attribute.indexOf(';', i) : -1;
+         if ((end < 0) || (end - i > 10))
+         {
+            unescaped.append(c);
+            i++;
+            continue;
+         }
+         
+         String entity = attribute.substring(i + 1, end);
+         if (entity.equals("amp")) unescaped.append('&');
+         else if (entity.equals("lt")) unescaped.append('<');
+         else if (entity.equals("gt")) unescaped.append('>');
+         else if (entity.equals("quot")) unescaped.append('"');
+         else if (entity.equals("apos")) unescaped.append('\'');
+         else if (entity.startsWith("#x") || entity.startsWith("#X"))
+         {
+            appendCodePoint(unescaped, entity.substring(2), 16, attribute.substring(i, end + 1));
+         }
+         else if (entity.startsWith("#"))
+         {
+            appendCodePoint(unescaped, entity.substring(1), 10, attribute.substring(i, end + 1));
+         }
+         else
+         {
+            unescaped.append(attribute.substring(i, end + 1));
+         }
+         i = end + 1;
+      }
+      return unescaped.toString();
+   }
+   
+   // a malformed character reference is kept as it is, like an unknown entity
+   private static void appendCodePoint(StringBuilder unescaped, String digits, int radix, String reference)
+   {
+      int codePoint = -1;
+      try
+      {
+         if ((digits.length() > 0) && (Character.digit(digits.charAt(0), radix) >= 0))
+         {
+            codePoint = Integer.parseInt(digits, radix);
+         }
+      }
+      catch (NumberFormatException e)
+      {
+         // ignore - out of range
+      }
+      
+      if (Character.isValidCodePoint(codePoint))
+      {
+         unescaped.append(Character.toChars(codePoint));
+      }
+      else
+      {
+         unescaped.append(reference);
+      }
+   }
+   
+   private static class Rule
+   {
+      private String name;
+      private String marker;
+      private int[] markerFailure;
+      private String valueMarker;
+      private int[] valueMarkerFailure;
+      private String terminator;
+      private int[] terminatorFailure;
+      private boolean unescape;
+      
+      /**
+       * @param name The name of the value.
+       * @param marker The text that comes before the value.
+       * @param valueMarker The text that starts the value if it does not 
+       *                    follow the marker, or <code>null</code>.  It must 
+       *                    be found before the end of the tag.
+       * @param terminator The text that ends the value, or <code>null</code> 
+       *                   for the end of a URL param.
+       * @param unescape <code>true</code> if the value is an HTML attribute.
+       */
+      Rule(String name, String marker, String valueMarker, String terminator, boolean unescape)
+      {
+         this.name = name;
+         this.marker = marker;
+         this.markerFailure = failure(marker);
+         this.valueMarker = valueMarker;
+         this.valueMarkerFailure = failure(valueMarker);
+         this.terminator = terminator;
+         this.terminatorFailure = failure(terminator);
+         this.unescape = unescape;
+      }
+   }
+}
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.load;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.faces.event.PhaseId;
+import org.jboss.jsfunit.framework.LatencyHistogram;
+
+/**
+ * The result of a LoadRunner run: throughput, the latency of each step of the
+ * scenario, and the JSF phase times measured on the server.  Latencies are 
+ * kept in LatencyHistograms, so reports of several runs can be merged.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class LoadReport
+{
+   private static final int MAX_ERRORS_KEPT = 10;
+   
+   private int users;
+   private long elapsedNanos;
+   private long iterations;
+   private long failures;
+   private List<Throwable> errors = new ArrayList<Throwable>();
+   
+   private Map<String, LatencyHistogram> stepHistograms = new LinkedHashMap<String, LatencyHistogram>();
+   private LatencyHistogram[] phaseHistograms = new LatencyHistogram[PhaseId.VALUES.size()];
+   
+   LoadReport(int users)
+   {
+      this.users = users;
+      for (int i=0; i < phaseHistograms.length; i++) phaseHistograms[i] = new LatencyHistogram();
+   }
+   
+   // ---------------- package private methods --------------------
+   synchronized void iterationDone()
+   {
+      iterations++;
+   }
+   
+   synchronized void iterationFailed(Throwable error)
+   {
+      iterations++;
+      failures++;
+      if (errors.size() < MAX_ERRORS_KEPT) errors.add(error);
+   }
+   
+   synchronized void userDone(VirtualUser user)
+   {
+      addSteps(user.getStepHistograms());
+      addPhases(user.getPhaseHistograms());
+   }
+   
+   void setElapsedNanos(long elapsedNanos)
+   {
+      this.elapsedNanos = elapsedNanos;
+   }
+   // -------------------------------------------------------------
+   
+   private void addSteps(Map<String, LatencyHistogram> steps)
+   {
+      for (Iterator<Map.Entry<String, LatencyHistogram>> i = steps.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, LatencyHistogram> entry = i.next();
+         LatencyHistogram histogram = stepHistograms.get(entry.getKey());
+         if (histogram == null)
+         {
+            histogram = new LatencyHistogram();
+            stepHistograms.put(entry.getKey(), histogram);
+         }
+         histogram.add(entry.getValue());
+      }
+   }
+   
+   private void addPhases(LatencyHistogram[] phases)
+   {
+      for (int i=0; i < phases.length; i++) phaseHistograms[i].add(phases[i]);
+   }
+   
+   /**
+    * Add the results of another run to this report.  Throughput is then 
+    * computed as if both runs had been running at the same time for the
+    * longer of their two durations.
+    *
+    * @param other The other LoadReport.
+    */
+   public synchronized void add(LoadReport other)
+   {
+      LoadReport copy = other.copy();
+      this.users += copy.users;
+      this.elapsedNanos = Math.max(this.elapsedNanos, copy.elapsedNanos);
+      this.iterations += copy.iterations;
+      this.failures += copy.failures;
+      for (Iterator<Throwable> i = copy.errors.iterator(); i.hasNext() && (errors.size() < MAX_ERRORS_KEPT);)
+      {
+         errors.add(i.next());
+      }
+      addSteps(copy.stepHistograms);
+      addPhases(copy.phaseHistograms);
+   }
+   
+   private synchronized LoadReport copy()
+   {
+      LoadReport copy = new LoadReport(this.users);
+      copy.elapsedNanos = this.elapsedNanos;
+      copy.iterations = this.iterations;
+      copy.failures = this.failures;
+      copy.errors.addAll(this.errors);
+      copy.addSteps(this.stepHistograms);
+      copy.addPhases(this.phaseHistograms);
+      return copy;
+   }
+   
+   /**
+    * Get the number of virtual users.
+    *
+    * @return The number of virtual users.
+    */
+   public synchronized int getUsers()
+   {
+      return this.users;
+   }
+   
+   /**
+    * Get the wall time of the run.
+    *
+    * @return The time in nanoseconds.
+    */
+   public synchronized long getElapsedNanos()
+   {
+      return this.elapsedNanos;
+   }
+   
+   /**
+    * Get the number of scenario iterations, including failed ones.
+    *
+    * @return The number of iterations.
+    */
+   public synchronized long getIterations()
+   {
+      return this.iterations;
+   }
+   
+   /**
+    * Get the number of iterations that threw an exception.
+    *
+    * @return The number of failures.
+    */
+   public synchronized long getFailures()
+   {
+      return this.failures;
+   }
+   
+   /**
+    * Get the first exceptions thrown by the scenario.
+    *
+    * @return Up to 10 exceptions.
+    */
+   public synchronized List<Throwable> getErrors()
+   {
+      return new ArrayList<Throwable>(this.errors);
+   }
+   
+   /**
+    * Get the number of iterations completed per second.
+    *
+    * @return The throughput.
+    */
+   public synchronized double getThroughput()
+   {
+      if (elapsedNanos <= 0) return 0.0;
+      return iterations / (elapsedNanos / 1000000000.0);
+   }
+   
+   /**
+    * Get the names of the steps, in the order they were first seen.
+    *
+    * @return The step names.
+    */
+   public synchronized List<String> getStepNames()
+   {
+      return new ArrayList<String>(stepHistograms.keySet());
+   }
+   
+   /**
+    * Get the latency of a step.
+    *
+    * @param stepName The name of the step.
+    *
+    * @return A copy of the histogram.  It is empty if the step never ran.
+    */
+   public synchronized LatencyHistogram getStepHistogram(String stepName)
+   {
+      LatencyHistogram histogram = stepHistograms.get(stepName);
+      if (histogram == null) return new LatencyHistogram();
+      return histogram.copy();
+   }
+   
+   /**
+    * Get the server side time of a JSF phase, measured by the JSFTimer.
+    *
+    * @param phaseId The PhaseId, or ANY_PHASE for the whole JSF lifecycle.
+    *
+    * @return A copy of the histogram.
+    */
+   public synchronized LatencyHistogram getPhaseHistogram(PhaseId phaseId)
+   {
+      return phaseHistograms[phaseId.getOrdinal()].copy();
+   }
+   
+   @Override
+   public synchronized String toString()
+   {
+      StringBuilder report = new StringBuilder();
+      report.append("LoadReport: users=").append(users)
+            .append(" iterations=").append(iterations)
+            .append(" failures=").append(failures)
+            .append(" elapsed=").append(elapsedNanos / 1000000L).append("ms")
+            .append(" throughput=").append(Math.round(getThroughput() * 100.0) / 100.0).append("/s\n");
+      
+      report.append("Steps:\n");
+      for (Iterator<Map.Entry<String, LatencyHistogram>> i = stepHistograms.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, LatencyHistogram> entry = i.next();
+         report.append("   ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+      }
+      
+      report.append("Server phases:\n");
+      for (Iterator i = PhaseId.VALUES.iterator(); i.hasNext();)
+      {
+         PhaseId phaseId = (PhaseId)i.next();
+         LatencyHistogram histogram = phaseHistograms[phaseId.getOrdinal()];
+         if (histogram.getCount() == 0) continue;
+         report.append("   ").append(phaseId).append(": ").append(histogram).append("\n");
+      }
+      
+      return report.toString();
+   }
+}
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.load;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import javax.servlet.http.HttpSession;
+import org.jboss.jsfunit.framework.JSFUnitSessionContext;
+import org.jboss.jsfunit.framework.WebClientSpec;
+import org.jboss.jsfunit.framework.WebConversationFactory;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+
+/**
+ * Runs a LoadScenario with many virtual users at the same time.  
+ *
+ * Each virtual user runs on its own thread.  Each iteration of the scenario
+ * starts a new JSFSession with its own HttpSession, so the JSFServerSession
+ * of every virtual user sees only its own requests.
+ *
+ * The LoadRunner must be created on a thread that went through the 
+ * JSFUnitFilter, such as a running JSFUnit test.
+ *
+ * <pre>
+ * LoadRunner runner = new LoadRunner("/index.jsf", new LoadScenario() {
+ *    public void run(VirtualUser user) throws Exception {
+ *       user.startStep("submit");
+ *       JSFClientSession client = user.getJSFSession().getJSFClientSession();
+ *       client.setValue("name", "Stan");
+ *       client.click("submit_button");
+ *       user.endStep();
+ *    }
+ * });
+ * runner.setUsers(20);
+ * runner.setDuration(60000);
+ * runner.setRampUp(10000);
+ * LoadReport report = runner.run();
+ * </pre>
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class LoadRunner extends AbstractLoadRunner
+{
+   /** The step name used to time the initial request of each iteration. */
+   public static final String INITIAL_REQUEST_STEP = "initial request";
+   
+   private String initialPage;
+   private LoadScenario scenario;
+   private String warURL;
+   
+   private BrowserVersion browserVersion = BrowserVersion.getDefault();
+   
+   /**
+    * Create a new LoadRunner.
+    *
+    * @param initialPage The page requested at the start of each iteration.  Example: "/index.jsf"
+    * @param scenario The scenario run by each virtual user.
+    *
+    * @throws IllegalStateException if the current thread did not go through the JSFUnitFilter.
+    */
+   public LoadRunner(String initialPage, LoadScenario scenario)
+   {
+      JSFUnitSessionContext context = WebConversationFactory.getContext();
+      if ((context == null) || (context.getWARURL() == null))
+      {
+         throw new IllegalStateException("LoadRunner must be created from a JSFUnit test.");
+      }
+      
+      this.initialPage = initialPage;
+      this.scenario = scenario;
+      this.warURL = context.getWARURL();
+   }
+   
+   /**
+    * Set the browser version simulated by the virtual users.
+    *
+    * @param browserVersion The BrowserVersion.
+    */
+   public void setBrowserVersion(BrowserVersion browserVersion)
+   {
+      this.browserVersion = browserVersion;
+   }
+   
+   @Override
+   protected void runIteration(VirtualUser user, int iteration) throws Exception
+   {
+      JSFUnitSessionContext context = new JSFUnitSessionContext(this.warURL);
+      JSFSession jsfSession = null;
+      try
+      {
+         user.startIteration(iteration);
+         user.startStep(INITIAL_REQUEST_STEP);
+         WebClientSpec wcSpec = new WebClientSpec(this.initialPage, this.browserVersion, null, 0, context);
+         jsfSession = new JSFSession(wcSpec);
+         user.setJSFSession(jsfSession);
+         user.endStep();
+         
+         this.scenario.run(user);
+         user.endIteration();
+      }
+      finally
+      {
+         if (jsfSession != null) jsfSession.getWebClient().closeAllWindows();
+         invalidate(context.getHttpSession());
+         context.close();
+      }
+   }
+   
+   // each iteration is a new user, so do not leave its HttpSession for the container to time out
+   private static void invalidate(HttpSession session)
+   {
+      if (session == null) return;
+      
+      try
+      {
+         session.invalidate();
+      }
+      catch (IllegalStateException e)
+      {
+         // ignore - already invalidated by the scenario
+      }
+   }
+}
@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.load;
+
+/**
+ * A scenario run by each virtual user of a LoadRunner.  This is normally the
+ * same code as a JSFUnit test, with the steps to be measured marked by
+ * VirtualUser.startStep() and VirtualUser.endStep():
+ * <code><pre>
+ * public void run(VirtualUser user) throws Exception
+ * {
+ *    JSFClientSession client = user.getJSFSession().getJSFClientSession();
+ *    client.setValue("name", "Stan");
+ *    user.startStep("submit");
+ *    client.click("submit_button");
+ *    user.endStep();
+ * }
+ * </pre></code>
+ *
+ * @author agent
+ * @since 2.0
+ */
+public interface LoadScenario
+{
+   /**
+    * Run one iteration of the scenario.  The JSFSession of the virtual user
+    * is new for each iteration and the initial page has already been loaded.
+    *
+    * @param user The virtual user.
+    *
+    * @throws Exception If the scenario fails.  The failure is counted and 
+    *                   the virtual user goes on with its next iteration.
+    */
+   void run(VirtualUser user) throws Exception;
+}
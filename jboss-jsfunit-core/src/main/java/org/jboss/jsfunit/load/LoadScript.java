@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.load;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The requests of a recorded session, in order.  A LoadScript is made by a
+ * TrafficRecorder and replayed by a ReplayRunner.  It can be saved to a file
+ * so that it can be replayed from another machine.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class LoadScript implements Serializable
+{
+   private static final long serialVersionUID = 1L;
+   
+   private List<RecordedRequest> requests;
+   
+   LoadScript(List<RecordedRequest> requests)
+   {
+      this.requests = new ArrayList<RecordedRequest>(requests);
+   }
+   
+   /**
+    * Get the recorded requests.
+    *
+    * @return An unmodifiable List of the requests, in order.
+    */
+   public List<RecordedRequest> getRequests()
+   {
+      return Collections.unmodifiableList(this.requests);
+   }
+   
+   /**
+    * Save this script to a file.
+    *
+    * @param file The file.
+    *
+    * @throws IOException if the file can not be written.
+    */
+   public void save(File file) throws IOException
+   {
+      ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try
+      {
+         out.writeObject(this);
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+   
+   /**
+    * Read a script saved with save().
+    *
+    * @param file The file.
+    *
+    * @return The LoadScript.
+    *
+    * @throws IOException if the file can not be read or does not contain a LoadScript.
+    */
+   public static LoadScript load(File file) throws IOException
+   {
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try
+      {
+         return (LoadScript)in.readObject();
+      }
+      catch (ClassNotFoundException e)
+      {
+         IOException ioe = new IOException(file + " does not contain a LoadScript.");
+         ioe.initCause(e);
+         throw ioe;
+      }
+      catch (ClassCastException e)
+      {
+         IOException ioe = new IOException(file + " does not contain a LoadScript.");
+         ioe.initCause(e);
+         throw ioe;
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuilder script = new StringBuilder();
+      for (Iterator<RecordedRequest> i = this.requests.iterator(); i.hasNext();)
+      {
+         RecordedRequest request = i.next();
+         script.append(request).append(" -> ").append(request.getStatusCode()).append("\n");
+      }
+      return script.toString();
+   }
+}
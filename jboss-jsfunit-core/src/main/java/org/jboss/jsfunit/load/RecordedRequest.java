@@ -0,0 +1,319 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.load;
+
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One HTTP request of a LoadScript.  
+ *
+ * Params named after a value found by the DynamicValueScanner, such as 
+ * javax.faces.ViewState, are not replayed as recorded.  They are replaced
+ * with the value found in the responses of the replay.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class RecordedRequest implements Serializable
+{
+   private static final long serialVersionUID = 1L;
+   
+   private String method;
+   private String baseURL;
+   private String charset;
+   private Map<String, String> headers;
+   private List<Param> queryParams;
+   private List<Param> bodyParams;
+   private String body;
+   private int statusCode;
+   private String contentType;
+   
+   /**
+    * @param method The HTTP method.
+    * @param url The URL without ;jsessionid.  The query string is kept.
+    * @param charset The charset of the params.
+    * @param headers The request headers to replay.
+    * @param bodyParams The form params, or <code>null</code> if the body is not a form.
+    * @param body The body if it is not a form, or <code>null</code>.
+    * @param values The values found in the responses so far.
+    * @param statusCode The status code of the response.
+    * @param contentType The content type of the response.
+    */
+   RecordedRequest(String method, String url, String charset, Map<String, String> headers,
+                   List<String[]> bodyParams, String body, Map<String, List<String>> values, 
+                   int statusCode, String contentType)
+   {
+      this.method = method;
+      this.charset = charset;
+      this.headers = new LinkedHashMap<String, String>(headers);
+      this.statusCode = statusCode;
+      this.contentType = contentType;
+      this.body = body;
+      
+      int query = url.indexOf('?');
+      if (query < 0)
+      {
+         this.baseURL = url;
+         this.queryParams = Collections.emptyList();
+      }
+      else
+      {
+         this.baseURL = url.substring(0, query);
+         this.queryParams = toParams(parseQuery(url.substring(query + 1), charset), values);
+      }
+      
+      if (bodyParams != null) this.bodyParams = toParams(bodyParams, values);
+   }
+   
+   /**
+    * Parse an application/x-www-form-urlencoded String.
+    *
+    * @param query The String.
+    * @param charset The charset used to encode it.
+    *
+    * @return The decoded name/value pairs.
+    */
+   static List<String[]> parseQuery(String query, String charset)
+   {
+      List<String[]> pairs = new ArrayList<String[]>();
+      int start = 0;
+      while (start <= query.length())
+      {
+         int end = query.indexOf('&', start);
+         if (end < 0) end = query.length();
+         if (end > start)
+         {
+            String pair = query.substring(start, end);
+            int equals = pair.indexOf('=');
+            String name = (equals < 0) ? pair : pair.substring(0, equals);
+            String value = (equals < 0) ? "" : pair.substring(equals + 1);
+            pairs.add(new String[] {decode(name, charset), decode(value, charset)});
+         }
+         start = end + 1;
+      }
+      return pairs;
+   }
+   
+   private static List<Param> toParams(List<String[]> pairs, Map<String, List<String>> values)
+   {
+      List<Param> params = new ArrayList<Param>(pairs.size());
+      for (Iterator<String[]> i = pairs.iterator(); i.hasNext();)
+      {
+         String[] pair = i.next();
+         List<String> found = values.get(pair[0]);
+         int index = (found == null) ? -1 : found.indexOf(pair[1]);
+         params.add(new Param(pair[0], pair[1], index));
+      }
+      return params;
+   }
+   
+   private static String decode(String encoded, String charset)
+   {
+      try
+      {
+         return URLDecoder.decode(encoded, charset);
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         throw new IllegalArgumentException(e);
+      }
+      catch (IllegalArgumentException e)
+      {
+         // not encoded after all
+         return encoded;
+      }
+   }
+   
+   private static String encode(String value, String charset)
+   {
+      try
+      {
+         return URLEncoder.encode(value, charset);
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         throw new IllegalArgumentException(e);
+      }
+   }
+   
+   /**
+    * Get the HTTP method.
+    *
+    * @return The method, such as GET or POST.
+    */
+   public String getMethod()
+   {
+      return this.method;
+   }
+   
+   /**
+    * Get the URL as it was recorded, without the query string.
+    *
+    * @return The URL.
+    */
+   public String getBaseURL()
+   {
+      return this.baseURL;
+   }
+   
+   /**
+    * Get the status code of the recorded response.
+    *
+    * @return The status code.
+    */
+   public int getStatusCode()
+   {
+      return this.statusCode;
+   }
+   
+   /**
+    * Get the content type of the recorded response.
+    *
+    * @return The content type, or <code>null</code> if there was no content.
+    */
+   public String getContentType()
+   {
+      return this.contentType;
+   }
+   
+   /**
+    * Check if the recorded response was a page or a partial response, which
+    * can contain dynamic values, rather than a resource.
+    *
+    * @return <code>true</code> if the response was HTML or XML.
+    */
+   public boolean isPage()
+   {
+      return isPage(this.contentType);
+   }
+   
+   /**
+    * Check if the recorded response was a redirect.
+    *
+    * @return <code>true</code> if the status code was 3xx.
+    */
+   public boolean isRedirect()
+   {
+      return (this.statusCode >= 300) && (this.statusCode < 400) && (this.statusCode != 304);
+   }
+   
+   @Override
+   public String toString()
+   {
+      return this.method + " " + this.baseURL;
+   }
+   
+   // ---------------- package private methods --------------------
+   static boolean isPage(String contentType)
+   {
+      if (contentType == null) return false;
+      contentType = contentType.toLowerCase();
+      return contentType.startsWith("text/html") || 
+             contentType.startsWith("application/xhtml+xml") ||
+             contentType.startsWith("text/xml") ||
+             contentType.startsWith("application/xml");
+   }
+   
+   Map<String, String> getHeaders()
+   {
+      return this.headers;
+   }
+   
+   String getURL(Map<String, List<String>> values)
+   {
+      if (this.queryParams.isEmpty()) return this.baseURL;
+      return this.baseURL + "?" + encode(this.queryParams, values);
+   }
+   
+   /**
+    * @return The body to send, or <code>null</code> if there is none.
+    */
+   String getBody(Map<String, List<String>> values)
+   {
+      if (this.bodyParams != null) return encode(this.bodyParams, values);
+      return this.body;
+   }
+   
+   boolean hasFormBody()
+   {
+      return this.bodyParams != null;
+   }
+   
+   String getCharset()
+   {
+      return this.charset;
+   }
+   // -------------------------------------------------------------
+   
+   private String encode(List<Param> params, Map<String, List<String>> values)
+   {
+      StringBuilder encoded = new StringBuilder();
+      for (Iterator<Param> i = params.iterator(); i.hasNext();)
+      {
+         Param param = i.next();
+         if (encoded.length() > 0) encoded.append('&');
+         encoded.append(encode(param.name, this.charset))
+                .append('=')
+                .append(encode(param.getValue(values), this.charset));
+      }
+      return encoded.toString();
+   }
+   
+   private static class Param implements Serializable
+   {
+      private static final long serialVersionUID = 1L;
+      
+      private String name;
+      private String recordedValue;
+      
+      // the index of the recorded value among the values found, or -1
+      private int index;
+      
+      Param(String name, String recordedValue, int index)
+      {
+         this.name = name;
+         this.recordedValue = recordedValue;
+         this.index = index;
+      }
+      
+      String getValue(Map<String, List<String>> values)
+      {
+         if (this.index < 0) return this.recordedValue;
+         
+         List<String> found = values.get(this.name);
+         if ((found == null) || found.isEmpty()) return this.recordedValue;
+         if (this.index < found.size()) return found.get(this.index);
+         return found.get(found.size() - 1);
+      }
+   }
+}
@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a LoadScript with many virtual users.  The requests are sent with
+ * HttpURLConnection instead of HtmlUnit, so no DOM is built and no 
+ * JavaScript is run.  One machine can then generate far more load than a
+ * LoadRunner.
+ *
+ * The dynamic values of each response are found with a DynamicValueScanner
+ * and sent back in the following requests.  Each virtual user keeps its
+ * own cookies, which are cleared at the start of each iteration.
+ *
+ * A page request and the resource requests that follow it are timed as one
+ * step.  A request that failed with a 4xx or 5xx status code, when the 
+ * recorded one did not, fails the iteration.
+ *
+ * <pre>
+ * ReplayRunner runner = new ReplayRunner(recorder.getScript());
+ * runner.setUsers(500);
+ * runner.setDuration(60000);
+ * LoadReport report = runner.run();
+ * </pre>
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ReplayRunner extends AbstractLoadRunner
+{
+   private List<RecordedRequest> requests;
+   
+   private String userAgent = "JSFUnit ReplayRunner";
+   private int timeout = 60000;
+   
+   /**
+    * Create a new ReplayRunner.
+    *
+    * @param script The LoadScript to replay.
+    */
+   public ReplayRunner(LoadScript script)
+   {
+      this.requests = script.getRequests();
+   }
+   
+   /**
+    * Set the User-Agent sent with each request.
+    *
+    * @param userAgent The User-Agent.
+    */
+   public void setUserAgent(String userAgent)
+   {
+      this.userAgent = userAgent;
+   }
+   
+   /**
+    * Set the connect and read timeout of each request.  The default is 60 seconds.
+    *
+    * @param millis The timeout.
+    */
+   public void setTimeout(int millis)
+   {
+      this.timeout = millis;
+   }
+   
+   @Override
+   protected void runIteration(VirtualUser user, int iteration) throws Exception
+   {
+      Map<String, String> cookies = new LinkedHashMap<String, String>();
+      Map<String, List<String>> values = new HashMap<String, List<String>>();
+      boolean redirected = false;
+      
+      user.startIteration(iteration);
+      for (int i=0; i < this.requests.size(); i++)
+      {
+         RecordedRequest request = this.requests.get(i);
+         
+         // a redirect and its target are one step
+         if ((request.isPage() || request.isRedirect()) && !redirected)
+         {
+            user.startStep((i + 1) + ": " + request);
+         }
+         
+         int statusCode = send(request, cookies, values);
+         if ((statusCode >= 400) && (request.getStatusCode() < 400))
+         {
+            throw new IOException("HTTP " + statusCode + " from " + request + " (recorded " + 
+                                  request.getStatusCode() + ")");
+         }
+         
+         redirected = request.isRedirect();
+      }
+      user.endIteration();
+   }
+   
+   private int send(RecordedRequest request, Map<String, String> cookies, Map<String, List<String>> values)
+         throws IOException
+   {
+      URL url = new URL(request.getURL(values));
+      HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+      connection.setInstanceFollowRedirects(false);
+      connection.setUseCaches(false);
+      connection.setConnectTimeout(this.timeout);
+      connection.setReadTimeout(this.timeout);
+      connection.setRequestMethod(request.getMethod());
+      connection.setRequestProperty("User-Agent", this.userAgent);
+      
+      for (Iterator<Map.Entry<String, String>> i = request.getHeaders().entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, String> header = i.next();
+         connection.setRequestProperty(header.getKey(), header.getValue());
+      }
+      
+      if (!cookies.isEmpty()) connection.setRequestProperty("Cookie", cookieHeader(cookies));
+      
+      String body = request.getBody(values);
+      if (body != null)
+      {
+         byte[] bytes = body.getBytes(request.getCharset());
+         connection.setDoOutput(true);
+         connection.setFixedLengthStreamingMode(bytes.length);
+         OutputStream out = connection.getOutputStream();
+         try
+         {
+            out.write(bytes);
+         }
+         finally
+         {
+            out.close();
+         }
+      }
+      
+      int statusCode = connection.getResponseCode();
+      saveCookies(connection, cookies);
+      
+      InputStream content = (statusCode >= 400) ? connection.getErrorStream() : connection.getInputStream();
+      try
+      {
+         DynamicValueScanner.scanResponse(connection.getHeaderField("Location"),
+                                          connection.getContentType(),
+                                          content,
+                                          charset(connection.getContentType()),
+                                          values);
+         drain(content);
+      }
+      finally
+      {
+         // closing the stream, not disconnecting, keeps the connection alive
+         if (content != null) content.close();
+      }
+      
+      return statusCode;
+   }
+   
+   private static String cookieHeader(Map<String, String> cookies)
+   {
+      StringBuilder header = new StringBuilder();
+      for (Iterator<Map.Entry<String, String>> i = cookies.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, String> cookie = i.next();
+         if (header.length() > 0) header.append("; ");
+         header.append(cookie.getKey()).append('=').append(cookie.getValue());
+      }
+      return header.toString();
+   }
+   
+   private static void saveCookies(HttpURLConnection connection, Map<String, String> cookies)
+   {
+      // header 0 is the status line
+      for (int i=1; connection.getHeaderFieldKey(i) != null; i++)
+      {
+         if (!connection.getHeaderFieldKey(i).equalsIgnoreCase("Set-Cookie")) continue;
+         
+         String setCookie = connection.getHeaderField(i);
+         int end = setCookie.indexOf(';');
+         String cookie = (end < 0) ? setCookie : setCookie.substring(0, end);
+         int equals = cookie.indexOf('=');
+         if (equals <= 0) continue;
+         
+         String name = cookie.substring(0, equals).trim();
+         String value = cookie.substring(equals + 1).trim();
+         if ((value.length() == 0) || setCookie.toLowerCase().indexOf("max-age=0") >= 0)
+         {
+            cookies.remove(name);
+         }
+         else
+         {
+            cookies.put(name, value);
+         }
+      }
+   }
+   
+   private static String charset(String contentType)
+   {
+      if (contentType == null) return null;
+      
+      int charset = contentType.toLowerCase().indexOf("charset=");
+      if (charset < 0) return null;
+      
+      String value = contentType.substring(charset + "charset=".length());
+      int end = value.indexOf(';');
+      if (end >= 0) value = value.substring(0, end);
+      return value.trim().replace("\"", "");
+   }
+   
+   private static void drain(InputStream content) throws IOException
+   {
+      if (content == null) return;
+      
+      byte[] buffer = new byte[8192];
+      while (content.read(buffer) != -1)
+      {
+         // discard
+      }
+   }
+}
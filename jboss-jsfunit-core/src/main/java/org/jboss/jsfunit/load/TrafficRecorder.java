@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.load;
+
+import com.gargoylesoftware.htmlunit.FormEncodingType;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.jboss.jsfunit.framework.JSFUnitWebConnection;
+import org.jboss.jsfunit.framework.RequestListener;
+import org.jboss.jsfunit.framework.WebClientSpec;
+
+/**
+ * RequestListener that records the requests made by a WebClient so that 
+ * they can be replayed by a ReplayRunner without HtmlUnit.  
+ *
+ * Cookies are not recorded.  The replay keeps its own cookies, so each 
+ * virtual user gets its own HttpSession.  File uploads are recorded as 
+ * ordinary form params.
+ *
+ * To record the initial request, attach the recorder before creating the
+ * JSFSession:
+ *
+ * <pre>
+ * WebClientSpec wcSpec = new WebClientSpec("/index.jsf");
+ * TrafficRecorder recorder = TrafficRecorder.attach(wcSpec);
+ * JSFSession jsfSession = new JSFSession(wcSpec);
+ * ...
+ * LoadScript script = recorder.getScript();
+ * </pre>
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class TrafficRecorder implements RequestListener
+{
+   private static final Pattern JSESSIONID = Pattern.compile(";jsessionid=[^?#]*", Pattern.CASE_INSENSITIVE);
+   
+   private static final String[] IGNORED_HEADERS = {"Cookie", "Content-Length", "Host", "Connection", 
+                                                    JSFUnitWebConnection.REQUEST_ID_HEADER};
+   
+   private List<RecordedRequest> requests = new ArrayList<RecordedRequest>();
+   
+   // the dynamic values found in the responses so far
+   private Map<String, List<String>> values = new HashMap<String, List<String>>();
+   
+   /**
+    * Start recording the requests of a WebClient.
+    *
+    * @param webClient The WebClient.  It must have been created by a WebClientSpec.
+    *
+    * @return The TrafficRecorder.
+    */
+   public static TrafficRecorder attach(WebClient webClient)
+   {
+      TrafficRecorder recorder = new TrafficRecorder();
+      ((JSFUnitWebConnection)webClient.getWebConnection()).addListener(recorder);
+      return recorder;
+   }
+   
+   /**
+    * Start recording the requests of the WebClient of a WebClientSpec.
+    *
+    * @param wcSpec The WebClientSpec.
+    *
+    * @return The TrafficRecorder.
+    */
+   public static TrafficRecorder attach(WebClientSpec wcSpec)
+   {
+      return attach(wcSpec.getWebClient());
+   }
+   
+   /**
+    * Stop recording.
+    *
+    * @param webClient The WebClient passed to attach().
+    */
+   public void detach(WebClient webClient)
+   {
+      ((JSFUnitWebConnection)webClient.getWebConnection()).removeListener(this);
+   }
+   
+   /**
+    * Get the requests recorded so far.
+    *
+    * @return The LoadScript.
+    */
+   public synchronized LoadScript getScript()
+   {
+      return new LoadScript(this.requests);
+   }
+   
+   public void beforeRequest(WebRequest webRequest)
+   {
+      // recorded when the response is known
+   }
+   
+   public synchronized void afterRequest(WebResponse webResponse)
+   {
+      if (webResponse == null) return;
+      
+      WebRequest webRequest = webResponse.getWebRequest();
+      String charset = webRequest.getCharset();
+      String url = JSESSIONID.matcher(webRequest.getUrl().toExternalForm()).replaceFirst("");
+      Map<String, String> headers = recordedHeaders(webRequest);
+      
+      List<String[]> bodyParams = null;
+      String body = null;
+      if (!webRequest.getRequestParameters().isEmpty())
+      {
+         bodyParams = new ArrayList<String[]>();
+         for (Iterator<NameValuePair> i = webRequest.getRequestParameters().iterator(); i.hasNext();)
+         {
+            NameValuePair pair = i.next();
+            bodyParams.add(new String[] {pair.getName(), pair.getValue()});
+         }
+         headers.put("Content-Type", FormEncodingType.URL_ENCODED.getName());
+      }
+      else if (webRequest.getRequestBody() != null)
+      {
+         String contentType = headerValue(headers, "Content-Type");
+         if ((contentType != null) && contentType.startsWith(FormEncodingType.URL_ENCODED.getName()))
+         {
+            bodyParams = RecordedRequest.parseQuery(webRequest.getRequestBody(), charset);
+         }
+         else
+         {
+            body = webRequest.getRequestBody();
+         }
+      }
+      
+      this.requests.add(new RecordedRequest(webRequest.getHttpMethod().name(), url, charset, headers,
+                                            bodyParams, body, this.values,
+                                            webResponse.getStatusCode(), webResponse.getContentType()));
+      
+      try
+      {
+         InputStream content = webResponse.getContentAsStream();
+         try
+         {
+            DynamicValueScanner.scanResponse(webResponse.getResponseHeaderValue("Location"), 
+                                             webResponse.getContentType(),
+                                             content, 
+                                             webResponse.getContentCharset(),
+                                             this.values);
+         }
+         finally
+         {
+            if (content != null) content.close();
+         }
+      }
+      catch (IOException e)
+      {
+         // ignore - the values of this response will be recorded as they are
+      }
+   }
+   
+   private static Map<String, String> recordedHeaders(WebRequest webRequest)
+   {
+      Map<String, String> headers = new LinkedHashMap<String, String>();
+      for (Iterator<Map.Entry<String, String>> i = webRequest.getAdditionalHeaders().entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, String> header = i.next();
+         if (!isIgnored(header.getKey())) headers.put(header.getKey(), header.getValue());
+      }
+      return headers;
+   }
+   
+   private static boolean isIgnored(String headerName)
+   {
+      for (int i=0; i < IGNORED_HEADERS.length; i++)
+      {
+         if (IGNORED_HEADERS[i].equalsIgnoreCase(headerName)) return true;
+      }
+      return false;
+   }
+   
+   private static String headerValue(Map<String, String> headers, String name)
+   {
+      for (Iterator<Map.Entry<String, String>> i = headers.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<String, String> header = i.next();
+         if (header.getKey().equalsIgnoreCase(name)) return header.getValue();
+      }
+      return null;
+   }
+}
@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.faces.context.FacesContext;
+import javax.faces.event.PhaseId;
+import org.jboss.jsfunit.framework.JSFTimer;
+import org.jboss.jsfunit.framework.LatencyHistogram;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+
+/**
+ * A virtual user of a LoadRunner.  Each virtual user runs on its own thread
+ * with its own WebClient and HttpSession.  It records the latency of each 
+ * step of the scenario and the JSF phase times of the requests made during 
+ * the steps.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class VirtualUser
+{
+   private static final PhaseId[] PHASES = {PhaseId.RESTORE_VIEW, 
+                                            PhaseId.APPLY_REQUEST_VALUES,
+                                            PhaseId.PROCESS_VALIDATIONS,
+                                            PhaseId.UPDATE_MODEL_VALUES,
+                                            PhaseId.INVOKE_APPLICATION,
+                                            PhaseId.RENDER_RESPONSE};
+   
+   private int userNumber;
+   private long thinkTime;
+   
+   // merged into the LoadReport when the user is done
+   private Map<String, LatencyHistogram> stepHistograms = new LinkedHashMap<String, LatencyHistogram>();
+   private LatencyHistogram[] phaseHistograms = new LatencyHistogram[PhaseId.VALUES.size()];
+   
+   private JSFSession jsfSession;
+   private int iteration;
+   
+   private String stepName;
+   private long stepStart;
+   
+   // the FacesContext whose JSFTimer was last recorded
+   private FacesContext lastFacesContext;
+   
+   VirtualUser(int userNumber, long thinkTime)
+   {
+      this.userNumber = userNumber;
+      this.thinkTime = thinkTime;
+      for (int i=0; i < phaseHistograms.length; i++) phaseHistograms[i] = new LatencyHistogram();
+   }
+   
+   /**
+    * Get the number of this virtual user, starting at zero.
+    *
+    * @return The user number.
+    */
+   public int getUserNumber()
+   {
+      return this.userNumber;
+   }
+   
+   /**
+    * Get the number of the current iteration of this user, starting at zero.
+    *
+    * @return The iteration.
+    */
+   public int getIteration()
+   {
+      return this.iteration;
+   }
+   
+   /**
+    * Get the JSFSession of the current iteration.
+    *
+    * @return The JSFSession.
+    */
+   public JSFSession getJSFSession()
+   {
+      return this.jsfSession;
+   }
+   
+   /**
+    * Start timing a step.  If another step is running, it is ended first.
+    *
+    * @param name The name of the step.  Steps with the same name share a histogram.
+    */
+   public void startStep(String name)
+   {
+      if (this.stepName != null) endStep();
+      
+      this.stepName = name;
+      this.stepStart = System.nanoTime();
+   }
+   
+   /**
+    * End the running step.  Its latency and the JSF phase times of its last
+    * request are recorded.  Then the virtual user waits for the think time.
+    */
+   public void endStep()
+   {
+      if (this.stepName == null) throw new IllegalStateException("No step was started.");
+      
+      long latency = System.nanoTime() - this.stepStart;
+      LatencyHistogram histogram = stepHistograms.get(this.stepName);
+      if (histogram == null)
+      {
+         histogram = new LatencyHistogram();
+         stepHistograms.put(this.stepName, histogram);
+      }
+      histogram.record(latency);
+      this.stepName = null;
+      
+      recordPhaseTimes();
+      think();
+   }
+   
+   // ---------------- package private methods --------------------
+   void startIteration(int iteration)
+   {
+      this.iteration = iteration;
+      this.jsfSession = null;
+      this.stepName = null;
+      this.lastFacesContext = null;
+   }
+   
+   void setJSFSession(JSFSession jsfSession)
+   {
+      this.jsfSession = jsfSession;
+   }
+   
+   void endIteration()
+   {
+      if (this.stepName != null) endStep();
+   }
+   
+   Map<String, LatencyHistogram> getStepHistograms()
+   {
+      return this.stepHistograms;
+   }
+   
+   LatencyHistogram[] getPhaseHistograms()
+   {
+      return this.phaseHistograms;
+   }
+   // -------------------------------------------------------------
+   
+   private void recordPhaseTimes()
+   {
+      if (this.jsfSession == null) return;
+      
+      FacesContext facesContext = this.jsfSession.getJSFServerSession().getFacesContext();
+      
+      // only a new FacesContext means a new JSF request
+      if ((facesContext == null) || (facesContext == this.lastFacesContext)) return;
+      this.lastFacesContext = facesContext;
+      
+      Map requestMap = facesContext.getExternalContext().getRequestMap();
+      JSFTimer timer = (JSFTimer)requestMap.get(JSFTimer.REQUEST_KEY);
+      if (timer == null) return;
+      
+      for (int i=0; i < PHASES.length; i++)
+      {
+         long nanos = timer.getPhaseTimeNanos(PHASES[i]);
+         if (nanos > 0) phaseHistograms[PHASES[i].getOrdinal()].record(nanos);
+      }
+      
+      long total = timer.getTotalTimeNanos();
+      if (total > 0) phaseHistograms[PhaseId.ANY_PHASE.getOrdinal()].record(total);
+   }
+   
+   private void think()
+   {
+      if (this.thinkTime <= 0) return;
+      
+      try
+      {
+         Thread.sleep(this.thinkTime);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+}
@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+/**
+ * An action or a navigation that ran during INVOKE_APPLICATION, or during
+ * APPLY_REQUEST_VALUES for an immediate component.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ActionProfile
+ */
+public class ActionInvocation
+{
+   public static final String ACTION = "action";
+   public static final String NAVIGATION = "navigation";
+   
+   private String type;
+   private String expression;
+   private String clientID;
+   private String outcome;
+   private long timeNanos;
+   
+   ActionInvocation(String type, String expression, String clientID, String outcome, long timeNanos)
+   {
+      this.type = type;
+      this.expression = expression;
+      this.clientID = clientID;
+      this.outcome = outcome;
+      this.timeNanos = timeNanos;
+   }
+   
+   /**
+    * Get the type of this invocation.
+    *
+    * @return ACTION or NAVIGATION.
+    */
+   public String getType()
+   {
+      return this.type;
+   }
+   
+   /**
+    * Get the action method expression.  For a navigation this is the 
+    * action that produced the outcome.
+    *
+    * @return The expression, such as "#{hotelBooking.bookHotel}", or 
+    *         <code>null</code> if there was none.
+    */
+   public String getExpression()
+   {
+      return this.expression;
+   }
+   
+   /**
+    * Get the client ID of the component that fired the action.
+    *
+    * @return The client ID, or <code>null</code> for a navigation.
+    */
+   public String getClientID()
+   {
+      return this.clientID;
+   }
+   
+   /**
+    * Get the outcome that was navigated.
+    *
+    * @return The outcome, or <code>null</code> for an action.
+    */
+   public String getOutcome()
+   {
+      return this.outcome;
+   }
+   
+   /**
+    * Get the time of the invocation.  The time of an action does not include
+    * the navigation that followed it.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getTimeNanos()
+   {
+      return this.timeNanos;
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuilder invocation = new StringBuilder(type).append(" ").append(expression);
+      if (clientID != null) invocation.append(" (").append(clientID).append(")");
+      if (type.equals(NAVIGATION)) invocation.append(" -> ").append(outcome);
+      return invocation.append(": ").append(timeNanos / 1000L).append("us").toString();
+   }
+}
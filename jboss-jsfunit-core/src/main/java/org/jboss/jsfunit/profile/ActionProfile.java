@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.faces.context.FacesContext;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+import org.jboss.jsfunit.framework.Environment;
+
+/**
+ * The actions and navigations that ran during one JSF request, in order, 
+ * with their times.  It is collected by the ActionListener and the 
+ * NavigationHandler of the JSFUnitApplication during JSFUnit requests.
+ *
+ * Actions are timed by the application ActionListener, which invokes the 
+ * action method of a component.  ActionListeners attached to the component
+ * itself, such as an actionListener attribute, run before it and are not 
+ * timed.  Navigation time includes handleNavigation() and the navigation 
+ * case lookups of components such as h:link.
+ *
+ * To enable, set system property jsfunit.profile.action.  Action profiling
+ * needs JSF 2.0 or higher.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ActionProfile
+{
+   public static final String REQUEST_KEY = ActionProfile.class.getName() + ".REQUEST_KEY";
+   
+   public static final String PROFILE_PROPERTY = "jsfunit.profile.action";
+   
+   private List<ActionInvocation> invocations = new ArrayList<ActionInvocation>();
+   
+   private long navigationTimeNanos;
+   private int navigationCaseLookups;
+   
+   ActionProfile()
+   {
+   }
+   
+   /**
+    * Check to see if action profiling is enabled.
+    * 
+    * @return <code>true</code> if enabled and running with JSF 2.0 or higher,
+    *         <code>false</code> otherwise.
+    */
+   public static boolean enabled()
+   {
+      return (System.getProperty(PROFILE_PROPERTY) != null) && Environment.is20Compatible();
+   }
+   
+   /**
+    * Get the ActionProfile of the current request, creating it if needed.
+    *
+    * @param facesContext The FacesContext.
+    *
+    * @return The ActionProfile, or <code>null</code> if this is not a 
+    *         JSFUnit request or the request is over.
+    */
+   static ActionProfile getProfile(FacesContext facesContext)
+   {
+      if (!(facesContext instanceof JSFUnitFacesContext)) return null;
+      if (((JSFUnitFacesContext)facesContext).isJSFRequestDone()) return null;
+      
+      Map<String, Object> requestMap = facesContext.getExternalContext().getRequestMap();
+      ActionProfile profile = (ActionProfile)requestMap.get(REQUEST_KEY);
+      if (profile == null)
+      {
+         profile = new ActionProfile();
+         requestMap.put(REQUEST_KEY, profile);
+      }
+      
+      return profile;
+   }
+   
+   /**
+    * Find the ActionProfile of a request that is over.
+    *
+    * @param facesContext The FacesContext of the request.
+    *
+    * @return The ActionProfile.  If no action ran, the profile is empty.
+    */
+   public static ActionProfile findProfile(FacesContext facesContext)
+   {
+      ActionProfile profile = null;
+      if (facesContext != null)
+      {
+         profile = (ActionProfile)facesContext.getExternalContext().getRequestMap().get(REQUEST_KEY);
+      }
+      
+      if (profile == null) profile = new ActionProfile();
+      return profile;
+   }
+   
+   // ---------------- package private methods --------------------
+   void actionInvoked(String expression, String clientID, long nanos)
+   {
+      invocations.add(new ActionInvocation(ActionInvocation.ACTION, expression, clientID, null, nanos));
+   }
+   
+   void navigated(String fromAction, String outcome, long nanos)
+   {
+      navigationTimeNanos += nanos;
+      invocations.add(new ActionInvocation(ActionInvocation.NAVIGATION, fromAction, null, outcome, nanos));
+   }
+   
+   void navigationCaseFound(long nanos)
+   {
+      navigationTimeNanos += nanos;
+      navigationCaseLookups++;
+   }
+   // -------------------------------------------------------------
+   
+   /**
+    * Get the actions and navigations, in the order they ran.
+    *
+    * @return The invocations.
+    */
+   public List<ActionInvocation> getInvocations()
+   {
+      return Collections.unmodifiableList(invocations);
+   }
+   
+   /**
+    * Get the time spent in an action method, without the navigation that 
+    * followed it.
+    *
+    * @param expression The method expression, such as 
+    *                   "#{hotelBooking.bookHotel}".  The EL delimiters are 
+    *                   optional.
+    *
+    * @return The time in nanoseconds, or zero if the action did not run.
+    */
+   public long getActionTimeNanos(String expression)
+   {
+      String path = ELProfile.toPath(expression);
+      long total = 0L;
+      for (Iterator<ActionInvocation> i = invocations.iterator(); i.hasNext();)
+      {
+         ActionInvocation invocation = i.next();
+         if (invocation.getType().equals(ActionInvocation.ACTION) && 
+             (invocation.getExpression() != null) && 
+             ELProfile.toPath(invocation.getExpression()).equals(path))
+         {
+            total += invocation.getTimeNanos();
+         }
+      }
+      return total;
+   }
+   
+   /**
+    * Get the time spent resolving navigation rules.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getNavigationTimeNanos()
+   {
+      return this.navigationTimeNanos;
+   }
+   
+   /**
+    * Get the number of navigation case lookups made outside of 
+    * handleNavigation(), such as by h:link and h:button.
+    *
+    * @return The number of lookups.
+    */
+   public int getNavigationCaseLookups()
+   {
+      return this.navigationCaseLookups;
+   }
+   
+   /**
+    * Assert that an action method took less than a number of milliseconds.
+    *
+    * @param expression The method expression, such as "#{hotelBooking.bookHotel}".
+    * @param millis The budget, exclusive.
+    *
+    * @throws AssertionError if the budget was exceeded.
+    */
+   public void assertActionUnder(String expression, long millis)
+   {
+      long nanos = getActionTimeNanos(expression);
+      if (nanos >= millis * 1000000L)
+      {
+         throw new AssertionError(expression + " took " + (nanos / 1000L) + "us.  Expected under " + millis + "ms.");
+      }
+   }
+   
+   /**
+    * Assert that navigation took less than a number of milliseconds.
+    *
+    * @param millis The budget, exclusive.
+    *
+    * @throws AssertionError if the budget was exceeded.
+    */
+   public void assertNavigationUnder(long millis)
+   {
+      if (navigationTimeNanos >= millis * 1000000L)
+      {
+         throw new AssertionError("Navigation took " + (navigationTimeNanos / 1000L) + "us.  Expected under " + 
+                                  millis + "ms.");
+      }
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuilder report = new StringBuilder();
+      report.append("ActionProfile: navigationTime=").append(navigationTimeNanos / 1000L).append("us")
+            .append(" navigationCaseLookups=").append(navigationCaseLookups).append("\n");
+      for (Iterator<ActionInvocation> i = invocations.iterator(); i.hasNext();)
+      {
+         report.append("   ").append(i.next()).append("\n");
+      }
+      return report.toString();
+   }
+}
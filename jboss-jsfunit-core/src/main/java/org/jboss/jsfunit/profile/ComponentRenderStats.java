@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+/**
+ * The render time and output of one component, or of all the components of 
+ * one type, during a JSF request.  
+ *
+ * Self values leave out the time and output of the child components.  Total
+ * values include them.  Output is counted in characters written to the 
+ * response, which is the number of bytes for ASCII markup.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.RenderProfile
+ */
+public class ComponentRenderStats
+{
+   private String clientID;
+   private String componentType;
+   
+   private int encodeCount;
+   private long selfTimeNanos;
+   private long totalTimeNanos;
+   private long selfChars;
+   private long totalChars;
+   
+   ComponentRenderStats(String clientID, String componentType)
+   {
+      this.clientID = clientID;
+      this.componentType = componentType;
+   }
+   
+   // ---------------- package private methods --------------------
+   void add(long totalNanos, long selfNanos, long totalChars, long selfChars)
+   {
+      this.totalTimeNanos += totalNanos;
+      this.selfTimeNanos += selfNanos;
+      this.totalChars += totalChars;
+      this.selfChars += selfChars;
+   }
+   
+   void encoded()
+   {
+      this.encodeCount++;
+   }
+   
+   void add(ComponentRenderStats stats)
+   {
+      this.encodeCount += stats.encodeCount;
+      add(stats.totalTimeNanos, stats.selfTimeNanos, stats.totalChars, stats.selfChars);
+   }
+   // -------------------------------------------------------------
+   
+   /**
+    * Get the client ID of the component.
+    *
+    * @return The client ID, or <code>null</code> if these are the stats of a 
+    *         component type.
+    */
+   public String getClientID()
+   {
+      return this.clientID;
+   }
+   
+   /**
+    * Get the type of the component.
+    *
+    * @return The class name of the component.
+    */
+   public String getComponentType()
+   {
+      return this.componentType;
+   }
+   
+   /**
+    * Get the number of times encodeBegin() was called.
+    *
+    * @return The number of times the component was encoded.
+    */
+   public int getEncodeCount()
+   {
+      return this.encodeCount;
+   }
+   
+   /**
+    * Get the time spent in the Renderer, without the child components.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getSelfTimeNanos()
+   {
+      return this.selfTimeNanos;
+   }
+   
+   /**
+    * Get the time spent in the Renderer, including the child components.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getTotalTimeNanos()
+   {
+      return this.totalTimeNanos;
+   }
+   
+   /**
+    * Get the output written by the Renderer, without the child components.
+    *
+    * @return The number of characters.
+    */
+   public long getSelfChars()
+   {
+      return this.selfChars;
+   }
+   
+   /**
+    * Get the output written by the Renderer, including the child components.
+    *
+    * @return The number of characters.
+    */
+   public long getTotalChars()
+   {
+      return this.totalChars;
+   }
+   
+   @Override
+   public String toString()
+   {
+      return ((clientID == null) ? componentType : clientID + " (" + componentType + ")") +
+             ": encodes=" + encodeCount +
+             " self=" + (selfTimeNanos / 1000L) + "us" +
+             " total=" + (totalTimeNanos / 1000L) + "us" +
+             " selfChars=" + selfChars +
+             " totalChars=" + totalChars;
+   }
+}
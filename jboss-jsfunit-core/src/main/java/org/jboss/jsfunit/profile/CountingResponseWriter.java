@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.io.Writer;
+import javax.faces.context.ResponseWriter;
+import javax.faces.context.ResponseWriterWrapper;
+
+/**
+ * ResponseWriter that counts everything written to the response in the
+ * RenderProfile of the request.  The characters are counted after the 
+ * wrapped ResponseWriter has escaped them.  Clones count as well.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class CountingResponseWriter extends ResponseWriterWrapper
+{
+   private ResponseWriter wrapped;
+   private RenderProfile profile;
+   
+   /**
+    * @param wrapped A ResponseWriter that writes to a CountingWriter.
+    * @param profile The RenderProfile of the request.
+    */
+   CountingResponseWriter(ResponseWriter wrapped, RenderProfile profile)
+   {
+      this.wrapped = wrapped;
+      this.profile = profile;
+   }
+   
+   @Override
+   public ResponseWriter getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   @Override
+   public ResponseWriter cloneWithWriter(Writer writer)
+   {
+      if (writer instanceof CountingWriter) return this.wrapped.cloneWithWriter(writer);
+      
+      ResponseWriter clone = this.wrapped.cloneWithWriter(new CountingWriter(writer, this.profile));
+      return new CountingResponseWriter(clone, this.profile);
+   }
+}
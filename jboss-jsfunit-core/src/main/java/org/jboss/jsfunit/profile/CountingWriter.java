@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that counts the characters written through it.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class CountingWriter extends Writer
+{
+   private Writer writer;
+   private RenderProfile renderProfile;
+   private long count;
+   
+   /**
+    * @param writer The Writer to write to.
+    * @param renderProfile The RenderProfile that also counts the characters, 
+    *                      or <code>null</code>.
+    */
+   CountingWriter(Writer writer, RenderProfile renderProfile)
+   {
+      this.writer = writer;
+      this.renderProfile = renderProfile;
+   }
+   
+   long getCount()
+   {
+      return this.count;
+   }
+   
+   private void counted(int len)
+   {
+      count += len;
+      if (renderProfile != null) renderProfile.written(len);
+   }
+   
+   @Override
+   public void write(char[] cbuf, int off, int len) throws IOException
+   {
+      counted(len);
+      writer.write(cbuf, off, len);
+   }
+   
+   @Override
+   public void write(String str, int off, int len) throws IOException
+   {
+      counted(len);
+      writer.write(str, off, len);
+   }
+   
+   @Override
+   public void write(int c) throws IOException
+   {
+      counted(1);
+      writer.write(c);
+   }
+   
+   @Override
+   public void flush() throws IOException
+   {
+      writer.flush();
+   }
+   
+   @Override
+   public void close() throws IOException
+   {
+      writer.close();
+   }
+}
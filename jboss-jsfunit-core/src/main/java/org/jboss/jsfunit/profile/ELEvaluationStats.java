@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+/**
+ * The evaluations of one EL path during a JSF request.  A path is the chain
+ * of names the ELResolver was asked to resolve, such as "bean" or 
+ * "bean.expensiveList".
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ELProfile
+ */
+public class ELEvaluationStats
+{
+   private String path;
+   private int count;
+   private long timeNanos;
+   
+   ELEvaluationStats(String path)
+   {
+      this.path = path;
+   }
+   
+   // ---------------- package private methods --------------------
+   void evaluated(long nanos)
+   {
+      this.count++;
+      this.timeNanos += nanos;
+   }
+   // -------------------------------------------------------------
+   
+   /**
+    * Get the EL path.
+    *
+    * @return The path, such as "bean.expensiveList".
+    */
+   public String getPath()
+   {
+      return this.path;
+   }
+   
+   /**
+    * Get the number of times the path was resolved.
+    *
+    * @return The number of evaluations.
+    */
+   public int getCount()
+   {
+      return this.count;
+   }
+   
+   /**
+    * Get the time spent resolving the path, including the time spent in the
+    * getter of the property.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getTimeNanos()
+   {
+      return this.timeNanos;
+   }
+   
+   @Override
+   public String toString()
+   {
+      return path + ": count=" + count + " time=" + (timeNanos / 1000L) + "us";
+   }
+}
@@ -0,0 +1,295 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.el.ELContext;
+import javax.faces.context.FacesContext;
+
+/**
+ * The EL evaluations made during one JSF request, counted and timed per EL
+ * path.  
+ *
+ * The ELResolver only sees one base and property at a time.  The profile 
+ * remembers the path of each object it resolved, so that when 
+ * #{bean.expensiveList} is evaluated the second step is recorded as 
+ * "bean.expensiveList" rather than as a property of the bean's class.  
+ * Inside a table, #{row.name} is recorded as "row.name" once per row.
+ *
+ * EL evaluated by JSFUnit tests after the request is over is not profiled.
+ *
+ * To enable, set system property jsfunit.profile.el.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ELProfile
+{
+   public static final String REQUEST_KEY = ELProfile.class.getName() + ".REQUEST_KEY";
+   
+   public static final String PROFILE_PROPERTY = "jsfunit.profile.el";
+   
+   private static final Comparator<ELEvaluationStats> BY_TIME = new Comparator<ELEvaluationStats>()
+   {
+      public int compare(ELEvaluationStats stats1, ELEvaluationStats stats2)
+      {
+         if (stats1.getTimeNanos() == stats2.getTimeNanos()) return 0;
+         return (stats1.getTimeNanos() > stats2.getTimeNanos()) ? -1 : 1;
+      }
+   };
+   
+   private static final Comparator<ELEvaluationStats> BY_COUNT = new Comparator<ELEvaluationStats>()
+   {
+      public int compare(ELEvaluationStats stats1, ELEvaluationStats stats2)
+      {
+         if (stats1.getCount() == stats2.getCount()) return BY_TIME.compare(stats1, stats2);
+         return (stats1.getCount() > stats2.getCount()) ? -1 : 1;
+      }
+   };
+   
+   private Map<String, ELEvaluationStats> evaluations = new HashMap<String, ELEvaluationStats>();
+   
+   // the path each resolved object was found under
+   private Map<Object, String> paths = new IdentityHashMap<Object, String>();
+   
+   ELProfile()
+   {
+   }
+   
+   /**
+    * Check to see if EL profiling is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   public static boolean enabled()
+   {
+      return System.getProperty(PROFILE_PROPERTY) != null;
+   }
+   
+   /**
+    * Wrap the ELContext of a JSFUnit request so that its EL evaluations are
+    * profiled.  This is called by the JSFUnitFacesContext if EL profiling
+    * is enabled.
+    *
+    * @param facesContext The FacesContext of the request.
+    * @param elContext The ELContext of the request.
+    *
+    * @return An ELContext that profiles the ELResolver of elContext.
+    */
+   public static ELContext profile(FacesContext facesContext, ELContext elContext)
+   {
+      ELProfile profile = new ELProfile();
+      facesContext.getExternalContext().getRequestMap().put(REQUEST_KEY, profile);
+      return new ProfilingELContext(elContext, new ProfilingELResolver(elContext.getELResolver(), profile));
+   }
+   
+   /**
+    * Find the ELProfile of a request that is over.
+    *
+    * @param facesContext The FacesContext of the request.
+    *
+    * @return The ELProfile.  If no EL was evaluated, the profile is empty.
+    */
+   public static ELProfile findProfile(FacesContext facesContext)
+   {
+      ELProfile profile = null;
+      if (facesContext != null)
+      {
+         profile = (ELProfile)facesContext.getExternalContext().getRequestMap().get(REQUEST_KEY);
+      }
+      
+      if (profile == null) profile = new ELProfile();
+      return profile;
+   }
+   
+   // ---------------- package private methods --------------------
+   /**
+    * Record the resolution of a property.
+    *
+    * @param base The base, or <code>null</code> for a top level name.
+    * @param property The property.
+    * @param value The value that was found.
+    * @param nanos The time it took.
+    */
+   void resolved(Object base, Object property, Object value, long nanos)
+   {
+      String path = path(base, property);
+      
+      ELEvaluationStats stats = evaluations.get(path);
+      if (stats == null)
+      {
+         stats = new ELEvaluationStats(path);
+         evaluations.put(path, stats);
+      }
+      stats.evaluated(nanos);
+      
+      if (isNavigable(value)) paths.put(value, path);
+   }
+   // -------------------------------------------------------------
+   
+   private String path(Object base, Object property)
+   {
+      if (base == null) return String.valueOf(property);
+      
+      String basePath = paths.get(base);
+      if (basePath == null) basePath = base.getClass().getName();
+      
+      if (property instanceof Number) return basePath + "[" + property + "]";
+      return basePath + "." + property;
+   }
+   
+   // values that can only be a leaf of a path are not remembered
+   private static boolean isNavigable(Object value)
+   {
+      return (value != null) &&
+             !(value instanceof String) &&
+             !(value instanceof Number) &&
+             !(value instanceof Boolean) &&
+             !(value instanceof Character);
+   }
+   
+   static String toPath(String expression)
+   {
+      String path = expression.trim();
+      if ((path.startsWith("#{") || path.startsWith("${")) && path.endsWith("}"))
+      {
+         path = path.substring(2, path.length() - 1).trim();
+      }
+      return path;
+   }
+   
+   /**
+    * Get the number of times an EL path was resolved.
+    *
+    * @param expression The path, such as "bean.expensiveList".  The EL 
+    *                   delimiters are optional, so "#{bean.expensiveList}"
+    *                   works as well.
+    *
+    * @return The number of evaluations.
+    */
+   public int getEvaluationCount(String expression)
+   {
+      ELEvaluationStats stats = evaluations.get(toPath(expression));
+      if (stats == null) return 0;
+      return stats.getCount();
+   }
+   
+   /**
+    * Get the time spent resolving all EL paths.  Nested evaluations, such
+    * as a getter that evaluates EL itself, are counted more than once.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getTotalTimeNanos()
+   {
+      long total = 0L;
+      for (Iterator<ELEvaluationStats> i = evaluations.values().iterator(); i.hasNext();)
+      {
+         total += i.next().getTimeNanos();
+      }
+      return total;
+   }
+   
+   /**
+    * Get the stats of every EL path, slowest first.
+    *
+    * @return The stats, ranked by total time.
+    */
+   public List<ELEvaluationStats> getHottest()
+   {
+      List<ELEvaluationStats> ranked = new ArrayList<ELEvaluationStats>(evaluations.values());
+      Collections.sort(ranked, BY_TIME);
+      return ranked;
+   }
+   
+   /**
+    * Get the stats of the EL paths that were resolved more than once, most 
+    * often first.
+    *
+    * @return The stats, ranked by count.
+    */
+   public List<ELEvaluationStats> getDuplicated()
+   {
+      List<ELEvaluationStats> duplicated = new ArrayList<ELEvaluationStats>();
+      for (Iterator<ELEvaluationStats> i = evaluations.values().iterator(); i.hasNext();)
+      {
+         ELEvaluationStats stats = i.next();
+         if (stats.getCount() > 1) duplicated.add(stats);
+      }
+      Collections.sort(duplicated, BY_COUNT);
+      return duplicated;
+   }
+   
+   /**
+    * Assert that an EL path was not resolved more than a number of times.
+    *
+    * @param expression The path, such as "bean.expensiveList" or "#{bean.expensiveList}".
+    * @param maxCount The maximum number of evaluations, inclusive.
+    *
+    * @throws AssertionError if the path was resolved more often.
+    */
+   public void assertEvaluatedAtMost(String expression, int maxCount)
+   {
+      int count = getEvaluationCount(expression);
+      if (count > maxCount)
+      {
+         throw new AssertionError(toPath(expression) + " was evaluated " + count + 
+                                  " times.  Expected at most " + maxCount + ".");
+      }
+   }
+   
+   /**
+    * Get a report of the 20 slowest and the 20 most duplicated EL paths.
+    *
+    * @return The report.
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder report = new StringBuilder();
+      report.append("ELProfile: paths=").append(evaluations.size())
+            .append(" time=").append(getTotalTimeNanos() / 1000L).append("us\n");
+      
+      report.append("Hottest:\n");
+      appendTop(report, getHottest());
+      report.append("Duplicated:\n");
+      appendTop(report, getDuplicated());
+      return report.toString();
+   }
+   
+   private static void appendTop(StringBuilder report, List<ELEvaluationStats> ranked)
+   {
+      for (int i=0; (i < ranked.size()) && (i < 20); i++)
+      {
+         report.append("   ").append(ranked.get(i)).append("\n");
+      }
+   }
+}
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import javax.faces.application.Application;
+import javax.faces.application.ApplicationWrapper;
+import javax.faces.application.NavigationHandler;
+import javax.faces.context.FacesContext;
+import javax.faces.event.ActionListener;
+import javax.faces.event.PostValidateEvent;
+import javax.faces.event.PreRenderViewEvent;
+import javax.faces.event.PreValidateEvent;
+import javax.faces.event.SystemEventListener;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+
+/**
+ * Application that subscribes to the validation events of the Application 
+ * it wraps, so that the validation of each UIInput is profiled in the 
+ * ValidationProfile of JSFUnit requests while validation profiling is 
+ * enabled.  The converters and validators it creates are not wrapped.  The
+ * ValidationProfile only swaps them while a UIInput is validated.
+ *
+ * When action profiling is enabled, JSFUnit requests get a wrapper of the 
+ * ActionListener and of the NavigationHandler, which profile actions and 
+ * navigation in the ActionProfile of the request.  Other requests, and all
+ * requests when action profiling is disabled, get the real ones.
+ *
+ * This class must only be loaded if Environment.is20Compatible().
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ValidationProfile
+ * @see org.jboss.jsfunit.profile.ActionProfile
+ */
+public class JSFUnitApplication extends ApplicationWrapper
+{
+   private Application wrapped;
+   
+   private volatile ProfilingActionListener actionListener;
+   private volatile NavigationHandler navigationHandler;
+   
+   public JSFUnitApplication(Application wrapped)
+   {
+      this.wrapped = wrapped;
+      
+      // the listener checks ValidationProfile.enabled() on each request
+      SystemEventListener listener = new ValidationEventListener();
+      wrapped.subscribeToEvent(PreValidateEvent.class, listener);
+      wrapped.subscribeToEvent(PostValidateEvent.class, listener);
+      wrapped.subscribeToEvent(PreRenderViewEvent.class, listener);
+   }
+   
+   /**
+    * Wrap an Application unless it is already a JSFUnitApplication.  The 
+    * return type keeps this class out of the signatures of its callers, so 
+    * they can be loaded with JSF 1.2.
+    *
+    * @param application The Application.
+    *
+    * @return The JSFUnitApplication.
+    */
+   static Application wrap(Application application)
+   {
+      if (application instanceof JSFUnitApplication) return application;
+      return new JSFUnitApplication(application);
+   }
+   
+   /**
+    * Get the Application wrapped by a JSFUnitApplication.
+    *
+    * @param application The Application.
+    *
+    * @return The wrapped Application, or the given one if it is not a
+    *         JSFUnitApplication.
+    */
+   static Application unwrap(Application application)
+   {
+      if (application instanceof JSFUnitApplication) return ((JSFUnitApplication)application).getWrapped();
+      return application;
+   }
+   
+   @Override
+   public Application getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   @Override
+   public ActionListener getActionListener()
+   {
+      ActionListener listener = this.wrapped.getActionListener();
+      if ((listener == null) || !isProfiledRequest()) return listener;
+      
+      ProfilingActionListener profiling = this.actionListener;
+      if ((profiling == null) || (profiling.getWrapped() != listener))
+      {
+         profiling = new ProfilingActionListener(listener);
+         this.actionListener = profiling;
+      }
+      return profiling;
+   }
+   
+   @Override
+   public void setActionListener(ActionListener listener)
+   {
+      if (listener instanceof ProfilingActionListener)
+      {
+         listener = ((ProfilingActionListener)listener).getWrapped();
+      }
+      this.wrapped.setActionListener(listener);
+   }
+   
+   @Override
+   public NavigationHandler getNavigationHandler()
+   {
+      NavigationHandler handler = this.wrapped.getNavigationHandler();
+      if ((handler == null) || !isProfiledRequest()) return handler;
+      
+      NavigationHandler profiling = this.navigationHandler;
+      if ((profiling == null) || (ProfilingNavigationHandler.unwrap(profiling) != handler))
+      {
+         profiling = ProfilingNavigationHandler.wrap(handler);
+         this.navigationHandler = profiling;
+      }
+      return profiling;
+   }
+   
+   @Override
+   public void setNavigationHandler(NavigationHandler handler)
+   {
+      this.wrapped.setNavigationHandler(ProfilingNavigationHandler.unwrap(handler));
+   }
+   
+   // the profiling wrappers are only handed out to JSFUnit requests
+   private static boolean isProfiledRequest()
+   {
+      return ActionProfile.enabled() && (FacesContext.getCurrentInstance() instanceof JSFUnitFacesContext);
+   }
+}
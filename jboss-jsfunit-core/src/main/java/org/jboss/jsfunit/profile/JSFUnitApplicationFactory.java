@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import javax.faces.application.Application;
+import javax.faces.application.ApplicationFactory;
+import org.jboss.jsfunit.framework.Environment;
+
+/**
+ * When validation or action profiling is enabled, this ApplicationFactory
+ * returns a JSFUnitApplication that wraps the Application of the JSF implementation.
+ * Otherwise, it returns the Application of its parent.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.JSFUnitApplication
+ */
+public class JSFUnitApplicationFactory extends ApplicationFactory
+{
+   private ApplicationFactory parent;
+   
+   // typed as Application so that this class can be loaded with JSF 1.2
+   private volatile Application application;
+   
+   public JSFUnitApplicationFactory(ApplicationFactory parent)
+   {
+      this.parent = parent;
+   }
+   
+   @Override
+   public ApplicationFactory getWrapped()
+   {
+      return this.parent;
+   }
+   
+   @Override
+   public Application getApplication()
+   {
+      Application parentApplication = this.parent.getApplication();
+      if ((parentApplication == null) || !enabled()) return parentApplication;
+      
+      Application jsfunitApplication = this.application;
+      if ((jsfunitApplication == null) || (JSFUnitApplication.unwrap(jsfunitApplication) != parentApplication))
+      {
+         jsfunitApplication = JSFUnitApplication.wrap(parentApplication);
+         this.application = jsfunitApplication;
+      }
+      
+      return jsfunitApplication;
+   }
+   
+   @Override
+   public void setApplication(Application application)
+   {
+      if (Environment.is20Compatible()) application = JSFUnitApplication.unwrap(application);
+      this.parent.setApplication(application);
+   }
+   
+   /**
+    * Check to see if any profiling done by the JSFUnitApplication is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   static boolean enabled()
+   {
+      return ValidationProfile.enabled() || ActionProfile.enabled();
+   }
+}
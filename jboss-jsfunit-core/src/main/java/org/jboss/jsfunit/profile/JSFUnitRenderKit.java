@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.faces.application.ResourceDependencies;
+import javax.faces.application.ResourceDependency;
+import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseWriter;
+import javax.faces.event.ComponentSystemEventListener;
+import javax.faces.event.ListenerFor;
+import javax.faces.event.ListenersFor;
+import javax.faces.render.RenderKit;
+import javax.faces.render.RenderKitWrapper;
+import javax.faces.render.Renderer;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+
+/**
+ * RenderKit that wraps its Renderers with profiling Renderers and its 
+ * ResponseWriters with counting ResponseWriters.  The results are kept in
+ * the RenderProfile of each JSFUnit request.  Other requests get the 
+ * Renderers and ResponseWriters of the wrapped RenderKit.
+ *
+ * Only the standard HTML Renderers of Mojarra and MyFaces are wrapped.
+ * Component libraries often get a Renderer from the RenderKit and cast it to
+ * their own Renderer class, which would fail on a wrapper.  Components with
+ * other Renderers are not in the RenderProfile.  Their time and output count
+ * for the nearest profiled ancestor.
+ *
+ * This class must only be loaded if Environment.is20Compatible().
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.RenderProfile
+ */
+public class JSFUnitRenderKit extends RenderKitWrapper
+{
+   // packages of Renderers known to work behind a ProfilingRenderer
+   private static final String[] PROFILED_PACKAGES = {"com.sun.faces.renderkit.html_basic", 
+                                                      "org.apache.myfaces.renderkit.html"};
+   
+   private RenderKit wrapped;
+   
+   // the Renderer to use for each Renderer of the wrapped RenderKit
+   private Map<Renderer, Renderer> renderers = new ConcurrentHashMap<Renderer, Renderer>();
+   
+   public JSFUnitRenderKit(RenderKit wrapped)
+   {
+      this.wrapped = wrapped;
+   }
+   
+   /**
+    * Wrap a RenderKit unless it is already a JSFUnitRenderKit.  The return
+    * type keeps this class out of the signatures of its callers, so they 
+    * can be loaded with JSF 1.2.
+    *
+    * @param renderKit The RenderKit.
+    *
+    * @return The JSFUnitRenderKit.
+    */
+   static RenderKit wrap(RenderKit renderKit)
+   {
+      if (renderKit instanceof JSFUnitRenderKit) return renderKit;
+      return new JSFUnitRenderKit(renderKit);
+   }
+   
+   @Override
+   public RenderKit getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   @Override
+   public Renderer getRenderer(String family, String rendererType)
+   {
+      Renderer renderer = this.wrapped.getRenderer(family, rendererType);
+      if ((renderer == null) || !isJSFUnitRequest()) return renderer;
+      
+      Renderer profilingRenderer = renderers.get(renderer);
+      if (profilingRenderer == null)
+      {
+         profilingRenderer = canWrap(renderer) ? new ProfilingRenderer(renderer) : renderer;
+         renderers.put(renderer, profilingRenderer);
+      }
+      
+      return profilingRenderer;
+   }
+   
+   @Override
+   public ResponseWriter createResponseWriter(Writer writer, String contentTypeList, String characterEncoding)
+   {
+      RenderProfile profile = RenderProfile.getProfile(FacesContext.getCurrentInstance());
+      if (profile == null) return this.wrapped.createResponseWriter(writer, contentTypeList, characterEncoding);
+      
+      ResponseWriter responseWriter = this.wrapped.createResponseWriter(new CountingWriter(writer, profile), 
+                                                                        contentTypeList, 
+                                                                        characterEncoding);
+      return new CountingResponseWriter(responseWriter, profile);
+   }
+   
+   private static boolean isJSFUnitRequest()
+   {
+      return FacesContext.getCurrentInstance() instanceof JSFUnitFacesContext;
+   }
+   
+   private static boolean canWrap(Renderer renderer)
+   {
+      Class rendererClass = renderer.getClass();
+      if (!isProfiledPackage(rendererClass)) return false;
+      
+      // JSF reads these from the Renderer class, so they would be lost on a wrapper
+      return !(renderer instanceof ComponentSystemEventListener) &&
+             !rendererClass.isAnnotationPresent(ListenerFor.class) &&
+             !rendererClass.isAnnotationPresent(ListenersFor.class) &&
+             !rendererClass.isAnnotationPresent(ResourceDependency.class) &&
+             !rendererClass.isAnnotationPresent(ResourceDependencies.class);
+   }
+   
+   // the package itself, not subpackages such as Tomahawk's org.apache.myfaces.renderkit.html.ext
+   private static boolean isProfiledPackage(Class rendererClass)
+   {
+      String className = rendererClass.getName();
+      String packageName = className.substring(0, Math.max(className.lastIndexOf('.'), 0));
+      for (int i=0; i < PROFILED_PACKAGES.length; i++)
+      {
+         if (PROFILED_PACKAGES[i].equals(packageName)) return true;
+      }
+      
+      return false;
+   }
+}
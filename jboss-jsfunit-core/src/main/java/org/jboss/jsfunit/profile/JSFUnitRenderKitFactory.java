@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.faces.context.FacesContext;
+import javax.faces.render.RenderKit;
+import javax.faces.render.RenderKitFactory;
+
+/**
+ * When render profiling is enabled, this RenderKitFactory returns a 
+ * JSFUnitRenderKit for every RenderKit so that rendering can be profiled.
+ * Otherwise, it returns the RenderKits of its parent.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.RenderProfile
+ */
+public class JSFUnitRenderKitFactory extends RenderKitFactory
+{
+   private RenderKitFactory parent;
+   
+   // typed as RenderKit so that this class can be loaded with JSF 1.2
+   private Map<RenderKit, RenderKit> renderKits = new ConcurrentHashMap<RenderKit, RenderKit>();
+   
+   public JSFUnitRenderKitFactory(RenderKitFactory parent)
+   {
+      this.parent = parent;
+   }
+   
+   @Override
+   public RenderKitFactory getWrapped()
+   {
+      return this.parent;
+   }
+   
+   @Override
+   public void addRenderKit(String renderKitId, RenderKit renderKit)
+   {
+      this.parent.addRenderKit(renderKitId, renderKit);
+   }
+   
+   @Override
+   public RenderKit getRenderKit(FacesContext context, String renderKitId)
+   {
+      RenderKit renderKit = this.parent.getRenderKit(context, renderKitId);
+      if ((renderKit == null) || !RenderProfile.enabled()) return renderKit;
+      
+      RenderKit jsfunitRenderKit = renderKits.get(renderKit);
+      if (jsfunitRenderKit == null)
+      {
+         jsfunitRenderKit = JSFUnitRenderKit.wrap(renderKit);
+         renderKits.put(renderKit, jsfunitRenderKit);
+      }
+      
+      return jsfunitRenderKit;
+   }
+   
+   @Override
+   public Iterator<String> getRenderKitIds()
+   {
+      return this.parent.getRenderKitIds();
+   }
+}
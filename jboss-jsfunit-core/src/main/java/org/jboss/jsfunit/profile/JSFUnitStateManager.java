@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.io.IOException;
+import javax.faces.application.StateManager;
+import javax.faces.application.StateManagerWrapper;
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseWriter;
+import javax.faces.render.ResponseStateManager;
+
+/**
+ * This StateManager times the saving and restoring of views and keeps the 
+ * saved state for measuring.  The results are kept in the ViewStateProfile
+ * of the request.  Unless view state profiling is enabled, requests made by
+ * JSFUnit are passed to the wrapped StateManager untouched.  So are requests
+ * that do not get a Server-Timing header from the JSFUnitFilter.  For those
+ * that do, only the save and restore times are recorded.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ViewStateProfile
+ */
+public class JSFUnitStateManager extends StateManagerWrapper
+{
+   private StateManager wrapped;
+   
+   public JSFUnitStateManager(StateManager wrapped)
+   {
+      this.wrapped = wrapped;
+   }
+   
+   @Override
+   public StateManager getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   @Override
+   public Object saveView(FacesContext context)
+   {
+      ViewStateProfile profile = ViewStateProfile.getProfile(context);
+      if (profile == null) return this.wrapped.saveView(context);
+      
+      long start = System.nanoTime();
+      Object state = this.wrapped.saveView(context);
+      long nanos = System.nanoTime() - start;
+      
+      // the size is measured later, when the profile is asked for it
+      profile.saved(nanos, state, this.wrapped.isSavingStateInClient(context));
+      return state;
+   }
+   
+   @Override
+   public void writeState(FacesContext context, Object state) throws IOException
+   {
+      ViewStateProfile profile = ViewStateProfile.getProfile(context);
+      if (profile == null)
+      {
+         this.wrapped.writeState(context, state);
+         return;
+      }
+      
+      ResponseWriter writer = context.getResponseWriter();
+      if ((writer == null) || profile.isTimingOnly())
+      {
+         long start = System.nanoTime();
+         try
+         {
+            this.wrapped.writeState(context, state);
+         }
+         finally
+         {
+            profile.written(System.nanoTime() - start, -1L);
+         }
+         return;
+      }
+      
+      CountingWriter counter = new CountingWriter(writer, null);
+      context.setResponseWriter(writer.cloneWithWriter(counter));
+      long start = System.nanoTime();
+      try
+      {
+         this.wrapped.writeState(context, state);
+      }
+      finally
+      {
+         profile.written(System.nanoTime() - start, counter.getCount());
+         context.setResponseWriter(writer);
+      }
+   }
+   
+   @Override
+   public String getViewState(FacesContext context)
+   {
+      ViewStateProfile profile = ViewStateProfile.getProfile(context);
+      if (profile == null) return this.wrapped.getViewState(context);
+      
+      long start = System.nanoTime();
+      String viewState = this.wrapped.getViewState(context);
+      profile.written(System.nanoTime() - start, (viewState == null) ? -1L : viewState.length());
+      return viewState;
+   }
+   
+   @Override
+   public UIViewRoot restoreView(FacesContext context, String viewId, String renderKitId)
+   {
+      ViewStateProfile profile = ViewStateProfile.getProfile(context);
+      if (profile == null) return this.wrapped.restoreView(context, viewId, renderKitId);
+      
+      long start = System.nanoTime();
+      UIViewRoot viewRoot = this.wrapped.restoreView(context, viewId, renderKitId);
+      long nanos = System.nanoTime() - start;
+      if (profile.isTimingOnly())
+      {
+         profile.restored(nanos, -1L);
+         return viewRoot;
+      }
+      
+      String viewState = context.getExternalContext()
+                                .getRequestParameterMap()
+                                .get(ResponseStateManager.VIEW_STATE_PARAM);
+      profile.restored(nanos, (viewState == null) ? -1L : viewState.length());
+      return viewRoot;
+   }
+}
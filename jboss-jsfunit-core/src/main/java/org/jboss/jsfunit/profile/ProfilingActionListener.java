@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import javax.el.MethodExpression;
+import javax.faces.component.ActionSource2;
+import javax.faces.component.UIComponent;
+import javax.faces.context.FacesContext;
+import javax.faces.event.AbortProcessingException;
+import javax.faces.event.ActionEvent;
+import javax.faces.event.ActionListener;
+
+/**
+ * ActionListener that times the application ActionListener it wraps and 
+ * records the action method expression in the ActionProfile of the request.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ProfilingActionListener implements ActionListener
+{
+   private ActionListener wrapped;
+   
+   ProfilingActionListener(ActionListener wrapped)
+   {
+      this.wrapped = wrapped;
+   }
+   
+   ActionListener getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   public void processAction(ActionEvent event) throws AbortProcessingException
+   {
+      FacesContext facesContext = FacesContext.getCurrentInstance();
+      ActionProfile profile = ActionProfile.getProfile(facesContext);
+      if (profile == null)
+      {
+         this.wrapped.processAction(event);
+         return;
+      }
+      
+      long navigationBefore = profile.getNavigationTimeNanos();
+      long start = System.nanoTime();
+      try
+      {
+         this.wrapped.processAction(event);
+      }
+      finally
+      {
+         long nanos = System.nanoTime() - start;
+         nanos -= profile.getNavigationTimeNanos() - navigationBefore;
+         
+         UIComponent component = event.getComponent();
+         profile.actionInvoked(actionExpression(component), component.getClientId(facesContext), nanos);
+      }
+   }
+   
+   private static String actionExpression(UIComponent component)
+   {
+      if (!(component instanceof ActionSource2)) return null;
+      
+      MethodExpression action = ((ActionSource2)component).getActionExpression();
+      if (action == null) return null;
+      return action.getExpressionString();
+   }
+}
@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.profile;
+
+import java.util.Map;
+import java.util.Set;
+import javax.faces.application.ConfigurableNavigationHandler;
+import javax.faces.application.NavigationCase;
+import javax.faces.context.FacesContext;
+
+/**
+ * ConfigurableNavigationHandler that times the ConfigurableNavigationHandler
+ * it wraps and records the navigations and navigation case lookups in the 
+ * ActionProfile of the request.  JSF components such as h:link look up
+ * navigation cases during rendering.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ProfilingNavigationHandler
+ */
+class ProfilingConfigurableNavigationHandler extends ConfigurableNavigationHandler
+{
+   private ConfigurableNavigationHandler wrapped;
+   
+   ProfilingConfigurableNavigationHandler(ConfigurableNavigationHandler wrapped)
+   {
+      this.wrapped = wrapped;
+   }
+   
+   ConfigurableNavigationHandler getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   @Override
+   public void handleNavigation(FacesContext context, String fromAction, String outcome)
+   {
+      ProfilingNavigationHandler.handleNavigation(this.wrapped, context, fromAction, outcome);
+   }
+   
+   @Override
+   public NavigationCase getNavigationCase(FacesContext context, String fromAction, String outcome)
+   {
+      ActionProfile profile = ActionProfile.getProfile(context);
+      if (profile == null) return this.wrapped.getNavigationCase(context, fromAction, outcome);
+      
+      long start = System.nanoTime();
+      try
+      {
+         return this.wrapped.getNavigationCase(context, fromAction, outcome);
+      }
+      finally
+      {
+         profile.navigationCaseFound(System.nanoTime() - start);
+      }
+   }
+   
+   @Override
+   public Map<String, Set<NavigationCase>> getNavigationCases()
+   {
+      return this.wrapped.getNavigationCases();
+   }
+}
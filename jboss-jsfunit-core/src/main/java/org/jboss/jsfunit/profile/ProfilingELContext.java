@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.util.Locale;
+import javax.el.ELContext;
+import javax.el.ELResolver;
+import javax.el.FunctionMapper;
+import javax.el.VariableMapper;
+
+/**
+ * ELContext that returns a ProfilingELResolver.  Everything else, including
+ * the propertyResolved flag, is kept by the wrapped ELContext.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ProfilingELContext extends ELContext
+{
+   private ELContext wrapped;
+   private ELResolver resolver;
+   
+   ProfilingELContext(ELContext wrapped, ELResolver resolver)
+   {
+      this.wrapped = wrapped;
+      this.resolver = resolver;
+   }
+   
+   ELContext getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   @Override
+   public ELResolver getELResolver()
+   {
+      return this.resolver;
+   }
+   
+   @Override
+   public FunctionMapper getFunctionMapper()
+   {
+      return this.wrapped.getFunctionMapper();
+   }
+   
+   @Override
+   public VariableMapper getVariableMapper()
+   {
+      return this.wrapped.getVariableMapper();
+   }
+   
+   @Override
+   public boolean isPropertyResolved()
+   {
+      return this.wrapped.isPropertyResolved();
+   }
+   
+   @Override
+   public void setPropertyResolved(boolean resolved)
+   {
+      this.wrapped.setPropertyResolved(resolved);
+   }
+   
+   @Override
+   public void putContext(Class key, Object contextObject)
+   {
+      this.wrapped.putContext(key, contextObject);
+   }
+   
+   @Override
+   public Object getContext(Class key)
+   {
+      return this.wrapped.getContext(key);
+   }
+   
+   @Override
+   public Locale getLocale()
+   {
+      return this.wrapped.getLocale();
+   }
+   
+   @Override
+   public void setLocale(Locale locale)
+   {
+      this.wrapped.setLocale(locale);
+   }
+}
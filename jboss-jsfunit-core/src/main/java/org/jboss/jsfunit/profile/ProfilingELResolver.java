@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.beans.FeatureDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import javax.el.ELContext;
+import javax.el.ELException;
+import javax.el.ELResolver;
+
+/**
+ * ELResolver that times every property it resolves and records it in the 
+ * ELProfile of the request.  It wraps the whole ELResolver chain of the 
+ * request.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ProfilingELResolver extends ELResolver
+{
+   // ELResolver.invoke() was added in EL 2.2
+   private static final Method INVOKE = findInvoke();
+   
+   private ELResolver wrapped;
+   private ELProfile profile;
+   
+   ProfilingELResolver(ELResolver wrapped, ELProfile profile)
+   {
+      this.wrapped = wrapped;
+      this.profile = profile;
+   }
+   
+   private static Method findInvoke()
+   {
+      try
+      {
+         return ELResolver.class.getMethod("invoke", new Class[] {ELContext.class, Object.class, Object.class,
+                                                                  Class[].class, Object[].class});
+      }
+      catch (NoSuchMethodException e)
+      {
+         return null;
+      }
+   }
+   
+   @Override
+   public Object getValue(ELContext context, Object base, Object property)
+   {
+      long start = System.nanoTime();
+      Object value = this.wrapped.getValue(context, base, property);
+      long nanos = System.nanoTime() - start;
+      
+      if (context.isPropertyResolved()) this.profile.resolved(base, property, value, nanos);
+      return value;
+   }
+   
+   @Override
+   public Class<?> getType(ELContext context, Object base, Object property)
+   {
+      return this.wrapped.getType(context, base, property);
+   }
+   
+   @Override
+   public void setValue(ELContext context, Object base, Object property, Object value)
+   {
+      this.wrapped.setValue(context, base, property, value);
+   }
+   
+   @Override
+   public boolean isReadOnly(ELContext context, Object base, Object property)
+   {
+      return this.wrapped.isReadOnly(context, base, property);
+   }
+   
+   @Override
+   public Iterator<FeatureDescriptor> getFeatureDescriptors(ELContext context, Object base)
+   {
+      return this.wrapped.getFeatureDescriptors(context, base);
+   }
+   
+   @Override
+   public Class<?> getCommonPropertyType(ELContext context, Object base)
+   {
+      return this.wrapped.getCommonPropertyType(context, base);
+   }
+   
+   /**
+    * Pass a method invocation of EL 2.2 to the wrapped ELResolver.
+    */
+   public Object invoke(ELContext context, Object base, Object method, Class<?>[] paramTypes, Object[] params)
+   {
+      if (INVOKE == null) return null;
+      
+      try
+      {
+         return INVOKE.invoke(this.wrapped, new Object[] {context, base, method, paramTypes, params});
+      }
+      catch (IllegalAccessException e)
+      {
+         throw new ELException(e);
+      }
+      catch (InvocationTargetException e)
+      {
+         if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+         if (e.getCause() instanceof Error) throw (Error)e.getCause();
+         throw new ELException(e.getCause());
+      }
+   }
+}
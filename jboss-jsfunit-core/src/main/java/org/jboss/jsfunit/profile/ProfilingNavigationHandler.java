@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.profile;
+
+import javax.faces.application.ConfigurableNavigationHandler;
+import javax.faces.application.NavigationHandler;
+import javax.faces.context.FacesContext;
+
+/**
+ * NavigationHandler that times the NavigationHandler it wraps and records 
+ * the navigations in the ActionProfile of the request.  A 
+ * ConfigurableNavigationHandler is wrapped by a 
+ * ProfilingConfigurableNavigationHandler instead, so that the wrapper is a
+ * ConfigurableNavigationHandler exactly when the wrapped one is.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ProfilingNavigationHandler extends NavigationHandler
+{
+   private NavigationHandler wrapped;
+   
+   ProfilingNavigationHandler(NavigationHandler wrapped)
+   {
+      this.wrapped = wrapped;
+   }
+   
+   /**
+    * Wrap a NavigationHandler with the profiling wrapper that matches its 
+    * type.
+    *
+    * @param handler The NavigationHandler.
+    *
+    * @return The profiling NavigationHandler.
+    */
+   static NavigationHandler wrap(NavigationHandler handler)
+   {
+      if (handler instanceof ConfigurableNavigationHandler)
+      {
+         return new ProfilingConfigurableNavigationHandler((ConfigurableNavigationHandler)handler);
+      }
+      
+      return new ProfilingNavigationHandler(handler);
+   }
+   
+   /**
+    * Get the NavigationHandler wrapped by a profiling NavigationHandler.
+    *
+    * @param handler The NavigationHandler.
+    *
+    * @return The wrapped NavigationHandler, or the given one if it is not a
+    *         profiling NavigationHandler.
+    */
+   static NavigationHandler unwrap(NavigationHandler handler)
+   {
+      if (handler instanceof ProfilingNavigationHandler)
+      {
+         return ((ProfilingNavigationHandler)handler).wrapped;
+      }
+      
+      if (handler instanceof ProfilingConfigurableNavigationHandler)
+      {
+         return ((ProfilingConfigurableNavigationHandler)handler).getWrapped();
+      }
+      
+      return handler;
+   }
+   
+   static void handleNavigation(NavigationHandler wrapped, FacesContext context, String fromAction, String outcome)
+   {
+      ActionProfile profile = ActionProfile.getProfile(context);
+      if (profile == null)
+      {
+         wrapped.handleNavigation(context, fromAction, outcome);
+         return;
+      }
+      
+      long start = System.nanoTime();
+      try
+      {
+         wrapped.handleNavigation(context, fromAction, outcome);
+      }
+      finally
+      {
+         profile.navigated(fromAction, outcome, System.nanoTime() - start);
+      }
+   }
+   
+   @Override
+   public void handleNavigation(FacesContext context, String fromAction, String outcome)
+   {
+      handleNavigation(this.wrapped, context, fromAction, outcome);
+   }
+}
@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.io.IOException;
+import javax.faces.component.UIComponent;
+import javax.faces.context.FacesContext;
+import javax.faces.convert.ConverterException;
+import javax.faces.render.Renderer;
+
+/**
+ * Renderer that times the encode methods of the Renderer it wraps and 
+ * records them in the RenderProfile of the request.
+ *
+ * @author agent
+ * @since 2.0
+ */
+class ProfilingRenderer extends Renderer
+{
+   private Renderer wrapped;
+   
+   ProfilingRenderer(Renderer wrapped)
+   {
+      this.wrapped = wrapped;
+   }
+   
+   Renderer getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   @Override
+   public void encodeBegin(FacesContext context, UIComponent component) throws IOException
+   {
+      RenderProfile profile = RenderProfile.getProfile(context);
+      if (profile == null)
+      {
+         this.wrapped.encodeBegin(context, component);
+         return;
+      }
+      
+      profile.enter();
+      try
+      {
+         this.wrapped.encodeBegin(context, component);
+      }
+      finally
+      {
+         profile.exit(context, component, true);
+      }
+   }
+   
+   @Override
+   public void encodeChildren(FacesContext context, UIComponent component) throws IOException
+   {
+      RenderProfile profile = RenderProfile.getProfile(context);
+      if (profile == null)
+      {
+         this.wrapped.encodeChildren(context, component);
+         return;
+      }
+      
+      profile.enter();
+      try
+      {
+         this.wrapped.encodeChildren(context, component);
+      }
+      finally
+      {
+         profile.exit(context, component, false);
+      }
+   }
+   
+   @Override
+   public void encodeEnd(FacesContext context, UIComponent component) throws IOException
+   {
+      RenderProfile profile = RenderProfile.getProfile(context);
+      if (profile == null)
+      {
+         this.wrapped.encodeEnd(context, component);
+         return;
+      }
+      
+      profile.enter();
+      try
+      {
+         this.wrapped.encodeEnd(context, component);
+      }
+      finally
+      {
+         profile.exit(context, component, false);
+      }
+   }
+   
+   @Override
+   public void decode(FacesContext context, UIComponent component)
+   {
+      this.wrapped.decode(context, component);
+   }
+   
+   @Override
+   public String convertClientId(FacesContext context, String clientId)
+   {
+      return this.wrapped.convertClientId(context, clientId);
+   }
+   
+   @Override
+   public boolean getRendersChildren()
+   {
+      return this.wrapped.getRendersChildren();
+   }
+   
+   @Override
+   public Object getConvertedValue(FacesContext context, UIComponent component, Object submittedValue)
+         throws ConverterException
+   {
+      return this.wrapped.getConvertedValue(context, component, submittedValue);
+   }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.profile;
+
+import javax.faces.component.UIComponent;
+import javax.faces.context.FacesContext;
+import javax.faces.validator.Validator;
+import javax.faces.validator.ValidatorException;
+
+/**
+ * Validator that times the Validator it wraps and records the time in a
+ * ValidationProfile.  The ValidationProfile attaches it to a UIInput only 
+ * while the UIInput is validated.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ValidationProfile
+ */
+class ProfilingValidator implements Validator
+{
+   private Validator wrapped;
+   private ValidationProfile profile;
+   
+   ProfilingValidator(Validator wrapped, ValidationProfile profile)
+   {
+      this.wrapped = wrapped;
+      this.profile = profile;
+   }
+   
+   Validator getWrapped()
+   {
+      return this.wrapped;
+   }
+   
+   public void validate(FacesContext context, UIComponent component, Object value) throws ValidatorException
+   {
+      long start = System.nanoTime();
+      try
+      {
+         this.wrapped.validate(context, component, value);
+      }
+      finally
+      {
+         this.profile.called(component, this.wrapped, System.nanoTime() - start);
+      }
+   }
+}
@@ -0,0 +1,338 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.faces.component.UIComponent;
+import javax.faces.context.FacesContext;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+import org.jboss.jsfunit.framework.Environment;
+
+/**
+ * The render time and output of each component during one JSF request.  It 
+ * is collected by the Renderers of the JSFUnitRenderKit, which is installed
+ * by JSFUnit's faces-config.xml, and only for requests made by JSFUnit.
+ *
+ * Only components rendered by the standard HTML Renderers of Mojarra or 
+ * MyFaces are profiled, because component libraries may cast their Renderers.
+ * The time and output of any other component count as self time and output 
+ * of its nearest profiled parent.  Renderers with JSF annotations such as 
+ * ListenerFor or ResourceDependency are not wrapped either, because JSF reads 
+ * the annotations from the Renderer class.
+ *
+ * To enable, set system property jsfunit.profile.render.  Render profiling
+ * needs JSF 2.0 or higher.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class RenderProfile
+{
+   public static final String REQUEST_KEY = RenderProfile.class.getName() + ".REQUEST_KEY";
+   
+   public static final String PROFILE_PROPERTY = "jsfunit.profile.render";
+   
+   private static final Comparator<ComponentRenderStats> BY_SELF_TIME = new Comparator<ComponentRenderStats>()
+   {
+      public int compare(ComponentRenderStats stats1, ComponentRenderStats stats2)
+      {
+         if (stats1.getSelfTimeNanos() == stats2.getSelfTimeNanos()) return 0;
+         return (stats1.getSelfTimeNanos() > stats2.getSelfTimeNanos()) ? -1 : 1;
+      }
+   };
+   
+   // characters written by all the ResponseWriters of the request
+   private long chars;
+   
+   // one frame per Renderer call in progress
+   private int depth;
+   private long[] startNanos = new long[32];
+   private long[] startChars = new long[32];
+   private long[] childNanos = new long[32];
+   private long[] childChars = new long[32];
+   
+   private long totalTimeNanos;
+   
+   private Map<String, ComponentRenderStats> components = new LinkedHashMap<String, ComponentRenderStats>();
+   
+   RenderProfile()
+   {
+   }
+   
+   /**
+    * Check to see if render profiling is enabled.
+    * 
+    * @return <code>true</code> if enabled and running with JSF 2.0 or higher,
+    *         <code>false</code> otherwise.
+    */
+   public static boolean enabled()
+   {
+      return (System.getProperty(PROFILE_PROPERTY) != null) && Environment.is20Compatible();
+   }
+   
+   /**
+    * Get the RenderProfile of the current request, creating it if needed.
+    *
+    * @param facesContext The FacesContext.
+    *
+    * @return The RenderProfile, or <code>null</code> if this is not a JSFUnit request.
+    */
+   static RenderProfile getProfile(FacesContext facesContext)
+   {
+      if (!(facesContext instanceof JSFUnitFacesContext)) return null;
+      
+      Map<String, Object> requestMap = facesContext.getExternalContext().getRequestMap();
+      RenderProfile profile = (RenderProfile)requestMap.get(REQUEST_KEY);
+      if (profile == null)
+      {
+         profile = new RenderProfile();
+         requestMap.put(REQUEST_KEY, profile);
+      }
+      
+      return profile;
+   }
+   
+   /**
+    * Find the RenderProfile of a request that is over.
+    *
+    * @param facesContext The FacesContext of the request.
+    *
+    * @return The RenderProfile.  If nothing was rendered, the profile is empty.
+    */
+   public static RenderProfile findProfile(FacesContext facesContext)
+   {
+      RenderProfile profile = null;
+      if (facesContext != null)
+      {
+         profile = (RenderProfile)facesContext.getExternalContext().getRequestMap().get(REQUEST_KEY);
+      }
+      
+      if (profile == null) profile = new RenderProfile();
+      return profile;
+   }
+   
+   // ---------------- package private methods --------------------
+   void written(int len)
+   {
+      this.chars += len;
+   }
+   
+   /**
+    * Called before a Renderer method.
+    */
+   void enter()
+   {
+      if (depth == startNanos.length) grow();
+      
+      startChars[depth] = this.chars;
+      childNanos[depth] = 0L;
+      childChars[depth] = 0L;
+      startNanos[depth] = System.nanoTime();
+      depth++;
+   }
+   
+   /**
+    * Called after a Renderer method, even if it threw an exception.
+    *
+    * @param facesContext The FacesContext.
+    * @param component The component that was rendered.
+    * @param encodeBegin <code>true</code> if the method was encodeBegin().
+    */
+   void exit(FacesContext facesContext, UIComponent component, boolean encodeBegin)
+   {
+      long nanos = System.nanoTime();
+      depth--;
+      nanos -= startNanos[depth];
+      long written = this.chars - startChars[depth];
+      
+      if (depth > 0)
+      {
+         childNanos[depth - 1] += nanos;
+         childChars[depth - 1] += written;
+      }
+      else
+      {
+         totalTimeNanos += nanos;
+      }
+      
+      String clientID = component.getClientId(facesContext);
+      ComponentRenderStats stats = components.get(clientID);
+      if (stats == null)
+      {
+         stats = new ComponentRenderStats(clientID, component.getClass().getName());
+         components.put(clientID, stats);
+      }
+      stats.add(nanos, nanos - childNanos[depth], written, written - childChars[depth]);
+      if (encodeBegin) stats.encoded();
+   }
+   // -------------------------------------------------------------
+   
+   private void grow()
+   {
+      int size = startNanos.length * 2;
+      startNanos = copy(startNanos, size);
+      startChars = copy(startChars, size);
+      childNanos = copy(childNanos, size);
+      childChars = copy(childChars, size);
+   }
+   
+   private static long[] copy(long[] array, int size)
+   {
+      long[] copy = new long[size];
+      System.arraycopy(array, 0, copy, 0, array.length);
+      return copy;
+   }
+   
+   /**
+    * Get the time spent in profiled Renderers.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getTotalTimeNanos()
+   {
+      return this.totalTimeNanos;
+   }
+   
+   /**
+    * Get the output written to the response during the request, including 
+    * output that was not written by a profiled Renderer.
+    *
+    * @return The number of characters.
+    */
+   public long getTotalChars()
+   {
+      return this.chars;
+   }
+   
+   /**
+    * Get the stats of each component, slowest first.
+    *
+    * @return The stats, ranked by self time.
+    */
+   public List<ComponentRenderStats> getComponents()
+   {
+      List<ComponentRenderStats> ranked = new ArrayList<ComponentRenderStats>(components.values());
+      Collections.sort(ranked, BY_SELF_TIME);
+      return ranked;
+   }
+   
+   /**
+    * Get the stats of each component type, slowest first.  The stats of a 
+    * type are the sums of the stats of all components of that type.
+    *
+    * @return The stats, ranked by self time.
+    */
+   public List<ComponentRenderStats> getComponentTypes()
+   {
+      Map<String, ComponentRenderStats> types = new HashMap<String, ComponentRenderStats>();
+      for (Iterator<ComponentRenderStats> i = components.values().iterator(); i.hasNext();)
+      {
+         ComponentRenderStats stats = i.next();
+         ComponentRenderStats typeStats = types.get(stats.getComponentType());
+         if (typeStats == null)
+         {
+            typeStats = new ComponentRenderStats(null, stats.getComponentType());
+            types.put(stats.getComponentType(), typeStats);
+         }
+         typeStats.add(stats);
+      }
+      
+      List<ComponentRenderStats> ranked = new ArrayList<ComponentRenderStats>(types.values());
+      Collections.sort(ranked, BY_SELF_TIME);
+      return ranked;
+   }
+   
+   /**
+    * Write the stats of every component to a file as comma separated values, 
+    * slowest first.
+    *
+    * @param file The file.
+    *
+    * @throws IOException if the file can not be written.
+    */
+   public void export(File file) throws IOException
+   {
+      PrintWriter out = new PrintWriter(new FileWriter(file));
+      try
+      {
+         out.println("clientID,componentType,encodes,selfTimeNanos,totalTimeNanos,selfChars,totalChars");
+         for (Iterator<ComponentRenderStats> i = getComponents().iterator(); i.hasNext();)
+         {
+            ComponentRenderStats stats = i.next();
+            out.println(stats.getClientID() + "," + 
+                        stats.getComponentType() + "," +
+                        stats.getEncodeCount() + "," +
+                        stats.getSelfTimeNanos() + "," +
+                        stats.getTotalTimeNanos() + "," +
+                        stats.getSelfChars() + "," +
+                        stats.getTotalChars());
+         }
+      }
+      finally
+      {
+         out.close();
+      }
+      
+      if (out.checkError()) throw new IOException("Unable to write " + file);
+   }
+   
+   /**
+    * Get a report of the 20 slowest components and component types.
+    *
+    * @return The report.
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder report = new StringBuilder();
+      report.append("RenderProfile: time=").append(totalTimeNanos / 1000L).append("us")
+            .append(" chars=").append(chars)
+            .append(" components=").append(components.size()).append("\n");
+      
+      report.append("Slowest components:\n");
+      appendTop(report, getComponents());
+      report.append("Slowest component types:\n");
+      appendTop(report, getComponentTypes());
+      return report.toString();
+   }
+   
+   private static void appendTop(StringBuilder report, List<ComponentRenderStats> ranked)
+   {
+      for (int i=0; (i < ranked.size()) && (i < 20); i++)
+      {
+         report.append("   ").append(ranked.get(i)).append("\n");
+      }
+   }
+}
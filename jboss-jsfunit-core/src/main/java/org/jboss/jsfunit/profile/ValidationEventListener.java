@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.profile;
+
+import javax.faces.component.UIInput;
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.FacesContext;
+import javax.faces.event.PreRenderViewEvent;
+import javax.faces.event.PreValidateEvent;
+import javax.faces.event.SystemEvent;
+import javax.faces.event.SystemEventListener;
+
+/**
+ * Listens for the PreValidateEvent and PostValidateEvent of each UIInput, 
+ * which start and finish its validation in the ValidationProfile of JSFUnit 
+ * requests.  On the PreRenderViewEvent, validations that did not finish are
+ * cleaned up.  It is subscribed by the JSFUnitApplication and does nothing
+ * while validation profiling is disabled.
+ *
+ * This class must only be loaded if Environment.is20Compatible().
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ValidationProfile
+ */
+class ValidationEventListener implements SystemEventListener
+{
+   public boolean isListenerForSource(Object source)
+   {
+      return (source instanceof UIInput) || (source instanceof UIViewRoot);
+   }
+   
+   public void processEvent(SystemEvent event)
+   {
+      FacesContext facesContext = FacesContext.getCurrentInstance();
+      ValidationProfile profile = ValidationProfile.getProfile(facesContext);
+      if (profile == null) return;
+      
+      if (event instanceof PreRenderViewEvent)
+      {
+         profile.restoreAll();
+         return;
+      }
+      
+      UIInput component = (UIInput)event.getSource();
+      if (event instanceof PreValidateEvent)
+      {
+         profile.validationStarted(facesContext, component);
+      }
+      else
+      {
+         profile.validationFinished(component);
+      }
+   }
+}
@@ -0,0 +1,419 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIInput;
+import javax.faces.context.FacesContext;
+import javax.faces.convert.Converter;
+import javax.faces.validator.Validator;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+import org.jboss.jsfunit.framework.Environment;
+
+/**
+ * The time spent converting and validating each UIInput during one JSF 
+ * request.  The time of a component is measured between the PreValidateEvent
+ * and the PostValidateEvent that JSF publishes around its validation.  
+ *
+ * In between, the converter and validators of the component are replaced 
+ * with a ProfilingConverter and ProfilingValidators, which time each of them.
+ * The originals are put back on the PostValidateEvent, or at the latest on 
+ * the PreRenderViewEvent if validation ended with an exception, so the 
+ * wrappers are never seen by tags or saved with the view.  If the component
+ * had marked its initial state, it is marked again after each swap.
+ *
+ * The stats of a component name the class of its converter and of each of
+ * its validators.  A converter that JSF finds by the type of the value, or 
+ * that comes from a value expression, is not timed on its own.  Immediate 
+ * components are validated without these events, so they are not profiled.
+ *
+ * To enable, set system property jsfunit.profile.validation.  Validation 
+ * profiling needs JSF 2.0 or higher.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ValidationProfile
+{
+   public static final String REQUEST_KEY = ValidationProfile.class.getName() + ".REQUEST_KEY";
+   
+   public static final String PROFILE_PROPERTY = "jsfunit.profile.validation";
+   
+   private static final Comparator<ValidationStats> BY_TIME = new Comparator<ValidationStats>()
+   {
+      public int compare(ValidationStats stats1, ValidationStats stats2)
+      {
+         if (stats1.getTimeNanos() == stats2.getTimeNanos()) return 0;
+         return (stats1.getTimeNanos() > stats2.getTimeNanos()) ? -1 : 1;
+      }
+   };
+   
+   private Map<String, ValidationStats> components = new LinkedHashMap<String, ValidationStats>();
+   
+   // key = converter or validator class name
+   private Map<String, ValidationStats> classes = new LinkedHashMap<String, ValidationStats>();
+   
+   // the validations in progress
+   private Map<UIComponent, Validation> validations = new IdentityHashMap<UIComponent, Validation>();
+   
+   ValidationProfile()
+   {
+   }
+   
+   /**
+    * Check to see if validation profiling is enabled.
+    * 
+    * @return <code>true</code> if enabled and running with JSF 2.0 or higher,
+    *         <code>false</code> otherwise.
+    */
+   public static boolean enabled()
+   {
+      return (System.getProperty(PROFILE_PROPERTY) != null) && Environment.is20Compatible();
+   }
+   
+   /**
+    * Get the ValidationProfile of the current request, creating it if needed.
+    *
+    * @param facesContext The FacesContext.
+    *
+    * @return The ValidationProfile, or <code>null</code> if validation 
+    *         profiling is not enabled, this is not a JSFUnit request, or the
+    *         request is over.
+    */
+   static ValidationProfile getProfile(FacesContext facesContext)
+   {
+      if (!enabled()) return null;
+      if (!(facesContext instanceof JSFUnitFacesContext)) return null;
+      if (((JSFUnitFacesContext)facesContext).isJSFRequestDone()) return null;
+      
+      Map<String, Object> requestMap = facesContext.getExternalContext().getRequestMap();
+      ValidationProfile profile = (ValidationProfile)requestMap.get(REQUEST_KEY);
+      if (profile == null)
+      {
+         profile = new ValidationProfile();
+         requestMap.put(REQUEST_KEY, profile);
+      }
+      
+      return profile;
+   }
+   
+   /**
+    * Find the ValidationProfile of a request that is over.
+    *
+    * @param facesContext The FacesContext of the request.
+    *
+    * @return The ValidationProfile.  If no UIInput was validated, the 
+    *         profile is empty.
+    */
+   public static ValidationProfile findProfile(FacesContext facesContext)
+   {
+      ValidationProfile profile = null;
+      if (facesContext != null)
+      {
+         profile = (ValidationProfile)facesContext.getExternalContext().getRequestMap().get(REQUEST_KEY);
+      }
+      
+      if (profile == null) profile = new ValidationProfile();
+      return profile;
+   }
+   
+   // ---------------- package private methods --------------------
+   void validationStarted(FacesContext facesContext, UIInput component)
+   {
+      String clientID = component.getClientId(facesContext);
+      ValidationStats stats = components.get(clientID);
+      if (stats == null)
+      {
+         stats = new ValidationStats(clientID, classNames(component));
+         components.put(clientID, stats);
+      }
+      
+      Validation validation = new Validation(stats);
+      
+      // a converter from a value expression would be frozen by setConverter()
+      if (component.getValueExpression("converter") == null) validation.converter = component.getConverter();
+      validation.validators = component.getValidators();
+      swap(component, validation);
+      
+      validations.put(component, validation);
+      validation.startNanos = System.nanoTime();
+   }
+   
+   void validationFinished(UIInput component)
+   {
+      long end = System.nanoTime();
+      Validation validation = validations.remove(component);
+      if (validation == null) return;
+      
+      restore(component, validation);
+      validation.stats.validated(end - validation.startNanos);
+   }
+   
+   void called(UIComponent component, Object attachedObject, long nanos)
+   {
+      String className = attachedObject.getClass().getName();
+      ValidationStats classStats = classes.get(className);
+      if (classStats == null)
+      {
+         classStats = new ValidationStats(null, Collections.singletonList(className));
+         classes.put(className, classStats);
+      }
+      classStats.validated(nanos);
+      
+      Validation validation = validations.get(component);
+      if (validation != null) validation.stats.classCalled(className, nanos);
+   }
+   
+   /**
+    * Put back the converter and validators of components whose validation
+    * did not finish.
+    */
+   void restoreAll()
+   {
+      for (Iterator<Map.Entry<UIComponent, Validation>> i = validations.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry<UIComponent, Validation> entry = i.next();
+         restore((UIInput)entry.getKey(), entry.getValue());
+         i.remove();
+      }
+   }
+   // -------------------------------------------------------------
+   
+   private void swap(UIInput component, Validation validation)
+   {
+      boolean initialStateMarked = component.initialStateMarked();
+      
+      if (validation.converter != null)
+      {
+         component.setConverter(new ProfilingConverter(validation.converter, this));
+      }
+      
+      for (int i=0; i < validation.validators.length; i++)
+      {
+         component.removeValidator(validation.validators[i]);
+      }
+      
+      for (int i=0; i < validation.validators.length; i++)
+      {
+         component.addValidator(new ProfilingValidator(validation.validators[i], this));
+      }
+      
+      if (initialStateMarked) component.markInitialState();
+   }
+   
+   private static void restore(UIInput component, Validation validation)
+   {
+      boolean initialStateMarked = component.initialStateMarked();
+      
+      if (validation.converter != null) component.setConverter(validation.converter);
+      
+      Validator[] current = component.getValidators();
+      for (int i=0; i < current.length; i++)
+      {
+         component.removeValidator(current[i]);
+      }
+      
+      for (int i=0; i < validation.validators.length; i++)
+      {
+         component.addValidator(validation.validators[i]);
+      }
+      
+      // keep validators that were added during validation
+      for (int i=0; i < current.length; i++)
+      {
+         if (!(current[i] instanceof ProfilingValidator)) component.addValidator(current[i]);
+      }
+      
+      if (initialStateMarked) component.markInitialState();
+   }
+   
+   private static List<String> classNames(UIInput component)
+   {
+      List<String> classNames = new ArrayList<String>();
+      if (component.getConverter() != null) classNames.add(component.getConverter().getClass().getName());
+      
+      Validator[] validators = component.getValidators();
+      for (int i=0; i < validators.length; i++)
+      {
+         String className = validators[i].getClass().getName();
+         if (!classNames.contains(className)) classNames.add(className);
+      }
+      
+      return classNames;
+   }
+   
+   /**
+    * Get the stats of each validated component, slowest first.
+    *
+    * @return The stats, ranked by time.
+    */
+   public List<ValidationStats> getStats()
+   {
+      List<ValidationStats> ranked = new ArrayList<ValidationStats>(components.values());
+      Collections.sort(ranked, BY_TIME);
+      return ranked;
+   }
+   
+   /**
+    * Get the stats of each converter and validator class for all 
+    * components, slowest first.  The count is the number of calls to 
+    * converters or validators of the class.
+    *
+    * @return The stats, ranked by time.
+    */
+   public List<ValidationStats> getStatsByClass()
+   {
+      List<ValidationStats> ranked = new ArrayList<ValidationStats>(classes.values());
+      Collections.sort(ranked, BY_TIME);
+      return ranked;
+   }
+   
+   /**
+    * Get the time spent converting and validating a component.
+    *
+    * @param clientID The client ID of the component.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getComponentTimeNanos(String clientID)
+   {
+      ValidationStats stats = components.get(clientID);
+      if (stats == null) return 0L;
+      return stats.getTimeNanos();
+   }
+   
+   /**
+    * Get the time spent in the converters or validators of a class, for all
+    * components.
+    *
+    * @param className The class name of the converter or validator.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getClassTimeNanos(String className)
+   {
+      ValidationStats stats = classes.get(className);
+      if (stats == null) return 0L;
+      return stats.getTimeNanos();
+   }
+   
+   /**
+    * Get the time spent converting and validating all components.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getTotalTimeNanos()
+   {
+      long total = 0L;
+      for (Iterator<ValidationStats> i = components.values().iterator(); i.hasNext();)
+      {
+         total += i.next().getTimeNanos();
+      }
+      return total;
+   }
+   
+   /**
+    * Assert that converting and validating all components took less than a 
+    * number of milliseconds.
+    *
+    * @param millis The budget, exclusive.
+    *
+    * @throws AssertionError if the budget was exceeded.
+    */
+   public void assertTotalUnder(long millis)
+   {
+      assertUnder("Converters and validators", getTotalTimeNanos(), millis);
+   }
+   
+   /**
+    * Assert that the converters or validators of a class took less than a
+    * number of milliseconds, for all components.
+    *
+    * @param className The class name of the converter or validator.
+    * @param millis The budget, exclusive.
+    *
+    * @throws AssertionError if the budget was exceeded.
+    */
+   public void assertClassUnder(String className, long millis)
+   {
+      assertUnder(className, getClassTimeNanos(className), millis);
+   }
+   
+   /**
+    * Assert that converting and validating a component took less than a 
+    * number of milliseconds.
+    *
+    * @param clientID The client ID of the component.
+    * @param millis The budget, exclusive.
+    *
+    * @throws AssertionError if the budget was exceeded.
+    */
+   public void assertComponentUnder(String clientID, long millis)
+   {
+      assertUnder("Converters and validators of " + clientID, getComponentTimeNanos(clientID), millis);
+   }
+   
+   private static void assertUnder(String what, long nanos, long millis)
+   {
+      if (nanos >= millis * 1000000L)
+      {
+         throw new AssertionError(what + " took " + (nanos / 1000L) + "us.  Expected under " + millis + "ms.");
+      }
+   }
+   
+   @Override
+   public String toString()
+   {
+      StringBuilder report = new StringBuilder();
+      report.append("ValidationProfile: time=").append(getTotalTimeNanos() / 1000L).append("us\n");
+      for (Iterator<ValidationStats> i = getStats().iterator(); i.hasNext();)
+      {
+         report.append("   ").append(i.next()).append("\n");
+      }
+      return report.toString();
+   }
+   
+   // a validation in progress
+   private static class Validation
+   {
+      private ValidationStats stats;
+      private long startNanos;
+      
+      // the originals, put back when the validation is over
+      private Converter converter;
+      private Validator[] validators;
+      
+      Validation(ValidationStats stats)
+      {
+         this.stats = stats;
+      }
+   }
+}
@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The validations of one component during a JSF request or, if the client
+ * ID is <code>null</code>, of all the components that use one converter or
+ * validator class.
+ *
+ * @author agent
+ * @since 2.0
+ * @see org.jboss.jsfunit.profile.ValidationProfile
+ */
+public class ValidationStats
+{
+   private String clientID;
+   private List<String> classNames;
+   private int count;
+   private long timeNanos;
+   
+   // key = converter or validator class name; value = time in its calls
+   private Map<String, Long> classTimeNanos = new LinkedHashMap<String, Long>();
+   
+   ValidationStats(String clientID, List<String> classNames)
+   {
+      this.clientID = clientID;
+      this.classNames = Collections.unmodifiableList(classNames);
+   }
+   
+   // ---------------- package private methods --------------------
+   void validated(long nanos)
+   {
+      this.count++;
+      this.timeNanos += nanos;
+   }
+   
+   void classCalled(String className, long nanos)
+   {
+      Long time = this.classTimeNanos.get(className);
+      this.classTimeNanos.put(className, Long.valueOf((time == null) ? nanos : time.longValue() + nanos));
+   }
+   // -------------------------------------------------------------
+   
+   /**
+    * Get the client ID of the component.
+    *
+    * @return The client ID, or <code>null</code> if these are the stats of 
+    *         a class for all components.
+    */
+   public String getClientID()
+   {
+      return this.clientID;
+   }
+   
+   /**
+    * Get the classes of the converter and the validators of the component.
+    *
+    * @return The class names.  The list is empty if the component has no 
+    *         converter or validator of its own.
+    */
+   public List<String> getClassNames()
+   {
+      return this.classNames;
+   }
+   
+   /**
+    * Get the number of validations.
+    *
+    * @return The number of validations.
+    */
+   public int getCount()
+   {
+      return this.count;
+   }
+   
+   /**
+    * Get the time spent in the validations.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getTimeNanos()
+   {
+      return this.timeNanos;
+   }
+   
+   /**
+    * Get the time spent in the converter or validators of a class during 
+    * the validations of the component.  Part of the time of a validation is
+    * spent outside of its converter and validators, for instance in the 
+    * required check.
+    *
+    * @param className The class name of the converter or validator.
+    *
+    * @return The time in nanoseconds.  It is always 0 for the stats of a 
+    *         class for all components.
+    */
+   public long getClassTimeNanos(String className)
+   {
+      Long time = this.classTimeNanos.get(className);
+      return (time == null) ? 0L : time.longValue();
+   }
+   
+   @Override
+   public String toString()
+   {
+      return ((clientID == null) ? "" : clientID + " ") + classNames + 
+             ": count=" + count + " time=" + (timeNanos / 1000L) + "us";
+   }
+}
@@ -0,0 +1,313 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.jsfunit.profile;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import javax.faces.context.FacesContext;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+import org.jboss.jsfunit.framework.JSFUnitFilter;
+
+/**
+ * The cost of JSF state saving during one JSF request.  It is collected by
+ * the JSFUnitStateManager, which is registered in JSFUnit's faces-config.xml,
+ * and only for requests made by JSFUnit.
+ *
+ * To enable, set system property jsfunit.profile.viewstate.  Without it the
+ * JSFUnitStateManager passes every call to the StateManager it wraps.
+ *
+ * Sizes are measured the same way for client and server state saving.  The
+ * serialized size is the number of bytes of the saved state when it is 
+ * serialized with Java serialization, before any compression.  It is only
+ * computed when getSerializedSize() is called, so the cost of the 
+ * serialization is never part of the request.  The written size is the 
+ * number of characters of view state written to the response.  With client 
+ * state saving that is the whole state.  With server state saving it is only 
+ * the key of the state in the session.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ViewStateProfile
+{
+   public static final String REQUEST_KEY = ViewStateProfile.class.getName() + ".REQUEST_KEY";
+   
+   public static final String PROFILE_PROPERTY = "jsfunit.profile.viewstate";
+   
+   private static final long NOT_COMPUTED = -2L;
+   
+   // only the save and restore times are kept for the Server-Timing header
+   private boolean timingOnly;
+   
+   private boolean savingStateInClient;
+   
+   private int saveCount;
+   private long saveTimeNanos;
+   private Object state;
+   private long serializedSize = -1L;
+   private long writtenSize = -1L;
+   
+   private int restoreCount;
+   private long restoreTimeNanos;
+   private long restoredSize = -1L;
+   
+   ViewStateProfile()
+   {
+      this(false);
+   }
+   
+   private ViewStateProfile(boolean timingOnly)
+   {
+      this.timingOnly = timingOnly;
+   }
+   
+   /**
+    * Check to see if view state profiling is enabled.
+    * 
+    * @return <code>true</code> if enabled, <code>false</code> otherwise.
+    */
+   public static boolean enabled()
+   {
+      return System.getProperty(PROFILE_PROPERTY) != null;
+   }
+   
+   /**
+    * Get the ViewStateProfile of the current request, creating it if needed.
+    *
+    * @param facesContext The FacesContext.
+    *
+    * @return The ViewStateProfile, or <code>null</code> if this is neither a 
+    *         profiled JSFUnit request nor a request that gets a Server-Timing 
+    *         header.  For a Server-Timing request, only the times are kept.
+    */
+   static ViewStateProfile getProfile(FacesContext facesContext)
+   {
+      Map<String, Object> requestMap = facesContext.getExternalContext().getRequestMap();
+      boolean profiled = (facesContext instanceof JSFUnitFacesContext) && enabled();
+      if (!profiled && !requestMap.containsKey(JSFUnitFilter.SERVER_TIMING_KEY)) return null;
+      
+      ViewStateProfile profile = (ViewStateProfile)requestMap.get(REQUEST_KEY);
+      if (profile == null)
+      {
+         profile = new ViewStateProfile(!profiled);
+         requestMap.put(REQUEST_KEY, profile);
+      }
+      
+      return profile;
+   }
+   
+   /**
+    * Find the ViewStateProfile of a request that is over.
+    *
+    * @param facesContext The FacesContext of the request.
+    *
+    * @return The ViewStateProfile.  If the state was not saved or restored, 
+    *         the profile is empty.
+    */
+   public static ViewStateProfile findProfile(FacesContext facesContext)
+   {
+      ViewStateProfile profile = null;
+      if (facesContext != null)
+      {
+         profile = (ViewStateProfile)facesContext.getExternalContext().getRequestMap().get(REQUEST_KEY);
+      }
+      
+      if (profile == null) profile = new ViewStateProfile();
+      return profile;
+   }
+   
+   // ---------------- package private methods --------------------
+   boolean isTimingOnly()
+   {
+      return this.timingOnly;
+   }
+   
+   synchronized void saved(long nanos, Object state, boolean savingStateInClient)
+   {
+      this.saveCount++;
+      this.saveTimeNanos += nanos;
+      if ((state != null) && !this.timingOnly)
+      {
+         this.state = state;
+         this.serializedSize = NOT_COMPUTED;
+      }
+      this.savingStateInClient = savingStateInClient;
+   }
+   
+   void written(long nanos, long size)
+   {
+      this.saveTimeNanos += nanos;
+      if (size < 0) return;
+      this.writtenSize = Math.max(this.writtenSize, 0L) + size;
+   }
+   
+   void restored(long nanos, long restoredSize)
+   {
+      this.restoreCount++;
+      this.restoreTimeNanos += nanos;
+      this.restoredSize = restoredSize;
+   }
+   // -------------------------------------------------------------
+   
+   /**
+    * Check if the state was saved in the client.
+    *
+    * @return <code>true</code> for client state saving, <code>false</code>
+    *         for server state saving or if the state was not saved.
+    */
+   public boolean isSavingStateInClient()
+   {
+      return this.savingStateInClient;
+   }
+   
+   /**
+    * Get the number of times the view was saved during the request.
+    *
+    * @return The number of saves.
+    */
+   public int getSaveCount()
+   {
+      return this.saveCount;
+   }
+   
+   /**
+    * Get the time spent saving the view and writing its state to the response.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getSaveTimeNanos()
+   {
+      return this.saveTimeNanos;
+   }
+   
+   /**
+    * Get the serialized size of the last saved state.  The state is 
+    * serialized on the first call.
+    *
+    * @return The size in bytes, or -1 if the state was not saved or is not
+    *         Serializable.
+    */
+   public synchronized long getSerializedSize()
+   {
+      if (this.serializedSize == NOT_COMPUTED)
+      {
+         this.serializedSize = serializedSize(this.state);
+         this.state = null;
+      }
+      
+      return this.serializedSize;
+   }
+   
+   /**
+    * Get the amount of view state written to the response.
+    *
+    * @return The number of characters, or -1 if no view state was written.
+    */
+   public long getWrittenSize()
+   {
+      return this.writtenSize;
+   }
+   
+   /**
+    * Get the number of times a view was restored during the request.
+    *
+    * @return The number of restores.
+    */
+   public int getRestoreCount()
+   {
+      return this.restoreCount;
+   }
+   
+   /**
+    * Get the time spent restoring the view.
+    *
+    * @return The time in nanoseconds.
+    */
+   public long getRestoreTimeNanos()
+   {
+      return this.restoreTimeNanos;
+   }
+   
+   /**
+    * Get the size of the view state sent by the client.
+    *
+    * @return The number of characters of the javax.faces.ViewState param,
+    *         or -1 if the view was not restored from a postback.
+    */
+   public long getRestoredSize()
+   {
+      return this.restoredSize;
+   }
+   
+   @Override
+   public String toString()
+   {
+      return "ViewStateProfile: " + (savingStateInClient ? "client" : "server") +
+             " saves=" + saveCount + 
+             " saveTime=" + (saveTimeNanos / 1000L) + "us" +
+             " serializedSize=" + (state != null ? "?" : String.valueOf(serializedSize)) + 
+             " writtenSize=" + writtenSize +
+             " restores=" + restoreCount + 
+             " restoreTime=" + (restoreTimeNanos / 1000L) + "us" +
+             " restoredSize=" + restoredSize;
+   }
+   
+   private static long serializedSize(Object state)
+   {
+      if (state == null) return -1L;
+      
+      CountingOutputStream counter = new CountingOutputStream();
+      try
+      {
+         ObjectOutputStream out = new ObjectOutputStream(counter);
+         out.writeObject(state);
+         out.close();
+         return counter.count;
+      }
+      catch (IOException e)
+      {
+         // ignore - the state is not Serializable
+         return -1L;
+      }
+   }
+   
+   private static class CountingOutputStream extends OutputStream
+   {
+      private long count;
+      
+      @Override
+      public void write(int b)
+      {
+         count++;
+      }
+      
+      @Override
+      public void write(byte[] b, int off, int len)
+      {
+         count += len;
+      }
+   }
+}
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.context;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.ServletContext;
+import junit.framework.TestCase;
+
+/**
+ * Tests the AttributeMap class, and measures what the lazy snapshot saves 
+ * at the end of a request whose application Map is never read.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class AttributeMapTest extends TestCase
+{
+   private static final int ITERATIONS = 2000;
+   
+   public void testSnapshotTakenOnFirstRead()
+   {
+      Map attributes = attributes(3);
+      Map map = new NoNewEntryMap(AttributeMap.forServletContext(servletContext(attributes)));
+      
+      // changed before the first read, so it is in the snapshot
+      attributes.put("attribute0", "changed");
+      assertEquals("changed", map.get("attribute0"));
+      assertEquals(3, map.size());
+      
+      // changed after the first read, so it is not
+      attributes.put("attribute1", "changed");
+      attributes.put("added", "added");
+      assertEquals("value1", map.get("attribute1"));
+      assertFalse(map.containsKey("added"));
+   }
+   
+   public void testUnreadMapIsNotCopied()
+   {
+      int[] sizes = {100, 1000, 5000};
+      for (int i=0; i < sizes.length; i++)
+      {
+         final ServletContext context = servletContext(attributes(sizes[i]));
+         
+         Runnable eager = new Runnable()
+         {
+            public void run()
+            {
+               // what release() did before: copy the application Map on every request
+               new NoNewEntryMap(new HashMap(AttributeMap.forServletContext(context)));
+            }
+         };
+         
+         Runnable lazy = new Runnable()
+         {
+            public void run()
+            {
+               // what it does now when the test never reads the Map
+               new NoNewEntryMap(AttributeMap.forServletContext(context));
+            }
+         };
+         
+         long[] eagerCost = measure(eager);
+         long[] lazyCost = measure(lazy);
+         System.out.println("N=" + sizes[i] + " eager " + eagerCost[0] + " ns, " + eagerCost[1] + 
+                            " bytes   lazy " + lazyCost[0] + " ns, " + lazyCost[1] + " bytes");
+         
+         // allocation can only be measured on some JVMs
+         if (eagerCost[1] >= 0)
+         {
+            assertTrue("eager=" + eagerCost[1] + " lazy=" + lazyCost[1], (lazyCost[1] * 10) < eagerCost[1]);
+         }
+      }
+   }
+   
+   // nanoseconds and bytes allocated per run, after a warm-up
+   private static long[] measure(Runnable runnable)
+   {
+      for (int i=0; i < ITERATIONS; i++) runnable.run();
+      
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      for (int i=0; i < ITERATIONS; i++) runnable.run();
+      long nanos = System.nanoTime() - start;
+      if (bytes >= 0) bytes = (allocatedBytes() - bytes) / ITERATIONS;
+      
+      return new long[] {nanos / ITERATIONS, bytes};
+   }
+   
+   // bytes allocated by this thread, or -1 if the JVM can't tell
+   private static long allocatedBytes()
+   {
+      Object threadMXBean = ManagementFactory.getThreadMXBean();
+      try
+      {
+         Class sunThreadMXBean = Class.forName("com.sun.management.ThreadMXBean");
+         if (!sunThreadMXBean.isInstance(threadMXBean)) return -1;
+         Method method = sunThreadMXBean.getMethod("getThreadAllocatedBytes", long.class);
+         return ((Long)method.invoke(threadMXBean, Long.valueOf(Thread.currentThread().getId()))).longValue();
+      }
+      catch (Exception e)
+      {
+         return -1;
+      }
+   }
+   
+   private static Map attributes(int size)
+   {
+      Map attributes = new HashMap();
+      for (int i=0; i < size; i++) attributes.put("attribute" + i, "value" + i);
+      return attributes;
+   }
+   
+   private static ServletContext servletContext(final Map attributes)
+   {
+      InvocationHandler handler = new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args)
+         {
+            if (method.getName().equals("getAttributeNames")) return Collections.enumeration(attributes.keySet());
+            if (method.getName().equals("getAttribute")) return attributes.get(args[0]);
+            return null;
+         }
+      };
+      
+      return (ServletContext)Proxy.newProxyInstance(AttributeMapTest.class.getClassLoader(), 
+                                                    new Class[] {ServletContext.class}, 
+                                                    handler);
+   }
+}
@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.context;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests the NoNewEntryMap class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class NoNewEntryMapTest extends TestCase
+{
+   private Map base;
+   private NoNewEntryMap map;
+   
+   @Override
+   public void setUp()
+   {
+      base = new HashMap();
+      base.put("foo", "fooValue");
+      base.put("bar", "barValue");
+      map = new NoNewEntryMap(base);
+   }
+   
+   public void testReadsThroughToBase()
+   {
+      assertEquals("fooValue", map.get("foo"));
+      assertTrue(map.containsKey("bar"));
+      assertFalse(map.containsKey("baz"));
+      assertEquals(2, map.size());
+      assertEquals(base, map);
+   }
+   
+   public void testPutOverlaysBase()
+   {
+      assertEquals("fooValue", map.put("foo", "newValue"));
+      assertEquals("newValue", map.get("foo"));
+      assertEquals(2, map.size());
+      assertEquals("fooValue", base.get("foo"));
+   }
+   
+   public void testPutNewKeyOutsideEL()
+   {
+      assertNull(map.put("baz", "bazValue"));
+      assertEquals("bazValue", map.get("baz"));
+      assertEquals(3, map.size());
+      assertFalse(base.containsKey("baz"));
+   }
+   
+   public void testNoNewEntryWhileELRunning()
+   {
+      map.setELRunning(true);
+      try
+      {
+         map.put("baz", "bazValue");
+         fail("Expected NewEntryNotAllowedException");
+      }
+      catch (NoNewEntryMap.NewEntryNotAllowedException e)
+      {
+         // OK
+      }
+      
+      assertFalse(map.containsKey("baz"));
+      assertEquals("fooValue", map.put("foo", "newValue"));
+      assertEquals("newValue", map.get("foo"));
+   }
+   
+   public void testRemoveHidesBase()
+   {
+      assertEquals("fooValue", map.remove("foo"));
+      assertNull(map.get("foo"));
+      assertFalse(map.containsKey("foo"));
+      assertEquals(1, map.size());
+      assertTrue(base.containsKey("foo"));
+      
+      map.put("foo", "again");
+      assertEquals("again", map.get("foo"));
+      assertEquals(2, map.size());
+   }
+   
+   public void testClear()
+   {
+      map.clear();
+      assertEquals(0, map.size());
+      assertTrue(map.isEmpty());
+      assertNull(map.get("foo"));
+      assertFalse(map.entrySet().iterator().hasNext());
+      assertEquals(2, base.size());
+      
+      map.put("foo", "afterClear");
+      assertEquals(1, map.size());
+      assertEquals("afterClear", map.get("foo"));
+   }
+   
+   public void testSizeMatchesIteration()
+   {
+      map.put("foo", "newValue");
+      map.put("baz", "bazValue");
+      map.remove("bar");
+      
+      Map expected = new HashMap();
+      expected.put("foo", "newValue");
+      expected.put("baz", "bazValue");
+      
+      assertEquals(expected.size(), map.size());
+      assertEquals(expected.size(), count(map.entrySet().iterator()));
+      assertEquals(expected, new HashMap(map));
+   }
+   
+   public void testEntrySetValueWritesToOverlay()
+   {
+      for (Iterator i = map.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry entry = (Map.Entry)i.next();
+         if (entry.getKey().equals("bar")) entry.setValue("newBar");
+      }
+      
+      assertEquals("newBar", map.get("bar"));
+      assertEquals("barValue", base.get("bar"));
+      assertEquals(2, count(map.entrySet().iterator()));
+   }
+   
+   public void testIteratorRemove()
+   {
+      for (Iterator i = map.entrySet().iterator(); i.hasNext();)
+      {
+         Map.Entry entry = (Map.Entry)i.next();
+         if (entry.getKey().equals("foo")) i.remove();
+      }
+      
+      assertFalse(map.containsKey("foo"));
+      assertEquals(1, map.size());
+      assertTrue(base.containsKey("foo"));
+   }
+   
+   private static int count(Iterator i)
+   {
+      int count = 0;
+      for (; i.hasNext(); i.next()) count++;
+      return count;
+   }
+}
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.framework;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the LatencyHistogram class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class LatencyHistogramTest extends TestCase
+{
+   public void testEmpty()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals(0L, histogram.getCount());
+      assertEquals(0L, histogram.getTotal());
+      assertEquals(0L, histogram.getMax());
+      assertEquals(0L, histogram.getMean());
+      assertEquals(0L, histogram.getP50());
+      assertEquals(0L, histogram.getP99());
+   }
+   
+   public void testExactStats()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(1000L);
+      histogram.record(3000L);
+      histogram.record(-5L);
+      
+      assertEquals(3L, histogram.getCount());
+      assertEquals(4000L, histogram.getTotal());
+      assertEquals(3000L, histogram.getMax());
+      assertEquals(1333L, histogram.getMean());
+      assertEquals(0L, histogram.getPercentile(0.0));
+   }
+   
+   public void testSmallValuesAreExact()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long nanos=1; nanos <= 10; nanos++) histogram.record(nanos);
+      
+      assertEquals(5L, histogram.getP50());
+      assertEquals(9L, histogram.getP90());
+      assertEquals(10L, histogram.getPercentile(100.0));
+   }
+   
+   public void testPercentilesWithinBucketError()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      for (long i=1; i <= 1000; i++) histogram.record(i * 1000000L);
+      
+      assertWithin(500000000L, histogram.getP50());
+      assertWithin(900000000L, histogram.getP90());
+      assertWithin(990000000L, histogram.getP99());
+      assertEquals(1000000000L, histogram.getPercentile(100.0));
+   }
+   
+   public void testPercentileNeverAboveMax()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(1000001L);
+      assertEquals(1000001L, histogram.getP99());
+   }
+   
+   public void testAdd()
+   {
+      LatencyHistogram first = new LatencyHistogram();
+      first.record(100L);
+      LatencyHistogram second = new LatencyHistogram();
+      second.record(300L);
+      second.record(500L);
+      
+      first.add(second);
+      assertEquals(3L, first.getCount());
+      assertEquals(900L, first.getTotal());
+      assertEquals(500L, first.getMax());
+      assertEquals(2L, second.getCount());
+   }
+   
+   public void testCopyIsIndependent()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(100L);
+      LatencyHistogram copy = histogram.copy();
+      histogram.record(200L);
+      
+      assertEquals(1L, copy.getCount());
+      assertEquals(100L, copy.getMax());
+   }
+   
+   public void testReset()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(100L);
+      histogram.reset();
+      
+      assertEquals(0L, histogram.getCount());
+      assertEquals(0L, histogram.getMax());
+      assertEquals(0L, histogram.getP50());
+   }
+   
+   public void testBadPercentile()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      try
+      {
+         histogram.getPercentile(100.1);
+         fail("Expected IllegalArgumentException");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // OK
+      }
+   }
+   
+   // the buckets of a power of two are 1/16 of it wide
+   private static void assertWithin(long expected, long actual)
+   {
+      assertTrue("Expected about " + expected + " but was " + actual, 
+                 Math.abs(actual - expected) <= expected / 16L);
+   }
+}
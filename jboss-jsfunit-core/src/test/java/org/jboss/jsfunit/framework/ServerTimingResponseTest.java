@@ -0,0 +1,181 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.framework;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import javax.faces.event.PhaseId;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import junit.framework.TestCase;
+import org.jboss.jsfunit.profile.ViewStateProfile;
+
+/**
+ * Tests the ServerTimingResponse class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ServerTimingResponseTest extends TestCase
+{
+   private Map<String, Object> attributes = new HashMap<String, Object>();
+   private Map<String, Object> headers = new HashMap<String, Object>();
+   private ByteArrayOutputStream sent = new ByteArrayOutputStream();
+   
+   public void testFilterChainOnly()
+   {
+      assertEquals("filter-chain;dur=1.234", ServerTimingResponse.headerValue(request(), 1234567L));
+      assertEquals("filter-chain;dur=0.000", ServerTimingResponse.headerValue(request(), 999L));
+      assertEquals("filter-chain;dur=0.001", ServerTimingResponse.headerValue(request(), 1000L));
+      assertEquals("filter-chain;dur=5000.050", ServerTimingResponse.headerValue(request(), 5000050000L));
+   }
+   
+   public void testEmptyViewStateProfileIsLeftOut()
+   {
+      attributes.put(ViewStateProfile.REQUEST_KEY, ViewStateProfile.findProfile(null));
+      assertEquals("filter-chain;dur=2.000", ServerTimingResponse.headerValue(request(), 2000000L));
+   }
+   
+   public void testViewStateMetrics() throws Exception
+   {
+      ViewStateProfile profile = ViewStateProfile.findProfile(null);
+      invoke(profile, "restored", new Class[] {Long.TYPE, Long.TYPE}, new Object[] {new Long(3000000L), new Long(-1L)});
+      invoke(profile, "saved", new Class[] {Long.TYPE, Object.class, Boolean.TYPE}, 
+             new Object[] {new Long(250000L), null, Boolean.FALSE});
+      attributes.put(ViewStateProfile.REQUEST_KEY, profile);
+      
+      assertEquals("state-restoring;dur=3.000, state-saving;dur=0.250, filter-chain;dur=10.000", 
+                   ServerTimingResponse.headerValue(request(), 10000000L));
+   }
+   
+   public void testPhaseMetricsComeFirst() throws Exception
+   {
+      Constructor<JSFTimer> constructor = JSFTimer.class.getDeclaredConstructor(new Class[0]);
+      constructor.setAccessible(true);
+      JSFTimer timer = constructor.newInstance(new Object[0]);
+      timer.beforePhase(PhaseId.RESTORE_VIEW);
+      Thread.sleep(2);
+      timer.afterPhase(PhaseId.RESTORE_VIEW);
+      timer.beforePhase(PhaseId.RENDER_RESPONSE);
+      Thread.sleep(2);
+      timer.afterPhase(PhaseId.RENDER_RESPONSE);
+      attributes.put(JSFTimer.REQUEST_KEY, timer);
+      
+      String value = ServerTimingResponse.headerValue(request(), 1000000L);
+      assertTrue(value, value.matches("restore-view;dur=\\d+\\.\\d{3}, render-response;dur=\\d+\\.\\d{3}, " + 
+                                      "filter-chain;dur=1\\.000"));
+   }
+   
+   public void testFinishAddsHeader() throws Exception
+   {
+      ServerTimingResponse response = new ServerTimingResponse(response(), 1024);
+      response.getOutputStream().write("hello".getBytes("UTF-8"));
+      assertFalse(response.isCommitted());
+      assertEquals(0, sent.size());
+      
+      response.finish("filter-chain;dur=1.000");
+      assertEquals("filter-chain;dur=1.000", headers.get(ServerTimingResponse.HEADER));
+      assertEquals(new Integer(5), headers.get("Content-Length"));
+      assertEquals("hello", sent.toString("UTF-8"));
+   }
+   
+   public void testPassThroughOverBufferLimit() throws Exception
+   {
+      ServerTimingResponse response = new ServerTimingResponse(response(), 4);
+      response.getOutputStream().write("hel".getBytes("UTF-8"));
+      response.getOutputStream().write("lo".getBytes("UTF-8"));
+      assertEquals("hello", sent.toString("UTF-8"));
+      
+      response.finish("filter-chain;dur=1.000");
+      assertNull(headers.get(ServerTimingResponse.HEADER));
+      assertEquals("hello", sent.toString("UTF-8"));
+   }
+   
+   public void testRedirectPassesThrough() throws Exception
+   {
+      ServerTimingResponse response = new ServerTimingResponse(response(), 1024);
+      response.getOutputStream().write("discarded".getBytes("UTF-8"));
+      response.sendRedirect("/hellojsf/index.faces");
+      response.finish("filter-chain;dur=1.000");
+      
+      assertEquals("/hellojsf/index.faces", headers.get("Location"));
+      assertNull(headers.get(ServerTimingResponse.HEADER));
+      assertEquals(0, sent.size());
+   }
+   
+   private static void invoke(Object target, String name, Class[] types, Object[] args) throws Exception
+   {
+      Method method = target.getClass().getDeclaredMethod(name, types);
+      method.setAccessible(true);
+      method.invoke(target, args);
+   }
+   
+   private HttpServletRequest request()
+   {
+      return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), 
+                                                        new Class[] {HttpServletRequest.class}, 
+                                                        new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args)
+         {
+            if (method.getName().equals("getAttribute")) return attributes.get(args[0]);
+            throw new UnsupportedOperationException(method.getName());
+         }
+      });
+   }
+   
+   private HttpServletResponse response()
+   {
+      final ServletOutputStream out = new ServletOutputStream()
+      {
+         @Override
+         public void write(int b) throws IOException
+         {
+            sent.write(b);
+         }
+      };
+      
+      return (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), 
+                                                         new Class[] {HttpServletResponse.class}, 
+                                                         new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args)
+         {
+            String name = method.getName();
+            if (name.equals("getOutputStream")) return out;
+            if (name.equals("setHeader")) return headers.put((String)args[0], args[1]);
+            if (name.equals("setContentLength")) return headers.put("Content-Length", args[0]);
+            if (name.equals("sendRedirect")) return headers.put("Location", args[0]);
+            if (name.equals("isCommitted")) return Boolean.valueOf(sent.size() > 0);
+            throw new UnsupportedOperationException(name);
+         }
+      });
+   }
+}
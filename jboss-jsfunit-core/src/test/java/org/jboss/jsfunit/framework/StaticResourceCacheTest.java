@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.framework;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the StaticResourceCache class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class StaticResourceCacheTest extends TestCase
+{
+   private static final String BASE = "http://localhost:8080/app/";
+   
+   private MockWebConnection connection;
+   
+   public void setUp()
+   {
+      connection = new MockWebConnection();
+   }
+   
+   public void testIsCacheable() throws Exception
+   {
+      assertTrue(StaticResourceCache.isCacheable(request("javax.faces.resource/jsf.js.faces?ln=javax.faces")));
+      assertTrue(StaticResourceCache.isCacheable(request("a4j/g/3_3_3.Finalorg.ajax4jsf.javascript.AjaxScript")));
+      assertTrue(StaticResourceCache.isCacheable(request("images/LOGO.PNG")));
+      assertFalse(StaticResourceCache.isCacheable(request("index.faces")));
+      
+      WebRequest post = request("style.css");
+      post.setHttpMethod(HttpMethod.POST);
+      assertFalse(StaticResourceCache.isCacheable(post));
+   }
+   
+   public void testFreshEntryIsServedWithoutRequest() throws Exception
+   {
+      StaticResourceCache cache = new StaticResourceCache(1024);
+      respond("script.js", "var x = 1;", headers("Cache-Control", "max-age=3600"));
+      
+      WebResponse first = cache.getResponse(request("script.js"), connection, null);
+      WebResponse second = cache.getResponse(request("script.js"), connection, null);
+      
+      assertEquals(1, connection.getRequestCount());
+      assertEquals("var x = 1;", second.getContentAsString());
+      assertEquals("var x = 1;", first.getContentAsString());
+      assertEquals(1L, cache.getMissCount());
+      assertEquals(1L, cache.getHitCount());
+      assertEquals(0L, cache.getRevalidationCount());
+   }
+   
+   public void testNoCacheIsRevalidatedWithETag() throws Exception
+   {
+      StaticResourceCache cache = new StaticResourceCache(1024);
+      respond("style.css", "body {}", headers("Cache-Control", "no-cache", "ETag", "\"v1\""));
+      cache.getResponse(request("style.css"), connection, null);
+      
+      connection.setResponse(new URL(BASE + "style.css"), "", 304, "Not Modified", "text/css", 
+                             headers("ETag", "\"v1\""));
+      WebResponse revalidated = cache.getResponse(request("style.css"), connection, null);
+      
+      assertEquals(2, connection.getRequestCount());
+      assertEquals("\"v1\"", connection.getLastAdditionalHeaders().get("If-None-Match"));
+      assertEquals(200, revalidated.getStatusCode());
+      assertEquals("body {}", revalidated.getContentAsString());
+      assertEquals(1L, cache.getRevalidationCount());
+      assertEquals(1, cache.getEntryCount());
+   }
+   
+   public void testChangedResourceReplacesEntry() throws Exception
+   {
+      StaticResourceCache cache = new StaticResourceCache(1024);
+      respond("style.css", "body {}", headers("Cache-Control", "no-cache", "ETag", "\"v1\""));
+      cache.getResponse(request("style.css"), connection, null);
+      
+      respond("style.css", "body { color: red }", headers("Cache-Control", "no-cache", "ETag", "\"v2\""));
+      WebResponse changed = cache.getResponse(request("style.css"), connection, null);
+      assertEquals("body { color: red }", changed.getContentAsString());
+      
+      cache.getResponse(request("style.css"), connection, null);
+      assertEquals("\"v2\"", connection.getLastAdditionalHeaders().get("If-None-Match"));
+      assertEquals(1, cache.getEntryCount());
+   }
+   
+   public void testUncacheableResponsesAreNotStored() throws Exception
+   {
+      StaticResourceCache cache = new StaticResourceCache(1024);
+      respond("a.js", "a", headers("Cache-Control", "no-store, max-age=3600"));
+      respond("b.js", "b", headers("Cache-Control", "private, max-age=3600"));
+      respond("c.js", "c", new ArrayList<NameValuePair>());
+      
+      cache.getResponse(request("a.js"), connection, null);
+      cache.getResponse(request("b.js"), connection, null);
+      cache.getResponse(request("c.js"), connection, null);
+      
+      assertEquals(0, cache.getEntryCount());
+   }
+   
+   public void testLeastRecentlyUsedIsEvicted() throws Exception
+   {
+      respond("a.js", body(100), headers("Cache-Control", "max-age=3600"));
+      respond("b.js", body(100), headers("Cache-Control", "max-age=3600"));
+      respond("c.js", body(100), headers("Cache-Control", "max-age=3600"));
+      
+      // room for two entries, but not three
+      long entrySize = entrySize("a.js");
+      StaticResourceCache cache = new StaticResourceCache((entrySize * 5) / 2);
+      
+      cache.getResponse(request("a.js"), connection, null);
+      cache.getResponse(request("b.js"), connection, null);
+      cache.getResponse(request("a.js"), connection, null); // a is now the most recently used
+      cache.getResponse(request("c.js"), connection, null);
+      
+      assertEquals(2, cache.getEntryCount());
+      assertEquals(1L, cache.getEvictionCount());
+      assertTrue(cache.getSize() <= cache.getBudget());
+      
+      int requests = connection.getRequestCount();
+      cache.getResponse(request("a.js"), connection, null);
+      cache.getResponse(request("c.js"), connection, null);
+      assertEquals(requests, connection.getRequestCount());
+      
+      cache.getResponse(request("b.js"), connection, null);
+      assertEquals(requests + 1, connection.getRequestCount());
+   }
+   
+   public void testSessionIdInPath() throws Exception
+   {
+      assertTrue(StaticResourceCache.isCacheable(request("script.js;jsessionid=ABC")));
+   }
+   
+   public void testEntryLargerThanBudgetIsNotStored() throws Exception
+   {
+      StaticResourceCache cache = new StaticResourceCache(50);
+      respond("big.js", body(100), headers("Cache-Control", "max-age=3600"));
+      
+      cache.getResponse(request("big.js"), connection, null);
+      
+      assertEquals(0, cache.getEntryCount());
+      assertEquals(0L, cache.getSize());
+   }
+   
+   public void testVariantAndSessionIdInKey() throws Exception
+   {
+      StaticResourceCache cache = new StaticResourceCache(1024);
+      respond("script.js;jsessionid=ABC", "s", headers("Cache-Control", "max-age=3600"));
+      respond("script.js;jsessionid=XYZ", "s", headers("Cache-Control", "max-age=3600"));
+      
+      cache.getResponse(request("script.js;jsessionid=ABC"), connection, "Firefox");
+      cache.getResponse(request("script.js;jsessionid=XYZ"), connection, "Firefox");
+      assertEquals(1, connection.getRequestCount());
+      
+      cache.getResponse(request("script.js;jsessionid=XYZ"), connection, "IE");
+      assertEquals(2, connection.getRequestCount());
+   }
+   
+   private long entrySize(String path) throws Exception
+   {
+      StaticResourceCache cache = new StaticResourceCache(Long.MAX_VALUE);
+      cache.getResponse(request(path), connection, null);
+      return cache.getSize();
+   }
+   
+   private WebRequest request(String path) throws Exception
+   {
+      return new WebRequest(new URL(BASE + path));
+   }
+   
+   private void respond(String path, String body, List<NameValuePair> headers) throws Exception
+   {
+      connection.setResponse(new URL(BASE + path), body, 200, "OK", "text/plain", headers);
+   }
+   
+   private static List<NameValuePair> headers(String... namesAndValues)
+   {
+      List<NameValuePair> headers = new ArrayList<NameValuePair>();
+      for (int i=0; i < namesAndValues.length; i += 2)
+      {
+         headers.add(new NameValuePair(namesAndValues[i], namesAndValues[i + 1]));
+      }
+      
+      return headers;
+   }
+   
+   private static String body(int length)
+   {
+      StringBuilder body = new StringBuilder(length);
+      for (int i=0; i < length; i++) body.append('x');
+      return body.toString();
+   }
+}
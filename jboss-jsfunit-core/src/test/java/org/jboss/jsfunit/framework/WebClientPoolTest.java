@@ -0,0 +1,321 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.framework;
+
+import com.gargoylesoftware.htmlunit.AlertHandler;
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.ImmediateRefreshHandler;
+import com.gargoylesoftware.htmlunit.IncorrectnessListener;
+import com.gargoylesoftware.htmlunit.IncorrectnessListenerImpl;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.RefreshHandler;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindowEvent;
+import com.gargoylesoftware.htmlunit.WebWindowListener;
+import com.gargoylesoftware.htmlunit.html.HTMLParserListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import junit.framework.TestCase;
+
+/**
+ * Tests that a WebClient comes back from the WebClientPool clean, and 
+ * measures the setup time of a test with and without the pool.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class WebClientPoolTest extends TestCase
+{
+   private static final String PAGE = 
+      "<html><head><script src='script.js'></script></head><body><p id='p'>page</p></body></html>";
+   
+   private static final String SCRIPT = "var loaded = true;";
+   
+   static
+   {
+      // Without this the JDK HttpServer leaves Nagle on, and every response on 
+      // a reused keep-alive connection waits for a delayed ACK.  That would
+      // penalize the pooled WebClients, which keep their connections.
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+   }
+   
+   private HttpServer server;
+   private String warURL;
+   
+   public void setUp() throws IOException
+   {
+      server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.createContext("/app/index.html", new ContentHandler(PAGE, "text/html"));
+      server.createContext("/app/script.js", new ContentHandler(SCRIPT, "text/javascript"));
+      server.start();
+      warURL = "http://localhost:" + server.getAddress().getPort() + "/app";
+      
+      System.setProperty(WebClientPool.POOL_PROPERTY, "");
+      WebClientPool.getPool().clear();
+   }
+   
+   public void tearDown()
+   {
+      WebClientPool.getPool().clear();
+      System.clearProperty(WebClientPool.POOL_PROPERTY);
+      WebConversationFactory.removeThreadLocals();
+      server.stop(0);
+   }
+   
+   public void testPooledWebClientComesBackClean() throws Exception
+   {
+      beginTest();
+      WebClientSpec wcSpec = new WebClientSpec("/index.html");
+      WebClient wc = wcSpec.getWebClient();
+      assertTrue(wc instanceof PooledWebClient);
+      
+      wc.addRequestHeader("mycoolheader", "mycoolvalue");
+      CountingWebWindowListener windowListener = new CountingWebWindowListener();
+      wc.addWebWindowListener(windowListener);
+      wc.setHTMLParserListener(HTMLParserListener.LOG_REPORTER);
+      wc.setIncorrectnessListener(new IncorrectnessListener()
+      {
+         public void notify(String message, Object origin)
+         {
+         }
+      });
+      wc.setRefreshHandler(new RefreshHandler()
+      {
+         public void handleRefresh(Page page, URL url, int seconds)
+         {
+         }
+      });
+      wc.setAlertHandler(new AlertHandler()
+      {
+         public void handleAlert(Page page, String message)
+         {
+         }
+      });
+      wc.setJavaScriptEnabled(false);
+      wc.getPage(warURL + "/index.html");
+      assertFalse(wc.getCookieManager().getCookies().isEmpty());
+      endTest();
+      
+      beginTest();
+      WebClientSpec nextSpec = new WebClientSpec("/index.html");
+      assertSame(wc, nextSpec.getWebClient());
+      
+      assertTrue(wc.getCookieManager().getCookies().isEmpty());
+      assertNull(wc.getHTMLParserListener());
+      assertTrue(wc.getIncorrectnessListener() instanceof IncorrectnessListenerImpl);
+      assertTrue(wc.getRefreshHandler() instanceof ImmediateRefreshHandler);
+      assertNull(wc.getAlertHandler());
+      assertTrue(wc.isJavaScriptEnabled());
+      
+      // send the next request to a MockWebConnection to see its headers
+      MockWebConnection connection = new MockWebConnection();
+      connection.setDefaultResponse(PAGE);
+      connection.setResponse(new URL(warURL + "/script.js"), SCRIPT, "text/javascript");
+      wc.setWebConnection(new JSFUnitWebConnection(connection, wc.getBrowserVersion()));
+      int windowEvents = windowListener.count;
+      wc.getPage(warURL + "/index.html");
+      
+      assertFalse(connection.getLastAdditionalHeaders().containsKey("mycoolheader"));
+      assertEquals(windowEvents, windowListener.count);
+      endTest();
+   }
+   
+   public void testWebClientsOfOneTestAreNotShared() throws Exception
+   {
+      beginTest();
+      WebClient wc1 = new WebClientSpec("/index.html").getWebClient();
+      WebClient wc2 = new WebClientSpec("/index.html").getWebClient();
+      assertNotSame(wc1, wc2);
+      endTest();
+      
+      beginTest();
+      WebClient wc3 = new WebClientSpec("/index.html").getWebClient();
+      assertTrue((wc3 == wc1) || (wc3 == wc2));
+      endTest();
+   }
+   
+   public void testSetupTimeWithAndWithoutPool() throws Exception
+   {
+      int tests = 50;
+      
+      // warm up both ways first
+      runTests(tests, true, true);
+      runTests(tests, false, true);
+      
+      System.out.println("Setup time per test without a page: pooled=" + setupTime(tests, true, false) + 
+                         " us, not pooled=" + setupTime(tests, false, false) + " us");
+      System.out.println("Setup time per test with the first page: pooled=" + setupTime(tests, true, true) + 
+                         " us, not pooled=" + setupTime(tests, false, true) + " us");
+   }
+   
+   // microseconds per test to create a WebClientSpec and optionally load a page
+   private long setupTime(int tests, boolean pooled, boolean loadPage) throws Exception
+   {
+      long start = System.nanoTime();
+      runTests(tests, pooled, loadPage);
+      return (System.nanoTime() - start) / tests / 1000;
+   }
+   
+   private void runTests(int tests, boolean pooled, boolean loadPage) throws Exception
+   {
+      if (pooled)
+      {
+         System.setProperty(WebClientPool.POOL_PROPERTY, "");
+      }
+      else
+      {
+         System.clearProperty(WebClientPool.POOL_PROPERTY);
+      }
+      
+      for (int i=0; i < tests; i++)
+      {
+         beginTest();
+         WebClientSpec wcSpec = new WebClientSpec("/index.html");
+         if (loadPage) wcSpec.getWebClient().getPage(warURL + "/index.html");
+         if (!pooled) wcSpec.getWebClient().closeAllWindows();
+         endTest();
+      }
+   }
+   
+   // what JSFUnitFilter does at the start of a test request
+   private void beginTest()
+   {
+      WebConversationFactory.setThreadLocals(request(session()));
+   }
+   
+   // what JSFUnitFilter does at the end of a test request
+   private void endTest()
+   {
+      WebConversationFactory.releaseWebClients();
+      WebConversationFactory.removeThreadLocals();
+   }
+   
+   private HttpServletRequest request(final HttpSession session)
+   {
+      final URL url;
+      try
+      {
+         url = new URL(warURL);
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException(e);
+      }
+      
+      InvocationHandler handler = new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args)
+         {
+            String name = method.getName();
+            if (name.equals("getSession")) return session;
+            if (name.equals("getScheme")) return url.getProtocol();
+            if (name.equals("getServerName")) return url.getHost();
+            if (name.equals("getServerPort")) return Integer.valueOf(url.getPort());
+            if (name.equals("getContextPath")) return url.getPath();
+            return null;
+         }
+      };
+      
+      return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), 
+                                                        new Class[] {HttpServletRequest.class}, 
+                                                        handler);
+   }
+   
+   private HttpSession session()
+   {
+      final Map<String, Object> attributes = new HashMap<String, Object>();
+      InvocationHandler handler = new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args)
+         {
+            String name = method.getName();
+            if (name.equals("getId")) return "SESSION";
+            if (name.equals("getAttributeNames")) return Collections.enumeration(attributes.keySet());
+            if (name.equals("getAttribute")) return attributes.get(args[0]);
+            if (name.equals("setAttribute")) attributes.put((String)args[0], args[1]);
+            if (name.equals("removeAttribute")) attributes.remove(args[0]);
+            return null;
+         }
+      };
+      
+      return (HttpSession)Proxy.newProxyInstance(getClass().getClassLoader(), 
+                                                 new Class[] {HttpSession.class}, 
+                                                 handler);
+   }
+   
+   private static class ContentHandler implements HttpHandler
+   {
+      private byte[] content;
+      private String contentType;
+      
+      ContentHandler(String content, String contentType)
+      {
+         this.content = content.getBytes();
+         this.contentType = contentType;
+      }
+      
+      public void handle(HttpExchange exchange) throws IOException
+      {
+         exchange.getResponseHeaders().add("Content-Type", contentType);
+         exchange.getResponseHeaders().add("Set-Cookie", "visited=true; Path=/");
+         exchange.sendResponseHeaders(200, content.length);
+         OutputStream out = exchange.getResponseBody();
+         out.write(content);
+         out.close();
+      }
+   }
+   
+   private static class CountingWebWindowListener implements WebWindowListener
+   {
+      private int count = 0;
+      
+      public void webWindowOpened(WebWindowEvent event)
+      {
+         count++;
+      }
+      
+      public void webWindowContentChanged(WebWindowEvent event)
+      {
+         count++;
+      }
+      
+      public void webWindowClosed(WebWindowEvent event)
+      {
+         count++;
+      }
+   }
+}
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the ClientIDSuffixIndex class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ClientIDSuffixIndexTest extends TestCase
+{
+   private static final List<String> CLIENT_IDS = Arrays.asList(new String[] {
+      "form1", 
+      "form1:name", 
+      "form1:lastname", 
+      "form1:table:0:name", 
+      "form1:table:1:name", 
+      "form2:name", 
+      "form2:submit", 
+      "name"
+   });
+   
+   private ClientIDSuffixIndex index = new ClientIDSuffixIndex(CLIENT_IDS);
+   
+   public void testFullClientID()
+   {
+      assertEquals(Collections.singletonList("form2:submit"), index.findMatches("form2:submit"));
+   }
+   
+   public void testSuffixMatchesLikeEndsWith()
+   {
+      List<String> matches = sorted(index.findMatches("name"));
+      assertEquals(sorted(endsWith("name")), matches);
+      assertTrue(matches.contains("form1:lastname"));
+      assertTrue(matches.contains("name"));
+   }
+   
+   public void testSuffixWithSeparator()
+   {
+      List<String> matches = sorted(index.findMatches(":name"));
+      assertEquals(Arrays.asList(new String[] {"form1:name", "form1:table:0:name", "form1:table:1:name", "form2:name"}), 
+                   matches);
+   }
+   
+   public void testRowSuffix()
+   {
+      assertEquals(Collections.singletonList("form1:table:1:name"), index.findMatches("table:1:name"));
+   }
+   
+   public void testNoMatch()
+   {
+      assertTrue(index.findMatches("foo").isEmpty());
+      assertTrue(index.findMatches("form3:name").isEmpty());
+      assertTrue(index.findMatches("xform1:name").isEmpty());
+   }
+   
+   public void testEverySuffixOfEveryID()
+   {
+      for (Iterator<String> i = CLIENT_IDS.iterator(); i.hasNext();)
+      {
+         String clientID = i.next();
+         for (int start=0; start < clientID.length(); start++)
+         {
+            String suffix = clientID.substring(start);
+            assertEquals(suffix, sorted(endsWith(suffix)), sorted(index.findMatches(suffix)));
+         }
+      }
+   }
+   
+   public void testEmptyIndex()
+   {
+      ClientIDSuffixIndex empty = new ClientIDSuffixIndex(new ArrayList<String>());
+      assertTrue(empty.findMatches("name").isEmpty());
+   }
+   
+   // the linear scan that the index replaces
+   private static List<String> endsWith(String suffix)
+   {
+      List<String> matches = new ArrayList<String>();
+      for (Iterator<String> i = CLIENT_IDS.iterator(); i.hasNext();)
+      {
+         String clientID = i.next();
+         if (clientID.endsWith(suffix)) matches.add(clientID);
+      }
+      return matches;
+   }
+   
+   private static List<String> sorted(List<String> list)
+   {
+      List<String> sorted = new ArrayList<String>(list);
+      Collections.sort(sorted);
+      return sorted;
+   }
+}
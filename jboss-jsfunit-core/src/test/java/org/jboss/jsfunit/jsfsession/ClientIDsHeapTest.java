@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIPanel;
+import javax.faces.context.FacesContext;
+import junit.framework.TestCase;
+import org.jboss.jsfunit.framework.JSFUnitSessionContext;
+
+/**
+ * Measures the heap held by the ancestry of 10,000 components.  The DFS 
+ * intervals of ClientIDs are compared with the set of ancestor clientIDs
+ * per component that ClientIDs kept before.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ClientIDsHeapTest extends TestCase
+{
+   private static final int BRANCHES = 500;
+   private static final int DEPTH = 20;
+   
+   private MockFacesContext facesContext;
+   
+   public void setUp()
+   {
+      facesContext = new MockFacesContext();
+      
+      // 500 branches of 20 nested components
+      int count = 0;
+      for (int i=0; i < BRANCHES; i++)
+      {
+         UIComponent parent = null;
+         for (int j=0; j < DEPTH; j++)
+         {
+            UIPanel panel = ClientIDsTest.component(new UIPanel(), "c" + count++);
+            if (parent == null) 
+            {
+               facesContext.addToView(panel);
+            }
+            else
+            {
+               parent.getChildren().add(panel);
+            }
+            parent = panel;
+         }
+      }
+   }
+   
+   public void tearDown()
+   {
+      facesContext.release();
+   }
+   
+   public void testAncestryHeapPer10kComponents() throws Exception
+   {
+      JSFUnitSessionContext sessionContext = facesContext.makeSessionContext();
+      
+      // the clientIDs are cached by the components from here on
+      new ClientIDs(sessionContext, false);
+      
+      long before = usedHeap();
+      Object intervals = ancestors(new ClientIDs(sessionContext, false));
+      long intervalBytes = usedHeap() - before;
+      
+      before = usedHeap();
+      Map<String, Set<String>> ancestorSets = ancestorSets(facesContext.getViewRoot(), null, new HashMap<String, Set<String>>());
+      long ancestorSetBytes = usedHeap() - before;
+      
+      System.out.println("Ancestry heap per " + (BRANCHES * DEPTH) + " components: intervals=" + 
+                         intervalBytes + " bytes, ancestor sets=" + ancestorSetBytes + " bytes");
+      
+      assertEquals(BRANCHES * DEPTH, ancestorSets.size());
+      assertNotNull(intervals);
+      assertTrue("intervals=" + intervalBytes + " ancestor sets=" + ancestorSetBytes, 
+                 (intervalBytes * 3) < ancestorSetBytes);
+   }
+   
+   private static Object ancestors(ClientIDs clientIDs) throws Exception
+   {
+      Field field = ClientIDs.class.getDeclaredField("ancestors");
+      field.setAccessible(true);
+      return field.get(clientIDs);
+   }
+   
+   // the old encoding: each component copies its parent's set and adds itself
+   private Map<String, Set<String>> ancestorSets(UIComponent component, Set<String> parentSet, 
+                                                 Map<String, Set<String>> sets)
+   {
+      FacesContext context = FacesContext.getCurrentInstance();
+      Set<String> mySet = parentSet;
+      if (component != facesContext.getViewRoot())
+      {
+         String clientID = component.getClientId(context);
+         mySet = (parentSet == null) ? new HashSet<String>() : new HashSet<String>(parentSet);
+         mySet.add(clientID);
+         sets.put(clientID, mySet);
+      }
+      
+      for (Iterator<UIComponent> children = component.getFacetsAndChildren(); children.hasNext();)
+      {
+         ancestorSets(children.next(), mySet, sets);
+      }
+      
+      return sets;
+   }
+   
+   private static long usedHeap()
+   {
+      Runtime runtime = Runtime.getRuntime();
+      for (int i=0; i < 4; i++) System.gc();
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+}
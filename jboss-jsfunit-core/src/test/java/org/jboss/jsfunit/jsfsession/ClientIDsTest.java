@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.faces.component.UIColumn;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIData;
+import javax.faces.component.UIForm;
+import javax.faces.component.UIOutput;
+import junit.framework.TestCase;
+
+/**
+ * Tests the eager walk of ClientIDs over a component tree that is built 
+ * outside of a container.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ClientIDsTest extends TestCase
+{
+   private MockFacesContext facesContext;
+   
+   public void setUp()
+   {
+      facesContext = new MockFacesContext();
+   }
+   
+   public void tearDown()
+   {
+      facesContext.release();
+   }
+   
+   public void testTableFacetsAreOutsideOfRows()
+   {
+      UIForm form = component(new UIForm(), "form");
+      form.getChildren().add(table("table", 3));
+      facesContext.addToView(form);
+      
+      ClientIDs clientIDs = new ClientIDs(facesContext.makeSessionContext(), false);
+      
+      assertEquals("form:table:header", clientIDs.findClientID("header"));
+      assertEquals("form:table:footer", clientIDs.findClientID("footer"));
+      assertEquals("form:table:2:name", clientIDs.findClientID("table:2:name"));
+      
+      assertTrue(clientIDs.isAncestor("form:table:header", "form:table"));
+      assertFalse(clientIDs.isAncestor("form:table:header", "form:table:2"));
+      assertFalse(clientIDs.isAncestor("form:table:footer", "form:table:0"));
+      assertTrue(clientIDs.isAncestor("form:table:2:name", "form:table:2"));
+      assertFalse(clientIDs.isAncestor("form:table:2:name", "form:table:1"));
+   }
+   
+   public void testPagedTable()
+   {
+      UIData table = table("table", 5);
+      table.setFirst(2);
+      table.setRows(2);
+      facesContext.addToView(table);
+      
+      ClientIDs clientIDs = new ClientIDs(facesContext.makeSessionContext(), false);
+      
+      assertEquals("table:2:name", clientIDs.findClientID("2:name"));
+      assertEquals("table:3:name", clientIDs.findClientID("3:name"));
+      assertNotFound(clientIDs, "table:0:name");
+      assertNotFound(clientIDs, "table:1:name");
+      assertNotFound(clientIDs, "table:4:name");
+      
+      // the last page is short
+      table.setFirst(4);
+      clientIDs = new ClientIDs(facesContext.makeSessionContext(), false);
+      assertEquals("table:4:name", clientIDs.findClientID("4:name"));
+      assertNotFound(clientIDs, "table:5:name");
+   }
+   
+   private static void assertNotFound(ClientIDs clientIDs, String suffix)
+   {
+      try
+      {
+         clientIDs.findClientID(suffix);
+         fail("Found " + suffix);
+      }
+      catch (ComponentIDNotFoundException e)
+      {
+         // expected
+      }
+   }
+   
+   public void testLazyMatchesEager()
+   {
+      UIForm form = component(new UIForm(), "form");
+      UIData paged = table("paged", 6);
+      paged.setFirst(2);
+      paged.setRows(2);
+      form.getChildren().add(paged);
+      
+      UIData outer = table("outer", 3);
+      UIData inner = table("inner", 2);
+      outer.getChildren().get(0).getChildren().add(inner);
+      form.getChildren().add(outer);
+      facesContext.addToView(form);
+      
+      ClientIDs eager = new ClientIDs(facesContext.makeSessionContext(), false);
+      ClientIDs lazy = new ClientIDs(facesContext.makeSessionContext(), true);
+      
+      String[] suffixes = {"form", "header", "paged:header", "name", "paged:0:name", "paged:1:name", 
+                           "paged:2:name", "paged:3:name", "paged:5:name", "paged:6:name", 
+                           "outer:2:name", "outer:3:name", "outer:1:inner:0:name", 
+                           "outer:1:inner:2:name", "outer:0:inner:footer", "nosuchid"};
+      for (int i=0; i < suffixes.length; i++)
+      {
+         assertEquals(suffixes[i], findClientID(eager, suffixes[i]), findClientID(lazy, suffixes[i]));
+         assertEquals(suffixes[i], componentValue(eager, suffixes[i]), componentValue(lazy, suffixes[i]));
+      }
+      
+      String[] clientIDs = {"form", "form:paged", "form:paged:header", "form:paged:0", "form:paged:0:name", 
+                            "form:paged:2", "form:paged:2:name", "form:outer:1", "form:outer:1:inner", 
+                            "form:outer:1:inner:0", "form:outer:1:inner:0:name", "form:outer:2:name"};
+      for (int i=0; i < clientIDs.length; i++)
+      {
+         for (int j=0; j < clientIDs.length; j++)
+         {
+            assertEquals(clientIDs[i] + " in " + clientIDs[j], 
+                         eager.isAncestor(clientIDs[i], clientIDs[j]),
+                         lazy.isAncestor(clientIDs[i], clientIDs[j]));
+         }
+      }
+   }
+   
+   // the clientID, or the class name of the exception
+   private static String findClientID(ClientIDs clientIDs, String suffix)
+   {
+      try
+      {
+         return clientIDs.findClientID(suffix);
+      }
+      catch (RuntimeException e)
+      {
+         return e.getClass().getName();
+      }
+   }
+   
+   // the value, or the class name of the exception
+   private static Object componentValue(ClientIDs clientIDs, String suffix)
+   {
+      try
+      {
+         return clientIDs.getComponentValue(suffix);
+      }
+      catch (RuntimeException e)
+      {
+         return e.getClass().getName();
+      }
+   }
+   
+   static UIData table(String id, int rowCount)
+   {
+      List<String> rows = new ArrayList<String>();
+      for (int i=0; i < rowCount; i++) rows.add("row" + i);
+      
+      UIData table = component(new UIData(), id);
+      table.setValue(rows);
+      table.getFacets().put("header", component(new UIOutput(), "header"));
+      table.getFacets().put("footer", component(new UIOutput(), "footer"));
+      
+      UIColumn column = component(new UIColumn(), "column");
+      UIOutput name = component(new UIOutput(), "name");
+      name.setValue(id + " name");
+      column.getChildren().add(name);
+      table.getChildren().add(column);
+      return table;
+   }
+   
+   static <T extends UIComponent> T component(T component, String id)
+   {
+      component.setId(id);
+      component.setRendererType(null);
+      return component;
+   }
+}
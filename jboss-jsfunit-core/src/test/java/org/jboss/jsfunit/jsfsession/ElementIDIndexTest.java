@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import junit.framework.TestCase;
+import org.w3c.dom.Element;
+
+/**
+ * Tests that the ElementIDIndex stays correct when AJAX partial updates
+ * and other javascript change the page.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ElementIDIndexTest extends TestCase
+{
+   private static final String BASE = "http://localhost:8080/app/";
+   
+   private static final String PAGE = 
+      "<html><head><script>" +
+      "function update(part, regionID) {" +
+      "  var request = new XMLHttpRequest();" +
+      "  request.open('GET', part, false);" +
+      "  request.send(null);" +
+      "  document.getElementById(regionID).innerHTML = request.responseText;" +
+      "}" +
+      "</script></head><body>" +
+      "<form id='form'>" +
+      "<div id='form:top'><span id='form:top:name'>top</span></div>" +
+      "<div id='form:region'><span id='form:region:name'>old</span><span id='form:old'>old</span></div>" +
+      "<div id='form:bottom'><span id='form:bottom:name'>bottom</span></div>" +
+      "</form></body></html>";
+   
+   private WebClient webClient;
+   private HtmlPage page;
+   private ElementIDIndex index;
+   
+   public void setUp() throws Exception
+   {
+      MockWebConnection connection = new MockWebConnection();
+      connection.setResponse(new URL(BASE + "index.html"), PAGE);
+      connection.setResponse(new URL(BASE + "part1.html"), 
+                             "<span id='form:region:name'>new</span><span id='form:new'>new</span>");
+      connection.setResponse(new URL(BASE + "part2.html"), 
+                             "<span id='form:region:name'>newer</span>");
+      
+      webClient = new WebClient(BrowserVersion.FIREFOX_3);
+      webClient.setWebConnection(connection);
+      page = (HtmlPage)webClient.getPage(BASE + "index.html");
+      index = new ElementIDIndex(page);
+   }
+   
+   public void tearDown()
+   {
+      index.detach();
+      webClient.closeAllWindows();
+   }
+   
+   public void testInitialPage()
+   {
+      assertEquals(ids("form:top:name", "form:region:name", "form:bottom:name"), ids(index.findElements("name")));
+      assertEquals(ids("form:old"), ids(index.findElements("old")));
+      assertEquals(ids("form:region"), ids(index.findElements("form:region")));
+   }
+   
+   public void testPartialUpdate()
+   {
+      page.executeJavaScript("update('part1.html', 'form:region')");
+      
+      assertEquals(ids(), ids(index.findElements("old")));
+      assertEquals(ids("form:new"), ids(index.findElements("new")));
+      assertEquals(ids("form:top:name", "form:region:name", "form:bottom:name"), ids(index.findElements("name")));
+      assertEquals("new", index.findElements("region:name").get(0).getTextContent());
+      
+      page.executeJavaScript("update('part2.html', 'form:region')");
+      
+      assertEquals(ids(), ids(index.findElements("new")));
+      assertEquals("newer", index.findElements("region:name").get(0).getTextContent());
+      assertEquals(3, index.findElements("name").size());
+   }
+   
+   public void testDocumentOrderAfterInsert()
+   {
+      page.executeJavaScript(
+         "var span = document.createElement('span');" +
+         "span.id = 'form:first:name';" +
+         "var form = document.getElementById('form');" +
+         "form.insertBefore(span, form.firstChild);");
+      
+      assertEquals(ids("form:first:name", "form:top:name", "form:region:name", "form:bottom:name"), 
+                   ids(index.findElements("name")));
+   }
+   
+   public void testIdChange()
+   {
+      page.executeJavaScript("document.getElementById('form:old').id = 'form:renamed';");
+      
+      assertEquals(ids(), ids(index.findElements("old")));
+      assertEquals(ids("form:renamed"), ids(index.findElements("renamed")));
+   }
+   
+   public void testDetachedElementsAreNotIndexed()
+   {
+      page.executeJavaScript(
+         "var span = document.createElement('span');" +
+         "span.id = 'form:detached';" +
+         "var old = document.getElementById('form:old');" +
+         "old.parentNode.removeChild(old);" +
+         "old.id = 'form:removed';");
+      
+      assertEquals(ids(), ids(index.findElements("detached")));
+      assertEquals(ids(), ids(index.findElements("old")));
+      assertEquals(ids(), ids(index.findElements("removed")));
+   }
+   
+   private static List<String> ids(String... ids)
+   {
+      List<String> list = new ArrayList<String>();
+      for (int i=0; i < ids.length; i++) list.add(ids[i]);
+      return list;
+   }
+   
+   private static List<String> ids(List<Element> elements)
+   {
+      List<String> ids = new ArrayList<String>();
+      for (Iterator<Element> i = elements.iterator(); i.hasNext();)
+      {
+         ids.add(i.next().getAttribute("id"));
+      }
+      
+      return ids;
+   }
+}
@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.WebClient;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+import junit.framework.TestCase;
+import org.jboss.jsfunit.framework.JSFUnitWebConnection;
+
+/**
+ * Tests the lifecycle of the background writer of the HarRecorder.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class HarRecorderTest extends TestCase
+{
+   private static final String WRITER_THREAD = "JSFUnit-har-writer";
+   
+   private File directory;
+   
+   public void setUp() throws IOException
+   {
+      directory = File.createTempFile("jsfunit-har", "");
+      directory.delete();
+      directory.mkdirs();
+   }
+   
+   public void tearDown()
+   {
+      HarRecorder.stopWriter();
+      
+      File[] files = directory.listFiles();
+      for (int i=0; i < files.length; i++)
+      {
+         files[i].delete();
+      }
+      directory.delete();
+   }
+   
+   public void testWrittenOnCallingThreadWithoutWriter() throws Exception
+   {
+      HarRecorder recorder = newRecorder("nowriter");
+      record(recorder);
+      
+      Future<File> written = recorder.flush();
+      assertTrue(written.isDone());
+      assertTrue(written.get().length() > 0);
+      assertNull(findWriterThread());
+   }
+   
+   public void testCloseForgetsRecorder() throws Exception
+   {
+      HarRecorder.startWriter();
+      HarRecorder recorder = newRecorder("close");
+      record(recorder);
+      assertTrue(HarRecorder.isUnwritten(recorder));
+      
+      recorder.close();
+      assertFalse(HarRecorder.isUnwritten(recorder));
+      
+      HarRecorder.stopWriter();
+      assertTrue(recorder.getHarFile().length() > 0);
+   }
+   
+   public void testStopWriterWritesUnclosedRecorders() throws Exception
+   {
+      HarRecorder.startWriter();
+      HarRecorder recorder = newRecorder("unclosed");
+      record(recorder);
+      recorder.flush().get();
+      Thread writerThread = findWriterThread();
+      assertNotNull(writerThread);
+      
+      recorder.getHarFile().delete();
+      record(recorder);
+      HarRecorder.stopWriter();
+      assertTrue(recorder.getHarFile().length() > 0);
+      assertFalse(HarRecorder.isUnwritten(recorder));
+      
+      // nothing is left to hold the classloader of the web app
+      writerThread.join(5000L);
+      assertFalse(writerThread.isAlive());
+   }
+   
+   public void testFlushAfterStopWriter() throws Exception
+   {
+      HarRecorder.startWriter();
+      HarRecorder recorder = newRecorder("afterstop");
+      record(recorder);
+      recorder.flush().get();
+      HarRecorder.stopWriter();
+      
+      recorder.getHarFile().delete();
+      record(recorder);
+      assertTrue(recorder.flush().get().length() > 0);
+      assertNull(findWriterThread());
+   }
+   
+   public void testWriterStopsWhenEveryWebAppStopped() throws Exception
+   {
+      HarRecorder.startWriter();
+      HarRecorder.startWriter();
+      HarRecorder recorder = newRecorder("twoapps");
+      record(recorder);
+      recorder.flush().get();
+      Thread writerThread = findWriterThread();
+      
+      HarRecorder.stopWriter();
+      assertTrue(writerThread.isAlive());
+      
+      HarRecorder.stopWriter();
+      writerThread.join(5000L);
+      assertFalse(writerThread.isAlive());
+   }
+   
+   private HarRecorder newRecorder(String name)
+   {
+      return new HarRecorder(new File(directory, name + ".har"), 10, 0, false);
+   }
+   
+   private static void record(HarRecorder recorder) throws IOException
+   {
+      MockWebConnection mockConnection = new MockWebConnection();
+      mockConnection.setDefaultResponse("<html><body>page</body></html>");
+      JSFUnitWebConnection connection = new JSFUnitWebConnection(mockConnection);
+      connection.addListener(recorder);
+      
+      WebClient webClient = new WebClient();
+      webClient.setWebConnection(connection);
+      webClient.getPage("http://localhost/app/index.html");
+      webClient.closeAllWindows();
+   }
+   
+   private static Thread findWriterThread()
+   {
+      for (Iterator<Thread> i = Thread.getAllStackTraces().keySet().iterator(); i.hasNext();)
+      {
+         Thread thread = i.next();
+         if (thread.getName().equals(WRITER_THREAD) && thread.isAlive()) return thread;
+      }
+      
+      return null;
+   }
+}
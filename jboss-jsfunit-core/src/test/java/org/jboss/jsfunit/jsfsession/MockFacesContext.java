@@ -0,0 +1,237 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.faces.FactoryFinder;
+import javax.faces.application.Application;
+import javax.faces.application.FacesMessage;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UINamingContainer;
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseStream;
+import javax.faces.context.ResponseWriter;
+import javax.faces.event.PhaseId;
+import javax.faces.render.RenderKit;
+import javax.servlet.http.HttpSession;
+import org.jboss.jsfunit.context.JSFUnitFacesContext;
+import org.jboss.jsfunit.framework.JSFUnitSessionContext;
+
+/**
+ * A FacesContext that only holds a component tree.  It is enough for 
+ * building ClientIDs outside of a container.  Components added to the tree
+ * should have an explicit id and no renderer type.  visitTree() uses
+ * the MockVisitContextFactory while the MockFacesContext is current.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class MockFacesContext extends FacesContext
+{
+   private UIViewRoot viewRoot;
+   private Map<Object, Object> attributes = new HashMap<Object, Object>();
+   
+   public MockFacesContext()
+   {
+      attributes.put(UINamingContainer.SEPARATOR_CHAR_PARAM_NAME, Character.valueOf(':'));
+      
+      // There is no Application to publish PostAddToViewEvents.
+      viewRoot = new UIViewRoot()
+      {
+         @Override
+         public boolean isInView()
+         {
+            return false;
+         }
+      };
+      FactoryFinder.setFactory(FactoryFinder.VISIT_CONTEXT_FACTORY, MockVisitContextFactory.class.getName());
+      setCurrentInstance(this);
+   }
+   
+   /**
+    * Add a component to the view root.
+    *
+    * @param component The component.
+    */
+   public void addToView(UIComponent component)
+   {
+      viewRoot.getChildren().add(component);
+   }
+   
+   /**
+    * Make a JSFUnitSessionContext whose FacesContext wraps this one.
+    *
+    * @return The JSFUnitSessionContext.
+    */
+   public JSFUnitSessionContext makeSessionContext()
+   {
+      final JSFUnitFacesContext facesContext = new JSFUnitFacesContext(this);
+      InvocationHandler handler = new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args)
+         {
+            if (method.getName().equals("getAttribute") && 
+                ((String)args[0]).startsWith(JSFUnitFacesContext.SESSION_KEY))
+            {
+               return facesContext;
+            }
+            
+            return null;
+         }
+      };
+      
+      HttpSession session = (HttpSession)Proxy.newProxyInstance(getClass().getClassLoader(), 
+                                                                new Class[] {HttpSession.class}, 
+                                                                handler);
+      return new JSFUnitSessionContext(session, "http://localhost:8080/mock");
+   }
+   
+   @Override
+   public Map<Object, Object> getAttributes()
+   {
+      return attributes;
+   }
+   
+   @Override
+   public UIViewRoot getViewRoot()
+   {
+      return viewRoot;
+   }
+   
+   @Override
+   public void setViewRoot(UIViewRoot viewRoot)
+   {
+      this.viewRoot = viewRoot;
+   }
+   
+   @Override
+   public PhaseId getCurrentPhaseId()
+   {
+      return PhaseId.RENDER_RESPONSE;
+   }
+   
+   @Override
+   public void release()
+   {
+      FactoryFinder.releaseFactories();
+      setCurrentInstance(null);
+   }
+   
+   @Override
+   public Application getApplication()
+   {
+      return null;
+   }
+   
+   @Override
+   public Iterator<String> getClientIdsWithMessages()
+   {
+      return null;
+   }
+   
+   @Override
+   public ExternalContext getExternalContext()
+   {
+      return null;
+   }
+   
+   @Override
+   public FacesMessage.Severity getMaximumSeverity()
+   {
+      return null;
+   }
+   
+   @Override
+   public Iterator<FacesMessage> getMessages()
+   {
+      return null;
+   }
+   
+   @Override
+   public Iterator<FacesMessage> getMessages(String clientId)
+   {
+      return null;
+   }
+   
+   @Override
+   public RenderKit getRenderKit()
+   {
+      return null;
+   }
+   
+   @Override
+   public boolean getRenderResponse()
+   {
+      return false;
+   }
+   
+   @Override
+   public boolean getResponseComplete()
+   {
+      return false;
+   }
+   
+   @Override
+   public ResponseStream getResponseStream()
+   {
+      return null;
+   }
+   
+   @Override
+   public void setResponseStream(ResponseStream responseStream)
+   {
+   }
+   
+   @Override
+   public ResponseWriter getResponseWriter()
+   {
+      return null;
+   }
+   
+   @Override
+   public void setResponseWriter(ResponseWriter responseWriter)
+   {
+   }
+   
+   @Override
+   public void addMessage(String clientId, FacesMessage message)
+   {
+   }
+   
+   @Override
+   public void renderResponse()
+   {
+   }
+   
+   @Override
+   public void responseComplete()
+   {
+   }
+}
@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import javax.faces.component.UIComponent;
+import javax.faces.component.visit.VisitCallback;
+import javax.faces.component.visit.VisitContext;
+import javax.faces.component.visit.VisitContextFactory;
+import javax.faces.component.visit.VisitHint;
+import javax.faces.component.visit.VisitResult;
+import javax.faces.context.FacesContext;
+
+/**
+ * A VisitContextFactory that visits every component.  Register it with
+ * FactoryFinder.setFactory() so that visitTree() works outside of a 
+ * container.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class MockVisitContextFactory extends VisitContextFactory
+{
+   @Override
+   public VisitContext getVisitContext(FacesContext facesContext, 
+                                       Collection<String> ids, 
+                                       Set<VisitHint> hints)
+   {
+      return new FullVisitContext(facesContext, hints);
+   }
+   
+   private static class FullVisitContext extends VisitContext
+   {
+      private FacesContext facesContext;
+      private Set<VisitHint> hints;
+      
+      FullVisitContext(FacesContext facesContext, Set<VisitHint> hints)
+      {
+         this.facesContext = facesContext;
+         this.hints = (hints == null) ? EnumSet.noneOf(VisitHint.class) : hints;
+      }
+      
+      @Override
+      public FacesContext getFacesContext()
+      {
+         return facesContext;
+      }
+      
+      @Override
+      public Collection<String> getIdsToVisit()
+      {
+         return ALL_IDS;
+      }
+      
+      @Override
+      public Collection<String> getSubtreeIdsToVisit(UIComponent component)
+      {
+         return ALL_IDS;
+      }
+      
+      @Override
+      public VisitResult invokeVisitCallback(UIComponent component, VisitCallback callback)
+      {
+         return callback.visit(this, component);
+      }
+      
+      @Override
+      public Set<VisitHint> getHints()
+      {
+         return hints;
+      }
+   }
+}
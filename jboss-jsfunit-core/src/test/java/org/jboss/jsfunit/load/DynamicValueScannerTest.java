@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.load;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests the DynamicValueScanner class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class DynamicValueScannerTest extends TestCase
+{
+   private static final String PAGE = 
+      "<html><body><form id=\"form1\" action=\"/hellojsf/index.faces?cid=7\">" +
+      "<input type=\"text\" name=\"form1:name\" value=\"javax.faces.ViewState\" />" +
+      "<input type=\"hidden\" name=\"javax.faces.ViewState\" id=\"javax.faces.ViewState\" value=\"j_id1:j_id2\" />" +
+      "<a href=\"/hellojsf/page.faces?x=1&amp;cid=8\" onclick=\"A4J.AJAX.Submit('_viewRoot','form1',event)\">link</a>" +
+      "<input type=\"hidden\" name=\"javax.faces.ViewState\" value=\"j_id1:j_id2\" />" +
+      "</form></body></html>";
+   
+   public void testFindsValues()
+   {
+      DynamicValueScanner scanner = new DynamicValueScanner();
+      scanner.scan(PAGE);
+      assertFound(scanner);
+   }
+   
+   public void testFindsValuesAcrossChunks() throws Exception
+   {
+      DynamicValueScanner scanner = new DynamicValueScanner();
+      char[] chars = PAGE.toCharArray();
+      for (int i=0; i < chars.length; i++) scanner.scan(chars, i, 1);
+      scanner.end();
+      assertFound(scanner);
+      
+      scanner = new DynamicValueScanner();
+      scanner.scan(new StringReader(PAGE));
+      assertFound(scanner);
+   }
+   
+   public void testPartialResponse()
+   {
+      DynamicValueScanner scanner = new DynamicValueScanner();
+      scanner.scan("<partial-response><changes><update id=\"javax.faces.ViewState\"><![CDATA[-123:456]]></update>" +
+                   "</changes></partial-response>");
+      assertEquals(Arrays.asList(new String[] {"-123:456"}), scanner.getValues().get(DynamicValueScanner.VIEW_STATE));
+   }
+   
+   public void testValueMarkerMustBeInSameTag()
+   {
+      DynamicValueScanner scanner = new DynamicValueScanner();
+      scanner.scan("<input name=\"cid\" /><input value=\"notTheCid\" />");
+      assertNull(scanner.getValues().get(DynamicValueScanner.CONVERSATION_ID));
+   }
+   
+   public void testURLParamEndsWithText()
+   {
+      DynamicValueScanner scanner = new DynamicValueScanner();
+      scanner.scan("/hellojsf/index.faces?cid=12");
+      assertEquals(Arrays.asList(new String[] {"12"}), scanner.getValues().get(DynamicValueScanner.CONVERSATION_ID));
+   }
+   
+   public void testUnescapesEntities()
+   {
+      assertEquals("a&b<c>d\"e'f", viewState("a&amp;b&lt;c&gt;d&quot;e&apos;f"));
+      assertEquals("AB", viewState("&#65;&#x42;"));
+      assertEquals("&unknown;", viewState("&unknown;"));
+      assertEquals("a & b", viewState("a & b"));
+   }
+   
+   public void testUnescapesSupplementaryCharacters()
+   {
+      String grinning = new String(Character.toChars(0x1F600));
+      assertEquals(grinning, viewState("&#x1F600;"));
+      assertEquals(grinning, viewState("&#128512;"));
+      assertEquals(2, viewState("&#X1F600;").length());
+   }
+   
+   public void testKeepsMalformedReferences()
+   {
+      assertEquals("&#;", viewState("&#;"));
+      assertEquals("&#x;", viewState("&#x;"));
+      assertEquals("&#xZZ;", viewState("&#xZZ;"));
+      assertEquals("&#-65;", viewState("&#-65;"));
+      assertEquals("&#x110000;", viewState("&#x110000;"));
+      assertEquals("&#99999999999;", viewState("&#99999999999;"));
+   }
+   
+   public void testScanResponse() throws Exception
+   {
+      Map<String, List<String>> values = new HashMap<String, List<String>>();
+      values.put(DynamicValueScanner.CONVERSATION_ID, Arrays.asList(new String[] {"1"}));
+      
+      DynamicValueScanner.scanResponse("/hellojsf/index.faces?cid=2", "text/html; charset=UTF-8", 
+                                       new ByteArrayInputStream(PAGE.getBytes("UTF-8")), "UTF-8", values);
+      assertEquals(Arrays.asList(new String[] {"2", "7", "8"}), values.get(DynamicValueScanner.CONVERSATION_ID));
+      assertEquals(Arrays.asList(new String[] {"j_id1:j_id2"}), values.get(DynamicValueScanner.VIEW_STATE));
+   }
+   
+   public void testScanResponseSkipsResources() throws Exception
+   {
+      Map<String, List<String>> values = new HashMap<String, List<String>>();
+      DynamicValueScanner.scanResponse(null, "text/css", new ByteArrayInputStream(PAGE.getBytes("UTF-8")), null, values);
+      assertTrue(values.isEmpty());
+   }
+   
+   private static void assertFound(DynamicValueScanner scanner)
+   {
+      Map<String, List<String>> values = scanner.getValues();
+      assertEquals(Arrays.asList(new String[] {"j_id1:j_id2"}), values.get(DynamicValueScanner.VIEW_STATE));
+      assertEquals(Arrays.asList(new String[] {"7", "8"}), values.get(DynamicValueScanner.CONVERSATION_ID));
+      assertEquals(Arrays.asList(new String[] {"_viewRoot"}), values.get(DynamicValueScanner.AJAX_REQUEST));
+   }
+   
+   private static String viewState(String attribute)
+   {
+      DynamicValueScanner scanner = new DynamicValueScanner();
+      scanner.scan("<input type=\"hidden\" name=\"javax.faces.ViewState\" value=\"" + attribute + "\" />");
+      return scanner.getValues().get(DynamicValueScanner.VIEW_STATE).get(0);
+   }
+}
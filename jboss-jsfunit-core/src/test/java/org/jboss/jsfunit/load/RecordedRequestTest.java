@@ -0,0 +1,149 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.load;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests the RecordedRequest class.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class RecordedRequestTest extends TestCase
+{
+   private static final Map<String, String> NO_HEADERS = new LinkedHashMap<String, String>();
+   
+   public void testParseQuery()
+   {
+      List<String[]> pairs = RecordedRequest.parseQuery("a=1&b=x+y&&c&d=%3D%26&e=100%", "UTF-8");
+      assertEquals(5, pairs.size());
+      assertPair("a", "1", pairs.get(0));
+      assertPair("b", "x y", pairs.get(1));
+      assertPair("c", "", pairs.get(2));
+      assertPair("d", "=&", pairs.get(3));
+      assertPair("e", "100%", pairs.get(4));
+      assertTrue(RecordedRequest.parseQuery("", "UTF-8").isEmpty());
+   }
+   
+   public void testGetWithoutQuery()
+   {
+      RecordedRequest request = new RecordedRequest("GET", "http://localhost:8080/hellojsf/index.faces", "UTF-8", 
+                                                    NO_HEADERS, null, null, new HashMap<String, List<String>>(), 
+                                                    200, "text/html");
+      assertEquals("http://localhost:8080/hellojsf/index.faces", request.getBaseURL());
+      assertEquals(request.getBaseURL(), request.getURL(new HashMap<String, List<String>>()));
+      assertNull(request.getBody(new HashMap<String, List<String>>()));
+      assertFalse(request.hasFormBody());
+      assertTrue(request.isPage());
+      assertFalse(request.isRedirect());
+   }
+   
+   public void testReplacesDynamicQueryParam()
+   {
+      Map<String, List<String>> recorded = values(DynamicValueScanner.CONVERSATION_ID, new String[] {"4", "5"});
+      RecordedRequest request = new RecordedRequest("GET", "http://localhost/page.faces?cid=5&name=a+b", "UTF-8", 
+                                                    NO_HEADERS, null, null, recorded, 302, null);
+      assertEquals("http://localhost/page.faces", request.getBaseURL());
+      assertTrue(request.isRedirect());
+      assertFalse(request.isPage());
+      
+      // the second value found during the recording is the second one found during the replay
+      Map<String, List<String>> replayed = values(DynamicValueScanner.CONVERSATION_ID, new String[] {"40", "50"});
+      assertEquals("http://localhost/page.faces?cid=50&name=a+b", request.getURL(replayed));
+      
+      // fewer values found; the last one is used
+      replayed = values(DynamicValueScanner.CONVERSATION_ID, new String[] {"40"});
+      assertEquals("http://localhost/page.faces?cid=40&name=a+b", request.getURL(replayed));
+      
+      // none found; the recorded value is used
+      assertEquals("http://localhost/page.faces?cid=5&name=a+b", request.getURL(new HashMap<String, List<String>>()));
+   }
+   
+   public void testReplacesViewStateInFormBody()
+   {
+      Map<String, List<String>> recorded = values(DynamicValueScanner.VIEW_STATE, new String[] {"j_id1"});
+      List<String[]> bodyParams = new ArrayList<String[]>();
+      bodyParams.add(new String[] {"form1:name", "Stan"});
+      bodyParams.add(new String[] {DynamicValueScanner.VIEW_STATE, "j_id1"});
+      bodyParams.add(new String[] {"form1:other", "j_id1"});
+      
+      RecordedRequest request = new RecordedRequest("POST", "http://localhost/index.faces", "UTF-8", NO_HEADERS, 
+                                                    bodyParams, null, recorded, 200, "text/html");
+      assertTrue(request.hasFormBody());
+      
+      Map<String, List<String>> replayed = values(DynamicValueScanner.VIEW_STATE, new String[] {"j_id9"});
+      assertEquals("form1%3Aname=Stan&javax.faces.ViewState=j_id9&form1%3Aother=j_id1", request.getBody(replayed));
+   }
+   
+   public void testRawBody()
+   {
+      RecordedRequest request = new RecordedRequest("POST", "http://localhost/service", "UTF-8", NO_HEADERS, 
+                                                    null, "<xml/>", new HashMap<String, List<String>>(), 
+                                                    200, "application/xml");
+      assertEquals("<xml/>", request.getBody(new HashMap<String, List<String>>()));
+      assertFalse(request.hasFormBody());
+   }
+   
+   public void testIsPage()
+   {
+      assertTrue(RecordedRequest.isPage("text/html;charset=UTF-8"));
+      assertTrue(RecordedRequest.isPage("Application/XHTML+XML"));
+      assertTrue(RecordedRequest.isPage("text/xml"));
+      assertFalse(RecordedRequest.isPage("text/css"));
+      assertFalse(RecordedRequest.isPage(null));
+   }
+   
+   public void testIsRedirect()
+   {
+      assertFalse(request(200).isRedirect());
+      assertTrue(request(301).isRedirect());
+      assertFalse(request(304).isRedirect());
+      assertFalse(request(404).isRedirect());
+   }
+   
+   private static RecordedRequest request(int statusCode)
+   {
+      return new RecordedRequest("GET", "http://localhost/", "UTF-8", NO_HEADERS, null, null, 
+                                 new HashMap<String, List<String>>(), statusCode, null);
+   }
+   
+   private static Map<String, List<String>> values(String name, String[] found)
+   {
+      Map<String, List<String>> values = new HashMap<String, List<String>>();
+      values.put(name, Arrays.asList(found));
+      return values;
+   }
+   
+   private static void assertPair(String name, String value, String[] pair)
+   {
+      assertEquals(name, pair[0]);
+      assertEquals(value, pair[1]);
+   }
+}
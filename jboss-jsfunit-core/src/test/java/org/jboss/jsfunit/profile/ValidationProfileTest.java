@@ -0,0 +1,221 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.profile;
+
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIInput;
+import javax.faces.context.FacesContext;
+import javax.faces.convert.Converter;
+import javax.faces.convert.IntegerConverter;
+import javax.faces.validator.LongRangeValidator;
+import javax.faces.validator.Validator;
+import javax.faces.validator.ValidatorException;
+import junit.framework.TestCase;
+import org.jboss.jsfunit.jsfsession.MockFacesContext;
+
+/**
+ * Tests that the ValidationProfile times each converter and validator while
+ * a component is validated, and puts the originals back afterwards.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ValidationProfileTest extends TestCase
+{
+   private MockFacesContext facesContext;
+   
+   public void setUp()
+   {
+      facesContext = new MockFacesContext();
+   }
+   
+   public void tearDown()
+   {
+      facesContext.release();
+   }
+   
+   public void testSwappedOnlyDuringValidation()
+   {
+      Converter converter = new IntegerConverter();
+      Validator range = new LongRangeValidator(10);
+      Validator sleeping = new SleepingValidator(0);
+      UIInput input = input("input", converter, new Validator[] {range, sleeping});
+      
+      ValidationProfile profile = new ValidationProfile();
+      profile.validationStarted(facesContext, input);
+      assertTrue(input.getConverter() instanceof ProfilingConverter);
+      Validator[] validators = input.getValidators();
+      assertEquals(2, validators.length);
+      assertSame(range, ((ProfilingValidator)validators[0]).getWrapped());
+      assertSame(sleeping, ((ProfilingValidator)validators[1]).getWrapped());
+      
+      profile.validationFinished(input);
+      assertSame(converter, input.getConverter());
+      validators = input.getValidators();
+      assertEquals(2, validators.length);
+      assertSame(range, validators[0]);
+      assertSame(sleeping, validators[1]);
+   }
+   
+   public void testTimePerClass()
+   {
+      UIInput input = input("input", 
+                            new IntegerConverter(), 
+                            new Validator[] {new LongRangeValidator(10), new SleepingValidator(50)});
+      
+      ValidationProfile profile = new ValidationProfile();
+      validate(profile, input, "5");
+      
+      long sleeping = profile.getClassTimeNanos(SleepingValidator.class.getName());
+      long range = profile.getClassTimeNanos(LongRangeValidator.class.getName());
+      long converter = profile.getClassTimeNanos(IntegerConverter.class.getName());
+      assertTrue(sleeping >= 50000000L);
+      assertTrue(range < sleeping);
+      assertTrue(converter < sleeping);
+      assertTrue(profile.getComponentTimeNanos("input") >= sleeping + range + converter);
+      
+      assertEquals(SleepingValidator.class.getName(), profile.getStatsByClass().get(0).getClassNames().get(0));
+      assertEquals(1, profile.getStatsByClass().get(0).getCount());
+      
+      ValidationStats stats = profile.getStats().get(0);
+      assertEquals(sleeping, stats.getClassTimeNanos(SleepingValidator.class.getName()));
+      assertEquals(range, stats.getClassTimeNanos(LongRangeValidator.class.getName()));
+      
+      profile.assertClassUnder(LongRangeValidator.class.getName(), 50);
+      try
+      {
+         profile.assertClassUnder(SleepingValidator.class.getName(), 50);
+         fail("Expected AssertionError");
+      }
+      catch (AssertionError e)
+      {
+         // OK
+      }
+   }
+   
+   public void testTimeIsAttributedToEachComponent()
+   {
+      UIInput slow = input("slow", null, new Validator[] {new SleepingValidator(50)});
+      UIInput fast = input("fast", null, new Validator[] {new SleepingValidator(0)});
+      
+      ValidationProfile profile = new ValidationProfile();
+      validate(profile, slow, "value");
+      validate(profile, fast, "value");
+      
+      assertTrue(profile.getComponentTimeNanos("slow") >= 50000000L);
+      assertTrue(profile.getComponentTimeNanos("fast") < profile.getComponentTimeNanos("slow"));
+      assertEquals(2, profile.getStatsByClass().get(0).getCount());
+      assertEquals(profile.getClassTimeNanos(SleepingValidator.class.getName()), 
+                   profile.getStats().get(0).getClassTimeNanos(SleepingValidator.class.getName()) + 
+                   profile.getStats().get(1).getClassTimeNanos(SleepingValidator.class.getName()));
+   }
+   
+   public void testInitialStateIsKept()
+   {
+      UIInput marked = input("marked", new IntegerConverter(), new Validator[] {new LongRangeValidator(10)});
+      marked.markInitialState();
+      UIInput unmarked = input("unmarked", new IntegerConverter(), new Validator[] {new LongRangeValidator(10)});
+      
+      ValidationProfile profile = new ValidationProfile();
+      profile.validationStarted(facesContext, marked);
+      profile.validationStarted(facesContext, unmarked);
+      assertTrue(marked.initialStateMarked());
+      assertFalse(unmarked.initialStateMarked());
+      
+      profile.validationFinished(marked);
+      profile.validationFinished(unmarked);
+      assertTrue(marked.initialStateMarked());
+      assertFalse(unmarked.initialStateMarked());
+   }
+   
+   public void testUnfinishedValidationIsRestored()
+   {
+      Converter converter = new IntegerConverter();
+      Validator validator = new LongRangeValidator(10);
+      UIInput input = input("input", converter, new Validator[] {validator});
+      
+      // a RuntimeException during validation skips the PostValidateEvent
+      ValidationProfile profile = new ValidationProfile();
+      profile.validationStarted(facesContext, input);
+      profile.restoreAll();
+      
+      assertSame(converter, input.getConverter());
+      assertEquals(1, input.getValidators().length);
+      assertSame(validator, input.getValidators()[0]);
+      
+      profile.validationFinished(input);
+      assertTrue(profile.getStats().get(0).getCount() == 0);
+   }
+   
+   // what UIInput.validate() does with the converter and validators
+   private void validate(ValidationProfile profile, UIInput input, String submittedValue)
+   {
+      profile.validationStarted(facesContext, input);
+      Object value = submittedValue;
+      if (input.getConverter() != null) value = input.getConverter().getAsObject(facesContext, input, submittedValue);
+      
+      Validator[] validators = input.getValidators();
+      for (int i=0; i < validators.length; i++)
+      {
+         validators[i].validate(facesContext, input, value);
+      }
+      profile.validationFinished(input);
+   }
+   
+   private UIInput input(String id, Converter converter, Validator[] validators)
+   {
+      UIInput input = new UIInput();
+      input.setId(id);
+      input.setRendererType(null);
+      input.setConverter(converter);
+      for (int i=0; i < validators.length; i++)
+      {
+         input.addValidator(validators[i]);
+      }
+      
+      facesContext.addToView(input);
+      return input;
+   }
+   
+   public static class SleepingValidator implements Validator
+   {
+      private long millis;
+      
+      public SleepingValidator(long millis)
+      {
+         this.millis = millis;
+      }
+      
+      public void validate(FacesContext context, UIComponent component, Object value) throws ValidatorException
+      {
+         try
+         {
+            Thread.sleep(millis);
+         }
+         catch (InterruptedException e)
+         {
+            throw new RuntimeException(e);
+         }
+      }
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import java.util.Iterator;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.framework.Environment;
+import org.jboss.jsfunit.jsfsession.JSFServerSession;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+import org.jboss.jsfunit.profile.ActionInvocation;
+import org.jboss.jsfunit.profile.ActionProfile;
+
+/**
+ * Tests the action profiling of JSFServerSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ActionProfileTest extends ServletTestCase
+{
+   @Override
+   public void setUp()
+   {
+      System.setProperty(ActionProfile.PROFILE_PROPERTY, "true");
+   }
+   
+   @Override
+   public void tearDown()
+   {
+      System.clearProperty(ActionProfile.PROFILE_PROPERTY);
+   }
+   
+   public void testActionProfile() throws IOException
+   {
+      if (!Environment.is20Compatible()) return; // action profiling needs JSF 2.0
+      
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      JSFServerSession server = jsfSession.getJSFServerSession();
+      jsfSession.getJSFClientSession().click("0:marathonSelect");
+      assertEquals("BAA Boston Marathon", server.getManagedBeanValue("#{marathons.selectedMarathon}"));
+      
+      ActionInvocation action = null;
+      for (Iterator<ActionInvocation> i = server.getActionProfile().getInvocations().iterator(); i.hasNext();)
+      {
+         ActionInvocation invocation = i.next();
+         if (invocation.getType().equals(ActionInvocation.ACTION)) action = invocation;
+      }
+      assertNotNull(action);
+      assertEquals("#{marathons.select}", action.getExpression());
+      assertTrue(action.getClientID().endsWith("0:marathonSelect"));
+      
+      server.assertActionUnder("#{marathons.select}", 60000);
+      server.getActionProfile().assertNavigationUnder(60000);
+   }
+   
+   public void testActionProfileDisabled() throws IOException
+   {
+      System.clearProperty(ActionProfile.PROFILE_PROPERTY);
+      
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      jsfSession.getJSFClientSession().click("0:marathonSelect");
+      assertTrue(jsfSession.getJSFServerSession().getActionProfile().getInvocations().isEmpty());
+   }
+}
@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import javax.faces.component.UIComponent;
+import javax.faces.component.ValueHolder;
+import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseWriter;
+import javax.faces.render.Renderer;
+
+/**
+ * Renderer that gets itself from the RenderKit and casts the result to its 
+ * own class, the way many component libraries do.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class CastingRenderer extends Renderer
+{
+   public static final String RENDERER_TYPE = "hellojsf.test.CastingRenderer";
+   
+   @Override
+   public void encodeEnd(FacesContext facesContext, UIComponent component) throws IOException
+   {
+      CastingRenderer renderer = (CastingRenderer)facesContext.getRenderKit()
+                                                              .getRenderer(component.getFamily(), 
+                                                                           component.getRendererType());
+      renderer.writeValue(facesContext, component);
+   }
+   
+   protected void writeValue(FacesContext facesContext, UIComponent component) throws IOException
+   {
+      ResponseWriter writer = facesContext.getResponseWriter();
+      writer.startElement("span", component);
+      writer.writeAttribute("id", component.getClientId(facesContext), "id");
+      writer.writeText(((ValueHolder)component).getValue(), component, "value");
+      writer.endElement("span");
+   }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+import org.jboss.jsfunit.profile.ELProfile;
+
+/**
+ * Tests the EL profiling of JSFServerSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ELProfileTest extends ServletTestCase
+{
+   @Override
+   public void setUp()
+   {
+      System.setProperty(ELProfile.PROFILE_PROPERTY, "true");
+   }
+   
+   @Override
+   public void tearDown()
+   {
+      System.clearProperty(ELProfile.PROFILE_PROPERTY);
+   }
+   
+   public void testELProfile() throws IOException
+   {
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      ELProfile profile = jsfSession.getJSFServerSession().getELProfile();
+      assertTrue(profile.getEvaluationCount("#{marathons.list}") > 0);
+      assertEquals(profile.getEvaluationCount("#{marathons.list}"), profile.getEvaluationCount("marathons.list"));
+      assertFalse(profile.getHottest().isEmpty());
+      profile.assertEvaluatedAtMost("marathons.list", 1000);
+   }
+   
+   public void testELProfileDisabled() throws IOException
+   {
+      System.clearProperty(ELProfile.PROFILE_PROPERTY);
+      
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      assertTrue(jsfSession.getJSFServerSession().getELProfile().getHottest().isEmpty());
+   }
+}
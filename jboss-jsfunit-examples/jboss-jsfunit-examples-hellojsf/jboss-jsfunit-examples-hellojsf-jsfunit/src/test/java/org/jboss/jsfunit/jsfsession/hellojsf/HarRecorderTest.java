@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.jsfsession.HarRecorder;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+
+/**
+ * Tests the HarRecorder of JSFSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class HarRecorderTest extends ServletTestCase
+{
+   public void testNoRecorderByDefault() throws IOException
+   {
+      assertNull(new JSFSession("/index.faces").getHarRecorder());
+   }
+   
+   public void testHarFile() throws IOException, InterruptedException, ExecutionException
+   {
+      File directory = new File(System.getProperty("java.io.tmpdir"));
+      System.setProperty(HarRecorder.HAR_PROPERTY, directory.getPath());
+      try
+      {
+         JSFSession jsfSession = new JSFSession("/index.faces");
+         HarRecorder recorder = jsfSession.getHarRecorder();
+         assertNotNull(recorder);
+         assertEquals(directory, recorder.getHarFile().getParentFile());
+         
+         File harFile = recorder.flush().get();
+         assertTrue(harFile.length() > 0);
+         harFile.delete();
+      }
+      finally
+      {
+         System.clearProperty(HarRecorder.HAR_PROPERTY);
+      }
+   }
+}
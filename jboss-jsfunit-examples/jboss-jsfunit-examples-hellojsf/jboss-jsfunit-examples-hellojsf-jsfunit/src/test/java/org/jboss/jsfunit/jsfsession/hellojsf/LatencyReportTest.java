@@ -0,0 +1,55 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import javax.faces.event.PhaseId;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.framework.LatencyBreakdown;
+import org.jboss.jsfunit.jsfsession.JSFClientSession;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+
+/**
+ * Tests the LatencyReport of JSFSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class LatencyReportTest extends ServletTestCase
+{
+   public void testLatencyBreakdown() throws IOException
+   {
+      JSFSession jsfSession = new JSFSession("/index_longValidator.faces");
+      JSFClientSession client = jsfSession.getJSFClientSession();
+      client.setValue("input_foo_text", "Stan"); 
+      client.click("submit_button");
+      
+      LatencyBreakdown breakdown = jsfSession.getLatencyReport().getLastPageBreakdown();
+      assertNotNull(breakdown);
+      assertNotNull(breakdown.getRequestID());
+      assertEquals(200, breakdown.getStatus());
+      assertTrue(breakdown.getPhaseTimeNanos(PhaseId.PROCESS_VALIDATIONS) >= 1500000000L);
+      assertTrue(breakdown.getLifecycleTimeNanos() >= breakdown.getPhaseTimeNanos(PhaseId.PROCESS_VALIDATIONS));
+      assertTrue(breakdown.getTotalTimeNanos() >= breakdown.getLifecycleTimeNanos());
+   }
+}
@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import java.util.Iterator;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.framework.Environment;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+import org.jboss.jsfunit.profile.ComponentRenderStats;
+import org.jboss.jsfunit.profile.RenderProfile;
+
+/**
+ * Tests the render profiling of JSFServerSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class RenderProfileTest extends ServletTestCase
+{
+   @Override
+   public void setUp()
+   {
+      System.setProperty(RenderProfile.PROFILE_PROPERTY, "true");
+   }
+   
+   @Override
+   public void tearDown()
+   {
+      System.clearProperty(RenderProfile.PROFILE_PROPERTY);
+   }
+   
+   public void testRenderProfile() throws IOException
+   {
+      if (!Environment.is20Compatible()) return; // render profiling needs JSF 2.0
+      
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      RenderProfile profile = jsfSession.getJSFServerSession().getRenderProfile();
+      assertFalse(profile.getComponents().isEmpty());
+      assertFalse(profile.getComponentTypes().isEmpty());
+      assertTrue(profile.getTotalChars() > 0);
+   }
+   
+   public void testLibraryRendererIsNotWrapped() throws IOException
+   {
+      if (!Environment.is20Compatible()) return; // render profiling needs JSF 2.0
+      
+      // the CastingRenderer would throw a ClassCastException if it were wrapped
+      JSFSession jsfSession = new JSFSession("/castingRenderer.faces");
+      assertEquals("Rendered by the CastingRenderer", 
+                   jsfSession.getJSFClientSession().getElement("casting").getTextContent());
+      
+      RenderProfile profile = jsfSession.getJSFServerSession().getRenderProfile();
+      assertTrue(isProfiled(profile, "form1:standard"));
+      assertFalse(isProfiled(profile, "form1:casting"));
+   }
+   
+   public void testRenderProfileDisabled() throws IOException
+   {
+      System.clearProperty(RenderProfile.PROFILE_PROPERTY);
+      
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      assertTrue(jsfSession.getJSFServerSession().getRenderProfile().getComponents().isEmpty());
+   }
+   
+   private static boolean isProfiled(RenderProfile profile, String clientID)
+   {
+      for (Iterator<ComponentRenderStats> i = profile.getComponents().iterator(); i.hasNext();)
+      {
+         if (i.next().getClientID().equals(clientID)) return true;
+      }
+      
+      return false;
+   }
+}
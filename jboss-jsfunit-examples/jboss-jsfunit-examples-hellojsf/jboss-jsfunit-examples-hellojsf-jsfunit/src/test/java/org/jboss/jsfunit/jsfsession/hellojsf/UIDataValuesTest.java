@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.jsfsession.JSFServerSession;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+import org.jboss.jsfunit.jsfsession.UIDataValues;
+
+/**
+ * Tests the UIData value extraction of JSFServerSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class UIDataValuesTest extends ServletTestCase
+{
+   public void testTableValues() throws IOException
+   {
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      JSFServerSession server = jsfSession.getJSFServerSession();
+      
+      UIDataValues table = server.getTableValues("marathonTable");
+      assertEquals(6, table.getRowCount());
+      assertTrue(table.getColumnIDs().contains("marathonName"));
+      assertTrue(table.getColumnIDs().contains("marathonLocation"));
+      assertEquals("Flora London Marathon", table.getValue(3, "marathonName"));
+      assertEquals("London, UK", table.getValue(3, "marathonLocation"));
+   }
+   
+   public void testColumnValues() throws IOException
+   {
+      JSFSession jsfSession = new JSFSession("/marathons_datatable.faces");
+      JSFServerSession server = jsfSession.getJSFServerSession();
+      
+      List<Object> names = server.getColumnValues("marathonTable", "marathonName");
+      assertEquals(6, names.size());
+      assertEquals("BAA Boston Marathon", names.get(0));
+      assertEquals("Olympic Marathon", names.get(5));
+      assertEquals(server.getTableValues("marathonTable").getColumn("marathonName"), names);
+   }
+}
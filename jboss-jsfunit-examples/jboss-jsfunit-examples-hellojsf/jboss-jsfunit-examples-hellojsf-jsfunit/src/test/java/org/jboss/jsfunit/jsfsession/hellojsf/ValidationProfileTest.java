@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import javax.faces.validator.LengthValidator;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.framework.Environment;
+import org.jboss.jsfunit.jsfsession.JSFClientSession;
+import org.jboss.jsfunit.jsfsession.JSFServerSession;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+import org.jboss.jsfunit.profile.ValidationProfile;
+
+/**
+ * Tests the validation profiling of JSFServerSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ValidationProfileTest extends ServletTestCase
+{
+   @Override
+   public void setUp()
+   {
+      System.setProperty(ValidationProfile.PROFILE_PROPERTY, "true");
+   }
+   
+   @Override
+   public void tearDown()
+   {
+      System.clearProperty(ValidationProfile.PROFILE_PROPERTY);
+   }
+   
+   public void testValidationProfile() throws IOException
+   {
+      if (!Environment.is20Compatible()) return; // validation profiling needs JSF 2.0
+      
+      JSFSession jsfSession = submitLongValidator();
+      JSFServerSession server = jsfSession.getJSFServerSession();
+      
+      ValidationProfile profile = server.getValidationProfile();
+      String clientID = server.getClientIDs().findClientID("input_foo_text");
+      assertTrue(profile.getComponentTimeNanos(clientID) >= 1500000000L);
+      assertTrue(profile.getClassTimeNanos(DelayValidator.class.getName()) >= 1500000000L);
+      
+      // the LengthValidator of the same component does not get the time of the DelayValidator
+      assertTrue(profile.getClassTimeNanos(LengthValidator.class.getName()) < 1500000000L);
+      profile.assertClassUnder(LengthValidator.class.getName(), 1000);
+      assertTrue(profile.getTotalTimeNanos() >= profile.getComponentTimeNanos(clientID));
+      
+      server.assertValidationUnder("input_foo_text", 60000);
+      try
+      {
+         server.assertValidationUnder("input_foo_text", 1000);
+         fail("Expected AssertionError");
+      }
+      catch (AssertionError e)
+      {
+         // OK
+      }
+   }
+   
+   public void testValidationProfileDisabled() throws IOException
+   {
+      System.clearProperty(ValidationProfile.PROFILE_PROPERTY);
+      
+      JSFSession jsfSession = submitLongValidator();
+      assertTrue(jsfSession.getJSFServerSession().getValidationProfile().getStats().isEmpty());
+   }
+   
+   private JSFSession submitLongValidator() throws IOException
+   {
+      JSFSession jsfSession = new JSFSession("/index_longValidator.faces");
+      JSFClientSession client = jsfSession.getJSFClientSession();
+      client.setValue("input_foo_text", "Stan"); 
+      client.click("submit_button");
+      return jsfSession;
+   }
+}
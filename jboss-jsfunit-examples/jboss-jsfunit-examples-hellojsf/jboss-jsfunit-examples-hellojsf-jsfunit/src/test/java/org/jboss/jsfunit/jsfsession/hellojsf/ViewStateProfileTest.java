@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.jsfunit.jsfsession.hellojsf;
+
+import java.io.IOException;
+import org.apache.cactus.ServletTestCase;
+import org.jboss.jsfunit.jsfsession.JSFServerSession;
+import org.jboss.jsfunit.jsfsession.JSFSession;
+import org.jboss.jsfunit.profile.ViewStateProfile;
+
+/**
+ * Tests the view state profiling of JSFServerSession.
+ *
+ * @author agent
+ * @since 2.0
+ */
+public class ViewStateProfileTest extends ServletTestCase
+{
+   @Override
+   public void setUp()
+   {
+      System.setProperty(ViewStateProfile.PROFILE_PROPERTY, "true");
+   }
+   
+   @Override
+   public void tearDown()
+   {
+      System.clearProperty(ViewStateProfile.PROFILE_PROPERTY);
+   }
+   
+   public void testViewStateProfile() throws IOException
+   {
+      JSFSession jsfSession = new JSFSession("/index.faces");
+      JSFServerSession server = jsfSession.getJSFServerSession();
+      
+      ViewStateProfile profile = server.getViewStateProfile();
+      assertTrue(profile.getSaveCount() > 0);
+      assertTrue(profile.getSerializedSize() > 0);
+      
+      server.assertViewStateUnder(1024 * 1024);
+      try
+      {
+         server.assertViewStateUnder(1);
+         fail("Expected AssertionError");
+      }
+      catch (AssertionError e)
+      {
+         // OK
+      }
+   }
+   
+   public void testViewStateProfileDisabled() throws IOException
+   {
+      System.clearProperty(ViewStateProfile.PROFILE_PROPERTY);
+      
+      JSFSession jsfSession = new JSFSession("/index.faces");
+      JSFServerSession server = jsfSession.getJSFServerSession();
+      assertEquals(-1L, server.getViewStateProfile().getSerializedSize());
+      
+      try
+      {
+         server.assertViewStateUnder(1024 * 1024);
+         fail("Expected IllegalStateException");
+      }
+      catch (IllegalStateException e)
+      {
+         // OK
+      }
+   }
+}
@@ -31,14 +31,14 @@
    
    <h:form id="form1">    
 
-         <h:dataTable var="marathon" value="#{marathons.list}">
+         <h:dataTable id="marathonTable" var="marathon" value="#{marathons.list}">
             <h:column>
                <f:facet name="header"><h:outputText value="Marathon"/></f:facet>
-               <h:outputText value="#{marathon.name}" />
+               <h:outputText id="marathonName" value="#{marathon.name}" />
             </h:column>
             <h:column>
                <f:facet name="header"><h:outputText value="Location"/></f:facet>
-               <h:outputText value="#{marathon.location}" />
+               <h:outputText id="marathonLocation" value="#{marathon.location}" />
             </h:column>
             <h:column>
                <f:facet name="header"><h:outputText value="Select"/></f:facet>